@@ -11,6 +11,7 @@ echo "Options
 Sorgente:
 -v <VERSIONE>  : Imposta la versione della release binaria da utilizzare per il build (default: ${LATEST_GOVPAY_RT_RELEASE})
 -l <FILE>      : Usa un'installer binario sul filesystem locale
+-c             : Aggiunge all'immagine l'archivio CDS per ridurre i tempi di avvio in modalita' cron
 Personalizzazioni:
 -e <PATH>      : Imposta il path interno utilizzato per i file di configurazione di govpay
 -f <PATH>      : Imposta il path interno utilizzato per i log di govpay
@@ -34,6 +35,7 @@ LOCALFILE=
 TEMPLATE=
 ARCHIVI=
 CUSTOM_MANAGER=
+CDS=
 
 REGISTRY_PREFIX=linkitaly
 #REGISTRY_PREFIX=localhost
@@ -41,7 +43,7 @@ REGISTRY_PREFIX=linkitaly
 LATEST_LINK="$(curl -qw '%{redirect_url}\n' https://github.com/link-it/govpay-rt-batch/releases/latest 2> /dev/null)"
 LATEST_GOVPAY_RT_RELEASE="${LATEST_LINK##*/}"
 
-while getopts "ht:v:l:e:f:" opt; do
+while getopts "ht:v:l:e:f:c" opt; do
   case $opt in
     t) TAG="$OPTARG"; NO_COLON=${TAG//:/}
       [ ${#TAG} -eq ${#NO_COLON} -o "${TAG:0:1}" == ':' -o "${TAG:(-1):1}" == ':' ] && { echo "Il tag fornito \"$TAG\" non utilizza la sintassi <repository>:<tagname>"; exit 2; } ;;
@@ -49,6 +51,7 @@ while getopts "ht:v:l:e:f:" opt; do
     l) LOCALFILE="$OPTARG"
         [ ! -f "${LOCALFILE}" ] && { echo "Il file indicato non esiste o non e' raggiungibile [${LOCALFILE}]."; exit 3; }
        ;;
+    c) CDS=true ;;
     e) CUSTOM_GOVPAY_HOME="${OPTARG}" ;;
     f) CUSTOM_GOVPAY_LOG="${OPTARG}" ;;
     h) printHelp
@@ -105,4 +108,14 @@ fi
 RET=$?
 [ ${RET} -eq  0 ] || exit ${RET}
 
+# Variante CDS costruita sopra l'immagine appena prodotta
+if [ -n "${CDS}" ]
+then
+  "${DOCKERBIN}" build --build-arg "base_image=${TAG}" \
+    -t "${TAG}" \
+    -f govpay-rt/Dockerfile.cds buildcontext
+  RET=$?
+  [ ${RET} -eq  0 ] || exit ${RET}
+fi
+
 exit 0
@@ -207,15 +207,40 @@ log_info "========================================"
 # Avvio Applicazione
 ##############################################################################
 
-JAR_FILE=$(find /opt/govpay-rt -name "*.jar" -type f | head -n 1)
+export LOADER_PATH="${GOVPAY_DS_JDBC_LIBS}"
+
+# Immagine con archivio CDS (Dockerfile.cds): avvio dal layout estratto, disattivabile con GOVPAY_RT_CDS=false.
+# Il classpath inizia con quello del training run; se non corrisponde la JVM ignora l'archivio.
+if [ -n "${GOVPAY_RT_CDS_ARCHIVE}" ] && [ -f "${GOVPAY_RT_CDS_ARCHIVE}" ] && [ "${GOVPAY_RT_CDS,,}" != "false" ]; then
+    CDS_CLASSPATH="${GOVPAY_RT_HOME}/cds/govpay-rt-batch.jar:/opt/hsqldb-${HSQLDB_FULLVERSION}/hsqldb/lib/hsqldb.jar"
+    # LOADER_PATH e' letto solo dal launcher del jar Spring Boot: con il layout estratto le stesse voci
+    # (directory o jar separati da virgola) vengono aggiunte al classpath, le directory con i jar contenuti
+    IFS=',' read -ra LOADER_ENTRIES <<< "${LOADER_PATH}"
+    for LOADER_ENTRY in "${LOADER_ENTRIES[@]}"; do
+        if [ -d "${LOADER_ENTRY}" ]; then
+            CDS_CLASSPATH="${CDS_CLASSPATH}:${LOADER_ENTRY}:${LOADER_ENTRY}/*"
+        else
+            CDS_CLASSPATH="${CDS_CLASSPATH}:${LOADER_ENTRY}"
+        fi
+    done
+
+    log_info "Avvio con archivio CDS: ${GOVPAY_RT_CDS_ARCHIVE}"
+    log_info "LOADER_PATH: ${LOADER_PATH}"
+    if [ -f "${GOVPAY_RT_HOME}/cds/startup-times.txt" ]; then
+        log_info "$(cat "${GOVPAY_RT_HOME}/cds/startup-times.txt")"
+    fi
+    log_info "========================================"
+
+    exec java ${JAVA_OPTS} -XX:SharedArchiveFile="${GOVPAY_RT_CDS_ARCHIVE}" -cp "${CDS_CLASSPATH}" it.govpay.rt.batch.GovpayRtBatchApplication
+fi
+
+JAR_FILE=$(find /opt/govpay-rt -maxdepth 1 -name "*.jar" -type f | head -n 1)
 
 if [ -z "${JAR_FILE}" ]; then
     log_error "Nessun file JAR trovato in /opt/govpay-rt"
     exit 1
 fi
 
-export LOADER_PATH="${GOVPAY_DS_JDBC_LIBS}"
-
 log_info "Avvio: ${JAR_FILE}"
 log_info "LOADER_PATH: ${LOADER_PATH}"
 log_info "========================================"
@@ -0,0 +1,65 @@
+#!/bin/bash
+
+##############################################################################
+# GovPay RT - Archivio CDS (Class Data Sharing) per la modalita' cron
+#
+# Uso:
+#   cds_training.sh dump           training run e creazione dell'archivio
+#   cds_training.sh measure [N]    tempo medio di avvio su N esecuzioni
+#                                  (default 5) senza e con l'archivio
+#
+# Il training run e la misura usano un database HSQLDB in memoria e non
+# richiedono accesso alla rete.
+##############################################################################
+
+set -e
+
+CDS_DIR=${GOVPAY_RT_HOME}/cds
+APP_JAR=${CDS_DIR}/govpay-rt-batch.jar
+ARCHIVE=${GOVPAY_RT_CDS_ARCHIVE:-${CDS_DIR}/govpay-rt-batch.jsa}
+HSQLDB_JAR=/opt/hsqldb-${HSQLDB_FULLVERSION}/hsqldb/lib/hsqldb.jar
+MAIN_CLASS=it.govpay.rt.batch.GovpayRtBatchApplication
+
+# Il classpath del training deve essere un prefisso di quello usato a runtime dall'entrypoint
+TRAINING_OPTS=(
+    -Dspring.context.exit=onRefresh
+    -Dspring.config.additional-location=file:${CDS_DIR}/cds-training.properties
+    -Dspring.datasource.url=jdbc:hsqldb:mem:cds
+    -Dspring.datasource.driver-class-name=org.hsqldb.jdbc.JDBCDriver
+    -Dspring.datasource.username=sa
+    -Dspring.jpa.database-platform=org.hibernate.dialect.HSQLDialect
+    -cp "${APP_JAR}:${HSQLDB_JAR}"
+    ${MAIN_CLASS}
+)
+
+elapsed_ms() {
+    local start end
+    start=$(date +%s%N)
+    java "$@" "${TRAINING_OPTS[@]}" > /dev/null
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+}
+
+case "$1" in
+    dump)
+        java -XX:ArchiveClassesAtExit="${ARCHIVE}" "${TRAINING_OPTS[@]}"
+        echo "Archivio CDS creato: ${ARCHIVE} ($(du -h "${ARCHIVE}" | cut -f1))"
+        ;;
+    measure)
+        RUNS=${2:-5}
+        [ -f "${ARCHIVE}" ] || { echo "Archivio CDS non trovato: ${ARCHIVE}"; exit 1; }
+        total_off=0
+        total_on=0
+        for i in $(seq 1 "${RUNS}"); do
+            total_off=$(( total_off + $(elapsed_ms) ))
+            total_on=$(( total_on + $(elapsed_ms -XX:SharedArchiveFile="${ARCHIVE}") ))
+        done
+        avg_off=$(( total_off / RUNS ))
+        avg_on=$(( total_on / RUNS ))
+        echo "Avvio medio su ${RUNS} esecuzioni: senza archivio ${avg_off} ms, con archivio ${avg_on} ms (risparmio $(( avg_off - avg_on )) ms)"
+        ;;
+    *)
+        echo "Uso: $(basename "$0") dump | measure [N]"
+        exit 1
+        ;;
+esac
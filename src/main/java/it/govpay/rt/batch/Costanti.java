@@ -28,6 +28,69 @@ public class Costanti {
     // Nome job RT retrieve
     public static final String RT_RETRIEVE_JOB_NAME = "rtRetrieveJob";
 
+    // Nome job di rielaborazione mirata (dominio, intervallo di id o elenco di id)
+    public static final String RT_REPROCESS_JOB_NAME = "rtReprocessJob";
+
+    // Parametri del job di rielaborazione mirata
+    public static final String JOB_PARAM_SLICE_ID = "sliceId";
+    public static final String JOB_PARAM_COD_DOMINIO = "codDominio";
+    public static final String JOB_PARAM_FROM_ID = "fromId";
+    public static final String JOB_PARAM_TO_ID = "toId";
+    public static final String JOB_PARAM_IDS = "ids";
+    public static final String JOB_PARAM_MAX_ID = "maxId";
+
+    // Nome job di recupero storico (oltre la finestra temporale), partizionato per intervalli di id
+    public static final String RT_BACKFILL_JOB_NAME = "rtBackfillJob";
+
+    // Parametri del job di recupero storico (oltre a fromId, toId e maxId)
+    public static final String JOB_PARAM_FROM_DATE = "fromDate";
+    public static final String JOB_PARAM_TO_DATE = "toDate";
+    public static final String JOB_PARAM_REQUESTED_AT = "requestedAt";
+    // estremi risolti alla richiesta: primo e ultimo id dell'intervallo, fine esclusa dell'intervallo di date
+    public static final String JOB_PARAM_FIRST_ID = "firstId";
+    public static final String JOB_PARAM_LAST_ID = "lastId";
+    public static final String JOB_PARAM_DATA_A = "dataA";
+
+    // Riga di RT_BATCH_TASK con l'ultima esecuzione dello svecchiamento dei metadati Spring Batch
+    public static final String METADATA_RETENTION_TASK_NAME = "metadataRetention";
+
+    // Chiavi dell'execution context di ogni partizione del recupero storico
+    public static final String PARTITION_MIN_ID_KEY = "minId";
+    public static final String PARTITION_MAX_ID_KEY = "maxId";
+    public static final String PARTITION_KEY = "partitionKey";
+
+    // Parametri del job per limitare la singola esecuzione (sovrascrivono govpay.batch.budget.*)
+    public static final String JOB_PARAM_MAX_DURATION_SECONDS = "maxDurationSeconds";
+    public static final String JOB_PARAM_MAX_ITEMS = "maxItems";
+
+    // Exit status dello step/job quando l'esecuzione si ferma per esaurimento del budget
+    public static final String EXIT_STATUS_BUDGET_EXHAUSTED = "BUDGET_EXHAUSTED";
+
+    // Exit code del processo (profilo cron) quando il budget e' esaurito e resta arretrato da elaborare
+    public static final int EXIT_CODE_BUDGET_EXHAUSTED = 3;
+
+    // Nomi delle observation (span di tracing e timer Micrometer) del percorso di una ricevuta
+    public static final String OBSERVATION_RECEIPT = "govpay.rt.receipt";
+    public static final String OBSERVATION_DOMAIN_LOOKUP = "govpay.rt.receipt.domain-lookup";
+    public static final String OBSERVATION_PAGOPA_GET = "govpay.rt.receipt.pagopa-get";
+    public static final String OBSERVATION_CONVERT = "govpay.rt.receipt.convert";
+    public static final String OBSERVATION_SEND_RECEIPT = "govpay.rt.receipt.pa-send-rt";
+    public static final String OBSERVATION_WRITER_UPDATE = "govpay.rt.receipt.writer-update";
+    public static final String OBSERVATION_GDE_ENQUEUE = "govpay.rt.receipt.gde-enqueue";
+
+    // Metriche dei bulkhead per connettore dell'elaborazione concorrente (tag connector)
+    public static final String METRIC_BULKHEAD_ACTIVE = "govpay.rt.bulkhead.active";
+    public static final String METRIC_BULKHEAD_QUEUED = "govpay.rt.bulkhead.queued";
+    public static final String METRIC_BULKHEAD_LIMIT = "govpay.rt.bulkhead.limit";
+    public static final String METRIC_BULKHEAD_DEFERRED = "govpay.rt.bulkhead.deferred";
+    public static final String METRIC_TAG_CONNECTOR = "connector";
+
+    // Metriche del ritardo di recupero: tempo tra la rendicontazione del pagamento e l'elaborazione della ricevuta
+    public static final String METRIC_RECOVERY_LAG = "govpay.rt.recovery.lag";
+    public static final String METRIC_PENDING_OLDEST_AGE = "govpay.rt.pending.oldest.age";
+    public static final String METRIC_TAG_DOMAIN = "domain";
+    public static final String METRIC_TAG_OUTCOME = "outcome";
+
     private Costanti() {
         // Costruttore privato per evitare istanziazione
     }
@@ -3,9 +3,12 @@ package it.govpay.rt.batch;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.persistence.autoconfigure.EntityScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import it.govpay.rt.batch.config.NativeRuntimeHints;
+
 /**
  * Main application class for GovPay RT Batch
  */
@@ -13,6 +16,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @EntityScan(basePackages = {"it.govpay.rt.batch", "it.govpay.common.client", "it.govpay.common.entity"})
 @EnableJpaRepositories(basePackages = {"it.govpay.rt.batch"})
 @EnableScheduling
+@ImportRuntimeHints(NativeRuntimeHints.class)
 public class GovpayRtBatchApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,38 @@
+package it.govpay.rt.batch.client;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import it.govpay.gde.client.beans.Header;
+import lombok.Data;
+
+/**
+ * Data of a single outbound call (pagoPA GET or paSendRTV2), filled by the client that performs it.
+ * <p>
+ * One instance per call, passed explicitly to the GDE instead of being read back from thread-bound holders,
+ * so the event is correct whichever thread runs the call or builds the event.
+ */
+@Data
+public class ExchangeContext {
+
+    private String method;
+    private String url;
+    private List<Header> requestHeaders = new ArrayList<>();
+    private List<Header> responseHeaders = new ArrayList<>();
+    /** Raw request body as sent on the wire, null if not captured */
+    private byte[] requestPayload;
+    /** Raw response body as received on the wire, null if not captured */
+    private byte[] responsePayload;
+    private OffsetDateTime dataStart = OffsetDateTime.now(ZoneOffset.UTC);
+    private OffsetDateTime dataEnd;
+
+    /**
+     * Marks the end of the call; later invocations keep the first end time.
+     */
+    public void complete() {
+        if (dataEnd == null)
+            dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
+    }
+}
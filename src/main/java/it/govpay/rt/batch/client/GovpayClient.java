@@ -1,7 +1,10 @@
 package it.govpay.rt.batch.client;
 
+import java.io.IOException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.core.WebServiceTemplate;
 import org.springframework.ws.client.core.support.WebServiceGatewaySupport;
 import org.springframework.ws.soap.client.core.SoapActionCallback;
@@ -14,19 +17,65 @@ import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
 
 public class GovpayClient extends WebServiceGatewaySupport {
 
+	private static final String SOAP_ACTION = "paSendRTV2";
+
 	private Logger log = LoggerFactory.getLogger(GovpayClient.class);
 	private final ObjectFactory objectFactory = new ObjectFactory();
+	private SoapGdeCapturingInterceptor exchangeInterceptor;
+
+	public void setExchangeInterceptor(SoapGdeCapturingInterceptor exchangeInterceptor) {
+		this.exchangeInterceptor = exchangeInterceptor;
+	}
 
-	@SuppressWarnings("unchecked")
 	public PaSendRTV2Response sendReceipt(PaSendRTV2Request receiptToSend) {
+		return sendReceipt(receiptToSend, new ExchangeContext());
+	}
+
+	/**
+	 * Invia la ricevuta valorizzando {@code exchange} con url, headers, payload grezzi e tempi della chiamata,
+	 * anche in caso di errore.
+	 */
+	@SuppressWarnings("unchecked")
+	public PaSendRTV2Response sendReceipt(PaSendRTV2Request receiptToSend, ExchangeContext exchange) {
 		if (receiptToSend == null)
 			return null;
 		log.debug("Notifica la ricevuta a govpay: {}", receiptToSend.getReceipt().getReceiptId());
 		WebServiceTemplate template = getWebServiceTemplate();
-		Object result = template.marshalSendAndReceive(objectFactory.createPaSendRTV2Request(receiptToSend), new SoapActionCallback("paSendRTV2"));
-		if (result instanceof JAXBElement<?> jaxbElement) {
-			return (PaSendRTV2Response) jaxbElement.getValue();
+		exchange.setMethod("POST");
+		exchange.setUrl(getDefaultUri());
+		try {
+			Object result = template.marshalSendAndReceive(objectFactory.createPaSendRTV2Request(receiptToSend), new ExchangeSoapActionCallback(exchange));
+			if (result instanceof JAXBElement<?> jaxbElement) {
+				return (PaSendRTV2Response) jaxbElement.getValue();
+			}
+			return (PaSendRTV2Response) result;
+		} finally {
+			if (exchangeInterceptor != null)
+				exchangeInterceptor.release(exchange);
+			exchange.complete();
+		}
+	}
+
+	/**
+	 * Imposta la SOAPAction e associa lo scambio alla connessione appena aperta dal template.
+	 */
+	private class ExchangeSoapActionCallback extends SoapActionCallback {
+
+		private final ExchangeContext exchange;
+
+		ExchangeSoapActionCallback(ExchangeContext exchange) {
+			super(SOAP_ACTION);
+			this.exchange = exchange;
+		}
+
+		@Override
+		public void doWithMessage(WebServiceMessage message) throws IOException {
+			if (message instanceof StaxSoapMessage staxMessage)
+				staxMessage.setSoapAction(SOAP_ACTION);
+			else
+				super.doWithMessage(message);
+			if (exchangeInterceptor != null)
+				exchangeInterceptor.bind(exchange);
 		}
-		return (PaSendRTV2Response) result;
 	}
 }
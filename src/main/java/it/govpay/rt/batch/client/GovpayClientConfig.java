@@ -1,15 +1,22 @@
 package it.govpay.rt.batch.client;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import jakarta.xml.bind.Marshaller;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.client.core.SimpleFaultMessageResolver;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+
 @Configuration
 public class GovpayClientConfig  {
 	@Value("${govpay.url}")
@@ -21,6 +28,9 @@ public class GovpayClientConfig  {
 	@Value("${govpay.auth.password}")
 	String password;
 
+	@Value("${govpay.soap.message-factory:saaj}")
+	String messageFactory;
+
 	@Bean
 	public Jaxb2Marshaller marshaller() {
 		Jaxb2Marshaller marshaller = new Jaxb2Marshaller();
@@ -32,12 +42,24 @@ public class GovpayClientConfig  {
 	}
 
 	@Bean
-	public GovpayClient govpayClient(Jaxb2Marshaller marshaller) {
+	public GovpayClient govpayClient(Jaxb2Marshaller marshaller, ObjectProvider<Tracer> tracer, ObjectProvider<Propagator> propagator) {
 		GovpayClient client = new GovpayClient();
 		client.setDefaultUri(govpayUrl);
 		client.setMarshaller(marshaller);
 		client.setUnmarshaller(marshaller);
-		client.setInterceptors(new ClientInterceptor[] { new SoapGdeCapturingInterceptor(), new AuthorizationHeaderInserter(username, password) });
+		if ("stax".equalsIgnoreCase(messageFactory)) {
+			client.setMessageFactory(new StaxSoapMessageFactory());
+			// il SoapFaultMessageResolver predefinito gestisce solo messaggi SAAJ
+			client.getWebServiceTemplate().setFaultMessageResolver(new SimpleFaultMessageResolver());
+		}
+		SoapGdeCapturingInterceptor exchangeInterceptor = new SoapGdeCapturingInterceptor();
+		client.setExchangeInterceptor(exchangeInterceptor);
+		List<ClientInterceptor> interceptors = new ArrayList<>(List.of(exchangeInterceptor, new AuthorizationHeaderInserter(username, password)));
+		Tracer currentTracer = tracer.getIfAvailable();
+		Propagator currentPropagator = propagator.getIfAvailable();
+		if (currentTracer != null && currentPropagator != null)
+			interceptors.add(new TracePropagationInterceptor(currentTracer, currentPropagator));
+		client.setInterceptors(interceptors.toArray(new ClientInterceptor[0]));
 		return client;
 	}
 }
@@ -0,0 +1,117 @@
+package it.govpay.rt.batch.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Interceptor REST che conta i byte del body di risposta effettivamente letti dal client, anche quando
+ * Content-Length manca (chunked transfer encoding) o non corrisponde al body letto (risposta compressa).
+ * <p>
+ * Il body viene letto dal message converter sul thread della chiamata, prima che questa ritorni: il conteggio
+ * e' legato a quel thread, come gli headers catturati da govpay-common, e va letto con {@link #bytesRead()}
+ * e azzerato con {@link #clear()} sullo stesso thread.
+ */
+public class ResponseSizeInterceptor implements ClientHttpRequestInterceptor {
+
+	private static final ThreadLocal<AtomicLong> BYTES_READ = new ThreadLocal<>();
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+		AtomicLong counter = new AtomicLong();
+		BYTES_READ.set(counter);
+		return new CountingResponse(execution.execute(request, body), counter);
+	}
+
+	/**
+	 * Byte del body letti dall'ultima chiamata del thread corrente, 0 se non ce ne sono.
+	 */
+	public static long bytesRead() {
+		AtomicLong counter = BYTES_READ.get();
+		return counter != null ? counter.get() : 0L;
+	}
+
+	public static void clear() {
+		BYTES_READ.remove();
+	}
+
+	private static final class CountingResponse implements ClientHttpResponse {
+
+		private final ClientHttpResponse delegate;
+		private final AtomicLong counter;
+		private InputStream body;
+
+		CountingResponse(ClientHttpResponse delegate, AtomicLong counter) {
+			this.delegate = delegate;
+			this.counter = counter;
+		}
+
+		@Override
+		public HttpStatusCode getStatusCode() throws IOException {
+			return delegate.getStatusCode();
+		}
+
+		@Override
+		public String getStatusText() throws IOException {
+			return delegate.getStatusText();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return delegate.getHeaders();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			if (body == null)
+				body = new CountingInputStream(delegate.getBody(), counter);
+			return body;
+		}
+
+		@Override
+		public void close() {
+			delegate.close();
+		}
+	}
+
+	private static final class CountingInputStream extends FilterInputStream {
+
+		private final AtomicLong counter;
+
+		CountingInputStream(InputStream in, AtomicLong counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				counter.incrementAndGet();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				counter.addAndGet(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			counter.addAndGet(Math.max(0L, skipped));
+			return skipped;
+		}
+	}
+}
@@ -1,10 +1,14 @@
 package it.govpay.rt.batch.client;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.WebServiceClientException;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.MessageContext;
@@ -17,19 +21,36 @@ import it.govpay.gde.client.beans.Header;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Interceptor SOAP che cattura gli headers HTTP di risposta per il GDE.
+ * Interceptor SOAP che cattura headers HTTP e payload grezzi dello scambio per il GDE.
  * <p>
- * Gli headers di risposta vengono catturati in afterCompletion (eseguito
- * sia per risposte OK che per errori di trasporto come 401, 500, ecc.).
+ * L'{@link ExchangeContext} della chiamata viene associato alla connessione dal callback di
+ * {@link GovpayClient} ({@link #bind(ExchangeContext)}) e valorizzato in afterCompletion (eseguito
+ * sia per risposte OK che per errori di trasporto come 401, 500, ecc.), prima della chiusura della connessione.
+ * Nessuno stato e' legato al thread: chiamate concorrenti usano connessioni, e quindi scambi, distinti.
  */
 @Slf4j
 public class SoapGdeCapturingInterceptor implements ClientInterceptor {
 
-	private static final ThreadLocal<List<Header>> RESPONSE_HEADERS = new ThreadLocal<>();
+	private final Map<WebServiceConnection, ExchangeContext> exchanges = new ConcurrentHashMap<>();
+
+	/**
+	 * Associa lo scambio alla connessione della chiamata in corso; va invocato dal callback della richiesta.
+	 */
+	public void bind(ExchangeContext exchange) {
+		TransportContext context = TransportContextHolder.getTransportContext();
+		if (context != null && context.getConnection() != null)
+			exchanges.put(context.getConnection(), exchange);
+	}
+
+	/**
+	 * Rimuove l'associazione se la chiamata e' terminata prima di afterCompletion (es. errore nel callback).
+	 */
+	public void release(ExchangeContext exchange) {
+		exchanges.values().remove(exchange);
+	}
 
 	@Override
 	public boolean handleRequest(MessageContext messageContext) throws WebServiceClientException {
-		RESPONSE_HEADERS.remove();
 		return true;
 	}
 
@@ -45,17 +66,22 @@ public class SoapGdeCapturingInterceptor implements ClientInterceptor {
 
 	@Override
 	public void afterCompletion(MessageContext messageContext, Exception ex) throws WebServiceClientException {
-		captureResponseHeaders();
-	}
+		TransportContext context = TransportContextHolder.getTransportContext();
+		if (context == null) return;
 
-	private void captureResponseHeaders() {
-		try {
-			TransportContext context = TransportContextHolder.getTransportContext();
-			if (context == null) return;
+		ExchangeContext exchange = exchanges.remove(context.getConnection());
+		if (exchange == null) return;
 
-			WebServiceConnection connection = context.getConnection();
-			if (connection instanceof HeadersAwareSenderWebServiceConnection httpConnection) {
-				List<Header> headers = new ArrayList<>();
+		exchange.setRequestPayload(toBytes(messageContext.getRequest()));
+		if (messageContext.hasResponse())
+			exchange.setResponsePayload(toBytes(messageContext.getResponse()));
+		exchange.setResponseHeaders(captureResponseHeaders(context.getConnection()));
+	}
+
+	private List<Header> captureResponseHeaders(WebServiceConnection connection) {
+		List<Header> headers = new ArrayList<>();
+		if (connection instanceof HeadersAwareSenderWebServiceConnection httpConnection) {
+			try {
 				Iterator<String> headerNames = httpConnection.getResponseHeaderNames();
 				while (headerNames.hasNext()) {
 					String name = headerNames.next();
@@ -67,20 +93,23 @@ public class SoapGdeCapturingInterceptor implements ClientInterceptor {
 						headers.add(header);
 					}
 				}
-				RESPONSE_HEADERS.set(headers);
 				log.debug("Catturati {} headers dalla risposta SOAP", headers.size());
+			} catch (IOException e) {
+				log.debug("Errore durante la cattura degli headers SOAP: {}", e.getMessage());
 			}
-		} catch (IOException e) {
-			log.debug("Errore durante la cattura degli headers SOAP: {}", e.getMessage());
 		}
+		return headers;
 	}
 
-	public static List<Header> getCapturedResponseHeaders() {
-		List<Header> headers = RESPONSE_HEADERS.get();
-		return headers != null ? headers : new ArrayList<>();
-	}
-
-	public static void clear() {
-		RESPONSE_HEADERS.remove();
+	private byte[] toBytes(WebServiceMessage message) {
+		if (message == null) return null;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			message.writeTo(out);
+			return out.toByteArray();
+		} catch (IOException | RuntimeException e) {
+			log.debug("Errore durante la cattura del payload SOAP: {}", e.getMessage());
+			return null;
+		}
 	}
 }
@@ -0,0 +1,206 @@
+package it.govpay.rt.batch.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.springframework.ws.FaultAwareWebServiceMessage;
+import org.springframework.ws.WebServiceMessageException;
+import org.springframework.ws.transport.TransportOutputStream;
+
+/**
+ * Messaggio SOAP 1.1 senza DOM, creato da {@link StaxSoapMessageFactory}.
+ * <p>
+ * In uscita il payload viene serializzato in un buffer e scritto sul canale tra apertura e chiusura della busta;
+ * in ingresso la busta viene letta con StAX e il payload consegnato all'unmarshaller come {@link StAXSource}.
+ * Headers SOAP e allegati non sono supportati: paSendRTV2 non li usa.
+ */
+public class StaxSoapMessage implements FaultAwareWebServiceMessage {
+
+	public static final String SOAP_11_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+	public static final String CONTENT_TYPE = "text/xml; charset=utf-8";
+
+	private static final byte[] ENVELOPE_START = ("<soapenv:Envelope xmlns:soapenv=\"" + SOAP_11_NAMESPACE + "\"><soapenv:Body>")
+			.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] ENVELOPE_END = "</soapenv:Body></soapenv:Envelope>".getBytes(StandardCharsets.UTF_8);
+
+	private final XMLInputFactory inputFactory;
+	/** Busta ricevuta, null per i messaggi in uscita */
+	private final byte[] content;
+
+	private ByteArrayOutputStream payload;
+	private String soapAction;
+
+	private boolean scanned;
+	private QName faultCode;
+	private String faultReason;
+
+	StaxSoapMessage(XMLInputFactory inputFactory) {
+		this(inputFactory, null);
+	}
+
+	StaxSoapMessage(XMLInputFactory inputFactory, byte[] content) {
+		this.inputFactory = inputFactory;
+		this.content = content;
+	}
+
+	public String getSoapAction() {
+		return soapAction;
+	}
+
+	public void setSoapAction(String soapAction) {
+		this.soapAction = soapAction;
+	}
+
+	@Override
+	public Source getPayloadSource() {
+		if (content == null)
+			return payload != null ? new StreamSource(new ByteArrayInputStream(payload.toByteArray())) : null;
+		try {
+			XMLStreamReader reader = openBody();
+			return reader != null ? new StAXSource(reader) : null;
+		} catch (XMLStreamException e) {
+			throw new StaxSoapMessageException("Busta SOAP non valida: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Result getPayloadResult() {
+		if (content != null)
+			throw new IllegalStateException("Il payload di un messaggio ricevuto non e' modificabile");
+		payload = new ByteArrayOutputStream(1024);
+		return new StreamResult(payload);
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		if (outputStream instanceof TransportOutputStream transportOutputStream) {
+			transportOutputStream.addHeader("Content-Type", CONTENT_TYPE);
+			if (soapAction != null)
+				transportOutputStream.addHeader("SOAPAction", '"' + soapAction + '"');
+		}
+		if (content != null) {
+			outputStream.write(content);
+			return;
+		}
+		outputStream.write(ENVELOPE_START);
+		if (payload != null)
+			payload.writeTo(outputStream);
+		outputStream.write(ENVELOPE_END);
+	}
+
+	@Override
+	public boolean hasFault() {
+		scanFault();
+		return faultCode != null;
+	}
+
+	@Override
+	public QName getFaultCode() {
+		scanFault();
+		return faultCode;
+	}
+
+	@Override
+	public String getFaultReason() {
+		scanFault();
+		return faultReason;
+	}
+
+	/**
+	 * Apre la busta ricevuta posizionando il reader sul primo elemento del Body.
+	 *
+	 * @return null se il Body e' vuoto
+	 */
+	private XMLStreamReader openBody() throws XMLStreamException {
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(content));
+		if (!nextElement(reader) || !isSoap(reader, "Envelope"))
+			throw new XMLStreamException("Envelope SOAP 1.1 non trovato");
+		while (nextElement(reader)) {
+			if (isSoap(reader, "Body"))
+				return nextElement(reader) ? reader : null;
+			skipElement(reader); // Header: non usato
+		}
+		throw new XMLStreamException("Body SOAP non trovato");
+	}
+
+	private void scanFault() {
+		if (scanned || content == null)
+			return;
+		scanned = true;
+		try {
+			XMLStreamReader reader = openBody();
+			if (reader == null || !isSoap(reader, "Fault"))
+				return;
+			faultCode = new QName(SOAP_11_NAMESPACE, "Server");
+			while (nextElement(reader)) {
+				switch (reader.getLocalName()) {
+					case "faultcode" -> faultCode = toQName(reader, reader.getElementText());
+					case "faultstring" -> faultReason = reader.getElementText();
+					default -> skipElement(reader); // faultactor, detail: non usati
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new StaxSoapMessageException("Busta SOAP non valida: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Avanza fino al prossimo START_ELEMENT.
+	 *
+	 * @return false se il documento e' terminato
+	 */
+	private static boolean nextElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Salta l'elemento corrente, posizionato su START_ELEMENT, fino al relativo END_ELEMENT.
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private static boolean isSoap(XMLStreamReader reader, String localName) {
+		return SOAP_11_NAMESPACE.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+	}
+
+	private static QName toQName(XMLStreamReader reader, String value) {
+		String text = value.trim();
+		int colon = text.indexOf(':');
+		String prefix = colon > 0 ? text.substring(0, colon) : XMLConstants.DEFAULT_NS_PREFIX;
+		String namespace = reader.getNamespaceContext().getNamespaceURI(prefix);
+		return new QName(namespace != null ? namespace : XMLConstants.NULL_NS_URI, text.substring(colon + 1), prefix);
+	}
+
+	static class StaxSoapMessageException extends WebServiceMessageException {
+		StaxSoapMessageException(String msg, Throwable ex) {
+			super(msg, ex);
+		}
+	}
+}
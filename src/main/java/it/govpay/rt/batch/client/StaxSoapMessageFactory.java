@@ -0,0 +1,31 @@
+package it.govpay.rt.batch.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.springframework.util.xml.StaxUtils;
+import org.springframework.ws.WebServiceMessageFactory;
+
+/**
+ * Factory di messaggi SOAP 1.1 basata su StAX, alternativa a SaajSoapMessageFactory per paSendRTV2:
+ * non costruisce il DOM della busta ne' in invio ne' in ricezione.
+ * <p>
+ * Abilitata con {@code govpay.soap.message-factory=stax}; richiede un FaultMessageResolver che non dipenda
+ * da SAAJ (vedi {@link GovpayClientConfig}).
+ */
+public class StaxSoapMessageFactory implements WebServiceMessageFactory {
+
+	private final XMLInputFactory inputFactory = StaxUtils.createDefensiveInputFactory();
+
+	@Override
+	public StaxSoapMessage createWebServiceMessage() {
+		return new StaxSoapMessage(inputFactory);
+	}
+
+	@Override
+	public StaxSoapMessage createWebServiceMessage(InputStream inputStream) throws IOException {
+		return new StaxSoapMessage(inputFactory, inputStream.readAllBytes());
+	}
+}
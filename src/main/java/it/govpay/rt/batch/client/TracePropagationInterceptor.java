@@ -0,0 +1,67 @@
+package it.govpay.rt.batch.client;
+
+import java.io.IOException;
+
+import org.springframework.ws.client.WebServiceClientException;
+import org.springframework.ws.client.WebServiceIOException;
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.transport.HeadersAwareSenderWebServiceConnection;
+import org.springframework.ws.transport.context.TransportContext;
+import org.springframework.ws.transport.context.TransportContextHolder;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Interceptor SOAP che propaga il contesto di trace corrente (W3C traceparent o il formato configurato)
+ * negli header HTTP della richiesta paSendRTV2, come avviene per le chiamate REST verso pagoPA.
+ */
+@Slf4j
+public class TracePropagationInterceptor implements ClientInterceptor {
+
+	private final Tracer tracer;
+	private final Propagator propagator;
+
+	public TracePropagationInterceptor(Tracer tracer, Propagator propagator) {
+		this.tracer = tracer;
+		this.propagator = propagator;
+	}
+
+	@Override
+	public boolean handleRequest(MessageContext messageContext) throws WebServiceClientException {
+		Span span = tracer.currentSpan();
+		TransportContext context = TransportContextHolder.getTransportContext();
+		if (span == null || context == null)
+			return true;
+		if (context.getConnection() instanceof HeadersAwareSenderWebServiceConnection httpConnection) {
+			propagator.inject(span.context(), httpConnection, (connection, name, value) -> {
+				try {
+					if (connection != null)
+						connection.addRequestHeader(name, value);
+				} catch (IOException e) {
+					throw new WebServiceIOException("Fail to insert trace header " + name, e);
+				}
+			});
+			log.debug("Propagato il contesto di trace {} nella richiesta SOAP", span.context().traceId());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean handleResponse(MessageContext messageContext) throws WebServiceClientException {
+		return true;
+	}
+
+	@Override
+	public boolean handleFault(MessageContext messageContext) throws WebServiceClientException {
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(MessageContext messageContext, Exception ex) throws WebServiceClientException {
+		// Nothing to do
+	}
+}
@@ -0,0 +1,71 @@
+package it.govpay.rt.batch.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rende asincroni gli appender del root logger (console e, se configurato, file) configurati da Spring Boot.
+ * <p>
+ * Ogni appender viene avvolto in un {@link AsyncAppender} di logback: il thread del batch accoda l'evento
+ * e la scrittura avviene su un thread dedicato. Nessun evento viene scartato ({@code discardingThreshold} 0,
+ * al posto del default di logback che a coda piena per l'80% scarta gli eventi sotto WARN): a coda piena il
+ * thread del batch attende come con l'appender sincrono. Alla chiusura del contesto di logging la coda viene
+ * svuotata; gli eventi ancora in coda vanno persi solo se il processo termina senza chiusura ordinata.
+ * Disattivato per default ({@code govpay.batch.item-logging.async=false}).
+ * Resta valida la configurazione standard {@code logging.*} (pattern, file, livelli, formato strutturato).
+ */
+@Component
+@ConditionalOnClass(name = "ch.qos.logback.classic.LoggerContext")
+@ConditionalOnProperty(name = "govpay.batch.item-logging.async", havingValue = "true")
+@Slf4j
+public class AsyncLoggingConfigurer implements SmartInitializingSingleton {
+
+    static final String ASYNC_PREFIX = "ASYNC-";
+
+    private final int queueSize;
+
+    public AsyncLoggingConfigurer(BatchProperties batchProperties) {
+        this.queueSize = batchProperties.getItemLogging().getAsyncQueueSize();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context))
+            return;
+        Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+
+        List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+        root.iteratorForAppenders().forEachRemaining(appender -> {
+            if (!(appender instanceof AsyncAppender))
+                appenders.add(appender);
+        });
+
+        for (Appender<ILoggingEvent> appender : appenders) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setName(ASYNC_PREFIX + appender.getName());
+            async.setQueueSize(queueSize);
+            async.setDiscardingThreshold(0);
+            async.setIncludeCallerData(false);
+            async.addAppender(appender);
+            async.start();
+            root.addAppender(async);
+            root.detachAppender(appender);
+        }
+        if (!appenders.isEmpty())
+            log.info("Logging asincrono attivo su {} appender (coda {})", appenders.size(), queueSize);
+    }
+}
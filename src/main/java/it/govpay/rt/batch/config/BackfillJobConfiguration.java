@@ -0,0 +1,140 @@
+package it.govpay.rt.batch.config;
+
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.listener.ItemProcessListener;
+import org.springframework.batch.core.listener.ItemReadListener;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.Step;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import io.micrometer.observation.ObservationRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.listener.ItemLoggingListener;
+import it.govpay.rt.batch.listener.ReceiptTracingListener;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.TokenBucket;
+import it.govpay.rt.batch.service.WatermarkService;
+import it.govpay.rt.batch.tasklet.BackfillPartitioner;
+import it.govpay.rt.batch.tasklet.RtBackfillReader;
+import it.govpay.rt.batch.tasklet.RtRetrieveProcessor;
+import it.govpay.rt.batch.tasklet.RtRetrieveWriter;
+
+/**
+ * Configuration for the historical backfill Job: the id range is split by {@link BackfillPartitioner} and the
+ * partitions run in parallel on the regular processor, throttled by a shared {@link TokenBucket}.
+ * <p>
+ * Writer and per-item listeners keep per-step state, so every partition gets its own step scoped instances.
+ */
+@Configuration
+public class BackfillJobConfiguration {
+
+    private final JobRepository jobRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    public BackfillJobConfiguration(JobRepository jobRepository, PlatformTransactionManager transactionManager) {
+        this.jobRepository = jobRepository;
+        this.transactionManager = transactionManager;
+    }
+
+    @Bean
+    public Job rtBackfillJob(Step rtBackfillStep) {
+        return new JobBuilder(Costanti.RT_BACKFILL_JOB_NAME, jobRepository)
+            .start(rtBackfillStep)
+            .build();
+    }
+
+    /**
+     * Manager step: one worker step execution per id sub-range, on at most grid-size threads
+     */
+    @Bean
+    public Step rtBackfillStep(BackfillPartitioner backfillPartitioner, Step rtBackfillWorker, BatchProperties batchProperties) {
+        int gridSize = Math.max(1, batchProperties.getBackfill().getGridSize());
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("rt-backfill-");
+        taskExecutor.setConcurrencyLimit(gridSize);
+        return new StepBuilder("rtBackfillStep", jobRepository)
+            .partitioner("rtBackfillWorker", backfillPartitioner)
+            .step(rtBackfillWorker)
+            .gridSize(gridSize)
+            .taskExecutor(taskExecutor)
+            .build();
+    }
+
+    /**
+     * Worker step: same processing as rtRetrieveTasklet on the partition read by {@link RtBackfillReader}
+     */
+    @Bean
+    public Step rtBackfillWorker(
+        RtBackfillReader rtBackfillReader,
+        RtRetrieveProcessor rtRetrieveProcessor,
+        RtRetrieveWriter rtBackfillWriter,
+        ShutdownCoordinator shutdownCoordinator,
+        ItemLoggingListener backfillItemLoggingListener,
+        ReceiptTracingListener backfillReceiptTracingListener
+    ) {
+        return new StepBuilder("rtBackfillWorker", jobRepository)
+            .<RtRetrieveContext, RtRetrieveBatch>chunk(1, transactionManager)
+            .reader(rtBackfillReader)
+            .processor(rtRetrieveProcessor)
+            .writer(rtBackfillWriter)
+            .listener((StepExecutionListener) shutdownCoordinator)
+            .listener((StepExecutionListener) backfillItemLoggingListener)
+            .listener((ItemReadListener<RtRetrieveContext>) backfillItemLoggingListener)
+            .listener((ItemWriteListener<RtRetrieveBatch>) backfillItemLoggingListener)
+            .listener((StepExecutionListener) backfillReceiptTracingListener)
+            .listener((ItemReadListener<RtRetrieveContext>) backfillReceiptTracingListener)
+            .listener((ItemProcessListener<RtRetrieveContext, RtRetrieveBatch>) backfillReceiptTracingListener)
+            .listener((ItemWriteListener<RtRetrieveBatch>) backfillReceiptTracingListener)
+            .build();
+    }
+
+    /**
+     * Shared by all the partitions (and by subsequent backfill runs), so the rate is global
+     */
+    @Bean
+    public TokenBucket backfillRateLimiter(BatchProperties batchProperties) {
+        BatchProperties.Backfill config = batchProperties.getBackfill();
+        return new TokenBucket(config.getRatePerSecond(), config.getBurst());
+    }
+
+    @Bean
+    @StepScope
+    public RtRetrieveWriter rtBackfillWriter(
+        RendicontazioniRepository rendicontazioniRepository,
+        WatermarkService watermarkService,
+        RetrieveOutcomeService retrieveOutcomeService,
+        ObservationRegistry observationRegistry,
+        @Value("#{stepExecutionContext['partitionKey']}") String partitionKey,
+        @Value("${govpay.batch.finestra-temporale:90}") int finestraTemporale
+    ) {
+        RtRetrieveWriter writer = new RtRetrieveWriter(rendicontazioniRepository, watermarkService, retrieveOutcomeService, observationRegistry);
+        writer.setWatermarkPartition(partitionKey);
+        // oltre la finestra temporale i nuovi tentativi del job principale non selezionano le ricevute
+        writer.setRetryWindow(finestraTemporale);
+        return writer;
+    }
+
+    @Bean
+    @StepScope
+    public ItemLoggingListener backfillItemLoggingListener(BatchProperties batchProperties) {
+        return new ItemLoggingListener(batchProperties);
+    }
+
+    @Bean
+    @StepScope
+    public ReceiptTracingListener backfillReceiptTracingListener(ObservationRegistry observationRegistry) {
+        return new ReceiptTracingListener(observationRegistry);
+    }
+}
@@ -1,22 +1,48 @@
 package it.govpay.rt.batch.config;
 
+import java.util.List;
+import java.util.concurrent.Future;
+
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.batch.core.job.Job;
 import org.springframework.batch.core.step.Step;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.job.parameters.RunIdIncrementer;
+import org.springframework.batch.core.listener.ItemProcessListener;
+import org.springframework.batch.core.listener.ItemReadListener;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.listener.StepExecutionListener;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import it.govpay.rt.batch.Costanti;
 import it.govpay.rt.batch.dto.RtRetrieveBatch;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.listener.BatchExecutionRecapListener;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+import it.govpay.rt.batch.listener.BudgetExitCodeListener;
+import it.govpay.rt.batch.listener.ItemLoggingListener;
+import it.govpay.rt.batch.listener.MetadataRetentionListener;
+import it.govpay.rt.batch.listener.ReceiptTracingListener;
+import it.govpay.rt.batch.listener.RecoveryLagTracker;
+import it.govpay.rt.batch.listener.RunBudgetListener;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
 import it.govpay.rt.batch.listener.WatermarkBootstrapListener;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.RtApiService;
+import it.govpay.rt.batch.service.WatermarkService;
+import it.govpay.rt.batch.tasklet.ConcurrentRtRetrieveProcessor;
+import it.govpay.rt.batch.tasklet.ConcurrentRtRetrieveWriter;
+import it.govpay.rt.batch.tasklet.ConnectorBulkheads;
+import it.govpay.rt.batch.tasklet.RtReprocessReader;
 import it.govpay.rt.batch.tasklet.RtRetrieveProcessor;
 import it.govpay.rt.batch.tasklet.RtRetrieveReader;
 import it.govpay.rt.batch.tasklet.RtRetrieveWriter;
@@ -43,12 +69,16 @@ public class BatchJobConfiguration {
     public Job rtRetrieveJob(
         Step rtRetrieveTasklet,
         WatermarkBootstrapListener bootstrap,
-        BatchExecutionRecapListener batchExecutionRecapListener
+        BatchExecutionRecapListener batchExecutionRecapListener,
+        BudgetExitCodeListener budgetExitCodeListener,
+        MetadataRetentionListener metadataRetentionListener
     ) {
         return new JobBuilder(Costanti.RT_RETRIEVE_JOB_NAME, jobRepository)
             .incrementer(new RunIdIncrementer())
             .listener(bootstrap)
             .listener(batchExecutionRecapListener)
+            .listener(budgetExitCodeListener)
+            .listener(metadataRetentionListener)
             .start(rtRetrieveTasklet)
             .build();
     }
@@ -60,13 +90,152 @@ public class BatchJobConfiguration {
     public Step rtRetrieveTasklet(
         RtRetrieveReader rtRetrieveReader,
         RtRetrieveProcessor rtRetrieveProcessor,
-        RtRetrieveWriter rtRetrieveWriter
+        RtRetrieveWriter rtRetrieveWriter,
+        BatchProgressTracker batchProgressTracker,
+        RunBudgetListener runBudgetListener,
+        ShutdownCoordinator shutdownCoordinator,
+        ItemLoggingListener itemLoggingListener,
+        ReceiptTracingListener receiptTracingListener,
+        RecoveryLagTracker recoveryLagTracker,
+        BatchProperties batchProperties,
+        ObservationRegistry observationRegistry,
+        RtApiService rtApiService,
+        MeterRegistry meterRegistry
     ) {
+        BatchProperties.Concurrency concurrency = batchProperties.getConcurrency();
+        if (concurrency.isEnabled()) {
+            log.info("Elaborazione concorrente abilitata: chunk di {} ricevute, massimo {} in corso",
+                     concurrency.getChunkSize(), concurrency.getMaxInFlight());
+            ConcurrentRtRetrieveProcessor processor = concurrentProcessor(rtRetrieveProcessor, batchProperties, rtApiService,
+                                                                          observationRegistry, meterRegistry);
+            return rtRetrieveConcurrentStep(rtRetrieveReader, processor, rtRetrieveWriter, batchProgressTracker,
+                                            runBudgetListener, shutdownCoordinator, itemLoggingListener, recoveryLagTracker,
+                                            batchProperties);
+        }
         return new StepBuilder("rtRetrieveTasklet", jobRepository)
             .<RtRetrieveContext, RtRetrieveBatch>chunk(1, transactionManager)
             .reader(rtRetrieveReader)
             .processor(rtRetrieveProcessor)
             .writer(rtRetrieveWriter)
+            .listener((StepExecutionListener) batchProgressTracker)
+            .listener((ItemWriteListener<RtRetrieveBatch>) batchProgressTracker)
+            .listener((ItemWriteListener<RtRetrieveBatch>) recoveryLagTracker)
+            .listener((StepExecutionListener) runBudgetListener)
+            .listener((StepExecutionListener) shutdownCoordinator)
+            .listener((StepExecutionListener) itemLoggingListener)
+            .listener((ItemReadListener<RtRetrieveContext>) itemLoggingListener)
+            .listener((ItemWriteListener<RtRetrieveBatch>) itemLoggingListener)
+            .listener((StepExecutionListener) receiptTracingListener)
+            .listener((ItemReadListener<RtRetrieveContext>) receiptTracingListener)
+            .listener((ItemProcessListener<RtRetrieveContext, RtRetrieveBatch>) receiptTracingListener)
+            .listener((ItemWriteListener<RtRetrieveBatch>) receiptTracingListener)
+            .build();
+    }
+
+    /**
+     * Same step processing the receipts of a chunk on virtual threads: reader and writer stay on the step thread,
+     * so the watermark still advances by whole chunks. Each receipt blocks a virtual thread, not a platform one,
+     * while waiting for pagoPA and GovPay.
+     */
+    private Step rtRetrieveConcurrentStep(
+        RtRetrieveReader rtRetrieveReader,
+        ConcurrentRtRetrieveProcessor processor,
+        RtRetrieveWriter rtRetrieveWriter,
+        BatchProgressTracker batchProgressTracker,
+        RunBudgetListener runBudgetListener,
+        ShutdownCoordinator shutdownCoordinator,
+        ItemLoggingListener itemLoggingListener,
+        RecoveryLagTracker recoveryLagTracker,
+        BatchProperties batchProperties
+    ) {
+        List<ItemWriteListener<RtRetrieveBatch>> writeListeners = List.of(batchProgressTracker, itemLoggingListener,
+                                                                          recoveryLagTracker);
+        ConcurrentRtRetrieveWriter writer = new ConcurrentRtRetrieveWriter(rtRetrieveWriter, writeListeners,
+                                                                           batchProperties.getRetry().isEnabled());
+        return new StepBuilder("rtRetrieveTasklet", jobRepository)
+            .<RtRetrieveContext, Future<RtRetrieveBatch>>chunk(Math.max(1, batchProperties.getConcurrency().getChunkSize()), transactionManager)
+            .reader(rtRetrieveReader)
+            .processor(processor)
+            .writer(writer)
+            .listener((Object) rtRetrieveWriter)
+            .listener((Object) processor)
+            .listener((Object) writer)
+            .listener((StepExecutionListener) batchProgressTracker)
+            .listener((StepExecutionListener) runBudgetListener)
+            .listener((StepExecutionListener) shutdownCoordinator)
+            .listener((StepExecutionListener) itemLoggingListener)
+            .build();
+    }
+
+    /**
+     * Processor of the concurrent step: receipts on virtual threads, at most max-in-flight overall and, when
+     * max-in-flight-per-connector is set, within the bulkhead of their RT connector. Receipts are deferred by a full
+     * bulkhead only when retries are enabled, since they are read again through RT_BATCH_OUTCOME.
+     */
+    private static ConcurrentRtRetrieveProcessor concurrentProcessor(
+        RtRetrieveProcessor rtRetrieveProcessor,
+        BatchProperties batchProperties,
+        RtApiService rtApiService,
+        ObservationRegistry observationRegistry,
+        MeterRegistry meterRegistry
+    ) {
+        BatchProperties.Concurrency concurrency = batchProperties.getConcurrency();
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("rt-retrieve-");
+        taskExecutor.setVirtualThreads(true);
+        taskExecutor.setConcurrencyLimit(Math.max(1, concurrency.getMaxInFlight()));
+        if (concurrency.getMaxInFlightPerConnector() <= 0)
+            return new ConcurrentRtRetrieveProcessor(rtRetrieveProcessor, taskExecutor, observationRegistry);
+
+        boolean deferWhenFull = batchProperties.getRetry().isEnabled();
+        log.info("Bulkhead per connettore: massimo {} ricevute in corso e {} in coda per connettore, coda piena: {}",
+                 concurrency.getMaxInFlightPerConnector(), concurrency.getMaxQueuedPerConnector(),
+                 deferWhenFull ? "ricevuta rinviata" : "attesa");
+        ConnectorBulkheads bulkheads = new ConnectorBulkheads(concurrency, deferWhenFull, taskExecutor, meterRegistry);
+        return new ConcurrentRtRetrieveProcessor(rtRetrieveProcessor, bulkheads, rtApiService::resolveConnectorCode,
+                                                 observationRegistry);
+    }
+
+    /**
+     * Targeted reprocessing job (domain, id range or id list), started from the REST API
+     */
+    @Bean
+    public Job rtReprocessJob(Step rtReprocessStep) {
+        return new JobBuilder(Costanti.RT_REPROCESS_JOB_NAME, jobRepository)
+            .start(rtReprocessStep)
+            .build();
+    }
+
+    /**
+     * Step: same processing as rtRetrieveTasklet on the slice read by {@link RtReprocessReader}.
+     * Writer and per-item listeners keep per-step state, so they get their own instances to run
+     * alongside the main job.
+     */
+    @Bean
+    public Step rtReprocessStep(
+        RtReprocessReader rtReprocessReader,
+        RtRetrieveProcessor rtRetrieveProcessor,
+        RendicontazioniRepository rendicontazioniRepository,
+        WatermarkService watermarkService,
+        RetrieveOutcomeService retrieveOutcomeService,
+        ShutdownCoordinator shutdownCoordinator,
+        BatchProperties batchProperties,
+        ObservationRegistry observationRegistry
+    ) {
+        ItemLoggingListener itemLoggingListener = new ItemLoggingListener(batchProperties);
+        ReceiptTracingListener receiptTracingListener = new ReceiptTracingListener(observationRegistry);
+        return new StepBuilder("rtReprocessStep", jobRepository)
+            .<RtRetrieveContext, RtRetrieveBatch>chunk(1, transactionManager)
+            .reader(rtReprocessReader)
+            .processor(rtRetrieveProcessor)
+            .writer(new RtRetrieveWriter(rendicontazioniRepository, watermarkService, retrieveOutcomeService, observationRegistry))
+            .listener((StepExecutionListener) shutdownCoordinator)
+            .listener((StepExecutionListener) itemLoggingListener)
+            .listener((ItemReadListener<RtRetrieveContext>) itemLoggingListener)
+            .listener((ItemWriteListener<RtRetrieveBatch>) itemLoggingListener)
+            .listener((StepExecutionListener) receiptTracingListener)
+            .listener((ItemReadListener<RtRetrieveContext>) receiptTracingListener)
+            .listener((ItemProcessListener<RtRetrieveContext, RtRetrieveBatch>) receiptTracingListener)
+            .listener((ItemWriteListener<RtRetrieveBatch>) receiptTracingListener)
             .build();
     }
 
@@ -1,5 +1,9 @@
 package it.govpay.rt.batch.config;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -16,4 +20,446 @@ public class BatchProperties {
      * Enable/disable automatic scheduling
      */
     private boolean enabled = true;
+
+    /**
+     * Order in which pending receipts are processed
+     */
+    private Scheduling scheduling = new Scheduling();
+
+    /**
+     * Continuous polling mode (replaces the fixed-delay scheduler when enabled)
+     */
+    private Polling polling = new Polling();
+
+    /**
+     * Limits of a single run (overridable with the job parameters maxDurationSeconds and maxItems)
+     */
+    private Budget budget = new Budget();
+
+    /**
+     * Graceful shutdown of a running job
+     */
+    private Shutdown shutdown = new Shutdown();
+
+    /**
+     * Automatic cleanup of the Spring Batch metadata tables
+     */
+    private Retention retention = new Retention();
+
+    /**
+     * Logging of the per-item path
+     */
+    private ItemLogging itemLogging = new ItemLogging();
+
+    /**
+     * Tracing of the per-receipt path
+     */
+    private Tracing tracing = new Tracing();
+
+    /**
+     * Retry of the receipts not found on pagoPA or not accepted by govpay
+     */
+    private Retry retry = new Retry();
+
+    /**
+     * Targeted reprocessing runs started from the REST API
+     */
+    private Reprocess reprocess = new Reprocess();
+
+    /**
+     * Historical backfill beyond finestra-temporale, partitioned by id range
+     */
+    private Backfill backfill = new Backfill();
+
+    /**
+     * Concurrent processing of the receipts of a chunk in the regular job
+     */
+    private Concurrency concurrency = new Concurrency();
+
+    /**
+     * Hedging of the slow receipt GETs towards pagoPA
+     */
+    private Hedging hedging = new Hedging();
+
+    /**
+     * Thresholds of the pipeline health indicator (actuator health component "pipeline")
+     */
+    private Health health = new Health();
+
+    /**
+     * How the reader of the main job loads the pending receipts
+     */
+    private Reader reader = new Reader();
+
+    /**
+     * On-demand Java Flight Recorder recordings (actuator endpoint "jfr")
+     */
+    private Jfr jfr = new Jfr();
+
+    public enum SchedulingMode {
+        /** Strictly by rendicontazione id (legacy behaviour) */
+        ID,
+        /** Weighted round-robin across the queues identified by {@link FairKey} */
+        FAIR
+    }
+
+    public enum FairKey {
+        /** One queue per creditor domain */
+        DOMINIO,
+        /** One queue per RT connector (i.e. per intermediary pagoPA quota) */
+        CONNETTORE
+    }
+
+    public enum ReaderMode {
+        /** All the pending receipts, with their details, are loaded when the step starts */
+        FULL,
+        /** Only the pending ids are loaded when the step starts; the details are fetched in batches while reading */
+        ID_SNAPSHOT
+    }
+
+    @Data
+    public static class Scheduling {
+
+        private SchedulingMode mode = SchedulingMode.ID;
+
+        private FairKey fairKey = FairKey.CONNETTORE;
+
+        /**
+         * Weight of each queue (codDominio or connector code); queues not listed have weight 1
+         */
+        private Map<String, Integer> weights = new HashMap<>();
+    }
+
+    @Data
+    public static class Polling {
+
+        private boolean enabled = false;
+
+        /**
+         * Interval used while new pending receipts keep arriving
+         */
+        private Duration minInterval = Duration.ofSeconds(10);
+
+        /**
+         * Upper bound of the interval when idle
+         */
+        private Duration maxInterval = Duration.ofMinutes(15);
+
+        /**
+         * Factor applied to the interval after each idle poll
+         */
+        private double backoffMultiplier = 2.0d;
+    }
+
+    @Data
+    public static class Budget {
+
+        /**
+         * Maximum wall-clock duration of the retrieve step; unlimited when not set
+         */
+        private Duration maxDuration;
+
+        /**
+         * Maximum number of receipts read by the retrieve step; unlimited when not set or not positive
+         */
+        private Long maxItems;
+    }
+
+    @Data
+    public static class Shutdown {
+
+        /**
+         * Maximum time to wait, on context close, for the in-flight receipt to be written and for
+         * the pending GDE events to be sent. Keep it below the container termination grace period.
+         */
+        private Duration gracePeriod = Duration.ofSeconds(25);
+    }
+
+    @Data
+    public static class Retention {
+
+        private boolean enabled = true;
+
+        /**
+         * Terminated executions that ended before now minus this age are deleted
+         */
+        private Duration maxAge = Duration.ofDays(90);
+
+        /**
+         * Most recent executions of each job kept regardless of their age
+         */
+        private int keepLast = 50;
+
+        /**
+         * Executions deleted per transaction (at most 1000, the Oracle limit of an IN list)
+         */
+        private int batchSize = 200;
+
+        /**
+         * Minimum time between two cleanups; the cleanup runs at the end of a job execution and its last
+         * run is stored in RT_BATCH_TASK, so the interval also holds across cron runs and nodes
+         */
+        private Duration interval = Duration.ofHours(24);
+    }
+
+    @Data
+    public static class ItemLogging {
+
+        /**
+         * One item every N is logged at INFO with its outcome, the others at DEBUG; 0 disables the INFO sampling
+         */
+        private int sampleEvery = 100;
+
+        /**
+         * An aggregated INFO summary is logged every N written chunks...
+         */
+        private int summaryEvery = 500;
+
+        /**
+         * ...or when this time has elapsed since the previous summary
+         */
+        private Duration summaryInterval = Duration.ofMinutes(1);
+
+        /**
+         * Wrap the root appenders in logback AsyncAppenders, so the batch thread does not wait for console/file I/O.
+         * Opt-in: events still queued are lost if the process dies without an orderly shutdown
+         */
+        private boolean async = false;
+
+        /**
+         * Capacity of each async appender queue; when full, the batch thread waits (no event is discarded)
+         */
+        private int asyncQueueSize = 8192;
+    }
+
+    @Data
+    public static class Retry {
+
+        /**
+         * Keep NOT_FOUND, SEND_FAILED and FAILED receipts eligible for a later run; when false NOT_FOUND and SEND_FAILED are disabled at the first failure
+         */
+        private boolean enabled = true;
+
+        /**
+         * Attempts after which a failing receipt is disabled
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * Delay before the first retry
+         */
+        private Duration initialDelay = Duration.ofHours(1);
+
+        /**
+         * Factor applied to the delay at each further failure
+         */
+        private double multiplier = 2.0;
+
+        /**
+         * Upper bound of the delay between two attempts
+         */
+        private Duration maxDelay = Duration.ofHours(24);
+
+        /**
+         * Maximum number of due retries appended to the pending receipts of a single run
+         */
+        private int maxPerRun = 500;
+    }
+
+    @Data
+    public static class Reprocess {
+
+        /**
+         * Accept reprocessing requests on /api/batch/run with filters
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum size of an explicit id list (the list is stored as a job parameter)
+         */
+        private int maxIds = 200;
+
+        /**
+         * Maximum number of reprocessing runs executing at the same time, across all the nodes
+         */
+        private int maxConcurrent = 2;
+    }
+
+    @Data
+    public static class Backfill {
+
+        /**
+         * Number of id sub-ranges, processed in parallel
+         */
+        private int gridSize = 4;
+
+        /**
+         * Receipts per second across all the partitions; keep it below the share of the pagoPA quota
+         * not used by the regular job
+         */
+        private double ratePerSecond = 5.0;
+
+        /**
+         * Receipts that can be started back to back after an idle period
+         */
+        private int burst = 5;
+
+        /**
+         * Rows read from the database per query by each partition
+         */
+        private int pageSize = 500;
+    }
+
+    @Data
+    public static class Concurrency {
+
+        /**
+         * Process the receipts of a chunk on virtual threads instead of one at a time on the step thread
+         */
+        private boolean enabled = false;
+
+        /**
+         * Receipts read and written (watermark included) per transaction
+         */
+        private int chunkSize = 100;
+
+        /**
+         * Receipts being retrieved/sent at the same time; the reader waits when the limit is reached
+         */
+        private int maxInFlight = 32;
+
+        /**
+         * Receipts of the same RT connector in flight at the same time; 0 disables the per-connector bulkheads
+         */
+        private int maxInFlightPerConnector = 0;
+
+        /**
+         * Per-connector overrides of maxInFlightPerConnector, keyed by connector code
+         */
+        private Map<String, Integer> connectorLimits = new HashMap<>();
+
+        /**
+         * Receipts of the same connector waiting for a free slot; further receipts are deferred to a later run
+         * (or the reader waits when retries are disabled)
+         */
+        private int maxQueuedPerConnector = 20;
+    }
+
+    @Data
+    public static class Hedging {
+
+        /**
+         * Send a second GET when the first one is slower than the recent latencies of the same connector
+         */
+        private boolean enabled = false;
+
+        /**
+         * Percentile of the recent latencies after which the second request is sent
+         */
+        private double percentile = 95.0;
+
+        /**
+         * Lower bound of the hedge threshold
+         */
+        private Duration minDelay = Duration.ofMillis(200);
+
+        /**
+         * Maximum share of extra requests per connector (0.05 = one hedge every 20 requests)
+         */
+        private double maxExtraRatio = 0.05;
+
+        /**
+         * Latencies kept per connector to compute the percentile
+         */
+        private int windowSize = 1000;
+
+        /**
+         * Latencies required before a connector is hedged
+         */
+        private int minSamples = 100;
+    }
+
+    @Data
+    public static class Health {
+
+        /**
+         * A running job that writes no receipt for this long is reported OUT_OF_SERVICE
+         */
+        private Duration stallTimeout = Duration.ofMinutes(10);
+
+        /**
+         * Receipts per second below which a running job with pending receipts is reported DEGRADED; 0 disables the check
+         */
+        private double minItemsPerSecond = 0.0;
+
+        /**
+         * Time after the start of the step before the throughput floor is checked
+         */
+        private Duration throughputGracePeriod = Duration.ofMinutes(2);
+
+        /**
+         * GDE events waiting to be sent above which the pipeline is reported DEGRADED
+         */
+        private int gdeMaxPending = 1000;
+
+        /**
+         * Share of GDE events lost since the previous check above which the pipeline is reported DEGRADED
+         */
+        private double gdeMaxDropRate = 0.5;
+    }
+
+    @Data
+    public static class Reader {
+
+        private ReaderMode mode = ReaderMode.FULL;
+
+        /**
+         * Receipts whose details are fetched by a single query in ID_SNAPSHOT mode (at most 1000, the limit of
+         * an Oracle IN list); fair-share ordering applies within each batch
+         */
+        private int detailBatchSize = 500;
+    }
+
+    @Data
+    public static class Jfr {
+
+        /**
+         * JFC settings of the JVM events recorded with the pipeline events ("default" or "profile")
+         */
+        private String settings = "profile";
+
+        /**
+         * Recordings stop by themselves after this time, in case nobody stops them
+         */
+        private Duration maxDuration = Duration.ofMinutes(30);
+
+        /**
+         * Directory of the recording files
+         */
+        private String directory = "logs/jfr";
+    }
+
+    @Data
+    public static class Tracing {
+
+        /**
+         * Local exporter writing the finished spans as JSON lines, for offline analysis (OTLP is configured
+         * with the standard management.opentelemetry.* properties)
+         */
+        private File file = new File();
+
+        @Data
+        public static class File {
+
+            /**
+             * Enable the local file exporter
+             */
+            private boolean enabled = false;
+
+            /**
+             * Output file, one JSON object per span (appended)
+             */
+            private String path = "logs/govpay-rt-batch-traces.jsonl";
+        }
+    }
 }
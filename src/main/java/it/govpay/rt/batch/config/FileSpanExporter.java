@@ -0,0 +1,88 @@
+package it.govpay.rt.batch.config;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exporter OpenTelemetry che accoda gli span terminati a un file locale, un oggetto JSON per riga.
+ * <p>
+ * Pensato per l'analisi offline e per i test senza un collector: si affianca (o sostituisce) l'exporter OTLP,
+ * perche' Spring Boot registra nel tracer provider tutti i bean {@link SpanExporter} presenti nel contesto.
+ */
+@Slf4j
+public class FileSpanExporter implements SpanExporter {
+
+    private final Path path;
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    public FileSpanExporter(Path path) {
+        this.path = path;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile creare la directory del file di trace " + path, e);
+        }
+        log.info("Export degli span di tracing su file {}", path.toAbsolutePath());
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                                                              StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (SpanData span : spans) {
+                writer.write(jsonMapper.writeValueAsString(toMap(span)));
+                writer.newLine();
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException | JacksonException e) {
+            log.warn("Impossibile scrivere {} span su {}: {}", spans.size(), path, e.getMessage());
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    private static Map<String, Object> toMap(SpanData span) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("traceId", span.getTraceId());
+        map.put("spanId", span.getSpanId());
+        if (span.getParentSpanContext().isValid())
+            map.put("parentSpanId", span.getParentSpanId());
+        map.put("name", span.getName());
+        map.put("kind", span.getKind().name());
+        map.put("start", Instant.EPOCH.plusNanos(span.getStartEpochNanos()).toString());
+        map.put("durationMicros", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000L);
+        map.put("status", span.getStatus().getStatusCode().name());
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+        map.put("attributes", attributes);
+        return map;
+    }
+}
@@ -0,0 +1,61 @@
+package it.govpay.rt.batch.config;
+
+import java.util.List;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+
+/**
+ * Reachability metadata for the GraalVM native image (Maven profile {@code native}).
+ * <p>
+ * Spring AOT already covers beans, repositories and the JPA managed types; this registrar adds the
+ * classes that are only reached through reflection by JAXB, Jackson and Hibernate:
+ * <ul>
+ * <li>the JAXB classes generated from paForNode.xsd and the XmlAdapters they reference;</li>
+ * <li>the OpenAPI-generated pagoPA model, deserialized by Jackson;</li>
+ * <li>the custom Jackson date (de)serializers and the JSON DTOs of the REST endpoints;</li>
+ * <li>the Hibernate entities of this project and of govpay-common.</li>
+ * </ul>
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final List<String> REFLECTION_PACKAGES = List.of(
+            "it.gov.pagopa.pagopa_api.pa.pafornode",
+            "it.govpay.rt.client.model",
+            "it.govpay.rt.batch.utils",
+            "it.govpay.rt.batch.dto",
+            "it.govpay.rt.batch.entity",
+            "it.govpay.common.entity");
+
+    private static final MemberCategory[] MEMBER_CATEGORIES = {
+            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_DECLARED_METHODS,
+            MemberCategory.ACCESS_DECLARED_FIELDS };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                // anche classi astratte ed enum: serve solo che siano top-level o annidate statiche
+                return beanDefinition.getMetadata().isIndependent();
+            }
+        };
+        scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+        scanner.addIncludeFilter((metadataReader, metadataReaderFactory) -> true);
+
+        for (String basePackage : REFLECTION_PACKAGES) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage))
+                hints.reflection().registerType(TypeReference.of(candidate.getBeanClassName()), MEMBER_CATEGORIES);
+        }
+
+        // JAXB cerca jaxb.properties / jaxb.index nel package del contextPath
+        hints.resources().registerPattern("it/gov/pagopa/pagopa_api/pa/pafornode/*");
+    }
+}
@@ -0,0 +1,45 @@
+package it.govpay.rt.batch.config;
+
+import java.time.Duration;
+
+/**
+ * Intervallo adattivo della modalita' polling.
+ * <p>
+ * Finche' ogni poll trova ricevute da recuperare l'intervallo resta al minimo; a ogni poll a vuoto
+ * viene moltiplicato per il fattore di backoff fino al massimo configurato.
+ */
+public class PollingIntervalPolicy {
+
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final double backoffMultiplier;
+
+    private Duration current;
+
+    public PollingIntervalPolicy(BatchProperties.Polling polling) {
+        this.minInterval = polling.getMinInterval();
+        this.maxInterval = polling.getMaxInterval().compareTo(minInterval) < 0 ? minInterval : polling.getMaxInterval();
+        this.backoffMultiplier = Math.max(1.0d, polling.getBackoffMultiplier());
+        this.current = minInterval;
+    }
+
+    /**
+     * Aggiorna l'intervallo in base all'esito dell'ultimo poll.
+     *
+     * @param processedItems ricevute elaborate dall'ultimo poll (0 se non c'era nulla da fare)
+     * @return intervallo da attendere prima del prossimo poll
+     */
+    public synchronized Duration onPollCompleted(long processedItems) {
+        if (processedItems > 0) {
+            current = minInterval;
+        } else {
+            long next = (long) Math.ceil(current.toMillis() * backoffMultiplier);
+            current = Duration.ofMillis(Math.min(next, maxInterval.toMillis()));
+        }
+        return current;
+    }
+
+    public synchronized Duration getCurrentInterval() {
+        return current;
+    }
+}
@@ -0,0 +1,117 @@
+package it.govpay.rt.batch.config;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Component;
+
+import it.govpay.common.batch.runner.AbstractScheduledJobRunner;
+import it.govpay.common.batch.runner.JobExecutionHelper;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.WatermarkService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runner per l'esecuzione continua (polling) del job RT Retrieve in modalita' multi-nodo.
+ * <p>
+ * Alternativo a {@link ScheduledJobRunner}: attivo con profile "default" e
+ * {@code govpay.batch.polling.enabled=true}. A ogni poll verifica con query di esistenza se ci sono
+ * rendicontazioni pendenti oltre il watermark o nuovi tentativi scaduti in RT_BATCH_OUTCOME (comprese le ricevute
+ * rinviate, subito scadute) e solo in quel caso avvia il job, che elabora il delta e i nuovi tentativi.
+ * L'intervallo tra i poll e' adattivo (vedi {@link PollingIntervalPolicy}).
+ */
+@Component
+@Profile("default")
+@ConditionalOnProperty(name = "govpay.batch.polling.enabled", havingValue = "true")
+@EnableScheduling
+@Slf4j
+public class PollingJobRunner extends AbstractScheduledJobRunner implements SchedulingConfigurer {
+
+    private final RendicontazioniRepository rndRepository;
+    private final WatermarkService watermarkService;
+    private final RetrieveOutcomeService outcomeService;
+    private final PollingIntervalPolicy intervalPolicy;
+    private final int finestraTemporale;
+
+    public PollingJobRunner(
+            JobExecutionHelper jobExecutionHelper,
+            @Qualifier("rtRetrieveJob") Job rtRetrieveJob,
+            RendicontazioniRepository rndRepository,
+            WatermarkService watermarkService,
+            RetrieveOutcomeService outcomeService,
+            BatchProperties batchProperties,
+            @Value("${govpay.batch.finestra-temporale:90}") int finestraTemporale) {
+        super(jobExecutionHelper, rtRetrieveJob, Costanti.RT_RETRIEVE_JOB_NAME);
+        this.rndRepository = rndRepository;
+        this.watermarkService = watermarkService;
+        this.outcomeService = outcomeService;
+        this.intervalPolicy = new PollingIntervalPolicy(batchProperties.getPolling());
+        this.finestraTemporale = finestraTemporale;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addTriggerTask(this::poll, this::nextExecution);
+    }
+
+    /**
+     * Esegue un poll: avvia il job solo se c'e' almeno una ricevuta pendente oltre il watermark o da ritentare.
+     *
+     * @return numero di ricevute elaborate
+     */
+    public long poll() {
+        long processed = 0L;
+        try {
+            if (hasPendingDelta()) {
+                JobExecution execution = executeScheduledJob();
+                processed = countProcessed(execution);
+            } else {
+                log.debug("Nessuna nuova ricevuta da recuperare oltre il watermark e nessun tentativo scaduto");
+            }
+        } catch (Exception e) {
+            log.error("Errore durante il poll del job {}: {}", Costanti.RT_RETRIEVE_JOB_NAME, e.getMessage(), e);
+        }
+        Duration next = intervalPolicy.onPollCompleted(processed);
+        log.debug("Poll completato: {} ricevute elaborate, prossimo poll tra {}", processed, next);
+        return processed;
+    }
+
+    Instant nextExecution(TriggerContext triggerContext) {
+        Instant lastCompletion = triggerContext.lastCompletion();
+        Instant base = lastCompletion != null ? lastCompletion : triggerContext.getClock().instant();
+        return base.plus(intervalPolicy.getCurrentInterval());
+    }
+
+    public Duration getCurrentInterval() {
+        return intervalPolicy.getCurrentInterval();
+    }
+
+    private boolean hasPendingDelta() {
+        long lastProcessedId = watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME).orElse(0L);
+        LocalDateTime dataLimite = LocalDateTime.now().minusDays(finestraTemporale);
+        return !rndRepository.findPendingIdsAfterId(lastProcessedId, dataLimite, PageRequest.of(0, 1)).isEmpty()
+                || outcomeService.hasRetryable(dataLimite);
+    }
+
+    private static long countProcessed(JobExecution execution) {
+        return Optional.ofNullable(execution)
+                .map(e -> e.getStepExecutions().stream().mapToLong(StepExecution::getWriteCount).sum())
+                .orElse(0L);
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.batch.core.launch.JobExecutionAlreadyRunningException
 import org.springframework.batch.core.launch.JobInstanceAlreadyCompleteException;
 import org.springframework.batch.core.launch.JobRestartException;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -19,10 +20,12 @@ import it.govpay.rt.batch.Costanti;
 /**
  * Runner per l'esecuzione schedulata del job RT Retrieve in modalita' multi-nodo.
  * <p>
- * Attivo solo con profile "default" (non "cron").
+ * Attivo solo con profile "default" (non "cron") e se la modalita' polling
+ * ({@link PollingJobRunner}) non e' abilitata.
  */
 @Component
 @Profile("default")
+@ConditionalOnProperty(name = "govpay.batch.polling.enabled", havingValue = "false", matchIfMissing = true)
 @EnableScheduling
 public class ScheduledJobRunner extends AbstractScheduledJobRunner {
 
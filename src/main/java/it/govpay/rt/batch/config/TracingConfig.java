@@ -0,0 +1,20 @@
+package it.govpay.rt.batch.config;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exporter di tracing aggiuntivi rispetto a quelli auto-configurati da Spring Boot (OTLP).
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "govpay.batch.tracing.file.enabled", havingValue = "true")
+    public FileSpanExporter fileSpanExporter(BatchProperties batchProperties) {
+        return new FileSpanExporter(Path.of(batchProperties.getTracing().getFile().getPath()));
+    }
+}
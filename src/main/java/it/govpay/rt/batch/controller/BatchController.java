@@ -1,14 +1,21 @@
 package it.govpay.rt.batch.controller;
 
+import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.List;
 
 import org.springframework.batch.core.job.Job;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -19,6 +26,12 @@ import it.govpay.common.batch.dto.LastExecutionInfo;
 import it.govpay.common.batch.dto.NextExecutionInfo;
 import it.govpay.common.batch.runner.JobExecutionHelper;
 import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.BackfillInfo;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.dto.ReprocessSlice;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+import it.govpay.rt.batch.service.BackfillService;
+import it.govpay.rt.batch.service.ReprocessService;
 import it.govpay.rt.batch.service.RtApiService;
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,18 +45,27 @@ public class BatchController extends AbstractBatchController {
 
     private final Job rtRetrieveJob;
     private final RtApiService rtApiService;
+    private final BatchProgressTracker batchProgressTracker;
+    private final ReprocessService reprocessService;
+    private final BackfillService backfillService;
 
     public BatchController(
             JobExecutionHelper jobExecutionHelper,
             JobRepository jobRepository,
             @Qualifier("rtRetrieveJob") Job rtRetrieveJob,
             RtApiService rtApiService,
+            BatchProgressTracker batchProgressTracker,
+            ReprocessService reprocessService,
+            BackfillService backfillService,
             Environment environment,
             ZoneId applicationZoneId,
             @Value("${scheduler.rtRetrieveJob.fixedDelayString:7200000}") long schedulerIntervalMillis) {
         super(jobExecutionHelper, jobRepository, environment, applicationZoneId, schedulerIntervalMillis);
         this.rtRetrieveJob = rtRetrieveJob;
         this.rtApiService = rtApiService;
+        this.batchProgressTracker = batchProgressTracker;
+        this.reprocessService = reprocessService;
+        this.backfillService = backfillService;
     }
 
     @Override
@@ -62,12 +84,83 @@ public class BatchController extends AbstractBatchController {
         return ResponseEntity.ok("Cache connettori svuotata");
     }
 
+    /**
+     * Senza filtri avvia l'esecuzione completa del job; con {@code codDominio}, {@code fromId} e/o {@code toId}
+     * avvia invece una rielaborazione mirata (job {@value Costanti#RT_REPROCESS_JOB_NAME}) limitata a quella slice.
+     */
     @GetMapping("/run")
     public ResponseEntity<Object> eseguiJobEndpoint(
-            @RequestParam(name = "force", required = false, defaultValue = "false") boolean force) {
+            @RequestParam(name = "force", required = false, defaultValue = "false") boolean force,
+            @RequestParam(name = "codDominio", required = false) String codDominio,
+            @RequestParam(name = "fromId", required = false) Long fromId,
+            @RequestParam(name = "toId", required = false) Long toId) {
+        if (codDominio != null || fromId != null || toId != null)
+            return rielabora(codDominio, fromId, toId, null);
         return eseguiJob(force);
     }
 
+    /**
+     * Rielaborazione mirata di un elenco esplicito di id di rendicontazione (al massimo
+     * {@code govpay.batch.reprocess.max-ids}).
+     */
+    @PostMapping("/run")
+    public ResponseEntity<Object> rielaboraIdEndpoint(@RequestBody List<Long> ids) {
+        return rielabora(null, null, null, ids);
+    }
+
+    /**
+     * Rielaborazioni mirate in corso su tutti i nodi.
+     */
+    @GetMapping("/reprocess")
+    public ResponseEntity<List<ReprocessSlice>> getReprocessEndpoint() {
+        return ResponseEntity.ok(reprocessService.getActive());
+    }
+
+    /**
+     * Recupero storico oltre la finestra temporale, per intervallo di date (estremi inclusi) e/o di id, in
+     * partizioni parallele a velocita' limitata ({@code govpay.batch.backfill.*}).
+     */
+    @PostMapping("/backfill")
+    public ResponseEntity<Object> recuperoStoricoEndpoint(
+            @RequestParam(name = "fromDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam(name = "toDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
+            @RequestParam(name = "fromId", required = false) Long fromId,
+            @RequestParam(name = "toId", required = false) Long toId) {
+        try {
+            return ResponseEntity.accepted().body(backfillService.submit(fromDate, toDate, fromId, toId));
+        } catch (IllegalArgumentException e) {
+            return problem(HttpStatus.BAD_REQUEST, "Richiesta non valida", e.getMessage());
+        } catch (IllegalStateException e) {
+            return problem(HttpStatus.CONFLICT, "Conflitto", e.getMessage());
+        }
+    }
+
+    /**
+     * Recupero storico in corso su questo nodo (204 se non ce ne sono).
+     */
+    @GetMapping("/backfill")
+    public ResponseEntity<BackfillInfo> getBackfillEndpoint() {
+        BackfillInfo current = backfillService.getCurrent();
+        return current != null ? ResponseEntity.ok(current) : ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<Object> rielabora(String codDominio, Long fromId, Long toId, List<Long> ids) {
+        try {
+            return ResponseEntity.accepted().body(reprocessService.submit(codDominio, fromId, toId, ids));
+        } catch (IllegalArgumentException e) {
+            return problem(HttpStatus.BAD_REQUEST, "Richiesta non valida", e.getMessage());
+        } catch (IllegalStateException e) {
+            return problem(HttpStatus.CONFLICT, "Conflitto", e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<Object> problem(HttpStatus status, String title, String detail) {
+        log.warn("Richiesta rifiutata: {}", detail);
+        ProblemDetail problem = ProblemDetail.forStatusAndDetail(status, detail);
+        problem.setTitle(title);
+        return ResponseEntity.status(status).body(problem);
+    }
+
     @GetMapping("/status")
     public ResponseEntity<BatchStatusInfo> getStatusEndpoint() {
         return getStatus();
@@ -82,4 +175,12 @@ public class BatchController extends AbstractBatchController {
     public ResponseEntity<NextExecutionInfo> getNextExecutionEndpoint() {
         return getNextExecution();
     }
+
+    /**
+     * Avanzamento dell'esecuzione corrente: ricevute pendenti, esiti, throughput e stima di fine.
+     */
+    @GetMapping("/progress")
+    public ResponseEntity<BatchProgressInfo> getProgressEndpoint() {
+        return ResponseEntity.ok(batchProgressTracker.getProgress());
+    }
 }
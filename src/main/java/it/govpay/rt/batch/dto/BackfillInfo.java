@@ -0,0 +1,29 @@
+package it.govpay.rt.batch.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Historical backfill request: date and/or id bounds, capped at the regular job watermark ({@code maxId}).
+ * {@code firstId}, {@code lastId} and {@code dataA} are the bounds resolved when the request was submitted
+ * (no ids to recover when null).
+ */
+@Data
+@Builder
+public class BackfillInfo {
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private Long fromId;
+    private Long toId;
+    private long maxId;
+    private Long firstId;
+    private Long lastId;
+    private LocalDateTime dataA;
+    private boolean resumed;
+    private int gridSize;
+    private double ratePerSecond;
+    private LocalDateTime submitted;
+}
@@ -0,0 +1,27 @@
+package it.govpay.rt.batch.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Progress of the current (or last) RT retrieve run, computed from in-memory counters
+ */
+@Data
+@Builder
+public class BatchProgressInfo {
+    private boolean running;
+    private Long jobExecutionId;
+    private LocalDateTime startTime;
+    private long pending;
+    private long processed;
+    private long recovered;
+    private long notFound;
+    private long sendFailed;
+    private long failed;
+    private long deferred;
+    private double itemsPerSecond;
+    private Long etaSeconds;
+    private LocalDateTime estimatedEndTime;
+}
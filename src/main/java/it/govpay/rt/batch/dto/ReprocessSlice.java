@@ -0,0 +1,69 @@
+package it.govpay.rt.batch.dto;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Slice of rendicontazioni targeted by a reprocessing run: a domain and/or an id range, or an explicit id list,
+ * always bounded by the main job watermark at submission time ({@code maxId}).
+ */
+@Data
+@Builder
+public class ReprocessSlice {
+    private String id;
+    private String codDominio;
+    private Long fromId;
+    private Long toId;
+    private Set<Long> ids;
+    private long maxId;
+    private LocalDateTime submitted;
+
+    public boolean hasIds() {
+        return ids != null && !ids.isEmpty();
+    }
+
+    /**
+     * @return true if the receipt belongs to this slice
+     */
+    public boolean covers(RtRetrieveContext ctx) {
+        long rtId = ctx.getRtId();
+        if (rtId > maxId)
+            return false;
+        if (hasIds())
+            return ids.contains(rtId);
+        return (codDominio == null || codDominio.equals(ctx.getTaxCode()))
+               && (fromId == null || rtId >= fromId)
+               && (toId == null || rtId <= toId);
+    }
+
+    /**
+     * Conservative overlap check: an id list is matched against the other slice range ignoring the domain,
+     * which is known only after reading the rows.
+     */
+    public boolean overlaps(ReprocessSlice other) {
+        if (hasIds() && other.hasIds())
+            return !Collections.disjoint(ids, other.ids);
+        if (hasIds())
+            return ids.stream().anyMatch(other::inRange);
+        if (other.hasIds())
+            return other.ids.stream().anyMatch(this::inRange);
+        boolean sameDomain = codDominio == null || other.codDominio == null || codDominio.equals(other.codDominio);
+        return sameDomain && lower() <= other.upper() && other.lower() <= upper();
+    }
+
+    private boolean inRange(long rtId) {
+        return rtId >= lower() && rtId <= upper();
+    }
+
+    private long lower() {
+        return fromId != null ? fromId : Long.MIN_VALUE;
+    }
+
+    private long upper() {
+        return toId != null ? Math.min(toId, maxId) : maxId;
+    }
+}
@@ -15,6 +15,12 @@ public class RtRetrieveBatch {
     private String codDominio;
     private String iuv;
     private String iur;
+    /** Date of the reporting (rendicontazione) of the payment, see {@link RtRetrieveContext} */
+    private LocalDateTime dataRendicontazione;
     private LocalDateTime retrivedTime;
     private String message;
+    private RtRetrieveOutcome outcome;
+    private Long watermark;
+    /** HTTP status of the pagoPA GET, when known */
+    private Integer httpStatus;
 }
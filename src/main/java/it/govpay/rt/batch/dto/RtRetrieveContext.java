@@ -1,5 +1,7 @@
 package it.govpay.rt.batch.dto;
 
+import java.time.LocalDateTime;
+
 import lombok.Builder;
 import lombok.Data;
 
@@ -13,6 +15,13 @@ public class RtRetrieveContext {
     private String taxCode;
     private String iuv;
     private String iur;
+    /** Date of the reporting (rendicontazione) of the payment, start of its recovery lag */
+    private LocalDateTime dataRendicontazione;
     private String idIntermediario;
     private String idStazione;
+    /**
+     * Highest id that can be marked as processed once this item is written.
+     * Differs from rtId when items are not read in id order (fair-share scheduling).
+     */
+    private Long watermark;
 }
@@ -0,0 +1,17 @@
+package it.govpay.rt.batch.dto;
+
+/**
+ * Outcome of the retrieve of a single receipt
+ */
+public enum RtRetrieveOutcome {
+	/** Receipt fetched from pagoPA and sent to govpay */
+	RECOVERED,
+	/** Receipt not available on pagoPA */
+	NOT_FOUND,
+	/** Receipt fetched from pagoPA but not accepted by govpay */
+	SEND_FAILED,
+	/** Processing of the receipt ended with an error (pagoPA or GovPay call failed), concurrent mode only */
+	FAILED,
+	/** Receipt not attempted: the bulkhead of its RT connector was full, left to a later run */
+	DEFERRED
+}
@@ -0,0 +1,29 @@
+package it.govpay.rt.batch.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity representing the last run of a periodic task shared by all the processes (e.g. the cleanup of the
+ * Spring Batch metadata). Claimed with a conditional update, so only one process runs the task per interval.
+ */
+@Entity
+@Table(name = "RT_BATCH_TASK")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTask {
+
+    @Id
+    @Column(name = "TASK_NAME", length = 100)
+    private String taskName;
+
+    @Column(name = "LAST_RUN")
+    private LocalDateTime lastRun;
+}
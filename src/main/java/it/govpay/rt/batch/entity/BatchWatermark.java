@@ -0,0 +1,51 @@
+package it.govpay.rt.batch.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Entity representing the last processed rendicontazione id of a job (and partition).
+ * Updated in the same transaction of each chunk commit, read once at job start.
+ */
+@Entity
+@Table(name = "RT_BATCH_WATERMARK")
+@IdClass(BatchWatermark.Key.class)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchWatermark {
+
+    /** Partition key used by jobs that are not partitioned */
+    public static final String DEFAULT_PARTITION = "default";
+
+    @Id
+    @Column(name = "JOB_NAME", length = 100)
+    private String jobName;
+
+    @Id
+    @Column(name = "PARTITION_KEY", length = 100)
+    private String partitionKey;
+
+    @Column(name = "LAST_PROCESSED_ID", nullable = false)
+    private Long lastProcessedId;
+
+    @Column(name = "LAST_UPDATED")
+    private LocalDateTime lastUpdated;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String jobName;
+        private String partitionKey;
+    }
+}
@@ -0,0 +1,49 @@
+package it.govpay.rt.batch.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+
+/**
+ * Entity representing the last retrieve outcome of a rendicontazione.
+ * Written in the same transaction of the chunk; rows with a next eligible time are re-read by the reader
+ * without rescanning the whole time window.
+ */
+@Entity
+@Table(name = "RT_BATCH_OUTCOME")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RetrieveOutcome {
+
+    @Id
+    @Column(name = "ID_RENDICONTAZIONE")
+    private Long idRendicontazione;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "LAST_OUTCOME", nullable = false, length = 20)
+    private RtRetrieveOutcome lastOutcome;
+
+    @Column(name = "ATTEMPTS", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "LAST_HTTP_STATUS")
+    private Integer lastHttpStatus;
+
+    @Column(name = "LAST_MESSAGE", length = 255)
+    private String lastMessage;
+
+    @Column(name = "LAST_ATTEMPT", nullable = false)
+    private LocalDateTime lastAttempt;
+
+    /** Time from which the row can be retried; null when the outcome is final */
+    @Column(name = "NEXT_ELIGIBLE")
+    private LocalDateTime nextEligible;
+}
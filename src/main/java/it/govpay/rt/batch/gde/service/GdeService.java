@@ -1,12 +1,19 @@
 package it.govpay.rt.batch.gde.service;
 
-import java.time.OffsetDateTime;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
@@ -16,9 +23,12 @@ import org.springframework.web.client.RestClientException;
 
 import tools.jackson.databind.ObjectMapper;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
-import it.govpay.common.client.gde.HttpDataHolder;
 import it.govpay.common.configurazione.model.GdeInterfaccia;
 import it.govpay.common.configurazione.model.Giornale;
 import it.govpay.common.configurazione.service.ConfigurazioneService;
@@ -29,10 +39,11 @@ import it.govpay.gde.client.beans.ComponenteEvento;
 import it.govpay.gde.client.beans.Header;
 import it.govpay.gde.client.beans.NuovoEvento;
 import it.govpay.rt.batch.Costanti;
-import it.govpay.rt.batch.client.SoapGdeCapturingInterceptor;
+import it.govpay.rt.batch.client.ExchangeContext;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.gde.mapper.EventoRtMapper;
 import it.govpay.rt.batch.gde.utils.RtGdeUtils;
+import it.govpay.rt.batch.jfr.PipelineEvents;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -44,6 +55,9 @@ import lombok.extern.slf4j.Slf4j;
  * Events include:
  * - GET_RECEIPT: Fetching receipt from pagoPA
  * - paSendRTV2: Sending receipt to GovPay via SOAP
+ * <p>
+ * When tracing is active the transactionId of the events is the trace id of the receipt,
+ * so the GDE events can be looked up from the trace and vice versa.
  */
 @Slf4j
 @Service
@@ -55,6 +69,15 @@ public class GdeService extends AbstractGdeService {
     private final EventoRtMapper eventoRtMapper;
     private final ConfigurazioneService configurazioneService;
     private final Jaxb2Marshaller jaxb2Marshaller;
+    private final ObservationRegistry observationRegistry;
+    private final Tracer tracer;
+
+    /** Eventi inviati e non ancora completati, attesi da {@link #flush(Duration)} allo shutdown */
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+
+    /** Eventi inviati e persi (errore di invio) dall'avvio, per lo stato della pipeline */
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
 
     @Value("${govpay.url}")
     private String govpayUrl;
@@ -64,10 +87,24 @@ public class GdeService extends AbstractGdeService {
                       ConfigurazioneService configurazioneService,
                       EventoRtMapper eventoRtMapper,
                       Jaxb2Marshaller jaxb2Marshaller) {
+        this(objectMapper, asyncHttpExecutor, configurazioneService, eventoRtMapper, jaxb2Marshaller,
+             ObservationRegistry.NOOP, null);
+    }
+
+    @Autowired
+    public GdeService(ObjectMapper objectMapper,
+                      @Qualifier("asyncHttpExecutor") Executor asyncHttpExecutor,
+                      ConfigurazioneService configurazioneService,
+                      EventoRtMapper eventoRtMapper,
+                      Jaxb2Marshaller jaxb2Marshaller,
+                      ObservationRegistry observationRegistry,
+                      @Autowired(required = false) Tracer tracer) {
         super(objectMapper, asyncHttpExecutor, configurazioneService);
         this.eventoRtMapper = eventoRtMapper;
         this.configurazioneService = configurazioneService;
         this.jaxb2Marshaller = jaxb2Marshaller;
+        this.observationRegistry = observationRegistry;
+        this.tracer = tracer;
     }
 
     @Override
@@ -110,18 +147,80 @@ public class GdeService extends AbstractGdeService {
             log.debug("Connettore GDE disabilitato, evento {} non inviato", nuovoEvento.getTipoEvento());
             return;
         }
-        CompletableFuture.runAsync(() -> {
+        Observation.createNotStarted(Costanti.OBSERVATION_GDE_ENQUEUE, observationRegistry)
+                   .lowCardinalityKeyValue("event.type", String.valueOf(nuovoEvento.getTipoEvento()))
+                   .highCardinalityKeyValue("gde.transaction-id", String.valueOf(nuovoEvento.getTransactionId()))
+                   .observe(() -> enqueue(nuovoEvento));
+    }
+
+    private void enqueue(NuovoEvento nuovoEvento) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            PipelineEvents.GdePost event = new PipelineEvents.GdePost();
+            event.begin();
+            event.eventType(String.valueOf(nuovoEvento.getTipoEvento())).status("OK");
             try {
                 getGdeRestTemplate().postForEntity(getGdeEndpoint(), nuovoEvento, Void.class);
+                sentEvents.increment();
                 log.debug("Evento {} inviato con successo al GDE", nuovoEvento.getTipoEvento());
             } catch (Exception ex) {
+                event.failed(ex);
+                failedEvents.increment();
                 log.warn("Impossibile inviare evento {} al GDE (il batch continua normalmente): {}",
                         nuovoEvento.getTipoEvento(), ex.getMessage());
                 log.debug("Dettaglio errore GDE:", ex);
             } finally {
-                HttpDataHolder.clear();
+                event.commit();
             }
         }, this.asyncExecutor);
+        inFlight.add(future);
+        future.whenComplete((r, ex) -> inFlight.remove(future));
+    }
+
+    /**
+     * Returns the transactionId of a new event: the current trace id when tracing is active, a random UUID otherwise.
+     */
+    private String newTransactionId() {
+        Span span = tracer != null ? tracer.currentSpan() : null;
+        if (span != null && span.context().traceId() != null && !span.context().traceId().isBlank())
+            return span.context().traceId();
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Waits for the events already submitted to be sent.
+     *
+     * @param timeout maximum time to wait
+     * @return true if no event is still pending
+     */
+    public boolean flush(Duration timeout) {
+        CompletableFuture<?>[] pending = inFlight.toArray(new CompletableFuture<?>[0]);
+        if (pending.length == 0)
+            return true;
+        log.info("Attesa invio di {} eventi GDE pendenti (max {})", pending.length, timeout);
+        try {
+            CompletableFuture.allOf(pending).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.warn("Timeout in attesa degli eventi GDE: {} eventi non inviati", inFlight.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // gli errori di invio sono gia' gestiti nel task
+            return inFlight.isEmpty();
+        }
+        return false;
+    }
+
+    public int getPendingEvents() {
+        return inFlight.size();
+    }
+
+    public long getSentEvents() {
+        return sentEvents.sum();
+    }
+
+    public long getFailedEvents() {
+        return failedEvents.sum();
     }
 
     /**
@@ -129,19 +228,18 @@ public class GdeService extends AbstractGdeService {
      *
      * @param rtInfo          rt retrieve information: Organization tax code, IUR, IUV
      * @param responseEntity  HTTP response
-     * @param dataStart       timestamp inizio operazione
-     * @param dataEnd         timestamp fine operazione
+     * @param exchange        request headers and timings of the call
      * @param pagoPABaseUrl   base URL pagoPA (from ConnettoreService)
      */
     public void saveGetReceiptOk(RtRetrieveContext rtInfo, ResponseEntity<?> responseEntity,
-                                 OffsetDateTime dataStart, OffsetDateTime dataEnd, String pagoPABaseUrl) {
-        String transactionId = UUID.randomUUID().toString();
+                                 ExchangeContext exchange, String pagoPABaseUrl) {
+        String transactionId = newTransactionId();
         String url = buildReceiptUrl(pagoPABaseUrl, rtInfo);
         NuovoEvento nuovoEvento = eventoRtMapper.createEventoOk(
-                rtInfo, Costanti.OPERATION_GET_RECEIPT, transactionId, dataStart, dataEnd);
+                rtInfo, Costanti.OPERATION_GET_RECEIPT, transactionId, exchange.getDataStart(), exchange.getDataEnd());
 
-        eventoRtMapper.setParametriRichiesta(nuovoEvento, url, "GET", GdeUtils.getCapturedRequestHeadersAsGdeHeaders());
-        eventoRtMapper.setParametriRisposta(nuovoEvento, dataEnd, responseEntity, null);
+        eventoRtMapper.setParametriRichiesta(nuovoEvento, url, "GET", exchange.getRequestHeaders());
+        eventoRtMapper.setParametriRisposta(nuovoEvento, exchange.getDataEnd(), responseEntity, null);
 
         setResponsePayload(nuovoEvento, responseEntity, null);
 
@@ -154,19 +252,18 @@ public class GdeService extends AbstractGdeService {
      * @param rtInfo          rt retrieve information: Organization tax code, IUR, IUV
      * @param responseEntity  HTTP response
      * @param exception       the exception that occurred
-     * @param dataStart       timestamp inizio operazione
-     * @param dataEnd         timestamp fine operazione
+     * @param exchange        request headers and timings of the call
      * @param pagoPABaseUrl   base URL pagoPA (from ConnettoreService)
      */
     public void saveGetReceiptKo(RtRetrieveContext rtInfo, ResponseEntity<?> responseEntity, RestClientException exception,
-                                 OffsetDateTime dataStart, OffsetDateTime dataEnd, String pagoPABaseUrl) {
-        String transactionId = UUID.randomUUID().toString();
+                                 ExchangeContext exchange, String pagoPABaseUrl) {
+        String transactionId = newTransactionId();
         String url = buildReceiptUrl(pagoPABaseUrl, rtInfo);
         NuovoEvento nuovoEvento = eventoRtMapper.createEventoKo(
-                rtInfo, Costanti.OPERATION_GET_RECEIPT, transactionId, dataStart, dataEnd, null, exception);
+                rtInfo, Costanti.OPERATION_GET_RECEIPT, transactionId, exchange.getDataStart(), exchange.getDataEnd(), null, exception);
 
-        eventoRtMapper.setParametriRichiesta(nuovoEvento, url, "GET", GdeUtils.getCapturedRequestHeadersAsGdeHeaders());
-        eventoRtMapper.setParametriRisposta(nuovoEvento, dataEnd, null, exception);
+        eventoRtMapper.setParametriRichiesta(nuovoEvento, url, "GET", exchange.getRequestHeaders());
+        eventoRtMapper.setParametriRisposta(nuovoEvento, exchange.getDataEnd(), null, exception);
 
         setResponsePayload(nuovoEvento, responseEntity, exception);
 
@@ -179,22 +276,21 @@ public class GdeService extends AbstractGdeService {
      * @param rtInfo          rt retrieve information: Organization tax code, IUR, IUV
      * @param request         SOAP request sent
      * @param response        SOAP response received
-     * @param dataStart       timestamp inizio operazione
-     * @param dataEnd         timestamp fine operazione
+     * @param exchange        response headers, raw payloads and timings of the call
      */
     public void saveSendReceiptOk(RtRetrieveContext rtInfo, PaSendRTV2Request request, PaSendRTV2Response response,
-                                  OffsetDateTime dataStart, OffsetDateTime dataEnd) {
-        String transactionId = UUID.randomUUID().toString();
+                                  ExchangeContext exchange) {
+        String transactionId = newTransactionId();
         List<Header> soapRequestHeaders = buildSoapRequestHeaders();
-        List<Header> soapResponseHeaders = SoapGdeCapturingInterceptor.getCapturedResponseHeaders();
 
         NuovoEvento nuovoEvento = eventoRtMapper.createEventoOk(
-                rtInfo, Costanti.OPERATION_SEND_RECEIPT, transactionId, dataStart, dataEnd);
+                rtInfo, Costanti.OPERATION_SEND_RECEIPT, transactionId, exchange.getDataStart(), exchange.getDataEnd());
 
-        eventoRtMapper.setParametriRichiesta(nuovoEvento, govpayUrl, "POST", soapRequestHeaders);
-        eventoRtMapper.setParametriRispostaSoap(nuovoEvento, dataEnd, response, soapResponseHeaders);
+        eventoRtMapper.setParametriRichiesta(nuovoEvento, soapUrl(exchange), "POST", soapRequestHeaders);
+        eventoRtMapper.setParametriRispostaSoap(nuovoEvento, exchange.getDataEnd(), response, exchange.getResponseHeaders());
 
         RtGdeUtils.serializzaPayloadSoap(this.jaxb2Marshaller, nuovoEvento, request, response, null);
+        RtGdeUtils.applicaPayloadGrezzi(nuovoEvento, exchange.getRequestPayload(), exchange.getResponsePayload());
 
         sendEventAsync(nuovoEvento);
     }
@@ -205,22 +301,21 @@ public class GdeService extends AbstractGdeService {
      * @param rtInfo          rt retrieve information: Organization tax code, IUR, IUV
      * @param request         SOAP request sent
      * @param exception       Exception occurred
-     * @param dataStart       timestamp inizio operazione
-     * @param dataEnd         timestamp fine operazione
+     * @param exchange        response headers, raw payloads and timings of the call
      */
     public void saveSendReceiptKo(RtRetrieveContext rtInfo, PaSendRTV2Request request, Exception exception,
-                                  OffsetDateTime dataStart, OffsetDateTime dataEnd) {
-        String transactionId = UUID.randomUUID().toString();
+                                  ExchangeContext exchange) {
+        String transactionId = newTransactionId();
         List<Header> soapRequestHeaders = buildSoapRequestHeaders();
-        List<Header> soapResponseHeaders = SoapGdeCapturingInterceptor.getCapturedResponseHeaders();
 
         NuovoEvento nuovoEvento = eventoRtMapper.createEventoKoSoap(
-                rtInfo, Costanti.OPERATION_SEND_RECEIPT, transactionId, dataStart, dataEnd, exception);
+                rtInfo, Costanti.OPERATION_SEND_RECEIPT, transactionId, exchange.getDataStart(), exchange.getDataEnd(), exception);
 
-        eventoRtMapper.setParametriRichiesta(nuovoEvento, govpayUrl, "POST", soapRequestHeaders);
-        eventoRtMapper.setParametriRispostaSoapKo(nuovoEvento, dataEnd, exception, soapResponseHeaders);
+        eventoRtMapper.setParametriRichiesta(nuovoEvento, soapUrl(exchange), "POST", soapRequestHeaders);
+        eventoRtMapper.setParametriRispostaSoapKo(nuovoEvento, exchange.getDataEnd(), exception, exchange.getResponseHeaders());
 
         RtGdeUtils.serializzaPayloadSoap(this.jaxb2Marshaller, nuovoEvento, request, null, exception);
+        RtGdeUtils.applicaPayloadGrezzi(nuovoEvento, exchange.getRequestPayload(), exchange.getResponsePayload());
 
         sendEventAsync(nuovoEvento);
     }
@@ -236,6 +331,13 @@ public class GdeService extends AbstractGdeService {
         }
     }
 
+    /**
+     * URL actually called by the client, the configured GovPay URL if the call did not get that far.
+     */
+    private String soapUrl(ExchangeContext exchange) {
+        return exchange.getUrl() != null ? exchange.getUrl() : govpayUrl;
+    }
+
     /**
      * Builds standard SOAP request headers (Content-Type, SOAPAction).
      */
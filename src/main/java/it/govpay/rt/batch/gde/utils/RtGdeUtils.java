@@ -56,6 +56,23 @@ public class RtGdeUtils {
 		}
 	}
 
+	/**
+	 * Sostituisce i payload serializzati da {@link #serializzaPayloadSoap} con quelli effettivamente
+	 * scambiati sul canale, se catturati (busta SOAP completa, fault inclusi).
+	 *
+	 * @param nuovoEvento evento da arricchire con il payload
+	 * @param requestPayload richiesta SOAP grezza (può essere null)
+	 * @param responsePayload risposta SOAP grezza (può essere null)
+	 */
+	public static void applicaPayloadGrezzi(NuovoEvento nuovoEvento, byte[] requestPayload, byte[] responsePayload) {
+		if (nuovoEvento.getParametriRichiesta() != null && requestPayload != null) {
+			nuovoEvento.getParametriRichiesta().setPayload(Base64.getEncoder().encodeToString(requestPayload));
+		}
+		if (nuovoEvento.getParametriRisposta() != null && responsePayload != null) {
+			nuovoEvento.getParametriRisposta().setPayload(Base64.getEncoder().encodeToString(responsePayload));
+		}
+	}
+
 	/**
 	 * Converte un oggetto JAXB in stringa XML.
 	 *
@@ -0,0 +1,174 @@
+package it.govpay.rt.batch.health;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.gde.service.GdeService;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+
+/**
+ * Health component {@code pipeline}: state of the receipt pipeline, for readiness probes.
+ * <p>
+ * Reports {@link Status#OUT_OF_SERVICE} when a running job has written no receipt for
+ * {@code govpay.batch.health.stall-timeout}, and {@link #DEGRADED} when its throughput is below the configured
+ * floor, when too many GDE events are waiting or when too many were lost since the previous check.
+ * The details include the occupancy of the per-connector bulkheads of the concurrent mode, read from their metrics.
+ * <p>
+ * Both states are mapped to HTTP 503 ({@code management.endpoint.health.status.http-mapping}), so they fail the
+ * readiness group, which includes this component; the liveness group does not, and never restarts the pod for them.
+ */
+@Component
+public class PipelineHealthIndicator implements HealthIndicator {
+
+	public static final Status DEGRADED = new Status("DEGRADED", "Pipeline rallentata");
+
+	/** GDE events (sent or lost) needed to compute a new drop rate */
+	private static final int GDE_MIN_SAMPLES = 20;
+
+	private final BatchProgressTracker progressTracker;
+	private final GdeService gdeService;
+	private final MeterRegistry meterRegistry;
+	private final BatchProperties.Health config;
+	private final Clock clock;
+
+	private long lastSentEvents;
+	private long lastFailedEvents;
+	private double gdeDropRate;
+
+	@Autowired
+	public PipelineHealthIndicator(BatchProgressTracker progressTracker, GdeService gdeService, MeterRegistry meterRegistry,
+								   BatchProperties batchProperties) {
+		this(progressTracker, gdeService, meterRegistry, batchProperties, Clock.systemDefaultZone());
+	}
+
+	public PipelineHealthIndicator(BatchProgressTracker progressTracker, GdeService gdeService, MeterRegistry meterRegistry,
+								   BatchProperties batchProperties, Clock clock) {
+		this.progressTracker = progressTracker;
+		this.gdeService = gdeService;
+		this.meterRegistry = meterRegistry;
+		this.config = batchProperties.getHealth();
+		this.clock = clock;
+	}
+
+	@Override
+	public Health health() {
+		List<String> problems = new ArrayList<>();
+		Status status = Status.UP;
+
+		Map<String, Object> run = new LinkedHashMap<>();
+		Instant lastActivity = progressTracker.lastActivity();
+		run.put("running", lastActivity != null);
+		if (lastActivity != null) {
+			// a batch in esecuzione l'avanzamento e' calcolato dai contatori in memoria, senza query
+			BatchProgressInfo progress = progressTracker.getProgress();
+			Duration sinceLastWrite = Duration.between(lastActivity, clock.instant());
+			run.put("pending", progress.getPending());
+			run.put("itemsPerSecond", progress.getItemsPerSecond());
+			run.put("secondsSinceLastWrite", sinceLastWrite.toSeconds());
+			if (sinceLastWrite.compareTo(config.getStallTimeout()) > 0) {
+				status = Status.OUT_OF_SERVICE;
+				problems.add("nessuna ricevuta scritta da " + sinceLastWrite.toSeconds() + "s");
+			} else if (isBelowThroughputFloor(progress)) {
+				status = DEGRADED;
+				problems.add("throughput " + String.format("%.2f", progress.getItemsPerSecond())
+							 + " ricevute/s sotto il minimo " + config.getMinItemsPerSecond());
+			}
+		}
+
+		Map<String, Object> gde = new LinkedHashMap<>();
+		int pendingEvents = gdeService.getPendingEvents();
+		double dropRate = gdeDropRate(gdeService.getSentEvents(), gdeService.getFailedEvents());
+		gde.put("pendingEvents", pendingEvents);
+		gde.put("dropRate", dropRate);
+		if (pendingEvents > config.getGdeMaxPending()) {
+			status = worst(status, DEGRADED);
+			problems.add(pendingEvents + " eventi GDE in attesa di invio");
+		}
+		if (dropRate > config.getGdeMaxDropRate()) {
+			status = worst(status, DEGRADED);
+			problems.add(String.format("%.0f%%", dropRate * 100) + " degli eventi GDE recenti non inviati");
+		}
+
+		Health.Builder builder = Health.status(status)
+									   .withDetail("run", run)
+									   .withDetail("gde", gde)
+									   .withDetail("connectors", connectors());
+		if (!problems.isEmpty())
+			builder.withDetail("problems", problems);
+		return builder.build();
+	}
+
+	private boolean isBelowThroughputFloor(BatchProgressInfo progress) {
+		if (config.getMinItemsPerSecond() <= 0 || progress.getPending() <= 0 || progress.getStartTime() == null)
+			return false;
+		Duration sinceStart = Duration.between(progress.getStartTime(), LocalDateTime.now(clock));
+		return sinceStart.compareTo(config.getThroughputGracePeriod()) > 0
+			   && progress.getItemsPerSecond() < config.getMinItemsPerSecond();
+	}
+
+	/**
+	 * Share of the GDE events lost since the previous computation; the previous value is kept until
+	 * {@value #GDE_MIN_SAMPLES} new events have been sent or lost.
+	 */
+	private synchronized double gdeDropRate(long sent, long failed) {
+		long newSent = sent - lastSentEvents;
+		long newFailed = failed - lastFailedEvents;
+		if (newSent + newFailed >= GDE_MIN_SAMPLES) {
+			gdeDropRate = (double) newFailed / (newSent + newFailed);
+			lastSentEvents = sent;
+			lastFailedEvents = failed;
+		}
+		return gdeDropRate;
+	}
+
+	/**
+	 * Occupancy of the per-connector bulkheads; empty when the concurrent mode or the bulkheads are disabled.
+	 */
+	private Map<String, Object> connectors() {
+		Map<String, Object> connectors = new TreeMap<>();
+		for (Gauge active : meterRegistry.find(Costanti.METRIC_BULKHEAD_ACTIVE).gauges()) {
+			String connector = active.getId().getTag(Costanti.METRIC_TAG_CONNECTOR);
+			if (connector == null)
+				continue;
+			double limit = gaugeValue(Costanti.METRIC_BULKHEAD_LIMIT, connector);
+			Map<String, Object> bulkhead = new LinkedHashMap<>();
+			bulkhead.put("active", (long) active.value());
+			bulkhead.put("limit", (long) limit);
+			bulkhead.put("queued", (long) gaugeValue(Costanti.METRIC_BULKHEAD_QUEUED, connector));
+			Counter deferred = meterRegistry.find(Costanti.METRIC_BULKHEAD_DEFERRED)
+											.tag(Costanti.METRIC_TAG_CONNECTOR, connector).counter();
+			bulkhead.put("deferred", deferred != null ? (long) deferred.count() : 0L);
+			bulkhead.put("state", limit > 0 && active.value() >= limit ? "SATURATED" : "AVAILABLE");
+			connectors.put(connector, bulkhead);
+		}
+		return connectors;
+	}
+
+	private double gaugeValue(String name, String connector) {
+		Gauge gauge = meterRegistry.find(name).tag(Costanti.METRIC_TAG_CONNECTOR, connector).gauge();
+		return gauge != null ? gauge.value() : 0d;
+	}
+
+	private static Status worst(Status current, Status other) {
+		return Status.OUT_OF_SERVICE.equals(current) ? current : other;
+	}
+}
@@ -0,0 +1,168 @@
+package it.govpay.rt.batch.jfr;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Actuator endpoint {@code jfr}: on-demand Java Flight Recorder recording of the pipeline events
+ * ({@link PipelineEvents}) together with the JVM events of the configured JFC settings.
+ * <p>
+ * {@code POST /actuator/jfr/start} starts a recording written to {@code govpay.batch.jfr.directory} when it stops,
+ * {@code POST /actuator/jfr/dump} writes a copy of what has been recorded so far and {@code POST /actuator/jfr/stop}
+ * stops it; a recording left running stops by itself after {@code max-duration}. File names carry the id of the job
+ * execution in progress, to match the recording with the run. {@code GET /actuator/jfr} returns its state.
+ */
+@Component
+@Endpoint(id = "jfr")
+@Slf4j
+public class JfrRecordingEndpoint {
+
+    static final String RECORDING_NAME = "govpay-rt-batch";
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final BatchProperties.Jfr config;
+    private final BatchProgressTracker progressTracker;
+    private final Clock clock;
+
+    private Recording recording;
+    private Path destination;
+    private Path lastDump;
+
+    @Autowired
+    public JfrRecordingEndpoint(BatchProperties batchProperties, BatchProgressTracker progressTracker) {
+        this(batchProperties, progressTracker, Clock.systemDefaultZone());
+    }
+
+    public JfrRecordingEndpoint(BatchProperties batchProperties, BatchProgressTracker progressTracker, Clock clock) {
+        this.config = batchProperties.getJfr();
+        this.progressTracker = progressTracker;
+        this.clock = clock;
+    }
+
+    @ReadOperation
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("recording", isRecording());
+        if (recording != null) {
+            status.put("state", recording.getState().name());
+            status.put("startTime", recording.getStartTime());
+            status.put("maxDuration", config.getMaxDuration().toString());
+        }
+        if (destination != null)
+            status.put("file", destination.toString());
+        if (lastDump != null)
+            status.put("lastDump", lastDump.toString());
+        return status;
+    }
+
+    /**
+     * @param action {@code start}, {@code dump} or {@code stop}
+     */
+    @WriteOperation
+    public synchronized Map<String, Object> action(@Selector String action) {
+        switch (action) {
+            case "start" -> start();
+            case "dump" -> dump();
+            case "stop" -> stop();
+            default -> throw new InvalidEndpointRequestException("Azione JFR non valida: " + action,
+                                                                 "Azione non valida, ammesse: start, dump, stop");
+        }
+        return status();
+    }
+
+    private void start() {
+        if (isRecording()) {
+            log.info("Registrazione JFR gia' in corso, scritta alla fine su {}", destination);
+            return;
+        }
+        closeStopped();
+        Path file = file("");
+        try {
+            Recording r = new Recording(Configuration.getConfiguration(config.getSettings()));
+            r.setName(RECORDING_NAME);
+            PipelineEvents.ALL.forEach(r::enable);
+            r.setDuration(config.getMaxDuration());
+            r.setDestination(file);
+            r.start();
+            recording = r;
+            destination = file;
+            lastDump = null;
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Impossibile avviare la registrazione JFR: " + e.getMessage(), e);
+        }
+        log.info("Registrazione JFR avviata (impostazioni {}, massimo {}), scritta alla fine su {}",
+                 config.getSettings(), config.getMaxDuration(), file);
+    }
+
+    private void dump() {
+        requireRecording();
+        Path file = file("-dump");
+        try {
+            recording.dump(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossibile scrivere la registrazione JFR: " + e.getMessage(), e);
+        }
+        lastDump = file;
+        log.info("Registrazione JFR in corso copiata su {}", file);
+    }
+
+    private void stop() {
+        requireRecording();
+        // con la destinazione impostata la registrazione viene scritta su file dallo stop
+        recording.stop();
+        recording.close();
+        log.info("Registrazione JFR fermata e scritta su {}", destination);
+    }
+
+    private boolean isRecording() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    private void requireRecording() {
+        if (!isRecording())
+            throw new InvalidEndpointRequestException("Nessuna registrazione JFR in corso", "Nessuna registrazione JFR in corso");
+    }
+
+    /**
+     * Releases the recording stopped by max-duration: its file has already been written.
+     */
+    private void closeStopped() {
+        if (recording != null && recording.getState() == RecordingState.STOPPED)
+            recording.close();
+    }
+
+    private Path file(String suffix) {
+        Path directory = Path.of(config.getDirectory());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossibile creare la directory delle registrazioni JFR " + directory, e);
+        }
+        Long jobExecutionId = progressTracker.currentJobExecutionId();
+        String run = jobExecutionId != null ? "run" + jobExecutionId : "idle";
+        return directory.resolve(RECORDING_NAME + "-" + run + "-" + LocalDateTime.now(clock).format(FILE_TIMESTAMP) + suffix + ".jfr");
+    }
+}
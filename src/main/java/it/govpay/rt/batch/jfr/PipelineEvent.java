@@ -0,0 +1,72 @@
+package it.govpay.rt.batch.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the Java Flight Recorder events of the receipt pipeline stages, see {@link PipelineEvents}.
+ * <p>
+ * Outside a recording {@link #commit()} returns without writing anything and the JIT removes most of the cost of
+ * the event, so the stages emit them unconditionally. Stack traces are not recorded.
+ */
+@Category({"GovPay", "RT batch"})
+@StackTrace(false)
+public abstract class PipelineEvent extends Event {
+
+    @Label("RT id")
+    long rtId;
+
+    @Label("Connector")
+    String connector;
+
+    @Label("Status")
+    String status;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    public PipelineEvent rtId(Long rtId) {
+        this.rtId = rtId != null ? rtId : 0L;
+        return this;
+    }
+
+    public PipelineEvent connector(String connector) {
+        this.connector = connector;
+        return this;
+    }
+
+    public PipelineEvent status(String status) {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * @param httpStatus HTTP status code of the call
+     */
+    public PipelineEvent status(int httpStatus) {
+        this.status = String.valueOf(httpStatus);
+        return this;
+    }
+
+    /**
+     * Status of a stage ended by an exception: its simple class name.
+     */
+    public PipelineEvent failed(Throwable t) {
+        this.status = t.getClass().getSimpleName();
+        return this;
+    }
+
+    public PipelineEvent bytes(long bytes) {
+        this.bytes = Math.max(0L, bytes);
+        return this;
+    }
+
+    public PipelineEvent bytes(byte[] payload) {
+        this.bytes = payload != null ? payload.length : 0L;
+        return this;
+    }
+}
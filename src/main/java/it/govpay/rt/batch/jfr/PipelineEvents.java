@@ -0,0 +1,83 @@
+package it.govpay.rt.batch.jfr;
+
+import java.util.List;
+
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the receipt pipeline, one per stage. Together with the JVM events of the same
+ * recording (GC pauses, safepoints, thread parks) they show which stage a stall hit.
+ */
+public final class PipelineEvents {
+
+    /** Event classes enabled by {@link JfrRecordingEndpoint} */
+    public static final List<Class<? extends Event>> ALL = List.of(
+            ReaderPageFetch.class, PagopaGet.class, Convert.class, SoapSend.class, WriterUpdate.class, GdePost.class);
+
+    private PipelineEvents() {
+    }
+
+    @Name("it.govpay.rt.ReaderPageFetch")
+    @Label("Reader page fetch")
+    @Description("Query of the reader for pending receipts; rtId is the id after which the page starts, status the kind of page")
+    public static class ReaderPageFetch extends PipelineEvent {
+
+        @Label("Items")
+        int items;
+
+        public ReaderPageFetch items(int items) {
+            this.items = items;
+            return this;
+        }
+    }
+
+    @Name("it.govpay.rt.PagopaGet")
+    @Label("pagoPA GET")
+    @Description("GET of the receipt towards pagoPA, hedged requests included; status is the HTTP status code, "
+                 + "bytes the size of the response body read")
+    public static class PagopaGet extends PipelineEvent {
+    }
+
+    @Name("it.govpay.rt.Convert")
+    @Label("Receipt conversion")
+    @Description("Conversion of the pagoPA receipt to paSendRTV2")
+    public static class Convert extends PipelineEvent {
+    }
+
+    @Name("it.govpay.rt.SoapSend")
+    @Label("paSendRTV2")
+    @Description("SOAP paSendRTV2 call to GovPay; status is the outcome, bytes the size of the request")
+    public static class SoapSend extends PipelineEvent {
+    }
+
+    @Name("it.govpay.rt.WriterUpdate")
+    @Label("Writer update")
+    @Description("Outcomes and watermark of a chunk written in the chunk transaction; rtId is the first receipt of the chunk")
+    public static class WriterUpdate extends PipelineEvent {
+
+        @Label("Items")
+        int items;
+
+        public WriterUpdate items(int items) {
+            this.items = items;
+            return this;
+        }
+    }
+
+    @Name("it.govpay.rt.GdePost")
+    @Label("GDE post")
+    @Description("POST of an event to the GDE, on the GDE executor; status is OK or the exception")
+    public static class GdePost extends PipelineEvent {
+
+        @Label("Event type")
+        String eventType;
+
+        public GdePost eventType(String eventType) {
+            this.eventType = eventType;
+            return this;
+        }
+    }
+}
@@ -41,6 +41,7 @@ public class BatchExecutionRecapListener implements JobExecutionListener {
         );
 
         log.info("Status finale: {}", jobExecution.getStatus());
+        log.info("Exit status: {}", jobExecution.getExitStatus());
         log.info("Durata totale: {} secondi", duration.getSeconds());
         log.info("");
 
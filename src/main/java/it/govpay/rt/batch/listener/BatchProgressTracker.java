@@ -0,0 +1,232 @@
+package it.govpay.rt.batch.listener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.WatermarkService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tiene traccia dell'avanzamento del recupero RT con contatori in memoria.
+ * <p>
+ * Il numero di ricevute pendenti viene letto con una query di conteggio una sola volta all'avvio
+ * dello step; durante l'esecuzione viene derivato dai contatori. Il conteggio comprende solo le ricevute oltre il
+ * watermark, quindi i nuovi tentativi accodati dal reader (id non oltre il watermark all'avvio) sono contati negli
+ * esiti ma non riducono le pendenti. A batch fermo il conteggio viene rieseguito al piu' una volta ogni
+ * {@link #PENDING_CACHE_TTL}.
+ */
+@Component
+@Slf4j
+public class BatchProgressTracker implements StepExecutionListener, ItemWriteListener<RtRetrieveBatch> {
+
+    /** Finestra su cui viene calcolato il throughput */
+    static final int RATE_WINDOW_SECONDS = 60;
+
+    static final Duration PENDING_CACHE_TTL = Duration.ofSeconds(60);
+
+    private final RendicontazioniRepository rndRepository;
+    private final WatermarkService watermarkService;
+    private final int finestraTemporale;
+    private final Clock clock;
+
+    private final Map<RtRetrieveOutcome, LongAdder> outcomes = new EnumMap<>(RtRetrieveOutcome.class);
+    // nuovi tentativi elaborati: esclusi dal calcolo delle pendenti
+    private final LongAdder retried = new LongAdder();
+
+    // contatori per secondo, indicizzati per epochSecond % RATE_WINDOW_SECONDS
+    private final long[] rateBuckets = new long[RATE_WINDOW_SECONDS];
+    private final long[] rateBucketSeconds = new long[RATE_WINDOW_SECONDS];
+
+    private volatile boolean running;
+    private volatile Long jobExecutionId;
+    private volatile Instant startInstant;
+    private volatile Instant lastWriteInstant;
+    private volatile long pendingAtStart;
+    private volatile long watermarkAtStart;
+
+    private volatile Long cachedPending;
+    private volatile Instant cachedPendingAt;
+
+    @Autowired
+    public BatchProgressTracker(
+            RendicontazioniRepository rndRepository,
+            WatermarkService watermarkService,
+            @Value("${govpay.batch.finestra-temporale:90}") int finestraTemporale) {
+        this(rndRepository, watermarkService, finestraTemporale, Clock.systemDefaultZone());
+    }
+
+    public BatchProgressTracker(RendicontazioniRepository rndRepository, WatermarkService watermarkService,
+                                int finestraTemporale, Clock clock) {
+        this.rndRepository = rndRepository;
+        this.watermarkService = watermarkService;
+        this.finestraTemporale = finestraTemporale;
+        this.clock = clock;
+        for (RtRetrieveOutcome outcome : RtRetrieveOutcome.values())
+            outcomes.put(outcome, new LongAdder());
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        long lastProcessedId = stepExecution.getJobExecution().getExecutionContext()
+                                            .getLong(Costanti.LAST_PROCESSED_ID_KEY, 0L);
+        outcomes.values().forEach(LongAdder::reset);
+        retried.reset();
+        synchronized (rateBuckets) {
+            Arrays.fill(rateBuckets, 0L);
+            Arrays.fill(rateBucketSeconds, 0L);
+        }
+        pendingAtStart = countPending(lastProcessedId);
+        watermarkAtStart = lastProcessedId;
+        jobExecutionId = stepExecution.getJobExecutionId();
+        startInstant = clock.instant();
+        lastWriteInstant = null;
+        running = true;
+        log.debug("Avanzamento: {} ricevute pendenti all'avvio dello step", pendingAtStart);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        running = false;
+        cachedPending = null;
+        return stepExecution.getExitStatus();
+    }
+
+    @Override
+    public void afterWrite(Chunk<? extends RtRetrieveBatch> items) {
+        int written = 0;
+        for (RtRetrieveBatch item : items) {
+            if (item == null || item.getOutcome() == null)
+                continue;
+            outcomes.get(item.getOutcome()).increment();
+            if (item.getOutcome() != RtRetrieveOutcome.DEFERRED && item.getRtId() != null
+                    && item.getRtId() <= watermarkAtStart)
+                retried.increment();
+            written++;
+        }
+        if (written > 0) {
+            Instant now = clock.instant();
+            lastWriteInstant = now;
+            recordRate(now.getEpochSecond(), written);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return id dell'esecuzione in corso, null a batch fermo
+     */
+    public Long currentJobExecutionId() {
+        return running ? jobExecutionId : null;
+    }
+
+    /**
+     * @return istante dell'ultima ricevuta scritta dall'esecuzione in corso, o del suo avvio se non ne ha ancora
+     *         scritte; null a batch fermo
+     */
+    public Instant lastActivity() {
+        if (!running)
+            return null;
+        Instant lastWrite = lastWriteInstant;
+        return lastWrite != null ? lastWrite : startInstant;
+    }
+
+    /**
+     * @return avanzamento dell'esecuzione in corso, o dell'ultima eseguita da questo nodo
+     */
+    public BatchProgressInfo getProgress() {
+        Instant now = clock.instant();
+        long recovered = outcomes.get(RtRetrieveOutcome.RECOVERED).sum();
+        long notFound = outcomes.get(RtRetrieveOutcome.NOT_FOUND).sum();
+        long sendFailed = outcomes.get(RtRetrieveOutcome.SEND_FAILED).sum();
+        long failed = outcomes.get(RtRetrieveOutcome.FAILED).sum();
+        long processed = recovered + notFound + sendFailed + failed;
+
+        BatchProgressInfo.BatchProgressInfoBuilder builder = BatchProgressInfo.builder()
+                .running(running)
+                .jobExecutionId(jobExecutionId)
+                .startTime(startInstant != null ? LocalDateTime.ofInstant(startInstant, clock.getZone()) : null)
+                .processed(processed)
+                .recovered(recovered)
+                .notFound(notFound)
+                .sendFailed(sendFailed)
+                .failed(failed)
+                .deferred(outcomes.get(RtRetrieveOutcome.DEFERRED).sum());
+
+        if (!running)
+            return builder.pending(idlePending(now)).itemsPerSecond(0d).build();
+
+        long pending = Math.max(0L, pendingAtStart - (processed - retried.sum()));
+        double rate = itemsPerSecond(now);
+        builder.pending(pending).itemsPerSecond(rate);
+        if (rate > 0d) {
+            long eta = (long) Math.ceil(pending / rate);
+            builder.etaSeconds(eta)
+                   .estimatedEndTime(LocalDateTime.ofInstant(now.plusSeconds(eta), clock.getZone()));
+        }
+        return builder.build();
+    }
+
+    private void recordRate(long epochSecond, int count) {
+        int idx = (int) (epochSecond % RATE_WINDOW_SECONDS);
+        synchronized (rateBuckets) {
+            if (rateBucketSeconds[idx] != epochSecond) {
+                rateBucketSeconds[idx] = epochSecond;
+                rateBuckets[idx] = 0L;
+            }
+            rateBuckets[idx] += count;
+        }
+    }
+
+    private double itemsPerSecond(Instant now) {
+        long nowSecond = now.getEpochSecond();
+        long total = 0L;
+        synchronized (rateBuckets) {
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                if (nowSecond - rateBucketSeconds[i] < RATE_WINDOW_SECONDS)
+                    total += rateBuckets[i];
+            }
+        }
+        // nei primi secondi dello step la finestra effettiva e' piu' corta
+        double elapsed = Math.min(RATE_WINDOW_SECONDS, Math.max(1d, Duration.between(startInstant, now).toMillis() / 1000d));
+        return total / elapsed;
+    }
+
+    private long idlePending(Instant now) {
+        Long pending = cachedPending;
+        Instant at = cachedPendingAt;
+        if (pending == null || at == null || Duration.between(at, now).compareTo(PENDING_CACHE_TTL) > 0) {
+            long lastProcessedId = watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME).orElse(0L);
+            pending = countPending(lastProcessedId);
+            cachedPending = pending;
+            cachedPendingAt = now;
+        }
+        return pending;
+    }
+
+    private long countPending(long lastProcessedId) {
+        LocalDateTime dataLimite = LocalDateTime.now(clock).minusDays(finestraTemporale);
+        return rndRepository.countRendicontazioneWithNoPagamentoAfterId(lastProcessedId, dataLimite);
+    }
+}
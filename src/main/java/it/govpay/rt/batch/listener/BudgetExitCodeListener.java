@@ -0,0 +1,39 @@
+package it.govpay.rt.batch.listener;
+
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListener;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.Costanti;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Riporta nell'exit code del processo (profilo cron, via {@code SpringApplication.exit}) l'esaurimento
+ * del budget dell'ultima esecuzione, cosi' lo scheduler esterno puo' distinguere un'esecuzione
+ * completa da una fetta di arretrato.
+ */
+@Component
+@Slf4j
+public class BudgetExitCodeListener implements JobExecutionListener, ExitCodeGenerator {
+
+    private volatile boolean budgetExhausted;
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        budgetExhausted = false;
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        budgetExhausted = Costanti.EXIT_STATUS_BUDGET_EXHAUSTED.equals(jobExecution.getExitStatus().getExitCode());
+        if (budgetExhausted)
+            log.info("Esecuzione {} terminata per budget esaurito: {}", jobExecution.getId(),
+                     jobExecution.getExitStatus().getExitDescription());
+    }
+
+    @Override
+    public int getExitCode() {
+        return budgetExhausted ? Costanti.EXIT_CODE_BUDGET_EXHAUSTED : 0;
+    }
+}
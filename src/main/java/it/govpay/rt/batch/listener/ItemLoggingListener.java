@@ -0,0 +1,160 @@
+package it.govpay.rt.batch.listener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.slf4j.MDC;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.ItemReadListener;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logging del percorso per item.
+ * <p>
+ * Alla lettura di una ricevuta valorizza nell'MDC {@value #MDC_RT_ID}, {@value #MDC_TAX_CODE},
+ * {@value #MDC_IUV} e {@value #MDC_IUR}, che restano disponibili a tutti i log di processor, client e writer
+ * dello stesso item e vengono rimossi dopo la scrittura. L'esito di ogni item viene loggato a DEBUG e, una volta
+ * ogni {@code govpay.batch.item-logging.sample-every} item, a INFO; a INFO viene invece emesso periodicamente un
+ * riepilogo aggregato dei chunk scritti.
+ */
+@Component
+@Slf4j
+public class ItemLoggingListener implements StepExecutionListener, ItemReadListener<RtRetrieveContext>, ItemWriteListener<RtRetrieveBatch> {
+
+    public static final String MDC_RT_ID = "rtId";
+    public static final String MDC_TAX_CODE = "taxCode";
+    public static final String MDC_IUV = "iuv";
+    public static final String MDC_IUR = "iur";
+
+    private final BatchProperties.ItemLogging config;
+    private final Clock clock;
+
+    private final Map<RtRetrieveOutcome, Long> windowOutcomes = new EnumMap<>(RtRetrieveOutcome.class);
+    private long items;
+    private long windowChunks;
+    private long windowItems;
+    private Instant windowStart;
+
+    @Autowired
+    public ItemLoggingListener(BatchProperties batchProperties) {
+        this(batchProperties, Clock.systemUTC());
+    }
+
+    public ItemLoggingListener(BatchProperties batchProperties, Clock clock) {
+        this.config = batchProperties.getItemLogging();
+        this.clock = clock;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        items = 0L;
+        resetWindow();
+    }
+
+    @Override
+    public void afterRead(RtRetrieveContext item) {
+        putMdc(item);
+    }
+
+    @Override
+    public void afterWrite(Chunk<? extends RtRetrieveBatch> chunk) {
+        for (RtRetrieveBatch item : chunk) {
+            if (item == null)
+                continue;
+            items++;
+            windowItems++;
+            RtRetrieveOutcome outcome = item.getOutcome();
+            if (outcome != null)
+                windowOutcomes.merge(outcome, 1L, Long::sum);
+            if (isSampled(items))
+                log.info("Ricevuta {} elaborata: esito {}", item.getRtId(), outcome);
+            else
+                log.debug("Ricevuta {} elaborata: esito {}", item.getRtId(), outcome);
+        }
+        windowChunks++;
+        if (windowChunks >= Math.max(1, config.getSummaryEvery())
+                || Duration.between(windowStart, clock.instant()).compareTo(config.getSummaryInterval()) >= 0)
+            logSummary();
+        clearMdc();
+    }
+
+    @Override
+    public void onWriteError(Exception exception, Chunk<? extends RtRetrieveBatch> items) {
+        clearMdc();
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (windowItems > 0)
+            logSummary();
+        clearMdc();
+        return stepExecution.getExitStatus();
+    }
+
+    /**
+     * @param itemNumber progressivo (da 1) dell'item nello step
+     * @return true se l'item va loggato a INFO
+     */
+    public boolean isSampled(long itemNumber) {
+        return config.getSampleEvery() > 0 && (itemNumber - 1) % config.getSampleEvery() == 0;
+    }
+
+    private void logSummary() {
+        Duration elapsed = Duration.between(windowStart, clock.instant());
+        log.info("Riepilogo: {} ricevute in {} chunk negli ultimi {}s (recuperate {}, non trovate {}, invio fallito {}, in errore {}, rinviate {}), totale step {}",
+                 windowItems, windowChunks, elapsed.toSeconds(),
+                 windowOutcomes.getOrDefault(RtRetrieveOutcome.RECOVERED, 0L),
+                 windowOutcomes.getOrDefault(RtRetrieveOutcome.NOT_FOUND, 0L),
+                 windowOutcomes.getOrDefault(RtRetrieveOutcome.SEND_FAILED, 0L),
+                 windowOutcomes.getOrDefault(RtRetrieveOutcome.FAILED, 0L),
+                 windowOutcomes.getOrDefault(RtRetrieveOutcome.DEFERRED, 0L),
+                 items);
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowOutcomes.clear();
+        windowChunks = 0L;
+        windowItems = 0L;
+        windowStart = clock.instant();
+    }
+
+    /**
+     * Valorizza nell'MDC del thread corrente gli identificativi della ricevuta.
+     */
+    public static void putMdc(RtRetrieveContext item) {
+        MDC.put(MDC_RT_ID, String.valueOf(item.getRtId()));
+        putIfPresent(MDC_TAX_CODE, item.getTaxCode());
+        putIfPresent(MDC_IUV, item.getIuv());
+        putIfPresent(MDC_IUR, item.getIur());
+    }
+
+    /**
+     * Rimuove dall'MDC del thread corrente gli identificativi della ricevuta.
+     */
+    public static void clearMdc() {
+        MDC.remove(MDC_RT_ID);
+        MDC.remove(MDC_TAX_CODE);
+        MDC.remove(MDC_IUV);
+        MDC.remove(MDC_IUR);
+    }
+
+    private static void putIfPresent(String key, String value) {
+        if (value != null)
+            MDC.put(key, value);
+    }
+}
@@ -0,0 +1,62 @@
+package it.govpay.rt.batch.listener;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.service.BatchMetadataRetentionService;
+import it.govpay.rt.batch.service.BatchTaskService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Avvia lo svecchiamento dei metadati Spring Batch al termine di un'esecuzione del job, al massimo
+ * una volta ogni {@code govpay.batch.retention.interval}.
+ * <p>
+ * L'istante dell'ultima pulizia e' salvato nella riga {@value Costanti#METADATA_RETENTION_TASK_NAME} di
+ * RT_BATCH_TASK, cosi' l'intervallo vale anche in modalita' cron (ogni esecuzione e' una nuova JVM) e
+ * tra nodi diversi: la riga viene aggiornata con un update condizionale e uno solo dei nodi esegue la pulizia.
+ * Un errore della pulizia non altera l'esito del job e la pulizia viene ritentata all'intervallo successivo.
+ */
+@Component
+@Slf4j
+public class MetadataRetentionListener implements JobExecutionListener {
+
+    private final BatchMetadataRetentionService retentionService;
+    private final BatchProperties.Retention retention;
+    private final BatchTaskService taskService;
+    private final Clock clock;
+
+    @Autowired
+    public MetadataRetentionListener(BatchMetadataRetentionService retentionService, BatchTaskService taskService,
+                                     BatchProperties batchProperties) {
+        this(retentionService, taskService, batchProperties, Clock.systemDefaultZone());
+    }
+
+    public MetadataRetentionListener(BatchMetadataRetentionService retentionService, BatchTaskService taskService,
+                                     BatchProperties batchProperties, Clock clock) {
+        this.retentionService = retentionService;
+        this.taskService = taskService;
+        this.retention = batchProperties.getRetention();
+        this.clock = clock;
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (!retention.isEnabled())
+            return;
+        try {
+            if (!taskService.claim(Costanti.METADATA_RETENTION_TASK_NAME, retention.getInterval(), LocalDateTime.now(clock)))
+                return;
+            long deleted = retentionService.purge();
+            log.debug("Retention metadati Spring Batch completata: {} esecuzioni eliminate", deleted);
+        } catch (RuntimeException e) {
+            log.warn("Retention metadati Spring Batch non riuscita, verra' ritentata tra {}: {}", retention.getInterval(), e.getMessage(), e);
+        }
+    }
+}
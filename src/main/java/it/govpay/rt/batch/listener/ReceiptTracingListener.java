@@ -0,0 +1,118 @@
+package it.govpay.rt.batch.listener;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.ItemProcessListener;
+import org.springframework.batch.core.listener.ItemReadListener;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+
+/**
+ * Observation radice del percorso di una ricevuta.
+ * <p>
+ * L'observation {@value Costanti#OBSERVATION_RECEIPT} viene aperta alla lettura dell'item e resta in scope
+ * durante processor e writer, cosi' che le observation figlie (lookup del dominio, GET pagoPA, conversione,
+ * paSendRTV2, aggiornamento del writer, accodamento GDE) e le chiamate HTTP uscenti ne ereditino il contesto.
+ * Viene chiusa dopo la scrittura, sugli errori di processor/writer, quando il processor scarta l'item e,
+ * per sicurezza, alla fine dello step. Lo step e' single-thread: apertura e chiusura avvengono sullo stesso thread.
+ */
+@Component
+public class ReceiptTracingListener implements StepExecutionListener, ItemReadListener<RtRetrieveContext>,
+        ItemProcessListener<RtRetrieveContext, RtRetrieveBatch>, ItemWriteListener<RtRetrieveBatch> {
+
+    public static final String KEY_OUTCOME = "outcome";
+    public static final String OUTCOME_FILTERED = "FILTERED";
+    public static final String OUTCOME_ERROR = "ERROR";
+    public static final String OUTCOME_INTERRUPTED = "INTERRUPTED";
+
+    private final ObservationRegistry observationRegistry;
+
+    private Observation current;
+    private Observation.Scope scope;
+
+    public ReceiptTracingListener(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public void afterRead(RtRetrieveContext item) {
+        stop(OUTCOME_INTERRUPTED);
+        current = start(item, observationRegistry);
+        scope = current.openScope();
+    }
+
+    /**
+     * Avvia l'observation {@value Costanti#OBSERVATION_RECEIPT} di una ricevuta, con esito
+     * {@value #OUTCOME_INTERRUPTED} finche' non viene chiusa con quello effettivo.
+     */
+    public static Observation start(RtRetrieveContext item, ObservationRegistry observationRegistry) {
+        return Observation.createNotStarted(Costanti.OBSERVATION_RECEIPT, observationRegistry)
+                .contextualName("receipt " + item.getTaxCode())
+                .lowCardinalityKeyValue(KEY_OUTCOME, OUTCOME_INTERRUPTED)
+                .highCardinalityKeyValue("rt.id", String.valueOf(item.getRtId()))
+                .highCardinalityKeyValue("rt.tax-code", String.valueOf(item.getTaxCode()))
+                .highCardinalityKeyValue("rt.iuv", String.valueOf(item.getIuv()))
+                .highCardinalityKeyValue("rt.iur", String.valueOf(item.getIur()))
+                .start();
+    }
+
+    @Override
+    public void afterProcess(RtRetrieveContext item, RtRetrieveBatch result) {
+        if (result == null)
+            stop(OUTCOME_FILTERED);
+    }
+
+    @Override
+    public void onProcessError(RtRetrieveContext item, Exception e) {
+        fail(e);
+    }
+
+    @Override
+    public void afterWrite(Chunk<? extends RtRetrieveBatch> items) {
+        String outcome = OUTCOME_INTERRUPTED;
+        for (RtRetrieveBatch item : items) {
+            if (item != null && item.getOutcome() != null) {
+                outcome = item.getOutcome().name();
+                break;
+            }
+        }
+        stop(outcome);
+    }
+
+    @Override
+    public void onWriteError(Exception exception, Chunk<? extends RtRetrieveBatch> items) {
+        fail(exception);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        stop(OUTCOME_INTERRUPTED);
+        return stepExecution.getExitStatus();
+    }
+
+    private void fail(Exception e) {
+        if (current != null)
+            current.error(e);
+        stop(OUTCOME_ERROR);
+    }
+
+    private void stop(String outcome) {
+        if (current == null)
+            return;
+        try {
+            scope.close();
+        } finally {
+            current.lowCardinalityKeyValue(KEY_OUTCOME, outcome).stop();
+            current = null;
+            scope = null;
+        }
+    }
+}
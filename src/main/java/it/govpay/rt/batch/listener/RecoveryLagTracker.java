@@ -0,0 +1,128 @@
+package it.govpay.rt.batch.listener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Misura per quanto tempo un pagamento resta senza ricevuta, a partire dalla data della rendicontazione.
+ * <p>
+ * Per ogni ricevuta scritta registra il ritardo nella distribution summary {@value Costanti#METRIC_RECOVERY_LAG}
+ * (secondi, tag dominio ed esito). Il gauge {@value Costanti#METRIC_PENDING_OLDEST_AGE} riporta l'eta' della
+ * rendicontazione piu' vecchia tra quelle lette dall'ultima esecuzione e non ancora recuperate: una ricevuta esce
+ * dal gauge solo con esito RECOVERED, le altre (NOT_FOUND, SEND_FAILED, FAILED, DEFERRED) restano senza ricevuta
+ * e continuano a contare fino all'esecuzione successiva. Le ricevute fallite il cui nuovo tentativo non e' ancora
+ * scaduto non vengono lette e quindi non sono coperte. Le date sono contate per minuto, cosi' la memoria non cresce
+ * con l'arretrato.
+ */
+@Component
+@Slf4j
+public class RecoveryLagTracker implements ItemWriteListener<RtRetrieveBatch> {
+
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    // ricevute in attesa per minuto della rendicontazione
+    private final TreeMap<LocalDateTime, Integer> pending = new TreeMap<>();
+
+    @Autowired
+    public RecoveryLagTracker(MeterRegistry meterRegistry) {
+        this(meterRegistry, Clock.systemDefaultZone());
+    }
+
+    public RecoveryLagTracker(MeterRegistry meterRegistry, Clock clock) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        Gauge.builder(Costanti.METRIC_PENDING_OLDEST_AGE, this, RecoveryLagTracker::oldestPendingAge)
+             .description("Eta' della rendicontazione piu' vecchia in attesa di ricevuta tra quelle lette dall'ultima "
+                          + "esecuzione (esclusi i nuovi tentativi non ancora scaduti)")
+             .baseUnit("seconds")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Sostituisce le ricevute in attesa con quelle lette dall'esecuzione che sta partendo.
+     */
+    public void track(Collection<RtRetrieveContext> items) {
+        synchronized (pending) {
+            pending.clear();
+        }
+        add(items);
+    }
+
+    /**
+     * Aggiunge alle ricevute in attesa quelle caricate durante l'esecuzione (lotti dello snapshot di id).
+     */
+    public void add(Collection<RtRetrieveContext> items) {
+        TreeMap<LocalDateTime, Integer> counts = new TreeMap<>();
+        for (RtRetrieveContext item : items) {
+            if (item.getDataRendicontazione() != null)
+                counts.merge(minute(item.getDataRendicontazione()), 1, Integer::sum);
+        }
+        synchronized (pending) {
+            counts.forEach((minute, count) -> pending.merge(minute, count, Integer::sum));
+        }
+        log.debug("Ritardo di recupero: {} ricevute in attesa aggiunte, la piu' vecchia da {}s", items.size(), (long) oldestPendingAge());
+    }
+
+    @Override
+    public void afterWrite(Chunk<? extends RtRetrieveBatch> items) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        for (RtRetrieveBatch item : items) {
+            if (item == null || item.getOutcome() == null || item.getDataRendicontazione() == null)
+                continue;
+            DistributionSummary.builder(Costanti.METRIC_RECOVERY_LAG)
+                               .description("Tempo tra la rendicontazione del pagamento e l'elaborazione della ricevuta")
+                               .baseUnit("seconds")
+                               .tag(Costanti.METRIC_TAG_DOMAIN, item.getCodDominio() != null ? item.getCodDominio() : "")
+                               .tag(Costanti.METRIC_TAG_OUTCOME, item.getOutcome().name())
+                               .register(meterRegistry)
+                               .record(Math.max(0L, Duration.between(item.getDataRendicontazione(), now).toSeconds()));
+            // solo le ricevute recuperate smettono di essere in attesa
+            if (item.getOutcome() == RtRetrieveOutcome.RECOVERED)
+                untrack(item.getDataRendicontazione());
+        }
+    }
+
+    private void untrack(LocalDateTime dataRendicontazione) {
+        LocalDateTime key = minute(dataRendicontazione);
+        synchronized (pending) {
+            pending.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * @return eta' in secondi della rendicontazione piu' vecchia in attesa, 0 se non ce ne sono
+     */
+    public double oldestPendingAge() {
+        Map.Entry<LocalDateTime, Integer> oldest;
+        synchronized (pending) {
+            oldest = pending.firstEntry();
+        }
+        if (oldest == null)
+            return 0d;
+        return Math.max(0L, Duration.between(oldest.getKey(), LocalDateTime.now(clock)).toSeconds());
+    }
+
+    private static LocalDateTime minute(LocalDateTime dataRendicontazione) {
+        return dataRendicontazione.truncatedTo(ChronoUnit.MINUTES);
+    }
+}
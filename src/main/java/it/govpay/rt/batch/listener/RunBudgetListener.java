@@ -0,0 +1,93 @@
+package it.govpay.rt.batch.listener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Budget della singola esecuzione dello step di recupero: durata massima e numero massimo di ricevute.
+ * <p>
+ * I limiti si leggono dai parametri del job ({@value Costanti#JOB_PARAM_MAX_DURATION_SECONDS},
+ * {@value Costanti#JOB_PARAM_MAX_ITEMS}) o, in mancanza, da {@code govpay.batch.budget.*}.
+ * Il reader interroga {@link #isExhausted()} prima di ogni lettura: a budget esaurito termina la lettura,
+ * lo step si chiude dopo il chunk corrente (gia' scritto, con watermark salvato) e l'exit status
+ * diventa {@value Costanti#EXIT_STATUS_BUDGET_EXHAUSTED}.
+ */
+@Component
+@StepScope
+@Slf4j
+public class RunBudgetListener implements StepExecutionListener {
+
+    private final Duration maxDuration;
+    private final long maxItems;
+    private final Clock clock;
+
+    private StepExecution stepExecution;
+    private Instant startInstant;
+    private volatile boolean exhausted;
+
+    @Autowired
+    public RunBudgetListener(
+            BatchProperties batchProperties,
+            @Value("#{jobParameters['" + Costanti.JOB_PARAM_MAX_DURATION_SECONDS + "']}") Long maxDurationSeconds,
+            @Value("#{jobParameters['" + Costanti.JOB_PARAM_MAX_ITEMS + "']}") Long maxItems) {
+        this(batchProperties, maxDurationSeconds, maxItems, Clock.systemUTC());
+    }
+
+    public RunBudgetListener(BatchProperties batchProperties, Long maxDurationSeconds, Long maxItems, Clock clock) {
+        BatchProperties.Budget budget = batchProperties.getBudget();
+        this.maxDuration = maxDurationSeconds != null ? Duration.ofSeconds(maxDurationSeconds) : budget.getMaxDuration();
+        Long items = maxItems != null ? maxItems : budget.getMaxItems();
+        this.maxItems = items != null && items > 0 ? items : Long.MAX_VALUE;
+        this.clock = clock;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        this.stepExecution = stepExecution;
+        this.startInstant = clock.instant();
+        this.exhausted = false;
+        if (maxDuration != null || maxItems != Long.MAX_VALUE)
+            log.info("Budget esecuzione: durata massima {}, ricevute massime {}",
+                     maxDuration != null ? maxDuration : "illimitata",
+                     maxItems != Long.MAX_VALUE ? maxItems : "illimitate");
+    }
+
+    /**
+     * @return true se non devono essere lette altre ricevute in questa esecuzione
+     */
+    public boolean isExhausted() {
+        if (exhausted)
+            return true;
+        if (stepExecution == null)
+            return false;
+        if (stepExecution.getReadCount() >= maxItems) {
+            log.info("Budget esaurito: lette {} ricevute (massimo {})", stepExecution.getReadCount(), maxItems);
+            exhausted = true;
+        } else if (maxDuration != null && Duration.between(startInstant, clock.instant()).compareTo(maxDuration) >= 0) {
+            log.info("Budget esaurito: raggiunta la durata massima di {}", maxDuration);
+            exhausted = true;
+        }
+        return exhausted;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (exhausted && ExitStatus.COMPLETED.getExitCode().equals(stepExecution.getExitStatus().getExitCode()))
+            return new ExitStatus(Costanti.EXIT_STATUS_BUDGET_EXHAUSTED,
+                                  "Budget esaurito dopo " + stepExecution.getReadCount() + " ricevute: arretrato rinviato alla prossima esecuzione");
+        return stepExecution.getExitStatus();
+    }
+}
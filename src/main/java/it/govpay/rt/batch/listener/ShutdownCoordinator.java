@@ -0,0 +1,114 @@
+package it.govpay.rt.batch.listener;
+
+import java.time.Duration;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.gde.service.GdeService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordina lo shutdown (SIGTERM) con un job in esecuzione.
+ * <p>
+ * Alla chiusura del contesto, prima che executor e scheduler vengano fermati:
+ * <ol>
+ * <li>chiede al reader di non leggere altre ricevute;</li>
+ * <li>attende, entro {@code govpay.batch.shutdown.grace-period}, che lo step in corso completi la ricevuta
+ * in lavorazione (recupero, invio a GovPay, commit di disableRecuperoRt e watermark) e termini;</li>
+ * <li>con il tempo residuo attende l'invio degli eventi GDE gia' accodati.</li>
+ * </ol>
+ */
+@Component
+@Slf4j
+public class ShutdownCoordinator implements ApplicationListener<ContextClosedEvent>, StepExecutionListener, Ordered {
+
+    private final GdeService gdeService;
+    private final Duration gracePeriod;
+
+    private final Object monitor = new Object();
+    private int activeSteps;
+    private volatile boolean shutdownRequested;
+
+    public ShutdownCoordinator(GdeService gdeService, BatchProperties batchProperties) {
+        this.gdeService = gdeService;
+        this.gracePeriod = batchProperties.getShutdown().getGracePeriod();
+    }
+
+    /**
+     * Eseguito prima dei listener degli executor, che alla chiusura del contesto smettono di accettare task.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        shutdownRequested = true;
+        long deadline = System.nanoTime() + gracePeriod.toNanos();
+        log.info("Shutdown richiesto: stop della lettura e attesa degli step in corso (max {})", gracePeriod);
+
+        if (!awaitActiveSteps(deadline))
+            log.warn("Grace period scaduto con {} step ancora in esecuzione: la ricevuta in corso verra' ripresa alla prossima esecuzione",
+                     activeSteps());
+
+        long remaining = Math.max(0L, deadline - System.nanoTime());
+        if (gdeService.flush(Duration.ofNanos(remaining)))
+            log.info("Shutdown: eventi GDE inviati");
+    }
+
+    /**
+     * @return true se il reader deve smettere di leggere ricevute
+     */
+    public boolean isShutdownRequested() {
+        return shutdownRequested;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        synchronized (monitor) {
+            activeSteps++;
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        synchronized (monitor) {
+            activeSteps--;
+            monitor.notifyAll();
+        }
+        if (shutdownRequested)
+            return stepExecution.getExitStatus().addExitDescription("Lettura interrotta per shutdown dell'applicazione");
+        return stepExecution.getExitStatus();
+    }
+
+    int activeSteps() {
+        synchronized (monitor) {
+            return activeSteps;
+        }
+    }
+
+    private boolean awaitActiveSteps(long deadline) {
+        synchronized (monitor) {
+            while (activeSteps > 0) {
+                long waitMillis = (deadline - System.nanoTime()) / 1_000_000L;
+                if (waitMillis <= 0)
+                    return false;
+                try {
+                    monitor.wait(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -10,22 +10,34 @@ import org.springframework.batch.infrastructure.item.ExecutionContext;
 import org.springframework.stereotype.Component;
 
 import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.service.WatermarkService;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Component
 public class WatermarkBootstrapListener implements JobExecutionListener {
 
     private final JobRepository jobRepository;
+    private final WatermarkService watermarkService;
 
-    public WatermarkBootstrapListener(JobRepository jobRepository) {
+    public WatermarkBootstrapListener(JobRepository jobRepository, WatermarkService watermarkService) {
         this.jobRepository = jobRepository;
+        this.watermarkService = watermarkService;
     }
 
     @Override
     public void beforeJob(JobExecution current) {
         String jobName = current.getJobInstance().getJobName();
 
-        Long last = findLastWatermark(jobName, current.getId());
-        current.getExecutionContext().putLong(Costanti.LAST_PROCESSED_ID_KEY, last != null ? last : 0L);
+        // lettura puntuale dalla tabella RT_BATCH_WATERMARK; la scansione dello storico
+        // delle esecuzioni resta solo come fallback per le installazioni non ancora migrate
+        Long last = watermarkService.getWatermark(jobName)
+                .orElseGet(() -> findLastWatermark(jobName, current.getId()));
+        log.debug("Watermark iniziale per il job {}: {}", jobName, last);
+        long initial = last != null ? last : 0L;
+        // riga creata prima dei chunk: il writer si limita ad aggiornarla
+        watermarkService.seed(jobName, initial);
+        current.getExecutionContext().putLong(Costanti.LAST_PROCESSED_ID_KEY, initial);
     }
 
     private Long findLastWatermark(String jobName, long currentExecutionId) {
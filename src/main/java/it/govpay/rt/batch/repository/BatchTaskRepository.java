@@ -0,0 +1,31 @@
+package it.govpay.rt.batch.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.govpay.rt.batch.entity.BatchTask;
+
+@Repository
+public interface BatchTaskRepository extends JpaRepository<BatchTask, String> {
+
+	/**
+	 * Registra l'esecuzione di un'attivita' periodica solo se la precedente e' anteriore a {@code threshold}:
+	 * di due processi concorrenti uno solo aggiorna la riga.
+	 *
+	 * @return 1 se l'attivita' va eseguita, 0 se e' gia' stata eseguita dopo {@code threshold}
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE BatchTask t SET t.lastRun = :now " +
+	       "WHERE t.taskName = :taskName AND (t.lastRun IS NULL OR t.lastRun <= :threshold)")
+	int claim(
+			@Param("taskName") String taskName,
+			@Param("threshold") LocalDateTime threshold,
+			@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,36 @@
+package it.govpay.rt.batch.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import it.govpay.rt.batch.entity.BatchWatermark;
+
+@Repository
+public interface BatchWatermarkRepository extends JpaRepository<BatchWatermark, BatchWatermark.Key> {
+
+	@Query("SELECT w.lastProcessedId FROM BatchWatermark w " +
+	       "WHERE w.jobName = :jobName AND w.partitionKey = :partitionKey")
+	Optional<Long> findLastProcessedId(
+			@Param("jobName") String jobName,
+			@Param("partitionKey") String partitionKey);
+
+	/**
+	 * Avanza il watermark solo se il nuovo valore e' maggiore di quello salvato.
+	 *
+	 * @return numero di righe aggiornate (0 se la riga non esiste o il watermark e' gia' oltre)
+	 */
+	@Modifying
+	@Query("UPDATE BatchWatermark w SET w.lastProcessedId = :lastProcessedId, w.lastUpdated = :lastUpdated " +
+	       "WHERE w.jobName = :jobName AND w.partitionKey = :partitionKey AND w.lastProcessedId < :lastProcessedId")
+	int advance(
+			@Param("jobName") String jobName,
+			@Param("partitionKey") String partitionKey,
+			@Param("lastProcessedId") Long lastProcessedId,
+			@Param("lastUpdated") LocalDateTime lastUpdated);
+}
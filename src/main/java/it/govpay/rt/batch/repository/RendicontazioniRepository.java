@@ -1,8 +1,10 @@
 package it.govpay.rt.batch.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -13,7 +15,7 @@ import it.govpay.rt.batch.entity.Rendicontazione;
 
 @Repository
 public interface RendicontazioniRepository extends JpaRepository<Rendicontazione, Long> {
-	@Query("SELECT r.id, d.codDominio, r.iuv, r.iur " +
+	@Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
 	              "FROM Rendicontazione r " +
 	                   "JOIN r.singoloVersamento sv " +
 	                   "JOIN r.fr f " +
@@ -28,7 +30,7 @@ public interface RendicontazioniRepository extends JpaRepository<Rendicontazione
     		@Param("ultimoIdElaborato") Long ultimoIdElaborato,
     		@Param("dataLimite") LocalDateTime dataLimite);
 
-    @Query("SELECT r.id, d.codDominio, r.iuv, r.iur " +
+    @Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
             "FROM Rendicontazione r " +
                  "JOIN r.singoloVersamento sv " +
                  "JOIN r.fr f " +
@@ -40,6 +42,137 @@ public interface RendicontazioniRepository extends JpaRepository<Rendicontazione
             "ORDER BY r.id ASC")
     List<Object[]> findRendicontazioneWithNoPagamento(@Param("dataLimite") LocalDateTime dataLimite);
 
+    /**
+     * Conteggio con lo stesso predicato di {@link #findRendicontazioneWithNoPagamentoAfterId}, senza
+     * ordinamento ne' join sul dominio: usato per il monitoraggio dell'avanzamento.
+     */
+    @Query("SELECT COUNT(r) " +
+            "FROM Rendicontazione r " +
+            "WHERE r.singoloVersamento IS NOT NULL AND " +
+                  "r.idPagamento IS NULL AND " +
+                  "r.eseguiRecuperoRt = true AND " +
+                  "r.id > :ultimoIdElaborato AND " +
+                  "r.data > :dataLimite")
+    long countRendicontazioneWithNoPagamentoAfterId(
+    		@Param("ultimoIdElaborato") Long ultimoIdElaborato,
+    		@Param("dataLimite") LocalDateTime dataLimite);
+
+    /**
+     * Primi id pendenti oltre il watermark: con {@code Pageable} di dimensione 1 e' un controllo di
+     * esistenza che si ferma al primo elemento dell'indice.
+     */
+    @Query("SELECT r.id " +
+            "FROM Rendicontazione r " +
+            "WHERE r.singoloVersamento IS NOT NULL AND " +
+                  "r.idPagamento IS NULL AND " +
+                  "r.eseguiRecuperoRt = true AND " +
+                  "r.id > :ultimoIdElaborato AND " +
+                  "r.data > :dataLimite " +
+            "ORDER BY r.id ASC")
+    List<Long> findPendingIdsAfterId(
+    		@Param("ultimoIdElaborato") Long ultimoIdElaborato,
+    		@Param("dataLimite") LocalDateTime dataLimite,
+    		Pageable pageable);
+
+    /**
+     * Dettagli di un lotto di id dello snapshot del reader (modalita' {@code ID_SNAPSHOT}), con lo stesso predicato
+     * di {@link #findRendicontazioneWithNoPagamentoAfterId}: gli id gia' recuperati dopo lo snapshot non vengono
+     * restituiti.
+     */
+    @Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
+            "FROM Rendicontazione r " +
+                 "JOIN r.singoloVersamento sv " +
+                 "JOIN r.fr f " +
+                 "JOIN f.dominio d " +
+            "WHERE r.singoloVersamento IS NOT NULL AND " +
+                  "r.idPagamento IS NULL AND " +
+                  "r.eseguiRecuperoRt = true AND " +
+                  "r.id IN :ids " +
+            "ORDER BY r.id ASC")
+    List<Object[]> findRendicontazioneWithNoPagamentoDetails(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Rielaborazione mirata per dominio e/o intervallo di id (estremi inclusi, ciascun filtro opzionale).
+     * <p>
+     * Non filtra su {@code eseguiRecuperoRt}, per poter ritentare anche le ricevute il cui recupero e' stato
+     * disabilitato, e si ferma a {@code maxId} (il watermark del job principale alla richiesta), cosi' da non
+     * sovrapporsi alla scansione oltre il watermark del job schedulato.
+     */
+    @Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
+            "FROM Rendicontazione r " +
+                 "JOIN r.singoloVersamento sv " +
+                 "JOIN r.fr f " +
+                 "JOIN f.dominio d " +
+            "WHERE r.singoloVersamento IS NOT NULL AND " +
+                  "r.idPagamento IS NULL AND " +
+                  "(:codDominio IS NULL OR d.codDominio = :codDominio) AND " +
+                  "(:fromId IS NULL OR r.id >= :fromId) AND " +
+                  "(:toId IS NULL OR r.id <= :toId) AND " +
+                  "r.id <= :maxId AND " +
+                  "r.data > :dataLimite " +
+            "ORDER BY r.id ASC")
+    List<Object[]> findRendicontazioneWithNoPagamentoInRange(
+    		@Param("codDominio") String codDominio,
+    		@Param("fromId") Long fromId,
+    		@Param("toId") Long toId,
+    		@Param("maxId") Long maxId,
+    		@Param("dataLimite") LocalDateTime dataLimite);
+
+    /**
+     * Rielaborazione mirata di un elenco esplicito di id, con gli stessi vincoli di
+     * {@link #findRendicontazioneWithNoPagamentoInRange}.
+     */
+    @Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
+            "FROM Rendicontazione r " +
+                 "JOIN r.singoloVersamento sv " +
+                 "JOIN r.fr f " +
+                 "JOIN f.dominio d " +
+            "WHERE r.singoloVersamento IS NOT NULL AND " +
+                  "r.idPagamento IS NULL AND " +
+                  "r.id IN :ids AND " +
+                  "r.id <= :maxId AND " +
+                  "r.data > :dataLimite " +
+            "ORDER BY r.id ASC")
+    List<Object[]> findRendicontazioneWithNoPagamentoByIds(
+    		@Param("ids") Collection<Long> ids,
+    		@Param("maxId") Long maxId,
+    		@Param("dataLimite") LocalDateTime dataLimite);
+
+    /**
+     * Pagina del recupero storico: ricevute da recuperare di una partizione ({@code afterId}, {@code maxId}],
+     * senza finestra temporale e con filtro opzionale sulla data della rendicontazione ({@code dataA} esclusa).
+     */
+    @Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
+            "FROM Rendicontazione r " +
+                 "JOIN r.singoloVersamento sv " +
+                 "JOIN r.fr f " +
+                 "JOIN f.dominio d " +
+            "WHERE r.singoloVersamento IS NOT NULL AND " +
+                  "r.idPagamento IS NULL AND " +
+                  "r.eseguiRecuperoRt = true AND " +
+                  "r.id > :afterId AND " +
+                  "r.id <= :maxId AND " +
+                  "(:dataDa IS NULL OR r.data >= :dataDa) AND " +
+                  "(:dataA IS NULL OR r.data < :dataA) " +
+            "ORDER BY r.id ASC")
+    List<Object[]> findRendicontazioneWithNoPagamentoBetween(
+    		@Param("afterId") Long afterId,
+    		@Param("maxId") Long maxId,
+    		@Param("dataDa") LocalDateTime dataDa,
+    		@Param("dataA") LocalDateTime dataA,
+    		Pageable pageable);
+
+    /**
+     * Estremi degli id delle rendicontazioni nell'intervallo di date ({@code dataA} esclusa), per partizionare il
+     * recupero storico: null se non ce ne sono. Risolti tramite l'indice su (data, id) distribuito in
+     * {@code sql/<dialect>/indici_recupero_rt.sql}, senza il quale ciascuna query scansiona l'intera tabella.
+     */
+    @Query("SELECT MIN(r.id) FROM Rendicontazione r WHERE r.data >= :dataDa AND r.data < :dataA")
+    Long findMinIdByData(@Param("dataDa") LocalDateTime dataDa, @Param("dataA") LocalDateTime dataA);
+
+    @Query("SELECT MAX(r.id) FROM Rendicontazione r WHERE r.data >= :dataDa AND r.data < :dataA")
+    Long findMaxIdByData(@Param("dataDa") LocalDateTime dataDa, @Param("dataA") LocalDateTime dataA);
+
     @Modifying
     @Query("UPDATE Rendicontazione r SET r.eseguiRecuperoRt = false WHERE r.id = :id")
     void disableRecuperoRt(@Param("id") Long id);
@@ -0,0 +1,54 @@
+package it.govpay.rt.batch.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import it.govpay.rt.batch.entity.RetrieveOutcome;
+
+@Repository
+public interface RetrieveOutcomeRepository extends JpaRepository<RetrieveOutcome, Long> {
+
+	/**
+	 * Ricevute fallite da ritentare: stesse colonne di
+	 * {@link RendicontazioniRepository#findRendicontazioneWithNoPagamentoAfterId}, selezionate tramite l'indice
+	 * su NEXT_ELIGIBLE e poi per chiave primaria su RENDICONTAZIONI, in ordine di scadenza.
+	 */
+	@Query("SELECT r.id, d.codDominio, r.iuv, r.iur, r.data " +
+	       "FROM RetrieveOutcome o, Rendicontazione r " +
+	            "JOIN r.fr f " +
+	            "JOIN f.dominio d " +
+	       "WHERE r.id = o.idRendicontazione AND " +
+	             "o.nextEligible <= :now AND " +
+	             "r.singoloVersamento IS NOT NULL AND " +
+	             "r.idPagamento IS NULL AND " +
+	             "r.eseguiRecuperoRt = true AND " +
+	             "r.data > :dataLimite " +
+	       "ORDER BY o.nextEligible ASC")
+	List<Object[]> findRetryable(
+			@Param("now") LocalDateTime now,
+			@Param("dataLimite") LocalDateTime dataLimite,
+			Pageable pageable);
+
+	/**
+	 * Id delle ricevute da ritentare, con lo stesso predicato di {@link #findRetryable}: usata con una pagina di una
+	 * riga come query di esistenza dal poll.
+	 */
+	@Query("SELECT r.id " +
+	       "FROM RetrieveOutcome o, Rendicontazione r " +
+	       "WHERE r.id = o.idRendicontazione AND " +
+	             "o.nextEligible <= :now AND " +
+	             "r.singoloVersamento IS NOT NULL AND " +
+	             "r.idPagamento IS NULL AND " +
+	             "r.eseguiRecuperoRt = true AND " +
+	             "r.data > :dataLimite")
+	List<Long> findRetryableIds(
+			@Param("now") LocalDateTime now,
+			@Param("dataLimite") LocalDateTime dataLimite,
+			Pageable pageable);
+}
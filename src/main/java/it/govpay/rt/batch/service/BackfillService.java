@@ -0,0 +1,229 @@
+package it.govpay.rt.batch.service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.JobInstance;
+import org.springframework.batch.core.job.parameters.JobParameters;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.BackfillInfo;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Avvio del recupero storico (job {@value Costanti#RT_BACKFILL_JOB_NAME}) per intervallo di date e/o di id,
+ * senza il limite di {@code govpay.batch.finestra-temporale}.
+ * <p>
+ * L'intervallo viene limitato al watermark corrente del job principale, che continua a girare in parallelo sulle
+ * ricevute successive; e' ammesso un solo recupero storico alla volta per nodo. Estremi di id, watermark e fine
+ * dell'intervallo di date vengono risolti alla richiesta e salvati nei parametri del job: se l'ultimo recupero
+ * storico con gli stessi estremi richiesti si e' interrotto (FAILED o STOPPED), la richiesta lo riavvia e ogni
+ * partizione riprende dal proprio watermark.
+ */
+@Service
+@Slf4j
+public class BackfillService {
+
+    private static final LocalDateTime DATA_MIN = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final JobOperator jobOperator;
+    private final JobRepository jobRepository;
+    private final Job rtBackfillJob;
+    private final WatermarkService watermarkService;
+    private final RendicontazioniRepository rndRepository;
+    private final BatchProperties.Backfill config;
+    private final Executor executor;
+    private final Clock clock;
+
+    private final AtomicReference<BackfillInfo> current = new AtomicReference<>();
+
+    @Autowired
+    public BackfillService(JobOperator jobOperator, JobRepository jobRepository, @Qualifier("rtBackfillJob") Job rtBackfillJob,
+                           WatermarkService watermarkService, RendicontazioniRepository rndRepository,
+                           BatchProperties batchProperties) {
+        this(jobOperator, jobRepository, rtBackfillJob, watermarkService, rndRepository, batchProperties,
+             new SimpleAsyncTaskExecutor("rt-backfill-launcher-"), Clock.systemDefaultZone());
+    }
+
+    public BackfillService(JobOperator jobOperator, JobRepository jobRepository, Job rtBackfillJob,
+                           WatermarkService watermarkService, RendicontazioniRepository rndRepository,
+                           BatchProperties batchProperties, Executor executor, Clock clock) {
+        this.jobOperator = jobOperator;
+        this.jobRepository = jobRepository;
+        this.rtBackfillJob = rtBackfillJob;
+        this.watermarkService = watermarkService;
+        this.rndRepository = rndRepository;
+        this.config = batchProperties.getBackfill();
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Avvia il recupero storico in background.
+     *
+     * @throws IllegalArgumentException se mancano gli estremi o non sono validi
+     * @throws IllegalStateException    se un recupero storico e' gia' in corso
+     */
+    public BackfillInfo submit(LocalDate fromDate, LocalDate toDate, Long fromId, Long toId) {
+        if (fromDate == null && toDate == null && fromId == null && toId == null)
+            throw new IllegalArgumentException("Indicare almeno uno tra fromDate, toDate, fromId o toId");
+        if (fromDate != null && toDate != null && fromDate.isAfter(toDate))
+            throw new IllegalArgumentException("fromDate (" + fromDate + ") successiva a toDate (" + toDate + ")");
+        if (fromId != null && toId != null && fromId > toId)
+            throw new IllegalArgumentException("fromId (" + fromId + ") maggiore di toId (" + toId + ")");
+
+        JobExecution interrupted = findInterrupted(fromDate, toDate, fromId, toId);
+        BackfillInfo info = interrupted != null ? resumed(interrupted) : resolve(fromDate, toDate, fromId, toId);
+        if (!current.compareAndSet(null, info))
+            throw new IllegalStateException("Recupero storico gia' in corso, richiesto il " + current.get().getSubmitted());
+
+        Runnable launch;
+        if (interrupted != null) {
+            log.info("Recupero storico richiesto: ripresa dell'esecuzione {} interrotta (id da {} a {}, watermark {})",
+                     interrupted.getId(), info.getFirstId(), info.getLastId(), info.getMaxId());
+            launch = () -> run(() -> jobOperator.restart(interrupted));
+        } else {
+            log.info("Recupero storico richiesto: date da {} a {}, id da {} a {} (risolti {} - {}), watermark {}, {} partizioni a {} ricevute/s",
+                     fromDate, toDate, fromId, toId, info.getFirstId(), info.getLastId(), info.getMaxId(),
+                     info.getGridSize(), info.getRatePerSecond());
+            JobParameters params = toJobParameters(info);
+            launch = () -> run(() -> jobOperator.start(rtBackfillJob, params));
+        }
+        try {
+            executor.execute(launch);
+        } catch (RuntimeException e) {
+            current.set(null);
+            throw e;
+        }
+        return info;
+    }
+
+    /**
+     * @return il recupero storico in corso su questo nodo, null se non ce ne sono
+     */
+    public BackfillInfo getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Risolve l'intervallo di id una sola volta, alla richiesta: gli estremi non si spostano con il watermark del
+     * job principale ne' con l'orologio quando il job viene riavviato.
+     */
+    private BackfillInfo resolve(LocalDate fromDate, LocalDate toDate, Long fromId, Long toId) {
+        long maxId = watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME).orElse(0L);
+        LocalDateTime submitted = LocalDateTime.now(clock);
+        LocalDateTime dataDa = fromDate != null ? fromDate.atStartOfDay() : DATA_MIN;
+        LocalDateTime dataA = toDate != null ? toDate.plusDays(1).atStartOfDay() : submitted;
+        Long firstId = fromId != null ? fromId : rndRepository.findMinIdByData(dataDa, dataA);
+        Long lastId = toId != null ? toId : rndRepository.findMaxIdByData(dataDa, dataA);
+        if (lastId != null)
+            lastId = Math.min(lastId, maxId);
+        if (firstId == null || lastId == null || lastId < firstId) {
+            log.info("Recupero storico: nessuna rendicontazione nell'intervallo richiesto sotto il watermark {}", maxId);
+            firstId = null;
+            lastId = null;
+        }
+        return BackfillInfo.builder()
+                .fromDate(fromDate)
+                .toDate(toDate)
+                .fromId(fromId)
+                .toId(toId)
+                .maxId(maxId)
+                .firstId(firstId)
+                .lastId(lastId)
+                .dataA(dataA)
+                .gridSize(config.getGridSize())
+                .ratePerSecond(config.getRatePerSecond())
+                .submitted(submitted)
+                .build();
+    }
+
+    /**
+     * @return l'ultima esecuzione del recupero storico se e' stata interrotta e aveva gli stessi estremi richiesti
+     */
+    private JobExecution findInterrupted(LocalDate fromDate, LocalDate toDate, Long fromId, Long toId) {
+        JobInstance instance = jobRepository.getLastJobInstance(Costanti.RT_BACKFILL_JOB_NAME);
+        if (instance == null)
+            return null;
+        JobExecution execution = jobRepository.getLastJobExecution(instance);
+        if (execution == null || (execution.getStatus() != BatchStatus.FAILED && execution.getStatus() != BatchStatus.STOPPED))
+            return null;
+        JobParameters params = execution.getJobParameters();
+        if (!Objects.equals(params.getLocalDate(Costanti.JOB_PARAM_FROM_DATE), fromDate)
+                || !Objects.equals(params.getLocalDate(Costanti.JOB_PARAM_TO_DATE), toDate)
+                || !Objects.equals(params.getLong(Costanti.JOB_PARAM_FROM_ID), fromId)
+                || !Objects.equals(params.getLong(Costanti.JOB_PARAM_TO_ID), toId))
+            return null;
+        return execution;
+    }
+
+    private BackfillInfo resumed(JobExecution execution) {
+        JobParameters params = execution.getJobParameters();
+        Long maxId = params.getLong(Costanti.JOB_PARAM_MAX_ID);
+        return BackfillInfo.builder()
+                .fromDate(params.getLocalDate(Costanti.JOB_PARAM_FROM_DATE))
+                .toDate(params.getLocalDate(Costanti.JOB_PARAM_TO_DATE))
+                .fromId(params.getLong(Costanti.JOB_PARAM_FROM_ID))
+                .toId(params.getLong(Costanti.JOB_PARAM_TO_ID))
+                .maxId(maxId != null ? maxId : 0L)
+                .firstId(params.getLong(Costanti.JOB_PARAM_FIRST_ID))
+                .lastId(params.getLong(Costanti.JOB_PARAM_LAST_ID))
+                .dataA(params.getLocalDateTime(Costanti.JOB_PARAM_DATA_A))
+                .gridSize(config.getGridSize())
+                .ratePerSecond(config.getRatePerSecond())
+                .submitted(params.getLocalDateTime(Costanti.JOB_PARAM_REQUESTED_AT))
+                .resumed(true)
+                .build();
+    }
+
+    private void run(JobLaunch launch) {
+        try {
+            JobExecution execution = launch.launch();
+            log.info("Recupero storico terminato con stato {}", execution.getStatus());
+        } catch (Exception e) {
+            log.error("Errore nell'esecuzione del recupero storico: {}", e.getMessage(), e);
+        } finally {
+            current.set(null);
+        }
+    }
+
+    private static JobParameters toJobParameters(BackfillInfo info) {
+        JobParametersBuilder builder = new JobParametersBuilder()
+                .addLong(Costanti.JOB_PARAM_MAX_ID, info.getMaxId())
+                .addLocalDateTime(Costanti.JOB_PARAM_DATA_A, info.getDataA())
+                .addLocalDateTime(Costanti.JOB_PARAM_REQUESTED_AT, info.getSubmitted());
+        if (info.getFirstId() != null)
+            builder.addLong(Costanti.JOB_PARAM_FIRST_ID, info.getFirstId())
+                   .addLong(Costanti.JOB_PARAM_LAST_ID, info.getLastId());
+        if (info.getFromDate() != null)
+            builder.addLocalDate(Costanti.JOB_PARAM_FROM_DATE, info.getFromDate());
+        if (info.getToDate() != null)
+            builder.addLocalDate(Costanti.JOB_PARAM_TO_DATE, info.getToDate());
+        if (info.getFromId() != null)
+            builder.addLong(Costanti.JOB_PARAM_FROM_ID, info.getFromId());
+        if (info.getToId() != null)
+            builder.addLong(Costanti.JOB_PARAM_TO_ID, info.getToId());
+        return builder.toJobParameters();
+    }
+
+    @FunctionalInterface
+    private interface JobLaunch {
+        JobExecution launch() throws Exception;
+    }
+}
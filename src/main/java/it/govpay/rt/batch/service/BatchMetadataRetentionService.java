@@ -0,0 +1,206 @@
+package it.govpay.rt.batch.service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.JobInstance;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deletes old Spring Batch metadata, the automated counterpart of {@code sql/<dialect>/spring-batch-cleanup.sql}.
+ * <p>
+ * For each job, terminated executions (COMPLETED, FAILED, STOPPED, ABANDONED) that ended before
+ * {@code govpay.batch.retention.max-age} are deleted, oldest first, except:
+ * <ul>
+ * <li>the {@code keep-last} most recent executions of the job;</li>
+ * <li>the latest execution carrying a {@value Costanti#LAST_PROCESSED_ID_KEY} greater than zero, still
+ * used by {@code WatermarkBootstrapListener} when RT_BATCH_WATERMARK has no row for the job.</li>
+ * </ul>
+ * Executions are deleted in batches of {@code batch-size}, each in its own transaction and in foreign key
+ * order; orphan job instances are removed with them, together with the RT_BATCH_WATERMARK rows of their backfill
+ * partitions ({@code <jobInstanceId>-<n>}), which a failed or stopped backfill leaves behind. Batches are bounded with
+ * {@link PreparedStatement#setMaxRows(int)} and explicit IN lists of at most 1000 ids, so the same
+ * statements run on every supported database without dialect specific LIMIT/ROWNUM/TOP syntax.
+ */
+@Service
+@Slf4j
+public class BatchMetadataRetentionService {
+
+	private static final String TERMINATED_STATUSES = "('COMPLETED', 'FAILED', 'STOPPED', 'ABANDONED')";
+
+	/** Oracle limit on the number of expressions in an IN list */
+	private static final int MAX_IN_LIST = 1000;
+
+	/** Recent job instances scanned for the watermark-bearing execution, as in WatermarkBootstrapListener */
+	private static final int WATERMARK_SCAN_INSTANCES = 10;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final JobRepository jobRepository;
+	private final BatchProperties.Retention retention;
+	private final String prefix;
+	private final Clock clock;
+
+	@Autowired
+	public BatchMetadataRetentionService(
+			JdbcTemplate jdbcTemplate,
+			PlatformTransactionManager transactionManager,
+			JobRepository jobRepository,
+			BatchProperties batchProperties,
+			@Value("${spring.batch.jdbc.table-prefix:BATCH_}") String tablePrefix) {
+		this(jdbcTemplate, transactionManager, jobRepository, batchProperties, tablePrefix, Clock.systemDefaultZone());
+	}
+
+	public BatchMetadataRetentionService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+			JobRepository jobRepository, BatchProperties batchProperties, String tablePrefix, Clock clock) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.jobRepository = jobRepository;
+		this.retention = batchProperties.getRetention();
+		this.prefix = tablePrefix;
+		this.clock = clock;
+	}
+
+	/**
+	 * @return number of job executions deleted, for all jobs
+	 */
+	public long purge() {
+		LocalDateTime cutoff = LocalDateTime.now(clock).minus(retention.getMaxAge());
+		long deleted = 0L;
+		for (String jobName : jdbcTemplate.queryForList("SELECT DISTINCT JOB_NAME FROM " + prefix + "JOB_INSTANCE", String.class))
+			deleted += purge(jobName, cutoff);
+		return deleted;
+	}
+
+	private long purge(String jobName, LocalDateTime cutoff) {
+		// le keep-last esecuzioni piu' recenti sono le ultime per id: basta escludere gli id da quella soglia in su
+		List<Long> kept = retention.getKeepLast() > 0
+				? queryIds("SELECT e.JOB_EXECUTION_ID FROM " + prefix + "JOB_EXECUTION e"
+						+ " JOIN " + prefix + "JOB_INSTANCE i ON i.JOB_INSTANCE_ID = e.JOB_INSTANCE_ID"
+						+ " WHERE i.JOB_NAME = ? ORDER BY e.JOB_EXECUTION_ID DESC", retention.getKeepLast(), jobName)
+				: List.of();
+		long keptFrom = kept.isEmpty() ? Long.MAX_VALUE : Collections.min(kept);
+		long watermarkExecution = findWatermarkExecution(jobName);
+
+		int batchSize = Math.min(Math.max(1, retention.getBatchSize()), MAX_IN_LIST);
+		String candidates = "SELECT e.JOB_EXECUTION_ID FROM " + prefix + "JOB_EXECUTION e"
+				+ " JOIN " + prefix + "JOB_INSTANCE i ON i.JOB_INSTANCE_ID = e.JOB_INSTANCE_ID"
+				+ " WHERE i.JOB_NAME = ? AND e.END_TIME < ? AND e.STATUS IN " + TERMINATED_STATUSES
+				+ " AND e.JOB_EXECUTION_ID < ? AND e.JOB_EXECUTION_ID <> ?"
+				+ " ORDER BY e.JOB_EXECUTION_ID ASC";
+
+		long deleted = 0L;
+		List<Long> batch;
+		do {
+			batch = queryIds(candidates, batchSize, jobName, Timestamp.valueOf(cutoff), keptFrom, watermarkExecution);
+			if (!batch.isEmpty()) {
+				List<Long> executionIds = batch;
+				transactionTemplate.executeWithoutResult(status -> deleteExecutions(jobName, executionIds));
+				deleted += batch.size();
+			}
+		} while (batch.size() == batchSize);
+
+		if (deleted > 0)
+			log.info("Retention metadati Spring Batch: eliminate {} esecuzioni del job {} terminate prima del {}",
+					 deleted, jobName, cutoff);
+		return deleted;
+	}
+
+	private void deleteExecutions(String jobName, List<Long> executionIds) {
+		Set<Long> instanceIds = new LinkedHashSet<>(selectIn("SELECT JOB_INSTANCE_ID FROM " + prefix + "JOB_EXECUTION",
+															 "JOB_EXECUTION_ID", executionIds));
+		List<Long> stepIds = selectIn("SELECT STEP_EXECUTION_ID FROM " + prefix + "STEP_EXECUTION",
+									  "JOB_EXECUTION_ID", executionIds);
+
+		deleteIn(prefix + "STEP_EXECUTION_CONTEXT", "STEP_EXECUTION_ID", stepIds);
+		deleteIn(prefix + "STEP_EXECUTION", "STEP_EXECUTION_ID", stepIds);
+		deleteIn(prefix + "JOB_EXECUTION_CONTEXT", "JOB_EXECUTION_ID", executionIds);
+		deleteIn(prefix + "JOB_EXECUTION_PARAMS", "JOB_EXECUTION_ID", executionIds);
+		deleteIn(prefix + "JOB_EXECUTION", "JOB_EXECUTION_ID", executionIds);
+
+		// istanze rimaste senza esecuzioni
+		String instanceTable = prefix + "JOB_INSTANCE";
+		for (List<Long> ids : partition(new ArrayList<>(instanceIds)))
+			jdbcTemplate.update("DELETE FROM " + instanceTable + " WHERE JOB_INSTANCE_ID IN " + placeholders(ids.size())
+					+ " AND NOT EXISTS (SELECT 1 FROM " + prefix + "JOB_EXECUTION e WHERE e.JOB_INSTANCE_ID = "
+					+ instanceTable + ".JOB_INSTANCE_ID)", ids.toArray());
+
+		if (Costanti.RT_BACKFILL_JOB_NAME.equals(jobName)) {
+			instanceIds.removeAll(selectIn("SELECT JOB_INSTANCE_ID FROM " + instanceTable, "JOB_INSTANCE_ID",
+										   new ArrayList<>(instanceIds)));
+			// watermark delle partizioni delle istanze eliminate: non verranno piu' riprese
+			for (Long instanceId : instanceIds)
+				jdbcTemplate.update("DELETE FROM RT_BATCH_WATERMARK WHERE JOB_NAME = ? AND PARTITION_KEY LIKE ?",
+									jobName, instanceId + "-%");
+		}
+	}
+
+	/**
+	 * Same lookup as the fallback of WatermarkBootstrapListener: the execution it would read the watermark from.
+	 *
+	 * @return id of the execution, or -1 when none carries a watermark
+	 */
+	private long findWatermarkExecution(String jobName) {
+		for (JobInstance instance : jobRepository.getJobInstances(jobName, 0, WATERMARK_SCAN_INSTANCES)) {
+			for (JobExecution execution : jobRepository.getJobExecutions(instance)) {
+				ExecutionContext ctx = execution.getExecutionContext();
+				if (ctx.containsKey(Costanti.LAST_PROCESSED_ID_KEY) && ctx.getLong(Costanti.LAST_PROCESSED_ID_KEY) > 0L)
+					return execution.getId();
+			}
+		}
+		return -1L;
+	}
+
+	private List<Long> queryIds(String sql, int maxRows, Object... args) {
+		return jdbcTemplate.query(con -> {
+			PreparedStatement ps = con.prepareStatement(sql);
+			ps.setMaxRows(maxRows);
+			for (int i = 0; i < args.length; i++)
+				ps.setObject(i + 1, args[i]);
+			return ps;
+		}, (rs, rowNum) -> rs.getLong(1));
+	}
+
+	private List<Long> selectIn(String select, String column, List<Long> ids) {
+		List<Long> result = new ArrayList<>();
+		for (List<Long> part : partition(ids))
+			result.addAll(jdbcTemplate.queryForList(select + " WHERE " + column + " IN " + placeholders(part.size()),
+													Long.class, part.toArray()));
+		return result;
+	}
+
+	private void deleteIn(String table, String column, List<Long> ids) {
+		for (List<Long> part : partition(ids))
+			jdbcTemplate.update("DELETE FROM " + table + " WHERE " + column + " IN " + placeholders(part.size()), part.toArray());
+	}
+
+	private static List<List<Long>> partition(List<Long> ids) {
+		List<List<Long>> parts = new ArrayList<>();
+		for (int from = 0; from < ids.size(); from += MAX_IN_LIST)
+			parts.add(ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size())));
+		return parts;
+	}
+
+	private static String placeholders(int count) {
+		return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+	}
+}
@@ -0,0 +1,44 @@
+package it.govpay.rt.batch.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import it.govpay.rt.batch.entity.BatchTask;
+import it.govpay.rt.batch.repository.BatchTaskRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for the periodic tasks whose last run is stored in RT_BATCH_TASK, so that their interval holds
+ * across processes and restarts (in cron mode every run is a new JVM).
+ */
+@Service
+@Slf4j
+public class BatchTaskService {
+
+	private final BatchTaskRepository taskRepository;
+
+	public BatchTaskService(BatchTaskRepository taskRepository) {
+		this.taskRepository = taskRepository;
+	}
+
+	/**
+	 * Claims a run of the task: returns {@code true}, and records {@code now} as the last run, only if the
+	 * previous run is older than {@code interval} (or there was none). Must be called outside a transaction:
+	 * the row is created in its own transaction, and if another process creates it in the meantime the
+	 * primary key violation is ignored.
+	 */
+	public boolean claim(String taskName, Duration interval, LocalDateTime now) {
+		if (!taskRepository.existsById(taskName)) {
+			try {
+				taskRepository.saveAndFlush(BatchTask.builder().taskName(taskName).build());
+				log.debug("Attivita' periodica {} registrata", taskName);
+			} catch (DataIntegrityViolationException e) {
+				log.debug("Attivita' periodica {} gia' registrata da un altro processo", taskName);
+			}
+		}
+		return taskRepository.claim(taskName, now.minus(interval), now) > 0;
+	}
+}
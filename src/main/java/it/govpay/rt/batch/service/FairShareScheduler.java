@@ -0,0 +1,107 @@
+package it.govpay.rt.batch.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Orders the pending receipts before they are handed to the processor.
+ * <p>
+ * In {@code ID} mode the order of the query (id ascending) is kept. In {@code FAIR} mode the receipts
+ * are split in one queue per domain or per RT connector and interleaved with a smooth weighted
+ * round-robin, so a single entity with a large backlog does not starve the others.
+ * <p>
+ * Since in fair mode items are no longer read in id order, each context carries the highest id that
+ * can safely be stored as watermark once it is written: the lowest id still to be read, minus one.
+ */
+@Service
+@Slf4j
+public class FairShareScheduler {
+
+	private final BatchProperties.Scheduling scheduling;
+	private final RtApiService rtApiService;
+
+	public FairShareScheduler(BatchProperties batchProperties, RtApiService rtApiService) {
+		this.scheduling = batchProperties.getScheduling();
+		this.rtApiService = rtApiService;
+	}
+
+	/**
+	 * @param pending receipts ordered by id ascending
+	 * @return the same receipts in processing order; in fair mode the watermark of each item is set
+	 */
+	public List<RtRetrieveContext> order(List<RtRetrieveContext> pending) {
+		if (scheduling.getMode() != BatchProperties.SchedulingMode.FAIR)
+			return pending;
+		List<RtRetrieveContext> ordered = interleave(pending);
+		assignWatermarks(ordered);
+		return ordered;
+	}
+
+	private List<RtRetrieveContext> interleave(List<RtRetrieveContext> pending) {
+		// code in ordine di primo id, a parita' di credito viene servita la coda con l'elemento piu' vecchio
+		Map<String, ArrayDeque<RtRetrieveContext>> queues = new LinkedHashMap<>();
+		Map<String, String> keyCache = new HashMap<>();
+		for (RtRetrieveContext ctx : pending) {
+			String key = keyCache.computeIfAbsent(ctx.getTaxCode(), this::queueKey);
+			queues.computeIfAbsent(key, k -> new ArrayDeque<>()).add(ctx);
+		}
+		if (queues.size() > 1)
+			log.info("Ordinamento fair-share su {} code ({}): {}", queues.size(), scheduling.getFairKey(),
+					queues.entrySet().stream().map(e -> e.getKey() + "=" + e.getValue().size()).toList());
+
+		List<String> keys = new ArrayList<>(queues.keySet());
+		int[] weights = new int[keys.size()];
+		long[] credits = new long[keys.size()];
+		for (int i = 0; i < keys.size(); i++)
+			weights[i] = Math.max(1, scheduling.getWeights().getOrDefault(keys.get(i), 1));
+
+		List<RtRetrieveContext> ordered = new ArrayList<>(pending.size());
+		while (ordered.size() < pending.size()) {
+			int selected = -1;
+			long totalWeight = 0;
+			for (int i = 0; i < keys.size(); i++) {
+				if (queues.get(keys.get(i)).isEmpty())
+					continue;
+				credits[i] += weights[i];
+				totalWeight += weights[i];
+				if (selected < 0 || credits[i] > credits[selected])
+					selected = i;
+			}
+			credits[selected] -= totalWeight;
+			ordered.add(queues.get(keys.get(selected)).poll());
+		}
+		return ordered;
+	}
+
+	private String queueKey(String codDominio) {
+		if (scheduling.getFairKey() == BatchProperties.FairKey.DOMINIO)
+			return codDominio;
+		try {
+			return rtApiService.resolveConnectorCode(codDominio);
+		} catch (IllegalStateException e) {
+			// il processor segnalera' l'errore, qui il dominio finisce in una coda propria
+			log.debug("Connettore non risolto per il dominio {}: {}", codDominio, e.getMessage());
+			return codDominio;
+		}
+	}
+
+	private static void assignWatermarks(List<RtRetrieveContext> ordered) {
+		long suffixMin = Long.MAX_VALUE;
+		long maxId = ordered.stream().mapToLong(RtRetrieveContext::getRtId).max().orElse(0L);
+		for (int i = ordered.size() - 1; i >= 0; i--) {
+			RtRetrieveContext ctx = ordered.get(i);
+			ctx.setWatermark(suffixMin == Long.MAX_VALUE ? maxId : Math.min(suffixMin - 1, maxId));
+			suffixMin = Math.min(suffixMin, ctx.getRtId());
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package it.govpay.rt.batch.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hedging of idempotent requests, keyed by RT connector ({@code govpay.batch.hedging}).
+ * <p>
+ * The first attempt runs on a virtual thread; if it has not completed after the configured percentile of the
+ * recent latencies of the same connector, a second identical attempt is started and the first one to answer wins.
+ * A 4xx response is an answer (404 receipt not available, 429 quota exceeded) and is never hedged against.
+ * <p>
+ * Hedges are limited by a per-connector budget: each first attempt earns {@code maxExtraRatio} of a hedge,
+ * so the extra requests sent to a connector never exceed that share of its traffic. A step throttled by a rate limiter
+ * binds a hedge permit to its thread ({@link #setHedgePermit}): a hedge is sent only if the permit grants it, so hedges
+ * count against the same rate as the first attempts.
+ * When hedging is disabled the attempt runs on the caller thread.
+ */
+@Service
+@Slf4j
+public class HedgedRequestExecutor {
+
+	/** Latencies recorded between two computations of the hedge threshold */
+	private static final int THRESHOLD_REFRESH = 32;
+
+	private static final ThreadLocal<BooleanSupplier> HEDGE_PERMIT = new ThreadLocal<>();
+
+	private final BatchProperties.Hedging config;
+	private final Executor executor;
+	private final LongSupplier nanoTime;
+	private final ConcurrentHashMap<String, ConnectorLatency> connectors = new ConcurrentHashMap<>();
+
+	@Autowired
+	public HedgedRequestExecutor(BatchProperties batchProperties) {
+		this(batchProperties.getHedging(), virtualThreads(), System::nanoTime);
+	}
+
+	public HedgedRequestExecutor(BatchProperties.Hedging config, Executor executor, LongSupplier nanoTime) {
+		this.config = config;
+		this.executor = executor;
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * Executor that always runs the attempt on the caller thread, without hedging.
+	 */
+	public static HedgedRequestExecutor disabled() {
+		return new HedgedRequestExecutor(new BatchProperties.Hedging(), Runnable::run, System::nanoTime);
+	}
+
+	/**
+	 * Binds to the current thread the permit taken before each hedge of its requests, e.g. a token of the rate
+	 * limiter of the step; without a permit hedges are limited only by the budget.
+	 */
+	public static void setHedgePermit(BooleanSupplier permit) {
+		HEDGE_PERMIT.set(permit);
+	}
+
+	public static void clearHedgePermit() {
+		HEDGE_PERMIT.remove();
+	}
+
+	private static Executor virtualThreads() {
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("rt-hedge-");
+		executor.setVirtualThreads(true);
+		return executor;
+	}
+
+	/**
+	 * Runs an idempotent request, hedging it when it is slower than usual for the connector.
+	 * <p>
+	 * The attempt may run twice, on different threads: it has to be safe to repeat and must not rely on
+	 * thread-bound state of the caller, except the MDC, which is copied to the thread of each attempt.
+	 * If both attempts fail, the failure of the first one is thrown.
+	 *
+	 * @param connector key of the latency statistics and of the hedge budget
+	 * @param attempt the request
+	 */
+	public <T> T call(String connector, Supplier<T> attempt) {
+		if (!config.isEnabled())
+			return attempt.get();
+
+		ConnectorLatency latency = connectors.computeIfAbsent(connector, k -> new ConnectorLatency(config));
+		long threshold = latency.startRequest();
+		CompletableFuture<T> primary = start(attempt, latency);
+		if (threshold < 0)
+			return await(primary);
+		try {
+			return unwrap(() -> primary.get(threshold, TimeUnit.NANOSECONDS));
+		} catch (TimeoutException e) {
+			// oltre la soglia: seconda richiesta solo se il budget del connettore lo consente
+		}
+		if (!latency.tryHedge()) {
+			log.debug("Richiesta verso il connettore {} oltre {} ms, budget di hedging esaurito", connector,
+					TimeUnit.NANOSECONDS.toMillis(threshold));
+			return await(primary);
+		}
+		BooleanSupplier permit = HEDGE_PERMIT.get();
+		if (permit != null && !permit.getAsBoolean()) {
+			log.debug("Richiesta verso il connettore {} oltre {} ms, rate limit raggiunto: nessuna richiesta di hedging",
+					connector, TimeUnit.NANOSECONDS.toMillis(threshold));
+			return await(primary);
+		}
+		log.debug("Richiesta verso il connettore {} oltre {} ms: avvio richiesta di hedging", connector,
+				TimeUnit.NANOSECONDS.toMillis(threshold));
+		CompletableFuture<T> hedge = start(attempt, latency);
+		return await(firstAnswer(primary, hedge));
+	}
+
+	private <T> CompletableFuture<T> start(Supplier<T> attempt, ConnectorLatency latency) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		// identificativi della ricevuta (ItemLoggingListener) anche nei log delle richieste su altri thread
+		Map<String, String> mdc = MDC.getCopyOfContextMap();
+		executor.execute(() -> {
+			Map<String, String> previous = MDC.getCopyOfContextMap();
+			setMdc(mdc);
+			// latenza registrata prima di completare, cosi' la richiesta successiva ne tiene gia' conto
+			long start = nanoTime.getAsLong();
+			try {
+				T value = attempt.get();
+				latency.record(nanoTime.getAsLong() - start);
+				result.complete(value);
+			} catch (RuntimeException | Error e) {
+				latency.record(nanoTime.getAsLong() - start);
+				result.completeExceptionally(e);
+			} finally {
+				setMdc(previous);
+			}
+		});
+		return result;
+	}
+
+	private static void setMdc(Map<String, String> context) {
+		if (context != null)
+			MDC.setContextMap(context);
+		else
+			MDC.clear();
+	}
+
+	/**
+	 * Completes with the first result or 4xx answer; with a transport or 5xx failure only when the other attempt
+	 * failed too, in which case the failure of the first attempt wins.
+	 */
+	private static <T> CompletableFuture<T> firstAnswer(CompletableFuture<T> primary, CompletableFuture<T> hedge) {
+		CompletableFuture<T> answer = new CompletableFuture<>();
+		AtomicInteger failures = new AtomicInteger();
+		for (CompletableFuture<T> attempt : List.of(primary, hedge)) {
+			attempt.whenComplete((result, error) -> {
+				if (error == null)
+					answer.complete(result);
+				else if (error instanceof HttpClientErrorException)
+					answer.completeExceptionally(error);
+				else if (failures.incrementAndGet() == 2)
+					answer.completeExceptionally(primary.exceptionNow());
+			});
+		}
+		return answer;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return unwrap(future::get);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static <T> T unwrap(TimedGet<T> get) throws TimeoutException {
+		try {
+			return get.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtime)
+				throw runtime;
+			if (e.getCause() instanceof Error error)
+				throw error;
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrotta l'attesa della risposta", e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface TimedGet<T> {
+		T get() throws InterruptedException, ExecutionException, TimeoutException;
+	}
+
+	/**
+	 * Recent latencies and hedge budget of a connector.
+	 */
+	private static final class ConnectorLatency {
+
+		private final long[] window;
+		private final int minSamples;
+		private final double percentile;
+		private final long minDelay;
+		private final double hedgeRatio;
+		private final double maxCredit;
+
+		private int next;
+		private int samples;
+		private int sinceRefresh;
+		private long threshold = -1;
+		private double credit;
+
+		ConnectorLatency(BatchProperties.Hedging config) {
+			this.window = new long[Math.max(1, config.getWindowSize())];
+			this.minSamples = Math.min(window.length, Math.max(1, config.getMinSamples()));
+			this.percentile = Math.clamp(config.getPercentile(), 1, 100);
+			this.minDelay = config.getMinDelay().toNanos();
+			this.hedgeRatio = Math.max(0, config.getMaxExtraRatio());
+			// al massimo la quota di hedge di una finestra, anche dopo un lungo periodo senza ritardi
+			this.maxCredit = Math.max(1, hedgeRatio * window.length);
+		}
+
+		/**
+		 * Accounts a first attempt in the budget.
+		 *
+		 * @return the hedge threshold in nanoseconds, -1 until enough latencies are recorded
+		 */
+		synchronized long startRequest() {
+			credit = Math.min(maxCredit, credit + hedgeRatio);
+			return threshold;
+		}
+
+		synchronized boolean tryHedge() {
+			if (credit < 1)
+				return false;
+			credit -= 1;
+			return true;
+		}
+
+		synchronized void record(long nanos) {
+			window[next] = nanos;
+			next = (next + 1) % window.length;
+			samples = Math.min(samples + 1, window.length);
+			if (samples >= minSamples && (threshold < 0 || ++sinceRefresh >= THRESHOLD_REFRESH)) {
+				sinceRefresh = 0;
+				long[] sorted = Arrays.copyOf(window, samples);
+				Arrays.sort(sorted);
+				int index = (int) Math.ceil(percentile / 100.0 * samples) - 1;
+				threshold = Math.max(minDelay, sorted[Math.max(0, index)]);
+			}
+		}
+	}
+}
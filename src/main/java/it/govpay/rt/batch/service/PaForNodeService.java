@@ -1,17 +1,20 @@
 package it.govpay.rt.batch.service;
 
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
-
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
 import it.gov.pagopa.pagopa_api.xsd.common_types.v1_0.StOutcome;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.client.ExchangeContext;
 import it.govpay.rt.batch.client.GovpayClient;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.gde.service.GdeService;
+import it.govpay.rt.batch.jfr.PipelineEvent;
+import it.govpay.rt.batch.jfr.PipelineEvents;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -23,39 +26,52 @@ public class PaForNodeService {
 
 	private final GdeService gdeService;
 	private final GovpayClient govpayClient;
+	private final ObservationRegistry observationRegistry;
+
+	public PaForNodeService(GdeService gdeService, GovpayClient govpayClient) {
+		this(gdeService, govpayClient, ObservationRegistry.NOOP);
+	}
 
+	@Autowired
 	public PaForNodeService(@Autowired(required = false) GdeService gdeService,
-							GovpayClient govpayClient) {
+							GovpayClient govpayClient,
+							ObservationRegistry observationRegistry) {
 		this.gdeService = gdeService;
 		this.govpayClient = govpayClient;
+		this.observationRegistry = observationRegistry;
 	}
 
 	public boolean sendReceipt(RtRetrieveContext rtInfo, PaSendRTV2Request receiptToSend) {
 		log.debug("Invio ricevuta recuperata a govpay");
 
-		OffsetDateTime dataStart = OffsetDateTime.now(ZoneOffset.UTC);
-		OffsetDateTime dataEnd = null;
+		ExchangeContext exchange = new ExchangeContext();
 		PaSendRTV2Response response = null;
+		PipelineEvent event = new PipelineEvents.SoapSend().rtId(rtInfo.getRtId());
+		event.begin();
 
 		try {
-			response = govpayClient.sendReceipt(receiptToSend);
-			dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
+			// l'observation e' in scope durante la chiamata: TracePropagationInterceptor ne propaga il contesto negli header
+			response = Observation.createNotStarted(Costanti.OBSERVATION_SEND_RECEIPT, observationRegistry)
+					.observe(() -> govpayClient.sendReceipt(receiptToSend, exchange));
+			exchange.complete();
+			event.status(String.valueOf(response.getOutcome())).bytes(exchange.getRequestPayload()).commit();
 			log.debug("Ricevuta risposta da govpay: {}", response.getOutcome());
 
 			if (response.getOutcome().equals(StOutcome.OK)) {
-				gdeService.saveSendReceiptOk(rtInfo, receiptToSend, response, dataStart, dataEnd);
+				gdeService.saveSendReceiptOk(rtInfo, receiptToSend, response, exchange);
 				return true;
 			} else {
 				gdeService.saveSendReceiptKo(rtInfo, receiptToSend,
-						new Exception("Outcome KO: " + response.getFault()), dataStart, dataEnd);
+						new Exception("Outcome KO: " + response.getFault()), exchange);
 				return false;
 			}
 		} catch (Exception e) {
-			dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
+			exchange.complete();
+			if (response == null)
+				event.failed(e).bytes(exchange.getRequestPayload()).commit();
 			log.error("Errore durante l'invio della ricevuta a govpay", e);
-			gdeService.saveSendReceiptKo(rtInfo, receiptToSend, e, dataStart, dataEnd);
+			gdeService.saveSendReceiptKo(rtInfo, receiptToSend, e, exchange);
 			return false;
 		}
 	}
-
 }
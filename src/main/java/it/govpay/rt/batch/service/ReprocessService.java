@@ -0,0 +1,238 @@
+package it.govpay.rt.batch.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParameters;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.ReprocessSlice;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Avvio delle rielaborazioni mirate (job {@value Costanti#RT_REPROCESS_JOB_NAME}) per dominio, intervallo di id
+ * o elenco di id.
+ * <p>
+ * Ogni richiesta diventa una {@link ReprocessSlice} limitata al watermark corrente del job principale: la scansione
+ * schedulata procede oltre il watermark, la rielaborazione al di sotto, quindi i due job possono girare in parallelo.
+ * Le slice attive sono quelle delle esecuzioni di {@value Costanti#RT_REPROCESS_JOB_NAME} in corso su tutti i nodi,
+ * ricostruite dai parametri del job nel JobRepository, piu' quelle richieste su questo nodo il cui job non e' ancora
+ * partito: una richiesta che si sovrappone a una slice in corso viene rifiutata e il reader del job principale salta
+ * i nuovi tentativi gia' coperti da una rielaborazione. Per il reader le esecuzioni in corso sono rilette al massimo
+ * ogni 5 secondi; due richieste sovrapposte inviate a nodi diversi nello stesso istante, prima che uno
+ * dei due job sia registrato, non vengono rilevate.
+ */
+@Service
+@Slf4j
+public class ReprocessService {
+
+    // PARAMETER_VALUE di BATCH_JOB_EXECUTION_PARAMS
+    private static final int MAX_PARAMETER_LENGTH = 2500;
+
+    /** Eta' massima delle esecuzioni in corso lette dal JobRepository per il reader del job principale */
+    private static final Duration RUNNING_REFRESH = Duration.ofSeconds(5);
+
+    private final JobOperator jobOperator;
+    private final JobRepository jobRepository;
+    private final Job rtReprocessJob;
+    private final WatermarkService watermarkService;
+    private final BatchProperties.Reprocess config;
+    private final Executor executor;
+    private final Clock clock;
+
+    // slice richieste su questo nodo, dalla richiesta alla fine del job
+    private final List<ReprocessSlice> active = new CopyOnWriteArrayList<>();
+    private volatile RunningSlices running;
+
+    @Autowired
+    public ReprocessService(JobOperator jobOperator, JobRepository jobRepository, @Qualifier("rtReprocessJob") Job rtReprocessJob,
+                            WatermarkService watermarkService, BatchProperties batchProperties) {
+        this(jobOperator, jobRepository, rtReprocessJob, watermarkService, batchProperties,
+             new SimpleAsyncTaskExecutor("rt-reprocess-"), Clock.systemDefaultZone());
+    }
+
+    public ReprocessService(JobOperator jobOperator, JobRepository jobRepository, Job rtReprocessJob,
+                            WatermarkService watermarkService, BatchProperties batchProperties, Executor executor, Clock clock) {
+        this.jobOperator = jobOperator;
+        this.jobRepository = jobRepository;
+        this.rtReprocessJob = rtReprocessJob;
+        this.watermarkService = watermarkService;
+        this.config = batchProperties.getReprocess();
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Registra la slice e avvia il job in background.
+     *
+     * @throws IllegalArgumentException se la richiesta non ha filtri o li ha non validi
+     * @throws IllegalStateException    se la slice si sovrappone a una rielaborazione in corso su un qualsiasi nodo
+     *                                  o e' stato raggiunto il numero massimo di rielaborazioni contemporanee
+     */
+    public synchronized ReprocessSlice submit(String codDominio, Long fromId, Long toId, Collection<Long> ids) {
+        if (!config.isEnabled())
+            throw new IllegalStateException("Rielaborazione mirata disabilitata");
+        Set<Long> idSet = ids == null ? Set.of() : new LinkedHashSet<>(ids);
+        validate(codDominio, fromId, toId, idSet);
+
+        ReprocessSlice slice = ReprocessSlice.builder()
+                .id(UUID.randomUUID().toString())
+                .codDominio(codDominio)
+                .fromId(fromId)
+                .toId(toId)
+                .ids(idSet.isEmpty() ? null : idSet)
+                .maxId(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME).orElse(0L))
+                .submitted(LocalDateTime.now(clock))
+                .build();
+
+        List<ReprocessSlice> current = getActive();
+        if (current.size() >= config.getMaxConcurrent())
+            throw new IllegalStateException("Raggiunto il numero massimo di rielaborazioni contemporanee (" + config.getMaxConcurrent() + ")");
+        ReprocessSlice conflict = current.stream().filter(slice::overlaps).findFirst().orElse(null);
+        if (conflict != null)
+            throw new IllegalStateException("La richiesta si sovrappone alla rielaborazione in corso " + conflict.getId());
+
+        JobParameters params = toJobParameters(slice);
+        active.add(slice);
+        log.info("Rielaborazione {} richiesta: dominio {}, id da {} a {}, {} id espliciti, watermark {}",
+                 slice.getId(), codDominio, fromId, toId, idSet.size(), slice.getMaxId());
+        try {
+            executor.execute(() -> run(slice, params));
+        } catch (RuntimeException e) {
+            active.remove(slice);
+            throw e;
+        }
+        return slice;
+    }
+
+    /**
+     * @return true se la ricevuta appartiene a una rielaborazione in corso
+     */
+    public boolean isReprocessing(RtRetrieveContext ctx) {
+        RunningSlices snapshot = running;
+        Instant now = clock.instant();
+        if (snapshot == null || !now.isBefore(snapshot.loaded().plus(RUNNING_REFRESH))) {
+            snapshot = new RunningSlices(findRunning(), now);
+            running = snapshot;
+        }
+        return active.stream().anyMatch(slice -> slice.covers(ctx))
+               || snapshot.slices().stream().anyMatch(slice -> slice.covers(ctx));
+    }
+
+    /**
+     * @return slice delle rielaborazioni in corso su tutti i nodi e di quelle richieste su questo nodo e non ancora
+     *         partite
+     */
+    public List<ReprocessSlice> getActive() {
+        List<ReprocessSlice> found = findRunning();
+        running = new RunningSlices(found, clock.instant());
+        Map<String, ReprocessSlice> slices = new LinkedHashMap<>();
+        for (ReprocessSlice slice : active)
+            slices.put(slice.getId(), slice);
+        for (ReprocessSlice slice : found)
+            slices.putIfAbsent(slice.getId(), slice);
+        return List.copyOf(slices.values());
+    }
+
+    private List<ReprocessSlice> findRunning() {
+        List<ReprocessSlice> slices = new ArrayList<>();
+        for (JobExecution execution : jobRepository.findRunningJobExecutions(Costanti.RT_REPROCESS_JOB_NAME))
+            slices.add(fromJobParameters(execution));
+        return slices;
+    }
+
+    private void run(ReprocessSlice slice, JobParameters params) {
+        try {
+            JobExecution execution = jobOperator.start(rtReprocessJob, params);
+            log.info("Rielaborazione {} terminata con stato {}", slice.getId(), execution.getStatus());
+        } catch (Exception e) {
+            log.error("Errore nell'esecuzione della rielaborazione {}: {}", slice.getId(), e.getMessage(), e);
+        } finally {
+            active.remove(slice);
+        }
+    }
+
+    private void validate(String codDominio, Long fromId, Long toId, Set<Long> ids) {
+        boolean range = codDominio != null || fromId != null || toId != null;
+        if (!range && ids.isEmpty())
+            throw new IllegalArgumentException("Indicare almeno uno tra codDominio, fromId, toId o un elenco di id");
+        if (range && !ids.isEmpty())
+            throw new IllegalArgumentException("L'elenco di id non puo' essere combinato con codDominio, fromId o toId");
+        if (fromId != null && toId != null && fromId > toId)
+            throw new IllegalArgumentException("fromId (" + fromId + ") maggiore di toId (" + toId + ")");
+        if (ids.size() > config.getMaxIds())
+            throw new IllegalArgumentException("Elenco di " + ids.size() + " id oltre il massimo di " + config.getMaxIds());
+        if (joinIds(ids).length() > MAX_PARAMETER_LENGTH)
+            throw new IllegalArgumentException("Elenco di id troppo lungo per un parametro del job");
+    }
+
+    private static JobParameters toJobParameters(ReprocessSlice slice) {
+        JobParametersBuilder builder = new JobParametersBuilder()
+                .addString(Costanti.JOB_PARAM_SLICE_ID, slice.getId())
+                .addLong(Costanti.JOB_PARAM_MAX_ID, slice.getMaxId());
+        if (slice.getCodDominio() != null)
+            builder.addString(Costanti.JOB_PARAM_COD_DOMINIO, slice.getCodDominio());
+        if (slice.getFromId() != null)
+            builder.addLong(Costanti.JOB_PARAM_FROM_ID, slice.getFromId());
+        if (slice.getToId() != null)
+            builder.addLong(Costanti.JOB_PARAM_TO_ID, slice.getToId());
+        if (slice.hasIds())
+            builder.addString(Costanti.JOB_PARAM_IDS, joinIds(slice.getIds()));
+        return builder.toJobParameters();
+    }
+
+    private static ReprocessSlice fromJobParameters(JobExecution execution) {
+        JobParameters params = execution.getJobParameters();
+        String ids = params.getString(Costanti.JOB_PARAM_IDS);
+        Long maxId = params.getLong(Costanti.JOB_PARAM_MAX_ID);
+        return ReprocessSlice.builder()
+                .id(params.getString(Costanti.JOB_PARAM_SLICE_ID))
+                .codDominio(params.getString(Costanti.JOB_PARAM_COD_DOMINIO))
+                .fromId(params.getLong(Costanti.JOB_PARAM_FROM_ID))
+                .toId(params.getLong(Costanti.JOB_PARAM_TO_ID))
+                .ids(ids != null && !ids.isBlank() ? parseIds(ids) : null)
+                .maxId(maxId != null ? maxId : 0L)
+                .submitted(execution.getCreateTime())
+                .build();
+    }
+
+    private static Set<Long> parseIds(String ids) {
+        return Arrays.stream(ids.split(","))
+                     .map(String::trim)
+                     .filter(id -> !id.isEmpty())
+                     .map(Long::valueOf)
+                     .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static String joinIds(Collection<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private record RunningSlices(List<ReprocessSlice> slices, Instant loaded) {
+    }
+}
@@ -0,0 +1,164 @@
+package it.govpay.rt.batch.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.entity.RetrieveOutcome;
+import it.govpay.rt.batch.repository.RetrieveOutcomeRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for the per-rendicontazione outcome stored in RT_BATCH_OUTCOME.
+ * <p>
+ * Every written item records its last outcome, the attempt count and the HTTP status of the pagoPA GET.
+ * NOT_FOUND, SEND_FAILED and FAILED receipts get a next eligible time with exponential backoff until
+ * {@code govpay.batch.retry.max-attempts} is reached; the reader then selects only the due rows, inside the time
+ * window of the main job. Backfill receipts older than the window have no retry path and are recorded as final.
+ * DEFERRED receipts are due again immediately and do not consume an attempt. With retries disabled FAILED
+ * receipts stay enabled: the concurrent writer keeps the watermark below them, so the next run reads them again.
+ */
+@Service
+@Slf4j
+public class RetrieveOutcomeService {
+
+	private static final int MAX_MESSAGE_LENGTH = 255;
+
+	private final RetrieveOutcomeRepository outcomeRepository;
+	private final BatchProperties.Retry config;
+	private final Clock clock;
+
+	@Autowired
+	public RetrieveOutcomeService(RetrieveOutcomeRepository outcomeRepository, BatchProperties batchProperties) {
+		this(outcomeRepository, batchProperties, Clock.systemDefaultZone());
+	}
+
+	public RetrieveOutcomeService(RetrieveOutcomeRepository outcomeRepository, BatchProperties batchProperties, Clock clock) {
+		this.outcomeRepository = outcomeRepository;
+		this.config = batchProperties.getRetry();
+		this.clock = clock;
+	}
+
+	/**
+	 * Records the outcome of a written item. Joins the caller's transaction (the chunk transaction).
+	 *
+	 * @return true if the receipt stays eligible for a retry, false if it has to be disabled
+	 */
+	@Transactional
+	public boolean record(RtRetrieveBatch batch) {
+		return record(batch, true);
+	}
+
+	/**
+	 * Records the outcome of an item that no run will select again among the retries, i.e. a backfill receipt older
+	 * than {@code govpay.batch.finestra-temporale}: NOT_FOUND, SEND_FAILED and FAILED are final at the first attempt.
+	 * A DEFERRED receipt was not attempted and stays enabled, so a new backfill of the same range reads it again.
+	 *
+	 * @return true if the receipt stays enabled, false if it has to be disabled
+	 */
+	@Transactional
+	public boolean recordWithoutRetry(RtRetrieveBatch batch) {
+		return record(batch, false);
+	}
+
+	private boolean record(RtRetrieveBatch batch, boolean retryable) {
+		RtRetrieveOutcome outcome = batch.getOutcome();
+		if (outcome == null)
+			return false;
+		LocalDateTime now = LocalDateTime.now(clock);
+		RetrieveOutcome row = outcomeRepository.findById(batch.getRtId())
+				.orElseGet(() -> RetrieveOutcome.builder().idRendicontazione(batch.getRtId()).attempts(0).build());
+		if (outcome == RtRetrieveOutcome.DEFERRED)
+			return defer(row, batch, now);
+		int attempts = row.getAttempts() + 1;
+		boolean retry = retryable && isRetryable(outcome) && attempts < config.getMaxAttempts();
+
+		row.setLastOutcome(outcome);
+		row.setAttempts(attempts);
+		row.setLastHttpStatus(batch.getHttpStatus());
+		row.setLastMessage(truncate(batch.getMessage()));
+		row.setLastAttempt(now);
+		row.setNextEligible(retry ? now.plus(delay(attempts)) : null);
+		outcomeRepository.save(row);
+
+		if (!retryable) {
+			if (outcome != RtRetrieveOutcome.RECOVERED)
+				log.info("Ricevuta {} ({}) fuori dalla finestra dei nuovi tentativi, recupero disabilitato", batch.getRtId(), outcome);
+			return false;
+		}
+		if (outcome == RtRetrieveOutcome.FAILED && !config.isEnabled())
+			return true;
+		if (retry)
+			log.debug("Ricevuta {} ({}): tentativo {} di {}, nuovo tentativo dopo {}",
+					  batch.getRtId(), outcome, attempts, config.getMaxAttempts(), row.getNextEligible());
+		else if (isRetryable(outcome))
+			log.info("Ricevuta {} ({}): tentativi esauriti ({}), recupero disabilitato", batch.getRtId(), outcome, attempts);
+		return retry;
+	}
+
+	/**
+	 * A deferred receipt was not attempted, or was rate limited by pagoPA (HTTP status 429): the attempt count is kept and the receipt is due again at once,
+	 * so the next run reads it among the retries.
+	 */
+	private boolean defer(RetrieveOutcome row, RtRetrieveBatch batch, LocalDateTime now) {
+		row.setLastOutcome(RtRetrieveOutcome.DEFERRED);
+		row.setLastHttpStatus(batch.getHttpStatus());
+		row.setLastMessage(truncate(batch.getMessage()));
+		row.setLastAttempt(now);
+		row.setNextEligible(now);
+		outcomeRepository.save(row);
+		log.debug("Ricevuta {} rinviata alla prossima esecuzione (tentativi {})", batch.getRtId(), row.getAttempts());
+		return true;
+	}
+
+	/**
+	 * @param dataLimite inizio della finestra temporale del batch
+	 * @return righe {id, codDominio, iuv, iur, data} delle ricevute il cui nuovo tentativo e' scaduto, al massimo
+	 *         {@code govpay.batch.retry.max-per-run}
+	 */
+	@Transactional(readOnly = true)
+	public List<Object[]> findRetryable(LocalDateTime dataLimite) {
+		if (!config.isEnabled() || config.getMaxPerRun() <= 0)
+			return List.of();
+		return outcomeRepository.findRetryable(LocalDateTime.now(clock), dataLimite, PageRequest.of(0, config.getMaxPerRun()));
+	}
+
+	/**
+	 * @param dataLimite inizio della finestra temporale del batch
+	 * @return true se almeno una ricevuta selezionata da {@link #findRetryable} e' da ritentare
+	 */
+	@Transactional(readOnly = true)
+	public boolean hasRetryable(LocalDateTime dataLimite) {
+		if (!config.isEnabled() || config.getMaxPerRun() <= 0)
+			return false;
+		return !outcomeRepository.findRetryableIds(LocalDateTime.now(clock), dataLimite, PageRequest.of(0, 1)).isEmpty();
+	}
+
+	/**
+	 * @param attempts tentativi gia' effettuati (da 1)
+	 * @return attesa prima del tentativo successivo
+	 */
+	public Duration delay(int attempts) {
+		double factor = Math.pow(Math.max(1.0, config.getMultiplier()), Math.max(0, attempts - 1));
+		double millis = config.getInitialDelay().toMillis() * factor;
+		return millis >= config.getMaxDelay().toMillis() ? config.getMaxDelay() : Duration.ofMillis((long) millis);
+	}
+
+	private boolean isRetryable(RtRetrieveOutcome outcome) {
+		return config.isEnabled() && (outcome == RtRetrieveOutcome.NOT_FOUND || outcome == RtRetrieveOutcome.SEND_FAILED
+				|| outcome == RtRetrieveOutcome.FAILED);
+	}
+
+	private static String truncate(String message) {
+		return message != null && message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+	}
+}
@@ -1,31 +1,46 @@
 package it.govpay.rt.batch.service;
 
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
+import it.govpay.common.client.gde.HttpDataHolder;
 import it.govpay.common.client.model.Connettore;
 import it.govpay.common.client.service.ConnettoreService;
 import it.govpay.common.entity.DominioEntity;
 import it.govpay.common.entity.IntermediarioEntity;
 import it.govpay.common.entity.StazioneEntity;
+import it.govpay.common.gde.GdeUtils;
 import it.govpay.common.repository.DominioRepository;
 import it.govpay.common.repository.IntermediarioRepository;
+import it.govpay.gde.client.beans.Header;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.client.ExchangeContext;
+import it.govpay.rt.batch.client.ResponseSizeInterceptor;
 import it.govpay.rt.batch.config.RtApiClientConfig;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.gde.service.GdeService;
+import it.govpay.rt.batch.jfr.PipelineEvent;
+import it.govpay.rt.batch.jfr.PipelineEvents;
 import it.govpay.rt.batch.service.mapper.CtReceiptV2Converter;
 import it.govpay.rt.client.ApiClient;
 import it.govpay.rt.client.api.PaymentReceiptsRestApisApi;
@@ -46,26 +61,55 @@ public class RtApiService {
 	private final IntermediarioRepository intermediarioRepository;
 	private final DominioRepository dominioRepository;
 	private final RtApiClientConfig rtApiClientConfig;
+	private final ObservationRegistry observationRegistry;
+	private final TransactionOperations lookupTransaction;
+	private final HedgedRequestExecutor hedging;
 
 	/** Cache of PaymentReceiptsRestApisApi instances keyed by connector code */
 	private final ConcurrentHashMap<String, PaymentReceiptsRestApisApi> apiCache = new ConcurrentHashMap<>();
 
+	@Autowired
 	public RtApiService(ConnettoreService connettoreService,
 						IntermediarioRepository intermediarioRepository,
 						DominioRepository dominioRepository,
 						RtApiClientConfig rtApiClientConfig,
-						GdeService gdeService) {
+						GdeService gdeService,
+						ObservationRegistry observationRegistry,
+						PlatformTransactionManager transactionManager,
+						HedgedRequestExecutor hedging) {
+		this(connettoreService, intermediarioRepository, dominioRepository, rtApiClientConfig, gdeService, observationRegistry,
+			 readOnly(transactionManager), hedging);
+	}
+
+	public RtApiService(ConnettoreService connettoreService,
+						IntermediarioRepository intermediarioRepository,
+						DominioRepository dominioRepository,
+						RtApiClientConfig rtApiClientConfig,
+						GdeService gdeService,
+						ObservationRegistry observationRegistry,
+						TransactionOperations lookupTransaction,
+						HedgedRequestExecutor hedging) {
 		this.connettoreService = connettoreService;
 		this.intermediarioRepository = intermediarioRepository;
 		this.dominioRepository = dominioRepository;
 		this.rtApiClientConfig = rtApiClientConfig;
 		this.gdeService = gdeService;
+		this.observationRegistry = observationRegistry;
+		this.lookupTransaction = lookupTransaction;
+		this.hedging = hedging;
+	}
+
+	private static TransactionTemplate readOnly(PlatformTransactionManager transactionManager) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		return template;
 	}
 
 	/**
 	 * Resolves the connector code for the given domain via IntermediarioRepository.
+	 * Also used by the reader to group pending receipts by connector in fair-share mode.
 	 */
-	private String resolveConnectorCode(String codDominio) {
+	public String resolveConnectorCode(String codDominio) {
 		Optional<IntermediarioEntity> intermediarioOpt = intermediarioRepository.findByCodDominio(codDominio);
 		IntermediarioEntity intermediario = intermediarioOpt.orElseThrow(() ->
 			new IllegalStateException("Nessun intermediario trovato per il dominio: " + codDominio));
@@ -83,12 +127,11 @@ public class RtApiService {
 	}
 
 	/**
-	 * Gets or creates a PaymentReceiptsRestApisApi instance for the given domain.
+	 * Gets or creates a PaymentReceiptsRestApisApi instance for the given connector.
 	 * Uses a cache keyed by connector code to avoid creating duplicate instances
 	 * for domains sharing the same intermediary.
 	 */
-	private PaymentReceiptsRestApisApi getOrCreateApi(String codDominio) {
-		String codConnettore = resolveConnectorCode(codDominio);
+	private PaymentReceiptsRestApisApi getOrCreateApi(String codConnettore) {
 		return apiCache.computeIfAbsent(codConnettore, code -> {
 			RestTemplate restTemplate = connettoreService.getRestTemplate(code);
 
@@ -97,6 +140,11 @@ public class RtApiService {
 				new JacksonJsonHttpMessageConverter(rtApiClientConfig.createPagoPAObjectMapper());
 			restTemplate.getMessageConverters().removeIf(JacksonJsonHttpMessageConverter.class::isInstance);
 			restTemplate.getMessageConverters().add(0, converter);
+			// span client HTTP figlio dell'observation corrente e propagazione del contesto di trace negli header
+			restTemplate.setObservationRegistry(observationRegistry);
+			// dimensione del body letto per l'evento JFR della GET (Content-Length manca con risposte chunked)
+			restTemplate.getInterceptors().removeIf(ResponseSizeInterceptor.class::isInstance);
+			restTemplate.getInterceptors().add(new ResponseSizeInterceptor());
 
 			Connettore connettore = connettoreService.getConnettore(code);
 			ApiClient apiClient = new ApiClient(restTemplate);
@@ -108,11 +156,10 @@ public class RtApiService {
 	}
 
 	/**
-	 * Returns the pagoPA base URL for the given domain (for GDE event tracking).
+	 * Returns the pagoPA base URL for the given connector (for GDE event tracking).
 	 * Delegates to ConnettoreService which has its own internal caching.
 	 */
-	private String getBaseUrl(String codDominio) {
-		String codConnettore = resolveConnectorCode(codDominio);
+	private String getBaseUrl(String codConnettore) {
 		return connettoreService.getConnettore(codConnettore).getUrl();
 	}
 
@@ -139,47 +186,138 @@ public class RtApiService {
 
 	public PaSendRTV2Request retrieveReceipt(RtRetrieveContext rtInfo, CompletableFuture<HttpStatusCode> statusCodeFuture) throws RestClientException {
 		log.debug("Recupero ricevuta per l'organizzazione {} con iur {} e iuv {}", rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv());
-		OffsetDateTime dataStart = OffsetDateTime.now(ZoneOffset.UTC);
-		OffsetDateTime dataEnd = null;
-		String pagoPABaseUrl = getBaseUrl(rtInfo.getTaxCode());
-
-		DomainInfo domainInfo = resolveDomainInfo(rtInfo.getTaxCode());
+		ExchangeContext exchange = new ExchangeContext();
+		exchange.setMethod("GET");
+		String codConnettore;
+		String pagoPABaseUrl;
+		DomainInfo domainInfo;
+		PaymentReceiptsRestApisApi api;
+		Observation lookup = Observation.start(Costanti.OBSERVATION_DOMAIN_LOOKUP, observationRegistry);
+		try (Observation.Scope scope = lookup.openScope()) {
+			codConnettore = resolveConnectorCode(rtInfo.getTaxCode());
+			pagoPABaseUrl = getBaseUrl(codConnettore);
+			// partecipa alla transazione del chunk se presente; con l'elaborazione concorrente (thread del processor
+			// fuori dalla transazione) ne apre una in sola lettura per navigare dominio -> stazione -> intermediario
+			domainInfo = lookupTransaction.execute(status -> resolveDomainInfo(rtInfo.getTaxCode()));
+			api = getOrCreateApi(codConnettore);
+		} catch (RuntimeException e) {
+			lookup.error(e);
+			throw e;
+		} finally {
+			lookup.stop();
+		}
 		rtInfo.setIdIntermediario(domainInfo.intermediaryId());
 		rtInfo.setIdStazione(domainInfo.stationId());
 
 		ResponseEntity<CtReceiptModelResponse> response = null;
 		try {
-			response = getOrCreateApi(rtInfo.getTaxCode()).getOrganizationReceiptIuvIurWithHttpInfo(rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv(), null);
+			response = getReceipt(api, codConnettore, rtInfo, exchange);
 			statusCodeFuture.complete(response.getStatusCode());
-			dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
 		} catch (HttpClientErrorException.NotFound e) {
 			// 404 Not Found: ricevuta non disponibile su pagoPA -> skip e prosegui
-			dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
 			log.warn("Ricevuta non trovata su pagoPA: taxCode {} - iur {} - iuv {}", rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv());
 			statusCodeFuture.complete(HttpStatus.NOT_FOUND);
-			gdeService.saveGetReceiptKo(rtInfo, response, e, dataStart, dataEnd, pagoPABaseUrl);
+			gdeService.saveGetReceiptKo(rtInfo, response, e, exchange, pagoPABaseUrl);
 			return null;
 		} catch (HttpClientErrorException.TooManyRequests e) {
 			// 429 Too Many Requests: rate limiting -> stop esecuzione
-			dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
 			log.warn("Rate limit raggiunto su pagoPA per taxCode {} - iur {} - iuv {}", rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv());
-			gdeService.saveGetReceiptKo(rtInfo, response, e, dataStart, dataEnd, pagoPABaseUrl);
+			gdeService.saveGetReceiptKo(rtInfo, response, e, exchange, pagoPABaseUrl);
 			throw e;
 		} catch (RestClientException e) {
 			// Altri errori -> stop elaborazione
-			dataEnd = OffsetDateTime.now(ZoneOffset.UTC);
 			log.error("Errore durante il recupero della ricevuta: taxCode {} - iur {} - iuv {}", rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv(), e);
-			gdeService.saveGetReceiptKo(rtInfo, response, e, dataStart, dataEnd, pagoPABaseUrl);
+			gdeService.saveGetReceiptKo(rtInfo, response, e, exchange, pagoPABaseUrl);
 			throw e;
 		}
 
 		// 200 OK: ricevuta recuperata -> salva e prosegui
 		log.debug("Recuperata ricevuta per l'organizzazione {} con iur {} e iuv {}", rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv());
-		PaSendRTV2Request ret = CtReceiptV2Converter.toPaSendRTV2Request(domainInfo.intermediaryId(), domainInfo.stationId(), rtInfo.getTaxCode(), response.getBody());
-		gdeService.saveGetReceiptOk(rtInfo, response, dataStart, dataEnd, pagoPABaseUrl);
+		CtReceiptModelResponse receipt = response.getBody();
+		PipelineEvent convert = new PipelineEvents.Convert().rtId(rtInfo.getRtId()).connector(codConnettore).status("OK");
+		convert.begin();
+		PaSendRTV2Request ret;
+		try {
+			ret = Observation.createNotStarted(Costanti.OBSERVATION_CONVERT, observationRegistry)
+				.observe(() -> CtReceiptV2Converter.toPaSendRTV2Request(domainInfo.intermediaryId(), domainInfo.stationId(), rtInfo.getTaxCode(), receipt));
+		} catch (RuntimeException e) {
+			convert.failed(e);
+			throw e;
+		} finally {
+			convert.commit();
+		}
+		gdeService.saveGetReceiptOk(rtInfo, response, exchange, pagoPABaseUrl);
 		return ret;
 	}
 
+	/**
+	 * Esegue la GET verso pagoPA valorizzando lo scambio con tempi e headers della richiesta.
+	 * <p>
+	 * La GET e' idempotente: con l'hedging abilitato puo' essere ripetuta su un altro thread se la prima
+	 * richiesta e' lenta, e vale la prima risposta. Ogni tentativo restituisce i propri headers (o li associa
+	 * alla propria eccezione): nello scambio finiscono solo quelli del tentativo il cui esito viene usato.
+	 */
+	private ResponseEntity<CtReceiptModelResponse> getReceipt(PaymentReceiptsRestApisApi api, String codConnettore,
+															  RtRetrieveContext rtInfo, ExchangeContext exchange) {
+		Observation get = Observation.createNotStarted(Costanti.OBSERVATION_PAGOPA_GET, observationRegistry);
+		Map<Throwable, List<Header>> failedAttempts = new ConcurrentHashMap<>();
+		PipelineEvent event = new PipelineEvents.PagopaGet().rtId(rtInfo.getRtId()).connector(codConnettore);
+		event.begin();
+		try {
+			ReceiptAttempt attempt = get.observe(() -> hedging.call(codConnettore, () -> {
+				// lo span client HTTP resta figlio della GET anche quando la richiesta parte da un altro thread
+				try (Observation.Scope scope = get.openScope()) {
+					return getReceiptAttempt(api, rtInfo, failedAttempts);
+				}
+			}));
+			exchange.setRequestHeaders(attempt.requestHeaders());
+			ResponseEntity<CtReceiptModelResponse> response = attempt.response();
+			event.status(response.getStatusCode().value()).bytes(attempt.bodyBytes());
+			return response;
+		} catch (HttpStatusCodeException e) {
+			setFailedAttemptHeaders(exchange, failedAttempts, e);
+			event.status(e.getStatusCode().value()).bytes(e.getResponseBodyAsByteArray());
+			throw e;
+		} catch (RuntimeException e) {
+			setFailedAttemptHeaders(exchange, failedAttempts, e);
+			event.failed(e);
+			throw e;
+		} finally {
+			exchange.complete();
+			event.commit();
+		}
+	}
+
+	private static void setFailedAttemptHeaders(ExchangeContext exchange, Map<Throwable, List<Header>> failedAttempts,
+												RuntimeException e) {
+		List<Header> headers = failedAttempts.get(e);
+		if (headers != null)
+			exchange.setRequestHeaders(headers);
+	}
+
+	/**
+	 * Singola richiesta GET.
+	 * <p>
+	 * Gli headers sono catturati da govpay-common in un holder legato al thread della chiamata, come la dimensione
+	 * del body letto da {@link ResponseSizeInterceptor}: vanno letti e l'holder svuotato qui, sullo stesso thread.
+	 * Sono restituiti con la risposta, o associati all'eccezione in {@code failedAttempts}, e copiati nello scambio
+	 * solo per il tentativo vincente.
+	 */
+	private ReceiptAttempt getReceiptAttempt(PaymentReceiptsRestApisApi api, RtRetrieveContext rtInfo,
+											 Map<Throwable, List<Header>> failedAttempts) {
+		try {
+			ResponseEntity<CtReceiptModelResponse> response =
+				api.getOrganizationReceiptIuvIurWithHttpInfo(rtInfo.getTaxCode(), rtInfo.getIur(), rtInfo.getIuv(), null);
+			return new ReceiptAttempt(response, GdeUtils.getCapturedRequestHeadersAsGdeHeaders(), ResponseSizeInterceptor.bytesRead());
+		} catch (RuntimeException e) {
+			failedAttempts.put(e, GdeUtils.getCapturedRequestHeadersAsGdeHeaders());
+			throw e;
+		} finally {
+			HttpDataHolder.clear();
+			ResponseSizeInterceptor.clear();
+		}
+	}
+
 	/**
 	 * Svuota la cache delle istanze API per forzare la ricreazione al prossimo utilizzo.
 	 */
@@ -193,4 +331,9 @@ public class RtApiService {
 	 * Helper record to hold intermediary/station info resolved from DB.
 	 */
 	private record DomainInfo(String intermediaryId, String stationId) {}
+
+	/**
+	 * Response of a single GET attempt with the request headers it sent and the size of the body it read.
+	 */
+	private record ReceiptAttempt(ResponseEntity<CtReceiptModelResponse> response, List<Header> requestHeaders, long bodyBytes) {}
 }
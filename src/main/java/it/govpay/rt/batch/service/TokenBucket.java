@@ -0,0 +1,75 @@
+package it.govpay.rt.batch.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter shared by the threads of a partitioned step.
+ * <p>
+ * Tokens are refilled at {@code permitsPerSecond} up to {@code burst}; a caller finding the bucket empty reserves
+ * the next token anyway and waits for it, so concurrent callers are served in reservation order at the target rate.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerPermit;
+    private final double capacity;
+    private final LongSupplier nanoTime;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    public TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoTime) {
+        if (permitsPerSecond <= 0)
+            throw new IllegalArgumentException("permitsPerSecond deve essere positivo: " + permitsPerSecond);
+        this.nanosPerPermit = NANOS_PER_SECOND / permitsPerSecond;
+        this.capacity = Math.max(1, burst);
+        this.nanoTime = nanoTime;
+        this.tokens = capacity;
+        this.lastRefill = nanoTime.getAsLong();
+    }
+
+    /**
+     * Takes a token, waiting until it is available.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    /**
+     * Takes a token only if one is available now.
+     *
+     * @return false, without taking a token, if the bucket is empty
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1)
+            return false;
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Takes a token without waiting.
+     *
+     * @return nanoseconds the caller has to wait before using the token (0 if available now)
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0L : (long) Math.ceil(-tokens * nanosPerPermit);
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerPermit);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,95 @@
+package it.govpay.rt.batch.service;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import it.govpay.rt.batch.entity.BatchWatermark;
+import it.govpay.rt.batch.repository.BatchWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for reading and advancing the per-job (and per-partition) watermark
+ * stored in RT_BATCH_WATERMARK.
+ * <p>
+ * The watermark is advanced inside the chunk transaction, so it is committed
+ * atomically with the rendicontazioni updates of the same chunk. The row is
+ * created beforehand by {@link #seed}, so advancing it is a single conditional
+ * update and two processes never race to insert it from their chunks.
+ */
+@Service
+@Slf4j
+public class WatermarkService {
+
+	private final BatchWatermarkRepository watermarkRepository;
+
+	public WatermarkService(BatchWatermarkRepository watermarkRepository) {
+		this.watermarkRepository = watermarkRepository;
+	}
+
+	@Transactional(readOnly = true)
+	public Optional<Long> getWatermark(String jobName) {
+		return getWatermark(jobName, BatchWatermark.DEFAULT_PARTITION);
+	}
+
+	@Transactional(readOnly = true)
+	public Optional<Long> getWatermark(String jobName, String partitionKey) {
+		return watermarkRepository.findLastProcessedId(jobName, partitionKey);
+	}
+
+	@Transactional
+	public void advance(String jobName, long lastProcessedId) {
+		advance(jobName, BatchWatermark.DEFAULT_PARTITION, lastProcessedId);
+	}
+
+	public void seed(String jobName, long initialId) {
+		seed(jobName, BatchWatermark.DEFAULT_PARTITION, initialId);
+	}
+
+	/**
+	 * Creates the watermark row with {@code initialId} if it does not exist yet. Must be called outside
+	 * a transaction, before the first chunk (job or step start): the insert runs in its own transaction,
+	 * and if another process creates the row in the meantime the primary key violation is ignored.
+	 */
+	public void seed(String jobName, String partitionKey, long initialId) {
+		if (watermarkRepository.existsById(new BatchWatermark.Key(jobName, partitionKey)))
+			return;
+		try {
+			watermarkRepository.saveAndFlush(BatchWatermark.builder()
+					.jobName(jobName)
+					.partitionKey(partitionKey)
+					.lastProcessedId(initialId)
+					.lastUpdated(LocalDateTime.now())
+					.build());
+			log.debug("Watermark creato per job {} (partizione {}): {}", jobName, partitionKey, initialId);
+		} catch (DataIntegrityViolationException e) {
+			log.debug("Watermark per job {} (partizione {}) gia' creato da un altro processo", jobName, partitionKey);
+		}
+	}
+
+	/**
+	 * Moves the watermark forward to {@code lastProcessedId}; never moves it backwards.
+	 * Joins the caller's transaction (the chunk transaction when called by the writer).
+	 * The row must have been created by {@link #seed}.
+	 */
+	@Transactional
+	public void advance(String jobName, String partitionKey, long lastProcessedId) {
+		int updated = watermarkRepository.advance(jobName, partitionKey, lastProcessedId, LocalDateTime.now());
+		if (updated > 0) {
+			log.debug("Watermark aggiornato per job {} (partizione {}): {}", jobName, partitionKey, lastProcessedId);
+		} else if (!watermarkRepository.existsById(new BatchWatermark.Key(jobName, partitionKey))) {
+			throw new IllegalStateException("Watermark non inizializzato per job " + jobName + " (partizione " + partitionKey + ")");
+		}
+	}
+
+	/**
+	 * Removes the watermark of a partition that will not be read again (a completed backfill partition).
+	 */
+	@Transactional
+	public void clear(String jobName, String partitionKey) {
+		watermarkRepository.deleteById(new BatchWatermark.Key(jobName, partitionKey));
+	}
+}
@@ -0,0 +1,66 @@
+package it.govpay.rt.batch.tasklet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.Partitioner;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.Costanti;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits the id range of the backfill job into contiguous sub-ranges, one per partition.
+ * <p>
+ * The range (firstId/lastId) is resolved by {@code BackfillService} when the backfill is submitted, already capped
+ * at the regular job watermark, so the partitions do not depend on when the job runs. The partition key is the job
+ * instance id plus the partition index: a restart of the same instance reuses the partitions (and their watermarks)
+ * of the interrupted execution, while a new backfill of the same ids gets new keys.
+ */
+@Component
+@StepScope
+@Slf4j
+public class BackfillPartitioner implements Partitioner {
+
+    private final Long firstId;
+    private final Long lastId;
+    private final long jobInstanceId;
+
+    public BackfillPartitioner(
+            @Value("#{jobParameters['firstId']}") Long firstId,
+            @Value("#{jobParameters['lastId']}") Long lastId,
+            @Value("#{stepExecution.jobExecution.jobInstance.id}") long jobInstanceId) {
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.jobInstanceId = jobInstanceId;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        if (firstId == null || lastId == null || lastId < firstId) {
+            log.info("Recupero storico: nessuna rendicontazione da recuperare nell'intervallo richiesto");
+            return partitions;
+        }
+
+        long range = lastId - firstId + 1;
+        int count = (int) Math.min(Math.max(1, gridSize), range);
+        long size = (range + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            long min = firstId + i * size;
+            if (min > lastId)
+                break;
+            long max = Math.min(lastId, min + size - 1);
+            ExecutionContext context = new ExecutionContext();
+            context.putLong(Costanti.PARTITION_MIN_ID_KEY, min);
+            context.putLong(Costanti.PARTITION_MAX_ID_KEY, max);
+            context.putString(Costanti.PARTITION_KEY, jobInstanceId + "-" + i);
+            partitions.put("partition" + i, context);
+        }
+        log.info("Recupero storico: id da {} a {} in {} partizioni", firstId, lastId, partitions.size());
+        return partitions;
+    }
+}
@@ -0,0 +1,182 @@
+package it.govpay.rt.batch.tasklet;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.ItemProcessor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.listener.ItemLoggingListener;
+import it.govpay.rt.batch.listener.ReceiptTracingListener;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Processor for the concurrent mode ({@code govpay.batch.concurrency.enabled}): hands each receipt to
+ * {@link RtRetrieveProcessor} on the task executor and returns at once, so the reader goes on while the
+ * pagoPA and GovPay calls of the previous receipts are in flight. The results are collected in read order
+ * by {@link ConcurrentRtRetrieveWriter}.
+ * <p>
+ * The bound on in-flight receipts is the concurrency limit of the executor: when it is reached the step thread
+ * waits in {@link #process}. With {@link ConnectorBulkheads} each RT connector has its own limit and queue in
+ * addition: a receipt finding the queue of its connector full is not attempted and is written as
+ * {@link RtRetrieveOutcome#DEFERRED}. MDC and the receipt observation are set on the thread that runs the receipt,
+ * in place of {@link ItemLoggingListener} and {@link ReceiptTracingListener}.
+ * <p>
+ * A receipt whose processing throws is completed as {@link RtRetrieveOutcome#FAILED} instead of failing the chunk:
+ * the other receipts of the chunk have already been sent to GovPay and their outcomes must be written.
+ * <p>
+ * A pagoPA 429 stops the run, as in the sequential mode: the rate-limited receipt is completed as
+ * {@link RtRetrieveOutcome#DEFERRED} with HTTP status 429, so it does not consume a retry attempt, and the receipts
+ * read afterwards are filtered without being sent, to be read again by the next run. {@link ConcurrentRtRetrieveWriter}
+ * stops the step once the chunk is written.
+ */
+@Slf4j
+public class ConcurrentRtRetrieveProcessor implements ItemProcessor<RtRetrieveContext, Future<RtRetrieveBatch>> {
+
+    private final RtRetrieveProcessor delegate;
+    private final TaskExecutor taskExecutor;
+    private final ConnectorBulkheads bulkheads;
+    private final UnaryOperator<String> connectorOfDomain;
+    private final ObservationRegistry observationRegistry;
+    private final AtomicBoolean rateLimited = new AtomicBoolean();
+
+    public ConcurrentRtRetrieveProcessor(RtRetrieveProcessor delegate, TaskExecutor taskExecutor,
+                                         ObservationRegistry observationRegistry) {
+        this(delegate, taskExecutor, null, null, observationRegistry);
+    }
+
+    /**
+     * @param connectorOfDomain resolves the RT connector code of a creditor domain
+     */
+    public ConcurrentRtRetrieveProcessor(RtRetrieveProcessor delegate, ConnectorBulkheads bulkheads,
+                                         UnaryOperator<String> connectorOfDomain, ObservationRegistry observationRegistry) {
+        this(delegate, null, bulkheads, connectorOfDomain, observationRegistry);
+    }
+
+    private ConcurrentRtRetrieveProcessor(RtRetrieveProcessor delegate, TaskExecutor taskExecutor, ConnectorBulkheads bulkheads,
+                                          UnaryOperator<String> connectorOfDomain, ObservationRegistry observationRegistry) {
+        this.delegate = delegate;
+        this.taskExecutor = taskExecutor;
+        this.bulkheads = bulkheads;
+        this.connectorOfDomain = connectorOfDomain;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        rateLimited.set(false);
+    }
+
+    /**
+     * True once a receipt of the step got a pagoPA 429: no further receipt is sent in this step.
+     */
+    public boolean isRateLimited() {
+        return rateLimited.get();
+    }
+
+    @Override
+    public Future<RtRetrieveBatch> process(RtRetrieveContext item) throws InterruptedException {
+        if (rateLimited.get()) {
+            // quota del connettore superata: la ricevuta non viene inviata e resta da leggere alla prossima esecuzione
+            log.debug("Rate limit pagoPA raggiunto: ricevuta {} non inviata", item.getRtId());
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<RtRetrieveBatch> result = new CompletableFuture<>();
+        Runnable task = () -> run(item, result);
+        if (bulkheads == null) {
+            taskExecutor.execute(task);
+            return result;
+        }
+        String connector;
+        try {
+            connector = connectorOfDomain.apply(item.getTaxCode());
+        } catch (RuntimeException e) {
+            // dominio senza connettore: errore della ricevuta, come nell'elaborazione sequenziale
+            log.debug("Connettore della ricevuta {} non risolto: {}", item.getRtId(), e.getMessage());
+            result.complete(failed(item, e));
+            return result;
+        }
+        if (!bulkheads.submit(connector, task)) {
+            log.debug("Coda del connettore {} piena: ricevuta {} rinviata", connector, item.getRtId());
+            result.complete(deferred(item, connector));
+        }
+        return result;
+    }
+
+    private static RtRetrieveBatch deferred(RtRetrieveContext item, String connector) {
+        return RtRetrieveBatch.builder()
+                              .rtId(item.getRtId())
+                              .codDominio(item.getTaxCode())
+                              .iur(item.getIur())
+                              .iuv(item.getIuv())
+                              .dataRendicontazione(item.getDataRendicontazione())
+                              .watermark(item.getWatermark())
+                              .message("Receipt deferred: bulkhead of connector " + connector + " full")
+                              .outcome(RtRetrieveOutcome.DEFERRED)
+                              .build();
+    }
+
+    private static RtRetrieveBatch rateLimited(RtRetrieveContext item, HttpClientErrorException.TooManyRequests e) {
+        return RtRetrieveBatch.builder()
+                              .rtId(item.getRtId())
+                              .codDominio(item.getTaxCode())
+                              .iur(item.getIur())
+                              .iuv(item.getIuv())
+                              .dataRendicontazione(item.getDataRendicontazione())
+                              .watermark(item.getWatermark())
+                              .message("Receipt deferred: pagoPA rate limit reached: " + e.getMessage())
+                              .outcome(RtRetrieveOutcome.DEFERRED)
+                              .httpStatus(HttpStatus.TOO_MANY_REQUESTS.value())
+                              .build();
+    }
+
+    private static RtRetrieveBatch failed(RtRetrieveContext item, Exception e) {
+        return RtRetrieveBatch.builder()
+                              .rtId(item.getRtId())
+                              .codDominio(item.getTaxCode())
+                              .iur(item.getIur())
+                              .iuv(item.getIuv())
+                              .dataRendicontazione(item.getDataRendicontazione())
+                              .watermark(item.getWatermark())
+                              .message("Receipt processing failed: " + e)
+                              .outcome(RtRetrieveOutcome.FAILED)
+                              .build();
+    }
+
+    private void run(RtRetrieveContext item, CompletableFuture<RtRetrieveBatch> result) {
+        ItemLoggingListener.putMdc(item);
+        Observation observation = ReceiptTracingListener.start(item, observationRegistry);
+        try (Observation.Scope scope = observation.openScope()) {
+            RtRetrieveBatch batch = delegate.process(item);
+            observation.lowCardinalityKeyValue(ReceiptTracingListener.KEY_OUTCOME, batch != null && batch.getOutcome() != null
+                    ? batch.getOutcome().name() : ReceiptTracingListener.OUTCOME_FILTERED);
+            result.complete(batch);
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            if (rateLimited.compareAndSet(false, true))
+                log.warn("Rate limit raggiunto su pagoPA con la ricevuta {}: nessuna nuova ricevuta inviata, lo step si ferma",
+                         item.getRtId());
+            observation.error(e);
+            observation.lowCardinalityKeyValue(ReceiptTracingListener.KEY_OUTCOME, RtRetrieveOutcome.DEFERRED.name());
+            result.complete(rateLimited(item, e));
+        } catch (Exception e) {
+            log.warn("Errore nell'elaborazione della ricevuta {}: {}", item.getRtId(), e.getMessage());
+            observation.error(e);
+            observation.lowCardinalityKeyValue(ReceiptTracingListener.KEY_OUTCOME, ReceiptTracingListener.OUTCOME_ERROR);
+            result.complete(failed(item, e));
+        } finally {
+            observation.stop();
+            ItemLoggingListener.clearMdc();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package it.govpay.rt.batch.tasklet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ItemWriter;
+import org.springframework.http.HttpStatus;
+
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writer for the concurrent mode: waits for all the receipts of the chunk started by
+ * {@link ConcurrentRtRetrieveProcessor} and writes their outcomes with {@link RtRetrieveWriter}, in read order.
+ * <p>
+ * Receipts whose processing failed arrive as {@link RtRetrieveOutcome#FAILED} and are written with the others,
+ * so the receipts of the chunk already sent to GovPay are never sent again. With retries enabled a failed receipt
+ * is retried through RT_BATCH_OUTCOME like a SEND_FAILED one. With retries disabled the watermark moves only over
+ * the receipts read before the first failure and the step stops after the chunk, as a processor error stops the
+ * sequential mode: the next run starts again from the failed receipt.
+ * A receipt rate limited by pagoPA (DEFERRED with HTTP status 429) stops the step after the chunk as well; without
+ * retries it also holds the watermark like a failure, since a deferred receipt is read again only through
+ * RT_BATCH_OUTCOME.
+ * The write listeners of the sequential step are notified with the unwrapped outcomes.
+ */
+@Slf4j
+public class ConcurrentRtRetrieveWriter implements ItemWriter<Future<RtRetrieveBatch>> {
+
+    private final ItemWriter<RtRetrieveBatch> delegate;
+    private final List<ItemWriteListener<RtRetrieveBatch>> listeners;
+    private final boolean retryFailures;
+    private StepExecution stepExecution;
+
+    /**
+     * @param retryFailures true when failed receipts are retried through RT_BATCH_OUTCOME
+     *                      ({@code govpay.batch.retry.enabled})
+     */
+    public ConcurrentRtRetrieveWriter(ItemWriter<RtRetrieveBatch> delegate, List<ItemWriteListener<RtRetrieveBatch>> listeners,
+                                      boolean retryFailures) {
+        this.delegate = delegate;
+        this.listeners = listeners;
+        this.retryFailures = retryFailures;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        this.stepExecution = stepExecution;
+    }
+
+    @Override
+    public void write(Chunk<? extends Future<RtRetrieveBatch>> chunk) throws Exception {
+        List<RtRetrieveBatch> outcomes = new ArrayList<>(chunk.size());
+        for (Future<RtRetrieveBatch> future : chunk) {
+            RtRetrieveBatch outcome;
+            try {
+                outcome = future.get();
+            } catch (ExecutionException e) {
+                // il processor completa sempre il future con un esito: qui arrivano solo errori inattesi
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+            // null: ricevuta scartata dal processor, come nello step sequenziale non arriva al writer
+            if (outcome != null)
+                outcomes.add(outcome);
+        }
+        if (outcomes.isEmpty())
+            return;
+        if (!retryFailures)
+            holdWatermarkAtFirstFailure(outcomes);
+        else if (outcomes.stream().anyMatch(ConcurrentRtRetrieveWriter::isRateLimited)) {
+            log.warn("Rate limit raggiunto su pagoPA: lo step si ferma dopo questo chunk");
+            if (stepExecution != null)
+                stepExecution.setTerminateOnly();
+        }
+
+        Chunk<RtRetrieveBatch> items = new Chunk<>(outcomes);
+        for (ItemWriteListener<RtRetrieveBatch> listener : listeners)
+            listener.beforeWrite(items);
+        try {
+            delegate.write(items);
+        } catch (Exception e) {
+            for (ItemWriteListener<RtRetrieveBatch> listener : listeners)
+                listener.onWriteError(e, items);
+            throw e;
+        }
+        for (ItemWriteListener<RtRetrieveBatch> listener : listeners)
+            listener.afterWrite(items);
+    }
+
+    /**
+     * Without retries a failed receipt is read again only if the watermark stays below it: the outcomes from the
+     * first failure on carry the watermark of the receipt before it, and the step stops once the chunk is committed.
+     */
+    private void holdWatermarkAtFirstFailure(List<RtRetrieveBatch> outcomes) {
+        int first = -1;
+        for (int i = 0; i < outcomes.size() && first < 0; i++) {
+            if (outcomes.get(i).getOutcome() == RtRetrieveOutcome.FAILED || isRateLimited(outcomes.get(i)))
+                first = i;
+        }
+        if (first < 0)
+            return;
+        long watermark = 0L;
+        if (first > 0) {
+            RtRetrieveBatch previous = outcomes.get(first - 1);
+            watermark = previous.getWatermark() != null ? previous.getWatermark() : previous.getRtId();
+        }
+        for (int i = first; i < outcomes.size(); i++)
+            outcomes.get(i).setWatermark(watermark);
+        log.warn("Elaborazione della ricevuta {} fallita: {}; watermark fermo prima della ricevuta, lo step si ferma dopo questo chunk",
+                 outcomes.get(first).getRtId(), outcomes.get(first).getMessage());
+        if (stepExecution != null)
+            stepExecution.setTerminateOnly();
+    }
+
+    private static boolean isRateLimited(RtRetrieveBatch outcome) {
+        return outcome.getOutcome() == RtRetrieveOutcome.DEFERRED
+                && Integer.valueOf(HttpStatus.TOO_MANY_REQUESTS.value()).equals(outcome.getHttpStatus());
+    }
+}
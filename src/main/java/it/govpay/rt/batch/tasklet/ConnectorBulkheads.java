@@ -0,0 +1,139 @@
+package it.govpay.rt.batch.tasklet;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.task.TaskExecutor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-connector bulkheads of the concurrent mode: the receipts of each RT connector
+ * ({@code codConnettoreRecuperoRt}) get their own limit of in-flight receipts and their own queue, so a slow
+ * intermediary holds at most its own slots of the shared executor.
+ * <p>
+ * A queued receipt does not occupy the executor: when a receipt ends, its thread goes on with the next one
+ * queued for the same connector. When the queue of a connector is full the receipt is deferred (or, with
+ * {@code deferWhenFull} false, the caller waits for room in the queue).
+ * <p>
+ * Each bulkhead exposes the gauges {@value Costanti#METRIC_BULKHEAD_ACTIVE}, {@value Costanti#METRIC_BULKHEAD_QUEUED}
+ * and {@value Costanti#METRIC_BULKHEAD_LIMIT} and the counter {@value Costanti#METRIC_BULKHEAD_DEFERRED},
+ * tagged with the connector code.
+ */
+@Slf4j
+public class ConnectorBulkheads {
+
+    private final BatchProperties.Concurrency config;
+    private final boolean deferWhenFull;
+    private final TaskExecutor taskExecutor;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public ConnectorBulkheads(BatchProperties.Concurrency config, boolean deferWhenFull, TaskExecutor taskExecutor,
+                              MeterRegistry meterRegistry) {
+        this.config = config;
+        this.deferWhenFull = deferWhenFull;
+        this.taskExecutor = taskExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts the task in the bulkhead of the connector, or queues it if the connector has no free slot.
+     *
+     * @return false if the queue of the connector is full and the task has been discarded (to be deferred)
+     */
+    public boolean submit(String connector, Runnable task) throws InterruptedException {
+        return bulkheads.computeIfAbsent(connector, Bulkhead::new).submit(task);
+    }
+
+    private final class Bulkhead {
+
+        private final String connector;
+        private final int maxInFlight;
+        private final int maxQueued;
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private final Counter deferred;
+        private int active;
+
+        Bulkhead(String connector) {
+            this.connector = connector;
+            this.maxInFlight = Math.max(1, config.getConnectorLimits().getOrDefault(connector, config.getMaxInFlightPerConnector()));
+            this.maxQueued = Math.max(0, config.getMaxQueuedPerConnector());
+            Gauge.builder(Costanti.METRIC_BULKHEAD_ACTIVE, this, Bulkhead::active)
+                 .description("Ricevute del connettore in elaborazione").tag(Costanti.METRIC_TAG_CONNECTOR, connector).register(meterRegistry);
+            Gauge.builder(Costanti.METRIC_BULKHEAD_QUEUED, this, Bulkhead::queued)
+                 .description("Ricevute del connettore in attesa di uno slot").tag(Costanti.METRIC_TAG_CONNECTOR, connector).register(meterRegistry);
+            Gauge.builder(Costanti.METRIC_BULKHEAD_LIMIT, this, b -> b.maxInFlight)
+                 .description("Ricevute del connettore elaborabili contemporaneamente").tag(Costanti.METRIC_TAG_CONNECTOR, connector).register(meterRegistry);
+            this.deferred = Counter.builder(Costanti.METRIC_BULKHEAD_DEFERRED)
+                 .description("Ricevute del connettore rinviate per coda piena").tag(Costanti.METRIC_TAG_CONNECTOR, connector).register(meterRegistry);
+            log.info("Bulkhead connettore {}: massimo {} ricevute in corso e {} in coda", connector, maxInFlight, maxQueued);
+        }
+
+        boolean submit(Runnable task) throws InterruptedException {
+            synchronized (this) {
+                while (active >= maxInFlight && queue.size() >= maxQueued) {
+                    if (deferWhenFull) {
+                        deferred.increment();
+                        return false;
+                    }
+                    wait();
+                }
+                if (active >= maxInFlight) {
+                    queue.add(task);
+                    return true;
+                }
+                active++;
+            }
+            try {
+                taskExecutor.execute(() -> drain(task));
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+            return true;
+        }
+
+        /**
+         * Runs the task and then the ones queued meanwhile, keeping the executor slot: a queued receipt
+         * never waits for a slot held by another connector.
+         */
+        private void drain(Runnable first) {
+            Runnable task = first;
+            while (task != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Errore inatteso nel bulkhead del connettore {}", connector, e);
+                }
+                task = next();
+            }
+        }
+
+        private synchronized Runnable next() {
+            Runnable task = queue.poll();
+            if (task == null)
+                active--;
+            notifyAll();
+            return task;
+        }
+
+        private synchronized void release() {
+            active--;
+            notifyAll();
+        }
+
+        private synchronized int active() {
+            return active;
+        }
+
+        private synchronized int queued() {
+            return queue.size();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package it.govpay.rt.batch.tasklet;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.ItemReader;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.jfr.PipelineEvents;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.HedgedRequestExecutor;
+import it.govpay.rt.batch.service.TokenBucket;
+import it.govpay.rt.batch.service.WatermarkService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reader for one partition of the backfill job: pages through the partition id range by key, starting after
+ * the partition watermark, and takes a token from the shared rate limiter before handing out each receipt.
+ * Hedged GETs of the partition take a token too, without waiting: the partition thread, which also runs the
+ * processor, binds the limiter as hedge permit of {@link HedgedRequestExecutor} for the duration of the step.
+ * <p>
+ * On shutdown the partition is stopped rather than completed, so a restart of the job resumes it; the watermark
+ * of a completed partition is removed, as it is never read again.
+ */
+@Component
+@StepScope
+@Slf4j
+public class RtBackfillReader implements ItemReader<RtRetrieveContext>, StepExecutionListener {
+
+    private final RendicontazioniRepository rndRepository;
+    private final WatermarkService watermarkService;
+    private final ShutdownCoordinator shutdownCoordinator;
+    private final TokenBucket rateLimiter;
+    private final int pageSize;
+    private final long minId;
+    private final long maxId;
+    private final String partitionKey;
+    private final LocalDateTime dataDa;
+    private final LocalDateTime dataA;
+
+    private final Deque<RtRetrieveContext> page = new ArrayDeque<>();
+    private StepExecution stepExecution;
+    private long afterId;
+    private boolean exhausted;
+
+    public RtBackfillReader(
+            RendicontazioniRepository rndRepository,
+            WatermarkService watermarkService,
+            ShutdownCoordinator shutdownCoordinator,
+            @Qualifier("backfillRateLimiter") TokenBucket rateLimiter,
+            BatchProperties batchProperties,
+            @Value("#{stepExecutionContext['minId']}") long minId,
+            @Value("#{stepExecutionContext['maxId']}") long maxId,
+            @Value("#{stepExecutionContext['partitionKey']}") String partitionKey,
+            @Value("#{jobParameters['fromDate']}") LocalDate fromDate,
+            @Value("#{jobParameters['dataA']}") LocalDateTime dataA) {
+        this.rndRepository = rndRepository;
+        this.watermarkService = watermarkService;
+        this.shutdownCoordinator = shutdownCoordinator;
+        this.rateLimiter = rateLimiter;
+        this.pageSize = Math.max(1, batchProperties.getBackfill().getPageSize());
+        this.minId = minId;
+        this.maxId = maxId;
+        this.partitionKey = partitionKey;
+        this.dataDa = fromDate != null ? fromDate.atStartOfDay() : null;
+        this.dataA = dataA;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        this.stepExecution = stepExecution;
+        Optional<Long> watermark = watermarkService.getWatermark(Costanti.RT_BACKFILL_JOB_NAME, partitionKey);
+        afterId = Math.max(minId - 1, watermark.orElse(0L));
+        // riga creata prima dei chunk: il writer della partizione si limita ad aggiornarla
+        if (watermark.isEmpty())
+            watermarkService.seed(Costanti.RT_BACKFILL_JOB_NAME, partitionKey, afterId);
+        exhausted = afterId >= maxId;
+        HedgedRequestExecutor.setHedgePermit(rateLimiter::tryAcquire);
+        log.info("Recupero storico partizione {}: id da {} a {}, ripresa dopo id {}", partitionKey, minId, maxId, afterId);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        HedgedRequestExecutor.clearHedgePermit();
+        if (stepExecution.getStatus() == BatchStatus.COMPLETED) {
+            watermarkService.clear(Costanti.RT_BACKFILL_JOB_NAME, partitionKey);
+            log.debug("Recupero storico partizione {}: watermark rimosso", partitionKey);
+        }
+        return stepExecution.getExitStatus();
+    }
+
+    @Override
+    public RtRetrieveContext read() throws InterruptedException {
+        if (page.isEmpty() && !exhausted)
+            nextPage();
+        if (page.isEmpty()) {
+            log.info("Recupero storico partizione {} completato", partitionKey);
+            return null;
+        }
+        if (shutdownCoordinator.isShutdownRequested()) {
+            log.info("Shutdown in corso: partizione {} interrotta dopo id {}", partitionKey, afterId);
+            // partizione STOPPED e non COMPLETED: viene ripresa al riavvio del job
+            if (stepExecution != null)
+                stepExecution.setTerminateOnly();
+            return null;
+        }
+        rateLimiter.acquire();
+        return page.poll();
+    }
+
+    private void nextPage() {
+        PipelineEvents.ReaderPageFetch event = new PipelineEvents.ReaderPageFetch();
+        event.begin();
+        event.rtId(afterId);
+        List<Object[]> rndInfos = rndRepository.findRendicontazioneWithNoPagamentoBetween(
+                afterId, maxId, dataDa, dataA, PageRequest.of(0, pageSize));
+        event.items(rndInfos.size()).status("backfill").commit();
+        for (Object[] rndInfo : rndInfos) {
+            RtRetrieveContext ctx = RtRetrieveContext.builder()
+                                                     .rtId(convertToLong(rndInfo[0]))
+                                                     .taxCode((String)rndInfo[1])
+                                                     .iuv((String)rndInfo[2])
+                                                     .iur((String)rndInfo[3])
+                                                     .dataRendicontazione((LocalDateTime)rndInfo[4])
+                                                     .build();
+            page.add(ctx);
+            afterId = ctx.getRtId();
+        }
+        exhausted = rndInfos.size() < pageSize;
+        log.debug("Recupero storico partizione {}: letta pagina di {} ricevute", partitionKey, rndInfos.size());
+    }
+
+    private Long convertToLong(Object object) {
+        if (object instanceof Long longId)
+            return longId;
+        if (object instanceof BigInteger bigId)
+            return bigId.longValue();
+        throw new IllegalArgumentException("Class not convert to long" + object.getClass().getName());
+    }
+}
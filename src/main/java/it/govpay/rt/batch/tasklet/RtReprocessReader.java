@@ -0,0 +1,109 @@
+package it.govpay.rt.batch.tasklet;
+
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.infrastructure.item.ItemReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reader for the targeted reprocessing job: same rows as {@link RtRetrieveReader}, narrowed to the slice
+ * given by the job parameters.
+ */
+@Component
+@StepScope
+@Slf4j
+public class RtReprocessReader implements ItemReader<RtRetrieveContext>, StepExecutionListener {
+
+    private final RendicontazioniRepository rndRepository;
+    private final ShutdownCoordinator shutdownCoordinator;
+    private final int finestraTemporale;
+    private final String codDominio;
+    private final Long fromId;
+    private final Long toId;
+    private final String ids;
+    private final long maxId;
+
+    private List<RtRetrieveContext> toBeRetrieveList = null;
+
+    public RtReprocessReader(
+    		RendicontazioniRepository rndRepository,
+    		ShutdownCoordinator shutdownCoordinator,
+    		@Value("${govpay.batch.finestra-temporale:90}") int finestraTemporale,
+    		@Value("#{jobParameters['codDominio']}") String codDominio,
+    		@Value("#{jobParameters['fromId']}") Long fromId,
+    		@Value("#{jobParameters['toId']}") Long toId,
+    		@Value("#{jobParameters['ids']}") String ids,
+    		@Value("#{jobParameters['maxId'] ?: 0}") long maxId) {
+        this.rndRepository = rndRepository;
+        this.shutdownCoordinator = shutdownCoordinator;
+        this.finestraTemporale = finestraTemporale;
+        this.codDominio = codDominio;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.ids = ids;
+        this.maxId = maxId;
+    }
+
+    @BeforeStep
+    public void initToBeRetrieve() {
+		toBeRetrieveList = new ArrayList<>();
+		LocalDateTime dataLimite = LocalDateTime.now().minusDays(finestraTemporale);
+		List<Object[]> rndInfos = ids != null && !ids.isBlank()
+				? rndRepository.findRendicontazioneWithNoPagamentoByIds(parseIds(ids), maxId, dataLimite)
+				: rndRepository.findRendicontazioneWithNoPagamentoInRange(codDominio, fromId, toId, maxId, dataLimite);
+		log.info("Trovate {} ricevute da rielaborare (dominio {}, id da {} a {}, id espliciti {}, watermark {})",
+				 rndInfos.size(), codDominio, fromId, toId, ids, maxId);
+		for (Object[] rndInfo : rndInfos) {
+			log.debug("Ricevuta da rielaborare id {}, taxCode {}, iuv {}, iur {}", rndInfo[0], rndInfo[1], rndInfo[2], rndInfo[3]);
+			toBeRetrieveList.add(RtRetrieveContext.builder()
+			                                      .rtId(convertToLong(rndInfo[0]))
+			                                      .taxCode((String)rndInfo[1])
+			                                      .iuv((String)rndInfo[2])
+			                                      .iur((String)rndInfo[3])
+			                                      .dataRendicontazione((LocalDateTime)rndInfo[4])
+			                                      .build());
+		}
+    }
+
+    private static List<Long> parseIds(String ids) {
+    	return Arrays.stream(ids.split(","))
+    	             .map(String::trim)
+    	             .filter(id -> !id.isEmpty())
+    	             .map(Long::valueOf)
+    	             .toList();
+    }
+
+    private Long convertToLong(Object object) {
+    	if (object instanceof Long longId)
+    		return longId;
+    	if (object instanceof BigInteger bigId)
+    		return bigId.longValue();
+    	throw new IllegalArgumentException("Class not convert to long" + object.getClass().getName());
+	}
+
+	@Override
+    public RtRetrieveContext read() {
+    	if (toBeRetrieveList.isEmpty()) {
+            log.info("Nessun altra ricevuta da rielaborare");
+            return null;
+    	}
+    	if (shutdownCoordinator.isShutdownRequested()) {
+    		log.info("Shutdown in corso: {} ricevute non rielaborate", toBeRetrieveList.size());
+    		return null;
+    	}
+    	return toBeRetrieveList.remove(0);
+    }
+}
@@ -3,6 +3,7 @@ package it.govpay.rt.batch.tasklet;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.govpay.rt.batch.dto.RtRetrieveBatch;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
 import it.govpay.rt.batch.service.PaForNodeService;
 import it.govpay.rt.batch.service.RtApiService;
 import lombok.extern.slf4j.Slf4j;
@@ -32,8 +33,9 @@ public class RtRetrieveProcessor implements ItemProcessor<RtRetrieveContext, RtR
 
     @Override
     public RtRetrieveBatch process(RtRetrieveContext context) throws Exception {
-        log.info("Processing rendicontazione {}: {} - {} - {}",
-                 context.getRtId(), context.getTaxCode(), context.getIur(), context.getIuv());
+        // identificativi della ricevuta nell'MDC (ItemLoggingListener), esito loggato a campione dopo la scrittura
+        log.debug("Processing rendicontazione {}: {} - {} - {}",
+                  context.getRtId(), context.getTaxCode(), context.getIur(), context.getIuv());
 
         CompletableFuture<HttpStatusCode> statusCodeFuture = new CompletableFuture<>();
         PaSendRTV2Request rtV2request = rtApiService.retrieveReceipt(context, statusCodeFuture);
@@ -44,26 +46,39 @@ public class RtRetrieveProcessor implements ItemProcessor<RtRetrieveContext, RtR
                                       .codDominio(context.getTaxCode())
                                       .iur(context.getIur())
                                       .iuv(context.getIuv())
+                                      .dataRendicontazione(context.getDataRendicontazione())
+                                      .watermark(context.getWatermark())
                                       .message("Receipt not found")
+                                      .httpStatus(HttpStatus.NOT_FOUND.value())
+                                      .outcome(RtRetrieveOutcome.NOT_FOUND)
                                       .build();
         	}
         	// Non dovrebbe mai arrivare qui in quanto gli altri casi dovrebbero essere antati in eccezione
             return null;
         }
+        Integer httpStatus = statusCodeFuture.isDone() ? statusCodeFuture.get().value() : null;
         if (govpayService.sendReceipt(context, rtV2request))
             return RtRetrieveBatch.builder()
                                   .rtId(context.getRtId())
                                   .codDominio(context.getTaxCode())
                                   .iur(context.getIur())
                                   .iuv(context.getIuv())
+                                  .dataRendicontazione(context.getDataRendicontazione())
+                                  .watermark(context.getWatermark())
                                   .retrivedTime(LocalDateTime.now())
+                                  .httpStatus(httpStatus)
+                                  .outcome(RtRetrieveOutcome.RECOVERED)
                                   .build();
         return RtRetrieveBatch.builder()
                               .rtId(context.getRtId())
                               .codDominio(context.getTaxCode())
                               .iur(context.getIur())
                               .iuv(context.getIuv())
+                              .dataRendicontazione(context.getDataRendicontazione())
+                              .watermark(context.getWatermark())
                               .message("Send to govpay failed")
+                              .httpStatus(httpStatus)
+                              .outcome(RtRetrieveOutcome.SEND_FAILED)
                               .build();
     }
 }
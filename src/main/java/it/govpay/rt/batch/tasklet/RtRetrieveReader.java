@@ -3,38 +3,88 @@ package it.govpay.rt.batch.tasklet;
 import java.math.BigInteger;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.batch.core.listener.StepExecutionListener;
 import org.springframework.batch.core.annotation.BeforeStep;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.infrastructure.item.ItemReader;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
 
+import it.govpay.rt.batch.config.BatchProperties;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.jfr.PipelineEvents;
+import it.govpay.rt.batch.listener.RecoveryLagTracker;
+import it.govpay.rt.batch.listener.RunBudgetListener;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
 import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.FairShareScheduler;
+import it.govpay.rt.batch.service.ReprocessService;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Reader for receipt to be retrive.
+ * <p>
+ * In {@code FULL} mode all the pending receipts are loaded when the step starts. In {@code ID_SNAPSHOT} mode only
+ * their ids are loaded, into a {@code long[]}, and the details are fetched in batches of
+ * {@code govpay.batch.reader.detail-batch-size} when the previous batch has been read: memory stays flat with
+ * large backlogs and the run works on the ids pending when it started.
  */
 @Component
 @StepScope
 @Slf4j
 public class RtRetrieveReader implements ItemReader<RtRetrieveContext>, StepExecutionListener {
 
+    /** Id letti per query durante lo snapshot */
+    static final int SNAPSHOT_PAGE_SIZE = 10_000;
+
+    /** Limite degli elementi di una IN list su Oracle */
+    static final int MAX_DETAIL_BATCH_SIZE = 1000;
+
     private final RendicontazioniRepository rndRepository;
+    private final FairShareScheduler fairShareScheduler;
+    private final RunBudgetListener runBudget;
+    private final ShutdownCoordinator shutdownCoordinator;
+    private final RetrieveOutcomeService outcomeService;
+    private final ReprocessService reprocessService;
+    private final RecoveryLagTracker recoveryLagTracker;
+    private final BatchProperties.Reader readerConfig;
     private final int finestraTemporale;
     private final long lastProcessedId;
 
     private List<RtRetrieveContext> toBeRetrieveList = null;
 
+    // modalita' ID_SNAPSHOT: id pendenti in ordine crescente (8 byte per ricevuta), dettagli caricati a lotti
+    private long[] snapshotIds = null;
+    private int snapshotSize = 0;
+    private int snapshotNext = 0;
+    private List<RtRetrieveContext> retryList = List.of();
+
     public RtRetrieveReader(
     		RendicontazioniRepository rndRepository,
+    		FairShareScheduler fairShareScheduler,
+    		RunBudgetListener runBudget,
+    		ShutdownCoordinator shutdownCoordinator,
+    		RetrieveOutcomeService outcomeService,
+    		ReprocessService reprocessService,
+    		RecoveryLagTracker recoveryLagTracker,
+    		BatchProperties batchProperties,
     		@Value("${govpay.batch.finestra-temporale:90}") int finestraTemporale,
     		@Value("#{jobExecutionContext['lastProcessedId'] ?: 0}") long lastProcessedId) {
         this.rndRepository = rndRepository;
+        this.fairShareScheduler = fairShareScheduler;
+        this.runBudget = runBudget;
+        this.shutdownCoordinator = shutdownCoordinator;
+        this.outcomeService = outcomeService;
+        this.reprocessService = reprocessService;
+        this.recoveryLagTracker = recoveryLagTracker;
+        this.readerConfig = batchProperties.getReader();
         this.finestraTemporale = finestraTemporale;
         this.lastProcessedId = lastProcessedId;
     }
@@ -43,21 +93,131 @@ public class RtRetrieveReader implements ItemReader<RtRetrieveContext>, StepExec
     public void initToBeRetrieve() {
 		toBeRetrieveList = new ArrayList<>();
 		LocalDateTime dataLimite = LocalDateTime.now().minusDays(finestraTemporale);
-		List<Object[]> rndInfos = lastProcessedId > 0L ? rndRepository.findRendicontazioneWithNoPagamentoAfterId(lastProcessedId, dataLimite )
-		                                               : rndRepository.findRendicontazioneWithNoPagamento(dataLimite);
-		log.info("Trovate {} ricevute da recuperare", rndInfos.size());
-		for (Object[] rndInfo : rndInfos) {
-			log.debug("Ricevuta da recuperare id {}, taxCode {}, iuv {}, iur {}", rndInfo[0], rndInfo[1], rndInfo[2], rndInfo[3]);
-			RtRetrieveContext rtRetrieveCtx = RtRetrieveContext.builder()
-			                                                   .rtId(convertToLong(rndInfo[0]))
-			                                                   .taxCode((String)rndInfo[1])
-			                                                   .iuv((String)rndInfo[2])
-			                                                   .iur((String)rndInfo[3])
-			                                                   .build();
-			toBeRetrieveList.add(rtRetrieveCtx);
+		if (readerConfig.getMode() == BatchProperties.ReaderMode.ID_SNAPSHOT) {
+			initSnapshot(dataLimite);
+		} else {
+			PipelineEvents.ReaderPageFetch event = new PipelineEvents.ReaderPageFetch();
+			event.begin();
+			List<Object[]> rndInfos = lastProcessedId > 0L ? rndRepository.findRendicontazioneWithNoPagamentoAfterId(lastProcessedId, dataLimite )
+			                                               : rndRepository.findRendicontazioneWithNoPagamento(dataLimite);
+			event.items(rndInfos.size()).rtId(lastProcessedId).status("pending").commit();
+			log.info("Trovate {} ricevute da recuperare", rndInfos.size());
+			for (Object[] rndInfo : rndInfos) {
+				log.debug("Ricevuta da recuperare id {}, taxCode {}, iuv {}, iur {}", rndInfo[0], rndInfo[1], rndInfo[2], rndInfo[3]);
+				toBeRetrieveList.add(toContext(rndInfo));
+			}
+			toBeRetrieveList = new ArrayList<>(fairShareScheduler.order(toBeRetrieveList));
+		}
+
+		// ricevute fallite (non trovate o rifiutate da govpay) il cui nuovo tentativo e' scaduto, in coda:
+		// gli id sono sotto il watermark e non lo modificano
+		PipelineEvents.ReaderPageFetch retryEvent = new PipelineEvents.ReaderPageFetch();
+		retryEvent.begin();
+		List<Object[]> retryInfos = outcomeService.findRetryable(dataLimite);
+		retryEvent.items(retryInfos.size()).status("retries").commit();
+		List<RtRetrieveContext> retries = new ArrayList<>();
+		if (!retryInfos.isEmpty()) {
+			Set<Long> pending = new HashSet<>();
+			toBeRetrieveList.forEach(ctx -> pending.add(ctx.getRtId()));
+			for (Object[] rndInfo : retryInfos) {
+				RtRetrieveContext ctx = toContext(rndInfo);
+				if (!inSnapshot(ctx.getRtId()) && pending.add(ctx.getRtId()))
+					retries.add(ctx);
+			}
+			log.info("Trovate {} ricevute fallite da ritentare", retries.size());
+		}
+		if (snapshotIds != null) {
+			// accodati dopo l'ultimo lotto dello snapshot
+			retryList = retries;
+			recoveryLagTracker.track(retries);
+		} else {
+			toBeRetrieveList.addAll(retries);
+			recoveryLagTracker.track(toBeRetrieveList);
+		}
+    }
+
+    /**
+     * Modalita' ID_SNAPSHOT: solo gli id pendenti, letti a pagine sull'indice della chiave primaria.
+     */
+    private void initSnapshot(LocalDateTime dataLimite) {
+		long[] ids = new long[SNAPSHOT_PAGE_SIZE];
+		int size = 0;
+		long afterId = lastProcessedId;
+		List<Long> page;
+		do {
+			PipelineEvents.ReaderPageFetch event = new PipelineEvents.ReaderPageFetch();
+			event.begin();
+			page = rndRepository.findPendingIdsAfterId(afterId, dataLimite, PageRequest.of(0, SNAPSHOT_PAGE_SIZE));
+			event.items(page.size()).rtId(afterId).status("ids").commit();
+			if (size + page.size() > ids.length)
+				ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + page.size()));
+			for (Long id : page)
+				ids[size++] = id;
+			if (!page.isEmpty())
+				afterId = page.get(page.size() - 1);
+		} while (page.size() == SNAPSHOT_PAGE_SIZE);
+		snapshotIds = ids;
+		snapshotSize = size;
+		snapshotNext = 0;
+		log.info("Trovate {} ricevute da recuperare (snapshot degli id, dettagli a lotti di {})", size, detailBatchSize());
+    }
+
+    private boolean inSnapshot(long rtId) {
+    	return snapshotIds != null && Arrays.binarySearch(snapshotIds, 0, snapshotSize, rtId) >= 0;
+    }
+
+    private int detailBatchSize() {
+    	return Math.clamp(readerConfig.getDetailBatchSize(), 1, MAX_DETAIL_BATCH_SIZE);
+    }
+
+    /**
+     * Carica i dettagli del lotto successivo dello snapshot, saltando quelli nel frattempo recuperati;
+     * esaurito lo snapshot accoda i nuovi tentativi.
+     */
+    private void fetchNextBatch() {
+		while (toBeRetrieveList.isEmpty() && snapshotNext < snapshotSize) {
+			int end = Math.min(snapshotSize, snapshotNext + detailBatchSize());
+			List<Long> ids = new ArrayList<>(end - snapshotNext);
+			for (int i = snapshotNext; i < end; i++)
+				ids.add(snapshotIds[i]);
+			snapshotNext = end;
+			PipelineEvents.ReaderPageFetch event = new PipelineEvents.ReaderPageFetch();
+			event.begin();
+			List<RtRetrieveContext> batch = new ArrayList<>(ids.size());
+			for (Object[] rndInfo : rndRepository.findRendicontazioneWithNoPagamentoDetails(ids))
+				batch.add(toContext(rndInfo));
+			event.items(batch.size()).rtId(ids.get(0)).status("details").commit();
+			log.debug("Snapshot: caricati i dettagli di {} ricevute su {} id", batch.size(), ids.size());
+			// i lotti seguono l'ordine degli id: il watermark calcolato sul lotto resta valido
+			toBeRetrieveList.addAll(fairShareScheduler.order(batch));
+			recoveryLagTracker.add(batch);
+		}
+		if (toBeRetrieveList.isEmpty() && !retryList.isEmpty()) {
+			toBeRetrieveList.addAll(retryList);
+			retryList = List.of();
 		}
     }
 
+    private int remaining() {
+    	return toBeRetrieveList.size() + (snapshotSize - snapshotNext) + retryList.size();
+    }
+
+    private RtRetrieveContext next() {
+    	if (toBeRetrieveList.isEmpty() && snapshotIds != null)
+    		fetchNextBatch();
+    	return toBeRetrieveList.isEmpty() ? null : toBeRetrieveList.remove(0);
+    }
+
+    private RtRetrieveContext toContext(Object[] rndInfo) {
+    	return RtRetrieveContext.builder()
+    	                        .rtId(convertToLong(rndInfo[0]))
+    	                        .taxCode((String)rndInfo[1])
+    	                        .iuv((String)rndInfo[2])
+    	                        .iur((String)rndInfo[3])
+    	                        .dataRendicontazione((LocalDateTime)rndInfo[4])
+    	                        .build();
+    }
+
     private Long convertToLong(Object object) {
     	if (object instanceof Long longId)
     		return longId;
@@ -68,10 +228,25 @@ public class RtRetrieveReader implements ItemReader<RtRetrieveContext>, StepExec
 
 	@Override
     public RtRetrieveContext read() {
-		log.info("Start read rt retrieve item");
-    	if (!toBeRetrieveList.isEmpty())
-    		return toBeRetrieveList.remove(0);
-        log.info("Nessun altra ricevuta da recuperare");
-        return null;
+    	if (remaining() == 0) {
+            log.info("Nessun altra ricevuta da recuperare");
+            return null;
+    	}
+    	if (shutdownCoordinator.isShutdownRequested()) {
+    		log.info("Shutdown in corso: {} ricevute rinviate alla prossima esecuzione", remaining());
+    		return null;
+    	}
+    	if (runBudget.isExhausted()) {
+    		// lo step termina dopo il chunk corrente, le ricevute restanti sono oltre il watermark salvato
+    		log.info("Budget esaurito: {} ricevute rinviate alla prossima esecuzione", remaining());
+    		return null;
+    	}
+    	RtRetrieveContext ctx = next();
+    	// nuovi tentativi sotto il watermark gia' presi in carico da una rielaborazione mirata in corso
+    	while (ctx != null && reprocessService.isReprocessing(ctx)) {
+    		log.debug("Ricevuta {} in rielaborazione mirata, saltata", ctx.getRtId());
+    		ctx = next();
+    	}
+    	return ctx;
     }
 }
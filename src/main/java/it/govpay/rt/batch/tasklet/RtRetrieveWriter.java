@@ -1,60 +1,140 @@
 package it.govpay.rt.batch.tasklet;
 
+import java.time.LocalDateTime;
 import java.util.Objects;
 
 import org.springframework.batch.core.step.StepExecution;
 import org.springframework.batch.core.annotation.BeforeStep;
 import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
 import org.springframework.batch.infrastructure.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import it.govpay.rt.batch.Costanti;
 import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.jfr.PipelineEvents;
 import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.WatermarkService;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Writer to regisger last processed Id
+ * Writer to regisger last processed Id (step execution context and RT_BATCH_WATERMARK)
+ * and the outcome of each receipt (RT_BATCH_OUTCOME)
  */
 @Component
 @Slf4j
 public class RtRetrieveWriter implements ItemWriter<RtRetrieveBatch> {
 
     private final RendicontazioniRepository rendicontazioniRepository;
+    private final WatermarkService watermarkService;
+    private final RetrieveOutcomeService outcomeService;
+    private final ObservationRegistry observationRegistry;
     private StepExecution stepExecution;
+    private String jobName;
+    private String watermarkPartition;
+    private Integer retryWindowDays;
 
-    public RtRetrieveWriter(RendicontazioniRepository rendicontazioniRepository) {
+    public RtRetrieveWriter(RendicontazioniRepository rendicontazioniRepository, WatermarkService watermarkService,
+                            RetrieveOutcomeService outcomeService) {
+    	this(rendicontazioniRepository, watermarkService, outcomeService, ObservationRegistry.NOOP);
+    }
+
+    @Autowired
+    public RtRetrieveWriter(RendicontazioniRepository rendicontazioniRepository, WatermarkService watermarkService,
+                            RetrieveOutcomeService outcomeService, ObservationRegistry observationRegistry) {
     	this.rendicontazioniRepository = rendicontazioniRepository;
+    	this.watermarkService = watermarkService;
+    	this.outcomeService = outcomeService;
+    	this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * Partition of RT_BATCH_WATERMARK advanced by this writer (the default partition when not set): each
+     * partition of the backfill job checkpoints its own id range.
+     */
+    public void setWatermarkPartition(String watermarkPartition) {
+        this.watermarkPartition = watermarkPartition;
+    }
+
+    /**
+     * Time window (days) in which the main job selects the due retries: receipts reported before it have no
+     * retry path, so their failures are final (see {@link RetrieveOutcomeService#recordWithoutRetry}). Set on the
+     * backfill writer only, since the main job reads inside the window.
+     */
+    public void setRetryWindow(int retryWindowDays) {
+        this.retryWindowDays = retryWindowDays;
     }
 
     @BeforeStep
     public void beforeStep(StepExecution stepExecution) {
         this.stepExecution = stepExecution;
+        this.jobName = stepExecution.getJobExecution().getJobInstance().getJobName();
     }
 
     @Override
     @Transactional
     public void write(Chunk<? extends RtRetrieveBatch> chunk) {
+        PipelineEvents.WriterUpdate event = new PipelineEvents.WriterUpdate();
+        event.begin();
+        event.items(chunk.size()).status("OK");
+        if (!chunk.isEmpty() && chunk.getItems().get(0) != null)
+            event.rtId(chunk.getItems().get(0).getRtId());
+        try {
+            Observation.createNotStarted(Costanti.OBSERVATION_WRITER_UPDATE, observationRegistry)
+                       .observe(() -> update(chunk));
+        } catch (RuntimeException e) {
+            event.failed(e);
+            throw e;
+        } finally {
+            event.commit();
+        }
+    }
+
+    private void update(Chunk<? extends RtRetrieveBatch> chunk) {
         for (RtRetrieveBatch batch : chunk) {
             if (batch == null)
-                log.info("Internal error: no retrieve processor output");
+                log.warn("Internal error: no retrieve processor output");
             else {
-                rendicontazioniRepository.disableRecuperoRt(batch.getRtId());
+                // NOT_FOUND, SEND_FAILED e FAILED restano da recuperare fino all'esaurimento dei tentativi,
+                // se la ricevuta rientra nella finestra in cui il job principale seleziona i nuovi tentativi
+                boolean keep = isInRetryWindow(batch) ? outcomeService.record(batch) : outcomeService.recordWithoutRetry(batch);
+                if (!keep)
+                    rendicontazioniRepository.disableRecuperoRt(batch.getRtId());
+                // log per item a DEBUG: esiti a campione e riepiloghi a INFO da ItemLoggingListener
                 if (batch.getMessage() != null)
-                    log.info(batch.getMessage());
+                    log.debug(batch.getMessage());
                 if (batch.getRetrivedTime() != null)
-                    log.info("Ricevuta recuperata: taxCode {} - iur {} - iuv {} ",
-                             batch.getCodDominio(), batch.getIur(), batch.getIuv());
+                    log.debug("Ricevuta recuperata: taxCode {} - iur {} - iuv {} ",
+                              batch.getCodDominio(), batch.getIur(), batch.getIuv());
             }
         }
-        if (stepExecution != null) {
+        // la rielaborazione mirata lavora sotto il watermark del job principale e non ne gestisce uno proprio
+        if (stepExecution != null && !Costanti.RT_REPROCESS_JOB_NAME.equals(jobName)) {
+            // in modalita' fair-share gli item non arrivano in ordine di id: si usa il watermark calcolato dal reader
             long maxId = chunk.getItems().stream()
             		                     .filter(Objects::nonNull)
-                                         .mapToLong(RtRetrieveBatch::getRtId)
+                                         .mapToLong(b -> b.getWatermark() != null ? b.getWatermark() : b.getRtId())
                                          .max()
                                          .orElseThrow();
-            stepExecution.getExecutionContext().putLong(Costanti.LAST_PROCESSED_ID_KEY, maxId);
+            // i tentativi successivi di ricevute fallite hanno id sotto il watermark: non lo fanno arretrare
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            if (maxId > executionContext.getLong(Costanti.LAST_PROCESSED_ID_KEY, 0L))
+                executionContext.putLong(Costanti.LAST_PROCESSED_ID_KEY, maxId);
+            // stessa transazione del chunk: watermark e disableRecuperoRt vengono committati insieme
+            if (watermarkPartition != null)
+                watermarkService.advance(jobName, watermarkPartition, maxId);
+            else
+                watermarkService.advance(jobName, maxId);
         }
     }
+
+    private boolean isInRetryWindow(RtRetrieveBatch batch) {
+        return retryWindowDays == null || batch.getDataRendicontazione() == null
+                || batch.getDataRendicontazione().isAfter(LocalDateTime.now().minusDays(retryWindowDays));
+    }
 }
@@ -0,0 +1,24 @@
+-- =============================================================================
+-- Indici per la query di selezione delle rendicontazioni in attesa di recupero RT
+-- (RendicontazioniRepository.findRendicontazioneWithNoPagamento[AfterId]) per HSQLDB
+--
+-- La query filtra su id_singolo_versamento IS NOT NULL, id_pagamento IS NULL,
+-- esegui_recupero_rt = true, data > ? e id > ? e ordina per id.
+-- HSQLDB non supporta indici parziali: l'indice composto mette in testa le colonne
+-- in uguaglianza seguite da id, cosi' la range scan restituisce le righe gia' ordinate.
+-- Lo script e' compatibile anche con H2 (usato dai test di integrazione).
+-- =============================================================================
+
+CREATE INDEX idx_rnd_recupero_rt
+	ON RENDICONTAZIONI (esegui_recupero_rt, id_pagamento, id, data, id_singolo_versamento);
+
+-- =============================================================================
+-- Indice per gli estremi degli id del recupero storico
+-- (RendicontazioniRepository.findMinIdByData/findMaxIdByData), risolti alla richiesta
+-- di /api/batch/backfill filtrando per data.
+-- Senza indice su data entrambe le query scansionano l'intera tabella; con (data, id)
+-- MIN(id) e MAX(id) si ottengono dalla sola range scan dell'indice sull'intervallo di date.
+-- =============================================================================
+
+CREATE INDEX idx_rnd_data
+	ON RENDICONTAZIONI (data, id);
@@ -0,0 +1,32 @@
+-- =============================================================================
+-- Indici per la query di selezione delle rendicontazioni in attesa di recupero RT
+-- (RendicontazioniRepository.findRendicontazioneWithNoPagamento[AfterId]) per MySQL/MariaDB
+--
+-- La query filtra su id_singolo_versamento IS NOT NULL, id_pagamento IS NULL,
+-- esegui_recupero_rt = true, data > ? e id > ? e ordina per id.
+-- MySQL non supporta indici parziali: l'indice composto mette in testa le colonne
+-- in uguaglianza (esegui_recupero_rt, id_pagamento IS NULL) seguite da id, cosi'
+-- InnoDB esegue una range scan gia' ordinata per id (nessun filesort) e valuta
+-- data e id_singolo_versamento sull'indice (index condition pushdown).
+-- =============================================================================
+
+CREATE INDEX idx_rnd_recupero_rt
+	ON RENDICONTAZIONI (esegui_recupero_rt, id_pagamento, id, data, id_singolo_versamento)
+	ALGORITHM=INPLACE LOCK=NONE;
+
+ANALYZE TABLE RENDICONTAZIONI;
+
+-- =============================================================================
+-- Indice per gli estremi degli id del recupero storico
+-- (RendicontazioniRepository.findMinIdByData/findMaxIdByData), risolti alla richiesta
+-- di /api/batch/backfill filtrando per data.
+-- Senza indice su data entrambe le query scansionano l'intera tabella; con (data, id)
+-- MIN(id) e MAX(id) si ottengono dalla sola range scan dell'indice sull'intervallo di date
+-- (InnoDB aggiunge comunque la chiave primaria a ogni indice secondario).
+-- =============================================================================
+
+CREATE INDEX idx_rnd_data
+	ON RENDICONTAZIONI (data, id)
+	ALGORITHM=INPLACE LOCK=NONE;
+
+ANALYZE TABLE RENDICONTAZIONI;
@@ -0,0 +1,33 @@
+-- Aggiornamento schema rispetto alla versione 2.0.0
+-- Da eseguire sulle installazioni esistenti (le nuove installazioni usano tabelle_batch-create.sql)
+
+-- Watermark (ultimo id di rendicontazione elaborato) per job e partizione
+CREATE TABLE RT_BATCH_WATERMARK  (
+	JOB_NAME VARCHAR(100) NOT NULL,
+	PARTITION_KEY VARCHAR(100) NOT NULL,
+	LAST_PROCESSED_ID BIGINT NOT NULL,
+	LAST_UPDATED DATETIME(6),
+	CONSTRAINT pk_rt_batch_watermark PRIMARY KEY (JOB_NAME, PARTITION_KEY)
+) ENGINE=InnoDB;
+
+-- Esito dell'ultimo tentativo di recupero per rendicontazione: le ricevute non trovate o rifiutate da govpay
+-- restano da recuperare e vengono rilette quando NEXT_ELIGIBLE e' scaduto (NULL = esito definitivo)
+CREATE TABLE RT_BATCH_OUTCOME  (
+	ID_RENDICONTAZIONE BIGINT NOT NULL,
+	LAST_OUTCOME VARCHAR(20) NOT NULL,
+	ATTEMPTS INT NOT NULL,
+	LAST_HTTP_STATUS INT,
+	LAST_MESSAGE VARCHAR(255),
+	LAST_ATTEMPT DATETIME(6) NOT NULL,
+	NEXT_ELIGIBLE DATETIME(6),
+	CONSTRAINT pk_rt_batch_outcome PRIMARY KEY (ID_RENDICONTAZIONE)
+) ENGINE=InnoDB;
+CREATE INDEX idx_rt_batch_outcome_1 ON RT_BATCH_OUTCOME(NEXT_ELIGIBLE);
+
+-- Ultima esecuzione delle attivita' periodiche condivise tra i processi (ad esempio lo svecchiamento dei
+-- metadati Spring Batch): aggiornata con un update condizionale, una sola esecuzione per intervallo
+CREATE TABLE RT_BATCH_TASK  (
+	TASK_NAME VARCHAR(100) NOT NULL,
+	LAST_RUN DATETIME(6),
+	CONSTRAINT pk_rt_batch_task PRIMARY KEY (TASK_NAME)
+) ENGINE=InnoDB;
@@ -0,0 +1,40 @@
+-- =============================================================================
+-- Indici per la query di selezione delle rendicontazioni in attesa di recupero RT
+-- (RendicontazioniRepository.findRendicontazioneWithNoPagamento[AfterId]) per Oracle
+--
+-- La query filtra su id_singolo_versamento IS NOT NULL, id_pagamento IS NULL,
+-- esegui_recupero_rt = 1, data > ? e id > ? e ordina per id.
+-- Oracle non supporta indici parziali: l'indice composto mette in testa le colonne
+-- in uguaglianza (esegui_recupero_rt, id_pagamento IS NULL) seguite da id, cosi' la
+-- range scan restituisce le righe pendenti gia' ordinate per id; data e
+-- id_singolo_versamento sono valutati sull'indice senza accedere alla tabella.
+-- Poiche' id non e' mai NULL, tutte le righe sono indicizzate e il predicato
+-- id_pagamento IS NULL e' risolvibile tramite indice.
+-- Su Enterprise Edition aggiungere ONLINE per non bloccare le scritture durante la creazione.
+-- =============================================================================
+
+CREATE INDEX idx_rnd_recupero_rt
+	ON RENDICONTAZIONI (esegui_recupero_rt, id_pagamento, id, data, id_singolo_versamento);
+
+BEGIN
+	DBMS_STATS.GATHER_INDEX_STATS(ownname => USER, indname => 'IDX_RND_RECUPERO_RT');
+END;
+/
+
+-- =============================================================================
+-- Indice per gli estremi degli id del recupero storico
+-- (RendicontazioniRepository.findMinIdByData/findMaxIdByData), risolti alla richiesta
+-- di /api/batch/backfill filtrando per data.
+-- Senza indice su data entrambe le query scansionano l'intera tabella; con (data, id)
+-- MIN(id) e MAX(id) si ottengono dalla sola range scan dell'indice sull'intervallo di date,
+-- senza accedere alla tabella.
+-- Su Enterprise Edition aggiungere ONLINE per non bloccare le scritture durante la creazione.
+-- =============================================================================
+
+CREATE INDEX idx_rnd_data
+	ON RENDICONTAZIONI (data, id);
+
+BEGIN
+	DBMS_STATS.GATHER_INDEX_STATS(ownname => USER, indname => 'IDX_RND_DATA');
+END;
+/
@@ -74,3 +74,34 @@ CREATE TABLE BATCH_JOB_EXECUTION_CONTEXT  (
 CREATE SEQUENCE BATCH_STEP_EXECUTION_SEQ START WITH 0 MINVALUE 0 MAXVALUE 9223372036854775807 ORDER NOCYCLE;
 CREATE SEQUENCE BATCH_JOB_EXECUTION_SEQ START WITH 0 MINVALUE 0 MAXVALUE 9223372036854775807 ORDER NOCYCLE;
 CREATE SEQUENCE BATCH_JOB_SEQ START WITH 0 MINVALUE 0 MAXVALUE 9223372036854775807 ORDER NOCYCLE;
+
+-- Watermark (ultimo id di rendicontazione elaborato) per job e partizione
+CREATE TABLE RT_BATCH_WATERMARK  (
+	JOB_NAME VARCHAR2(100 char) NOT NULL,
+	PARTITION_KEY VARCHAR2(100 char) NOT NULL,
+	LAST_PROCESSED_ID NUMBER(19,0) NOT NULL,
+	LAST_UPDATED TIMESTAMP(9),
+	CONSTRAINT pk_rt_batch_watermark PRIMARY KEY (JOB_NAME, PARTITION_KEY)
+) SEGMENT CREATION IMMEDIATE;
+
+-- Esito dell'ultimo tentativo di recupero per rendicontazione: le ricevute non trovate o rifiutate da govpay
+-- restano da recuperare e vengono rilette quando NEXT_ELIGIBLE e' scaduto (NULL = esito definitivo)
+CREATE TABLE RT_BATCH_OUTCOME  (
+	ID_RENDICONTAZIONE NUMBER(19,0) NOT NULL,
+	LAST_OUTCOME VARCHAR2(20 char) NOT NULL,
+	ATTEMPTS NUMBER(10,0) NOT NULL,
+	LAST_HTTP_STATUS NUMBER(10,0),
+	LAST_MESSAGE VARCHAR2(255 char),
+	LAST_ATTEMPT TIMESTAMP(9) NOT NULL,
+	NEXT_ELIGIBLE TIMESTAMP(9),
+	CONSTRAINT pk_rt_batch_outcome PRIMARY KEY (ID_RENDICONTAZIONE)
+) SEGMENT CREATION IMMEDIATE;
+CREATE INDEX idx_rt_batch_outcome_1 ON RT_BATCH_OUTCOME(NEXT_ELIGIBLE);
+
+-- Ultima esecuzione delle attivita' periodiche condivise tra i processi (ad esempio lo svecchiamento dei
+-- metadati Spring Batch): aggiornata con un update condizionale, una sola esecuzione per intervallo
+CREATE TABLE RT_BATCH_TASK  (
+	TASK_NAME VARCHAR2(100 char) NOT NULL,
+	LAST_RUN TIMESTAMP(9),
+	CONSTRAINT pk_rt_batch_task PRIMARY KEY (TASK_NAME)
+) SEGMENT CREATION IMMEDIATE;
@@ -0,0 +1,35 @@
+-- =============================================================================
+-- Indici per la query di selezione delle rendicontazioni in attesa di recupero RT
+-- (RendicontazioniRepository.findRendicontazioneWithNoPagamento[AfterId]) per PostgreSQL
+--
+-- La query filtra su id_singolo_versamento IS NOT NULL, id_pagamento IS NULL,
+-- esegui_recupero_rt = true, data > ? e id > ? e ordina per id.
+-- L'indice parziale contiene solo le righe pendenti: resta piccolo anche su tabelle
+-- da decine di milioni di righe e consente una range scan ordinata per id.
+--
+-- CONCURRENTLY evita il lock in scrittura su RENDICONTAZIONI durante la creazione,
+-- ma non puo' essere eseguito all'interno di una transazione.
+-- Su PostgreSQL 11+ e' possibile rendere l'indice coprente aggiungendo
+-- INCLUDE (id_fr, iuv, iur).
+-- =============================================================================
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_rnd_recupero_rt
+	ON RENDICONTAZIONI (id, data)
+	WHERE esegui_recupero_rt = true
+	  AND id_pagamento IS NULL
+	  AND id_singolo_versamento IS NOT NULL;
+
+ANALYZE RENDICONTAZIONI;
+
+-- =============================================================================
+-- Indice per gli estremi degli id del recupero storico
+-- (RendicontazioniRepository.findMinIdByData/findMaxIdByData), risolti alla richiesta
+-- di /api/batch/backfill filtrando per data.
+-- Senza indice su data entrambe le query scansionano l'intera tabella; con (data, id)
+-- MIN(id) e MAX(id) si ottengono con una index only scan sull'intervallo di date.
+-- =============================================================================
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_rnd_data
+	ON RENDICONTAZIONI (data, id);
+
+ANALYZE RENDICONTAZIONI;
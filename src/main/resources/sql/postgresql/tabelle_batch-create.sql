@@ -87,3 +87,34 @@ CREATE INDEX idx_batch_job_instance_1 ON BATCH_JOB_INSTANCE(JOB_NAME, JOB_KEY);
 CREATE INDEX idx_batch_job_execution_1 ON BATCH_JOB_EXECUTION(JOB_INSTANCE_ID);
 CREATE INDEX idx_batch_step_execution_1 ON BATCH_STEP_EXECUTION(VERSION);
 CREATE INDEX idx_batch_step_execution_2 ON BATCH_STEP_EXECUTION(STEP_NAME,JOB_EXECUTION_ID);
+
+-- Watermark (ultimo id di rendicontazione elaborato) per job e partizione
+CREATE TABLE RT_BATCH_WATERMARK  (
+	JOB_NAME VARCHAR(100) NOT NULL,
+	PARTITION_KEY VARCHAR(100) NOT NULL,
+	LAST_PROCESSED_ID BIGINT NOT NULL,
+	LAST_UPDATED TIMESTAMP,
+	CONSTRAINT pk_rt_batch_watermark PRIMARY KEY (JOB_NAME, PARTITION_KEY)
+) ;
+
+-- Esito dell'ultimo tentativo di recupero per rendicontazione: le ricevute non trovate o rifiutate da govpay
+-- restano da recuperare e vengono rilette quando NEXT_ELIGIBLE e' scaduto (NULL = esito definitivo)
+CREATE TABLE RT_BATCH_OUTCOME  (
+	ID_RENDICONTAZIONE BIGINT NOT NULL,
+	LAST_OUTCOME VARCHAR(20) NOT NULL,
+	ATTEMPTS INT NOT NULL,
+	LAST_HTTP_STATUS INT,
+	LAST_MESSAGE VARCHAR(255),
+	LAST_ATTEMPT TIMESTAMP NOT NULL,
+	NEXT_ELIGIBLE TIMESTAMP,
+	CONSTRAINT pk_rt_batch_outcome PRIMARY KEY (ID_RENDICONTAZIONE)
+) ;
+CREATE INDEX idx_rt_batch_outcome_1 ON RT_BATCH_OUTCOME(NEXT_ELIGIBLE);
+
+-- Ultima esecuzione delle attivita' periodiche condivise tra i processi (ad esempio lo svecchiamento dei
+-- metadati Spring Batch): aggiornata con un update condizionale, una sola esecuzione per intervallo
+CREATE TABLE RT_BATCH_TASK  (
+	TASK_NAME VARCHAR(100) NOT NULL,
+	LAST_RUN TIMESTAMP,
+	CONSTRAINT pk_rt_batch_task PRIMARY KEY (TASK_NAME)
+) ;
@@ -0,0 +1,36 @@
+-- =============================================================================
+-- Indici per la query di selezione delle rendicontazioni in attesa di recupero RT
+-- (RendicontazioniRepository.findRendicontazioneWithNoPagamento[AfterId]) per SQL Server
+--
+-- La query filtra su id_singolo_versamento IS NOT NULL, id_pagamento IS NULL,
+-- esegui_recupero_rt = 1, data > ? e id > ? e ordina per id.
+-- L'indice filtrato contiene solo le righe pendenti ed e' coprente per le colonne
+-- lette dalla query (iuv, iur, id_fr).
+--
+-- Gli indici filtrati richiedono SET ANSI_NULLS ON e SET QUOTED_IDENTIFIER ON
+-- (default dei driver JDBC) per le sessioni che modificano la tabella.
+-- ONLINE = ON e' disponibile solo nelle edizioni Enterprise/Developer/Azure SQL.
+-- =============================================================================
+
+CREATE NONCLUSTERED INDEX idx_rnd_recupero_rt
+	ON RENDICONTAZIONI (id, data)
+	INCLUDE (id_fr, iuv, iur)
+	WHERE esegui_recupero_rt = 1
+	  AND id_pagamento IS NULL
+	  AND id_singolo_versamento IS NOT NULL;
+
+UPDATE STATISTICS RENDICONTAZIONI idx_rnd_recupero_rt;
+
+-- =============================================================================
+-- Indice per gli estremi degli id del recupero storico
+-- (RendicontazioniRepository.findMinIdByData/findMaxIdByData), risolti alla richiesta
+-- di /api/batch/backfill filtrando per data.
+-- Senza indice su data entrambe le query scansionano l'intera tabella; con (data, id)
+-- MIN(id) e MAX(id) si ottengono dalla sola range scan dell'indice sull'intervallo di date.
+-- ONLINE = ON e' disponibile solo nelle edizioni Enterprise/Developer/Azure SQL.
+-- =============================================================================
+
+CREATE NONCLUSTERED INDEX idx_rnd_data
+	ON RENDICONTAZIONI (data, id);
+
+UPDATE STATISTICS RENDICONTAZIONI idx_rnd_data;
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -12,6 +13,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Collections;
@@ -32,6 +34,7 @@ import org.springframework.batch.core.job.parameters.JobParametersBuilder;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 
 import it.govpay.common.batch.dto.BatchStatusInfo;
@@ -41,6 +44,12 @@ import it.govpay.common.batch.dto.Problem;
 import it.govpay.common.batch.runner.JobExecutionHelper;
 import it.govpay.common.batch.service.JobConcurrencyService;
 import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.BackfillInfo;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.dto.ReprocessSlice;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+import it.govpay.rt.batch.service.BackfillService;
+import it.govpay.rt.batch.service.ReprocessService;
 import it.govpay.rt.batch.service.RtApiService;
 
 class BatchControllerTest {
@@ -63,6 +72,15 @@ class BatchControllerTest {
     @Mock
     private RtApiService rtApiService;
 
+    @Mock
+    private BatchProgressTracker batchProgressTracker;
+
+    @Mock
+    private ReprocessService reprocessService;
+
+    @Mock
+    private BackfillService backfillService;
+
     private BatchController batchController;
 
     private static final String CLUSTER_ID = "TestCluster";
@@ -74,7 +92,7 @@ class BatchControllerTest {
         MockitoAnnotations.openMocks(this);
         when(jobExecutionHelper.getJobConcurrencyService()).thenReturn(jobConcurrencyService);
         batchController = new BatchController(jobExecutionHelper, jobRepository, rtRetrieveJob,
-                rtApiService, environment, ZONE_ID, SCHEDULER_INTERVAL_MILLIS);
+                rtApiService, batchProgressTracker, reprocessService, backfillService, environment, ZONE_ID, SCHEDULER_INTERVAL_MILLIS);
     }
 
     private JobExecution createJobExecution(String clusterId, BatchStatus status) {
@@ -100,7 +118,7 @@ class BatchControllerTest {
         when(jobExecutionHelper.runJob(eq(rtRetrieveJob), eq(Costanti.RT_RETRIEVE_JOB_NAME)))
                 .thenReturn(mockExecution);
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, null, null, null);
 
         assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
         assertNull(response.getBody());
@@ -122,7 +140,7 @@ class BatchControllerTest {
         when(jobConcurrencyService.getClusterIdFromExecution(runningExecution))
                 .thenReturn("OtherCluster");
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, null, null, null);
 
         assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
         assertNotNull(response.getBody());
@@ -147,7 +165,7 @@ class BatchControllerTest {
         when(jobExecutionHelper.runJob(eq(rtRetrieveJob), eq(Costanti.RT_RETRIEVE_JOB_NAME)))
                 .thenReturn(mockExecution);
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, null, null, null);
 
         assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
         verify(jobConcurrencyService).abandonStaleJobExecution(staleExecution);
@@ -163,7 +181,7 @@ class BatchControllerTest {
         when(jobConcurrencyService.abandonStaleJobExecution(staleExecution))
                 .thenReturn(false);
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, null, null, null);
 
         assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
         assertNotNull(response.getBody());
@@ -185,7 +203,7 @@ class BatchControllerTest {
         when(jobExecutionHelper.runJob(eq(rtRetrieveJob), eq(Costanti.RT_RETRIEVE_JOB_NAME)))
                 .thenReturn(mockExecution);
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(true);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(true, null, null, null);
 
         assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
         verify(jobConcurrencyService).forceAbandonJobExecution(eq(runningExecution), anyString());
@@ -200,7 +218,7 @@ class BatchControllerTest {
         when(jobConcurrencyService.forceAbandonJobExecution(eq(runningExecution), anyString()))
                 .thenReturn(false);
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(true);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(true, null, null, null);
 
         assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
         assertNotNull(response.getBody());
@@ -215,7 +233,7 @@ class BatchControllerTest {
         when(jobConcurrencyService.getCurrentRunningJobExecution(Costanti.RT_RETRIEVE_JOB_NAME))
                 .thenThrow(new RuntimeException("Database connection error"));
 
-        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false);
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, null, null, null);
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
         assertNotNull(response.getBody());
@@ -325,4 +343,99 @@ class BatchControllerTest {
         assertEquals(7200000L, response.getBody().getIntervalMillis());
         assertEquals("2 ore", response.getBody().getIntervalFormatted());
     }
+
+    // ============ Test endpoint /progress ============
+
+    @Test
+    void whenGetProgress_thenReturnsTrackerSnapshot() {
+        BatchProgressInfo progress = BatchProgressInfo.builder()
+                .running(true)
+                .pending(90L)
+                .processed(10L)
+                .recovered(8L)
+                .notFound(2L)
+                .itemsPerSecond(5d)
+                .etaSeconds(18L)
+                .build();
+        when(batchProgressTracker.getProgress()).thenReturn(progress);
+
+        ResponseEntity<BatchProgressInfo> response = batchController.getProgressEndpoint();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(progress, response.getBody());
+    }
+
+    // ============ Test rielaborazione mirata ============
+
+    @Test
+    void whenRunWithFilters_thenStartsReprocessingInsteadOfFullRun() throws Exception {
+        ReprocessSlice slice = ReprocessSlice.builder().id("slice-1").codDominio("12345678901").fromId(10L).toId(20L).maxId(100L).build();
+        when(reprocessService.submit("12345678901", 10L, 20L, null)).thenReturn(slice);
+
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, "12345678901", 10L, 20L);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(slice, response.getBody());
+        verify(jobExecutionHelper, never()).runJob(any(), anyString());
+    }
+
+    @Test
+    void whenReprocessIdList_thenSubmitsIds() {
+        ReprocessSlice slice = ReprocessSlice.builder().id("slice-2").maxId(100L).build();
+        when(reprocessService.submit(null, null, null, List.of(1L, 2L))).thenReturn(slice);
+
+        ResponseEntity<Object> response = batchController.rielaboraIdEndpoint(List.of(1L, 2L));
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(slice, response.getBody());
+    }
+
+    @Test
+    void whenReprocessRequestInvalid_thenReturns400() {
+        when(reprocessService.submit(null, 20L, 10L, null)).thenThrow(new IllegalArgumentException("fromId maggiore di toId"));
+
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, null, 20L, 10L);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("fromId maggiore di toId", ((ProblemDetail) response.getBody()).getDetail());
+    }
+
+    @Test
+    void whenReprocessSliceOverlaps_thenReturns409() {
+        when(reprocessService.submit("12345678901", null, null, null)).thenThrow(new IllegalStateException("sovrapposta"));
+
+        ResponseEntity<Object> response = batchController.eseguiJobEndpoint(false, "12345678901", null, null);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals(409, ((ProblemDetail) response.getBody()).getStatus());
+    }
+
+    // ============ Test recupero storico ============
+
+    @Test
+    void whenBackfillRequested_thenReturns202WithRequest() {
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        LocalDate to = LocalDate.of(2022, 12, 31);
+        BackfillInfo info = BackfillInfo.builder().fromDate(from).toDate(to).maxId(1000L).gridSize(4).build();
+        when(backfillService.submit(from, to, null, null)).thenReturn(info);
+
+        ResponseEntity<Object> response = batchController.recuperoStoricoEndpoint(from, to, null, null);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertSame(info, response.getBody());
+    }
+
+    @Test
+    void whenBackfillAlreadyRunning_thenReturns409() {
+        when(backfillService.submit(null, null, 1L, 100L)).thenThrow(new IllegalStateException("in corso"));
+
+        ResponseEntity<Object> response = batchController.recuperoStoricoEndpoint(null, null, 1L, 100L);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    }
+
+    @Test
+    void whenNoBackfillRunning_thenReturns204() {
+        assertEquals(HttpStatus.NO_CONTENT, batchController.getBackfillEndpoint().getStatusCode());
+    }
 }
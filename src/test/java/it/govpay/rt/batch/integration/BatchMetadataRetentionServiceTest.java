@@ -0,0 +1,186 @@
+package it.govpay.rt.batch.integration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.JobInstance;
+import org.springframework.batch.core.job.parameters.JobParameters;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.service.BatchMetadataRetentionService;
+
+/**
+ * Verifica la retention dei metadati Spring Batch sullo schema H2 distribuito con spring-batch-core.
+ */
+@DataJpaTest
+@ActiveProfiles("integration")
+@DisplayName("BatchMetadataRetentionService Integration Test")
+class BatchMetadataRetentionServiceTest {
+
+    private static final String JOB_NAME = Costanti.RT_RETRIEVE_JOB_NAME;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private JobRepository jobRepository;
+    private BatchProperties batchProperties;
+    private BatchMetadataRetentionService service;
+
+    @BeforeEach
+    void setUp() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("org/springframework/batch/core/schema-drop-h2.sql"),
+                new ClassPathResource("org/springframework/batch/core/schema-h2.sql"));
+        populator.setContinueOnError(true);
+        populator.execute(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jobRepository = mock(JobRepository.class);
+        batchProperties = new BatchProperties();
+        batchProperties.getRetention().setMaxAge(Duration.ofDays(30));
+        batchProperties.getRetention().setKeepLast(2);
+        // un'esecuzione per transazione, per verificare il ciclo a blocchi
+        batchProperties.getRetention().setBatchSize(1);
+        service = new BatchMetadataRetentionService(jdbcTemplate, transactionManager, jobRepository, batchProperties, "BATCH_");
+    }
+
+    @Test
+    @DisplayName("should delete old terminated executions keeping the newest ones, the running one and the watermark-bearing one")
+    void shouldDeleteOldExecutions() {
+        LocalDateTime old = LocalDateTime.now().minusDays(60);
+        insertExecution(1L, "COMPLETED", old);
+        insertExecution(2L, "COMPLETED", old);
+        insertExecution(3L, "STARTED", null);
+        insertExecution(4L, "FAILED", old);
+        insertExecution(5L, "COMPLETED", old);
+        insertExecution(6L, "COMPLETED", LocalDateTime.now().minusHours(2));
+        watermarkOn(2L);
+
+        long deleted = service.purge();
+
+        assertEquals(2L, deleted);
+        assertEquals(List.of(2L, 3L, 5L, 6L), ids("SELECT JOB_EXECUTION_ID FROM BATCH_JOB_EXECUTION ORDER BY 1"));
+        assertEquals(List.of(2L, 3L, 5L, 6L), ids("SELECT JOB_INSTANCE_ID FROM BATCH_JOB_INSTANCE ORDER BY 1"));
+        assertEquals(List.of(2L, 3L, 5L, 6L), ids("SELECT JOB_EXECUTION_ID FROM BATCH_STEP_EXECUTION ORDER BY 1"));
+        assertEquals(List.of(2L, 3L, 5L, 6L), ids("SELECT STEP_EXECUTION_ID FROM BATCH_STEP_EXECUTION_CONTEXT ORDER BY 1"));
+        assertEquals(List.of(2L, 3L, 5L, 6L), ids("SELECT JOB_EXECUTION_ID FROM BATCH_JOB_EXECUTION_CONTEXT ORDER BY 1"));
+        assertEquals(List.of(2L, 3L, 5L, 6L), ids("SELECT JOB_EXECUTION_ID FROM BATCH_JOB_EXECUTION_PARAMS ORDER BY 1"));
+    }
+
+    @Test
+    @DisplayName("should keep the instance while it still has executions")
+    void shouldKeepInstanceWithRemainingExecutions() {
+        batchProperties.getRetention().setKeepLast(1);
+        LocalDateTime old = LocalDateTime.now().minusDays(60);
+        insertInstance(1L);
+        insertExecutionRows(1L, 1L, "FAILED", old);
+        insertExecutionRows(2L, 1L, "COMPLETED", old);
+        when(jobRepository.getJobInstances(JOB_NAME, 0, 10)).thenReturn(List.of());
+
+        long deleted = service.purge();
+
+        assertEquals(1L, deleted);
+        assertEquals(List.of(2L), ids("SELECT JOB_EXECUTION_ID FROM BATCH_JOB_EXECUTION ORDER BY 1"));
+        assertEquals(List.of(1L), ids("SELECT JOB_INSTANCE_ID FROM BATCH_JOB_INSTANCE ORDER BY 1"));
+    }
+
+    @Test
+    @DisplayName("should delete nothing when all executions are within the retention age")
+    void shouldDeleteNothingWhenRecent() {
+        for (long id = 1; id <= 5; id++)
+            insertExecution(id, "COMPLETED", LocalDateTime.now().minusDays(1));
+        when(jobRepository.getJobInstances(JOB_NAME, 0, 10)).thenReturn(List.of());
+
+        assertEquals(0L, service.purge());
+        assertEquals(5, ids("SELECT JOB_EXECUTION_ID FROM BATCH_JOB_EXECUTION").size());
+    }
+
+    @Test
+    @DisplayName("should delete the partition watermarks of the deleted backfill instances")
+    void shouldDeleteBackfillPartitionWatermarks() {
+        LocalDateTime old = LocalDateTime.now().minusDays(60);
+        for (long id = 1; id <= 3; id++) {
+            insertInstance(id, Costanti.RT_BACKFILL_JOB_NAME);
+            insertExecutionRows(id, id, id == 1 ? "FAILED" : "COMPLETED", old);
+        }
+        insertWatermark("1-0");
+        insertWatermark("1-1");
+        insertWatermark("2-0");
+
+        long deleted = service.purge();
+
+        assertEquals(1L, deleted);
+        assertEquals(List.of("2-0"), jdbcTemplate.queryForList(
+                "SELECT PARTITION_KEY FROM RT_BATCH_WATERMARK WHERE JOB_NAME = ? ORDER BY 1", String.class,
+                Costanti.RT_BACKFILL_JOB_NAME));
+    }
+
+    private void insertWatermark(String partitionKey) {
+        jdbcTemplate.update("INSERT INTO RT_BATCH_WATERMARK (JOB_NAME, PARTITION_KEY, LAST_PROCESSED_ID, LAST_UPDATED) VALUES (?, ?, 100, ?)",
+                Costanti.RT_BACKFILL_JOB_NAME, partitionKey, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    private void watermarkOn(long executionId) {
+        JobInstance instance = new JobInstance(executionId, JOB_NAME);
+        JobExecution execution = new JobExecution(executionId, instance, new JobParameters());
+        execution.getExecutionContext().putLong(Costanti.LAST_PROCESSED_ID_KEY, 42L);
+        when(jobRepository.getJobInstances(JOB_NAME, 0, 10)).thenReturn(List.of(instance));
+        when(jobRepository.getJobExecutions(instance)).thenReturn(List.of(execution));
+    }
+
+    /** Istanza, esecuzione, step, contesti e parametro con lo stesso id */
+    private void insertExecution(long id, String status, LocalDateTime endTime) {
+        insertInstance(id);
+        insertExecutionRows(id, id, status, endTime);
+    }
+
+    private void insertInstance(long id) {
+        insertInstance(id, JOB_NAME);
+    }
+
+    private void insertInstance(long id, String jobName) {
+        jdbcTemplate.update("INSERT INTO BATCH_JOB_INSTANCE (JOB_INSTANCE_ID, VERSION, JOB_NAME, JOB_KEY) VALUES (?, 0, ?, ?)",
+                id, jobName, "key-" + id);
+    }
+
+    private void insertExecutionRows(long id, long instanceId, String status, LocalDateTime endTime) {
+        Timestamp created = Timestamp.valueOf(endTime != null ? endTime.minusMinutes(5) : LocalDateTime.now());
+        Timestamp ended = endTime != null ? Timestamp.valueOf(endTime) : null;
+        jdbcTemplate.update("INSERT INTO BATCH_JOB_EXECUTION (JOB_EXECUTION_ID, VERSION, JOB_INSTANCE_ID, CREATE_TIME, START_TIME, END_TIME, STATUS, EXIT_CODE, LAST_UPDATED) "
+                + "VALUES (?, 1, ?, ?, ?, ?, ?, ?, ?)", id, instanceId, created, created, ended, status, status, created);
+        jdbcTemplate.update("INSERT INTO BATCH_JOB_EXECUTION_PARAMS (JOB_EXECUTION_ID, PARAMETER_NAME, PARAMETER_TYPE, PARAMETER_VALUE, IDENTIFYING) "
+                + "VALUES (?, 'run.id', 'java.lang.Long', ?, 'Y')", id, String.valueOf(id));
+        jdbcTemplate.update("INSERT INTO BATCH_JOB_EXECUTION_CONTEXT (JOB_EXECUTION_ID, SHORT_CONTEXT) VALUES (?, '{}')", id);
+        jdbcTemplate.update("INSERT INTO BATCH_STEP_EXECUTION (STEP_EXECUTION_ID, VERSION, STEP_NAME, JOB_EXECUTION_ID, CREATE_TIME, START_TIME, END_TIME, STATUS) "
+                + "VALUES (?, 1, 'rtRetrieveTasklet', ?, ?, ?, ?, ?)", id, id, created, created, ended, status);
+        jdbcTemplate.update("INSERT INTO BATCH_STEP_EXECUTION_CONTEXT (STEP_EXECUTION_ID, SHORT_CONTEXT) VALUES (?, '{}')", id);
+    }
+
+    private List<Long> ids(String sql) {
+        return jdbcTemplate.queryForList(sql, Long.class);
+    }
+}
@@ -0,0 +1,209 @@
+package it.govpay.rt.batch.integration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import it.govpay.common.entity.DominioEntity;
+import it.govpay.common.entity.IntermediarioEntity;
+import it.govpay.common.entity.StazioneEntity;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.entity.BatchWatermark;
+import it.govpay.rt.batch.entity.Fr;
+import it.govpay.rt.batch.entity.Rendicontazione;
+import it.govpay.rt.batch.entity.SingoloVersamento;
+import it.govpay.rt.batch.loadtest.LoadTestStubServer;
+import it.govpay.rt.batch.loadtest.StubBehaviour.Outcome;
+import it.govpay.rt.batch.repository.BatchWatermarkRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Smoke test dell'eseguibile nativo (profilo Maven {@code native}) in modalita' cron.
+ * <p>
+ * Il test crea lo schema su un database H2 in memoria esposto via TCP e vi inserisce una rendicontazione in
+ * attesa di ricevuta, con dominio, stazione, intermediario e connettore di recupero RT puntato allo stub locale
+ * di pagoPA. Il binario viene poi avviato sullo stesso database con l'endpoint GovPay puntato allo stub: il test
+ * verifica che il processo termini con exit code 0, che la ricevuta sia stata richiesta a pagoPA e inviata a
+ * GovPay e che il watermark sia avanzato. Non fa parte della build standard:
+ * <pre>
+ * mvn -Pnative package -DskipTests
+ * mvn test -Dtest=NativeCronSmokeTest -Dnative.binary=target/govpay-rt-batch
+ * </pre>
+ */
+@Slf4j
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ActiveProfiles("integration")
+@Tag("native")
+@EnabledIfSystemProperty(named = "native.binary", matches = ".+")
+@DisplayName("Native cron binary smoke test")
+class NativeCronSmokeTest {
+
+	private static final long TIMEOUT_SECONDS = 120;
+	private static final String TAX_CODE = "12345678901";
+	private static final String INTERMEDIARY_ID = "15376371009";
+	private static final String STATION_ID = "15376371009_01";
+	private static final String COD_CONNETTORE_RT = "COD_CONNETTORE_RT_SMOKE";
+
+	private static Server h2;
+	private static LoadTestStubServer stub;
+
+	@DynamicPropertySource
+	static void sharedDatabase(DynamicPropertyRegistry registry) throws Exception {
+		if (h2 == null) {
+			h2 = Server.createTcpServer("-tcpPort", String.valueOf(freePort()), "-ifNotExists").start();
+			stub = new LoadTestStubServer();
+		}
+		registry.add("spring.datasource.url", NativeCronSmokeTest::jdbcUrl);
+	}
+
+	@AfterAll
+	static void stop() {
+		if (stub != null) {
+			stub.close();
+			stub = null;
+		}
+		if (h2 != null) {
+			h2.stop();
+			h2 = null;
+		}
+	}
+
+	private static String jdbcUrl() {
+		return "jdbc:h2:tcp://localhost:" + h2.getPort() + "/mem:nativesmoke;DB_CLOSE_DELAY=-1";
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private BatchWatermarkRepository watermarkRepository;
+
+	@Test
+	@DisplayName("should recover a seeded pending receipt with the native binary against stubbed pagoPA and GovPay")
+	void shouldCompleteCronRun() throws Exception {
+		Path binary = Path.of(System.getProperty("native.binary"));
+		assertTrue(Files.isExecutable(binary), "Eseguibile nativo non trovato: " + binary);
+		long rtId = seed();
+		Path output = Files.createTempFile("native-smoke", ".log");
+
+		try {
+			Process process = new ProcessBuilder(List.of(
+					binary.toString(),
+					"--spring.profiles.active=cron",
+					"--spring.main.web-application-type=none",
+					"--spring.datasource.url=" + jdbcUrl(),
+					"--spring.datasource.driver-class-name=org.h2.Driver",
+					"--spring.datasource.username=sa",
+					"--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+					// schema applicativo creato dal test, tabelle Spring Batch dal binario
+					"--spring.jpa.hibernate.ddl-auto=none",
+					"--spring.batch.jdbc.initialize-schema=always",
+					"--govpay.url=" + stub.getGovpayUrl(),
+					"--govpay.auth.username=smoke",
+					"--govpay.auth.password=smoke",
+					"--govpay.batch.cluster-id=native-smoke"))
+					.redirectErrorStream(true)
+					.redirectOutput(output.toFile())
+					.start();
+
+			long start = System.nanoTime();
+			boolean exited = process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			if (!exited)
+				process.destroyForcibly();
+			String processLog = Files.readString(output);
+
+			assertTrue(exited, "Il binario nativo non e' terminato entro " + TIMEOUT_SECONDS + "s:\n" + processLog);
+			assertEquals(0, process.exitValue(), "Exit code inatteso:\n" + processLog);
+			assertTrue(processLog.contains("Started GovpayRtBatchApplication"), "Contesto non avviato:\n" + processLog);
+			assertEquals(1L, stub.getPagoPaOutcomes().get(Outcome.OK).get(), "Ricevuta non richiesta a pagoPA:\n" + processLog);
+			assertEquals(1L, stub.getGovpayOutcomes().get(Outcome.OK).get(), "Ricevuta non inviata a GovPay:\n" + processLog);
+			assertEquals(rtId, watermarkRepository.findLastProcessedId(Costanti.RT_RETRIEVE_JOB_NAME,
+					BatchWatermark.DEFAULT_PARTITION).orElse(0L), "Watermark non avanzato:\n" + processLog);
+			log.info("Esecuzione cron nativa completata in {} ms", elapsedMs);
+		} finally {
+			Files.deleteIfExists(output);
+		}
+	}
+
+	/**
+	 * Rendicontazione pendente con la catena dominio - stazione - intermediario - connettore usata dal processor
+	 * per risolvere l'endpoint pagoPA. Il connettore e' salvato come nella tabella CONNETTORI di GovPay
+	 * (una riga per proprieta').
+	 */
+	private long seed() {
+		return new TransactionTemplate(transactionManager).execute(status -> {
+			IntermediarioEntity intermediario = IntermediarioEntity.builder()
+					.codIntermediario(INTERMEDIARY_ID)
+					.codConnettoreRecuperoRt(COD_CONNETTORE_RT)
+					.build();
+			entityManager.persist(intermediario);
+			StazioneEntity stazione = StazioneEntity.builder()
+					.codStazione(STATION_ID)
+					.intermediario(intermediario)
+					.build();
+			entityManager.persist(stazione);
+			DominioEntity dominio = DominioEntity.builder().codDominio(TAX_CODE)
+					.abilitato(true).ragioneSociale("Ente Smoke Test").auxDigit(0).intermediato(true).scaricaFr(false)
+					.stazione(stazione)
+					.build();
+			entityManager.persist(dominio);
+			entityManager.createNativeQuery("INSERT INTO CONNETTORI (COD_CONNETTORE, COD_PROPRIETA, VALORE) VALUES (?, 'URL', ?)")
+					.setParameter(1, COD_CONNETTORE_RT)
+					.setParameter(2, stub.getPagoPaUrl())
+					.executeUpdate();
+
+			Fr fr = Fr.builder().dominio(dominio).build();
+			entityManager.persist(fr);
+			SingoloVersamento sv = SingoloVersamento.builder().build();
+			entityManager.persist(sv);
+			Rendicontazione rnd = Rendicontazione.builder()
+					.fr(fr)
+					.singoloVersamento(sv)
+					.iuv("SMOKE000000000001")
+					.iur("IURSMOKE00001")
+					.data(LocalDateTime.now().minusHours(1))
+					.idPagamento(null)
+					.eseguiRecuperoRt(true)
+					.build();
+			entityManager.persist(rnd);
+			return rnd.getId();
+		});
+	}
+}
@@ -0,0 +1,166 @@
+package it.govpay.rt.batch.integration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.ActiveProfiles;
+
+import it.govpay.common.entity.DominioEntity;
+import it.govpay.rt.batch.entity.Fr;
+import it.govpay.rt.batch.entity.Rendicontazione;
+import it.govpay.rt.batch.entity.SingoloVersamento;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Verifica che le query delle rendicontazioni pendenti usino l'indice distribuito in
+ * {@code sql/<dialect>/indici_recupero_rt.sql} invece di una scansione completa.
+ * Il piano viene chiesto per l'SQL generato da Hibernate per i metodi del repository, catturato con uno
+ * {@link StatementInspector}. Viene usato lo script HSQLDB, sintatticamente compatibile con H2.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "it.govpay.rt.batch.integration.PendingReceiptIndexPlanTest$SqlCapture")
+@ActiveProfiles("integration")
+@DisplayName("Pending receipt query plan Integration Test")
+class PendingReceiptIndexPlanTest {
+
+    private static final String INDEX_NAME = "IDX_RND_RECUPERO_RT";
+    private static final String DATA_INDEX_NAME = "IDX_RND_DATA";
+    private static final LocalDateTime DATA_LIMITE = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    /**
+     * Registra l'SQL di ogni statement preparato da Hibernate, senza modificarlo.
+     */
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private RendicontazioniRepository rendicontazioniRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + INDEX_NAME);
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + DATA_INDEX_NAME);
+        new ResourceDatabasePopulator(new ClassPathResource("sql/hsqldb/indici_recupero_rt.sql")).execute(dataSource);
+        seed();
+    }
+
+    @Test
+    @DisplayName("should resolve the pending-receipt page query through the recovery index")
+    void shouldUseRecoveryIndexForPage() {
+        String sql = capture(() -> rendicontazioniRepository.findRendicontazioneWithNoPagamentoAfterId(10L, DATA_LIMITE));
+
+        assertUsesRecoveryIndex(sql);
+    }
+
+    @Test
+    @DisplayName("should resolve the pending-id existence check through the recovery index")
+    void shouldUseRecoveryIndexForPendingIds() {
+        String sql = capture(() -> rendicontazioniRepository.findPendingIdsAfterId(10L, DATA_LIMITE, PageRequest.of(0, 1)));
+
+        assertUsesRecoveryIndex(sql);
+    }
+
+    @Test
+    @DisplayName("should resolve the backfill id bounds through the date index")
+    void shouldUseDataIndexForBackfillBounds() {
+        LocalDateTime dataA = LocalDateTime.now().minusDays(10);
+        String minSql = capture(() -> rendicontazioniRepository.findMinIdByData(DATA_LIMITE, dataA));
+        String maxSql = capture(() -> rendicontazioniRepository.findMaxIdByData(DATA_LIMITE, dataA));
+
+        for (String sql : List.of(minSql, maxSql)) {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, DATA_LIMITE, dataA);
+
+            assertNotNull(plan);
+            assertTrue(plan.toUpperCase().contains(DATA_INDEX_NAME), "Piano di esecuzione inatteso per " + sql + ": " + plan);
+        }
+    }
+
+    /**
+     * Esegue la query del repository e restituisce l'unico statement SELECT generato da Hibernate.
+     */
+    private static String capture(Runnable query) {
+        SqlCapture.STATEMENTS.clear();
+        query.run();
+        List<String> selects = SqlCapture.STATEMENTS.stream()
+                .filter(sql -> sql.trim().toLowerCase().startsWith("select"))
+                .toList();
+        assertEquals(1, selects.size(), "Statement inattesi: " + selects);
+        return selects.get(0);
+    }
+
+    /**
+     * EXPLAIN dello statement catturato: i parametri sono, nell'ordine, l'ultimo id elaborato, la data limite
+     * e l'eventuale limite di paginazione.
+     */
+    private void assertUsesRecoveryIndex(String sql) {
+        long parameters = sql.chars().filter(c -> c == '?').count();
+        Object[] args = new Object[(int) parameters];
+        for (int i = 0; i < args.length; i++)
+            args[i] = i == 0 ? 10L : i == 1 ? DATA_LIMITE : 1;
+
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, args);
+
+        assertNotNull(plan);
+        assertTrue(plan.toUpperCase().contains(INDEX_NAME), "Piano di esecuzione inatteso per " + sql + ": " + plan);
+    }
+
+    private void seed() {
+        DominioEntity dominio = DominioEntity.builder().codDominio("12345678901")
+                .abilitato(true).ragioneSociale("Test").auxDigit(0).intermediato(true).scaricaFr(false).build();
+        entityManager.persist(dominio);
+        Fr fr = Fr.builder().dominio(dominio).build();
+        entityManager.persist(fr);
+
+        // la maggior parte delle righe e' gia' riconciliata o gia' elaborata, come in produzione
+        for (int i = 0; i < 200; i++) {
+            boolean pending = i % 20 == 0;
+            SingoloVersamento sv = SingoloVersamento.builder().build();
+            entityManager.persist(sv);
+            entityManager.persist(Rendicontazione.builder()
+                    .fr(fr)
+                    .singoloVersamento(sv)
+                    .iuv(String.format("IUV%014d", i))
+                    .iur(String.format("IUR%09d", i))
+                    .data(LocalDateTime.now().minusDays(i % 30))
+                    .idPagamento(pending ? null : (long) i)
+                    .eseguiRecuperoRt(pending)
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
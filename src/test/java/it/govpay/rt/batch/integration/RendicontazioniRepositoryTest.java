@@ -10,6 +10,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 
 import it.govpay.common.entity.DominioEntity;
@@ -128,6 +129,25 @@ class RendicontazioniRepositoryTest {
         assertEquals(IUV + "_2", results.get(0)[2]);
     }
 
+    @Test
+    @DisplayName("should count rendicontazioni with the same predicate as the reader query")
+    void shouldCountRendicontazioniAfterId() {
+        // Given: two pending rendicontazioni and one already reconciled
+        Rendicontazione rnd1 = createTestData(IUV + "_1", IUR + "_1", null);
+        entityManager.flush();
+        Long firstId = rnd1.getId();
+        createTestData(TAX_CODE + "_2", IUV + "_2", IUR + "_2", null);
+        createTestData(TAX_CODE + "_3", IUV + "_3", IUR + "_3", 1L);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Then: the count matches the reader query
+        assertEquals(2L, rendicontazioniRepository.countRendicontazioneWithNoPagamentoAfterId(0L, DATA_LIMITE));
+        assertEquals(1L, rendicontazioniRepository.countRendicontazioneWithNoPagamentoAfterId(firstId, DATA_LIMITE));
+        assertEquals(rendicontazioniRepository.findRendicontazioneWithNoPagamentoAfterId(firstId, DATA_LIMITE).size(),
+                     rendicontazioniRepository.countRendicontazioneWithNoPagamentoAfterId(firstId, DATA_LIMITE));
+    }
+
     @Test
     @DisplayName("should not find rendicontazione older than data limite")
     void shouldNotFindRendicontazioneOlderThanDataLimite() {
@@ -219,6 +239,66 @@ class RendicontazioniRepositoryTest {
         assertTrue(results.isEmpty());
     }
 
+    @Test
+    @DisplayName("should find the reprocessing slice by domain and id range, including disabled rows, up to the watermark")
+    void shouldFindReprocessingSliceInRange() {
+        Rendicontazione first = createTestData("IUV_1", "IUR_1", null);
+        Rendicontazione disabled = createTestData("IUV_2", "IUR_2", null);
+        disabled.setEseguiRecuperoRt(false);
+        createTestData("98765432101", "IUV_OTHER", "IUR_OTHER", null);
+        Rendicontazione overWatermark = createTestData("IUV_3", "IUR_3", null);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Object[]> byDomain = rendicontazioniRepository.findRendicontazioneWithNoPagamentoInRange(
+                TAX_CODE, null, null, overWatermark.getId() - 1, DATA_LIMITE);
+        List<Object[]> byRange = rendicontazioniRepository.findRendicontazioneWithNoPagamentoInRange(
+                null, disabled.getId(), null, overWatermark.getId(), DATA_LIMITE);
+
+        assertEquals(List.of(first.getId(), disabled.getId()), byDomain.stream().map(r -> r[0]).toList());
+        assertEquals(3, byRange.size());
+        assertEquals(disabled.getId(), byRange.get(0)[0]);
+    }
+
+    @Test
+    @DisplayName("should find the reprocessing slice by explicit ids, skipping paid rows")
+    void shouldFindReprocessingSliceByIds() {
+        Rendicontazione pending = createTestData("IUV_1", "IUR_1", null);
+        Rendicontazione paid = createTestData("IUV_2", "IUR_2", 1L);
+        createTestData("IUV_3", "IUR_3", null);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Object[]> results = rendicontazioniRepository.findRendicontazioneWithNoPagamentoByIds(
+                List.of(pending.getId(), paid.getId()), Long.MAX_VALUE, DATA_LIMITE);
+
+        assertEquals(1, results.size());
+        assertEquals(pending.getId(), results.get(0)[0]);
+        assertEquals("IUV_1", results.get(0)[2]);
+    }
+
+    @Test
+    @DisplayName("should page the backfill partition by key, without the time window")
+    void shouldFindBackfillPage() {
+        Rendicontazione old = createTestData("IUV_OLD", "IUR_OLD", null);
+        old.setData(LocalDateTime.now().minusYears(3));
+        Rendicontazione recent = createTestData("IUV_RECENT", "IUR_RECENT", null);
+        Rendicontazione overMax = createTestData("IUV_OVER", "IUR_OVER", null);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Object[]> page = rendicontazioniRepository.findRendicontazioneWithNoPagamentoBetween(
+                old.getId() - 1, recent.getId(), null, null, PageRequest.of(0, 10));
+        List<Object[]> byDate = rendicontazioniRepository.findRendicontazioneWithNoPagamentoBetween(
+                0L, overMax.getId(), LocalDateTime.now().minusYears(4), LocalDateTime.now().minusYears(2), PageRequest.of(0, 10));
+
+        assertEquals(List.of(old.getId(), recent.getId()), page.stream().map(r -> r[0]).toList());
+        assertEquals(1, byDate.size());
+        assertEquals(old.getId(), byDate.get(0)[0]);
+        assertEquals(old.getId(), rendicontazioniRepository.findMinIdByData(LocalDateTime.now().minusYears(4), LocalDateTime.now()));
+        assertEquals(overMax.getId(), rendicontazioniRepository.findMaxIdByData(LocalDateTime.now().minusYears(4), LocalDateTime.now().plusDays(1)));
+    }
+
     @Test
     @DisplayName("should disable recupero rt")
     void shouldDisableRecuperoRt() {
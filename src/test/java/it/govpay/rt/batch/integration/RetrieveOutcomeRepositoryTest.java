@@ -0,0 +1,119 @@
+package it.govpay.rt.batch.integration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import it.govpay.common.entity.DominioEntity;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.entity.Fr;
+import it.govpay.rt.batch.entity.Rendicontazione;
+import it.govpay.rt.batch.entity.RetrieveOutcome;
+import it.govpay.rt.batch.entity.SingoloVersamento;
+import it.govpay.rt.batch.repository.RetrieveOutcomeRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+@DataJpaTest
+@ActiveProfiles("integration")
+@DisplayName("RetrieveOutcomeRepository Integration Test")
+class RetrieveOutcomeRepositoryTest {
+
+    @Autowired
+    private RetrieveOutcomeRepository outcomeRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+    private static final LocalDateTime DATA_LIMITE = NOW.minusDays(90);
+
+    @Test
+    @DisplayName("should select only the due retries of receipts still pending, by next eligible time")
+    void shouldFindDueRetries() {
+        Rendicontazione late = createRendicontazione("11111111111", "IUV_LATE", true, null);
+        Rendicontazione due = createRendicontazione("22222222222", "IUV_DUE", true, null);
+        Rendicontazione notYet = createRendicontazione("33333333333", "IUV_NOT_YET", true, null);
+        Rendicontazione finalOutcome = createRendicontazione("44444444444", "IUV_FINAL", true, null);
+        Rendicontazione disabled = createRendicontazione("55555555555", "IUV_DISABLED", false, null);
+        Rendicontazione paid = createRendicontazione("66666666666", "IUV_PAID", true, 1L);
+        entityManager.flush();
+
+        createOutcome(due, NOW.minusMinutes(5));
+        createOutcome(late, NOW.minusHours(2));
+        createOutcome(notYet, NOW.plusHours(1));
+        createOutcome(finalOutcome, null);
+        createOutcome(disabled, NOW.minusHours(1));
+        createOutcome(paid, NOW.minusHours(1));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Object[]> results = outcomeRepository.findRetryable(NOW, DATA_LIMITE, PageRequest.of(0, 10));
+
+        assertEquals(2, results.size());
+        assertEquals(late.getId(), results.get(0)[0]);
+        assertEquals("11111111111", results.get(0)[1]);
+        assertEquals("IUV_LATE", results.get(0)[2]);
+        assertEquals(due.getId(), results.get(1)[0]);
+    }
+
+    @Test
+    @DisplayName("should limit the due retries to the page size")
+    void shouldLimitDueRetries() {
+        Rendicontazione first = createRendicontazione("11111111111", "IUV_1", true, null);
+        Rendicontazione second = createRendicontazione("22222222222", "IUV_2", true, null);
+        entityManager.flush();
+        createOutcome(first, NOW.minusHours(2));
+        createOutcome(second, NOW.minusHours(1));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Object[]> results = outcomeRepository.findRetryable(NOW, DATA_LIMITE, PageRequest.of(0, 1));
+
+        assertEquals(1, results.size());
+        assertEquals(first.getId(), results.get(0)[0]);
+    }
+
+    private void createOutcome(Rendicontazione rnd, LocalDateTime nextEligible) {
+        entityManager.persist(RetrieveOutcome.builder()
+                .idRendicontazione(rnd.getId())
+                .lastOutcome(nextEligible != null ? RtRetrieveOutcome.NOT_FOUND : RtRetrieveOutcome.RECOVERED)
+                .attempts(1)
+                .lastHttpStatus(nextEligible != null ? 404 : 200)
+                .lastAttempt(NOW.minusHours(3))
+                .nextEligible(nextEligible)
+                .build());
+    }
+
+    private Rendicontazione createRendicontazione(String taxCode, String iuv, boolean eseguiRecuperoRt, Long idPagamento) {
+        DominioEntity dominio = DominioEntity.builder().codDominio(taxCode)
+                .abilitato(true).ragioneSociale("Test").auxDigit(0).intermediato(true).scaricaFr(false).build();
+        entityManager.persist(dominio);
+
+        Fr fr = Fr.builder().dominio(dominio).build();
+        entityManager.persist(fr);
+
+        SingoloVersamento sv = SingoloVersamento.builder().build();
+        entityManager.persist(sv);
+
+        Rendicontazione rnd = Rendicontazione.builder()
+                .fr(fr)
+                .singoloVersamento(sv)
+                .iuv(iuv)
+                .iur("IUR_" + iuv)
+                .data(NOW)
+                .idPagamento(idPagamento)
+                .eseguiRecuperoRt(eseguiRecuperoRt)
+                .build();
+        entityManager.persist(rnd);
+        return rnd;
+    }
+}
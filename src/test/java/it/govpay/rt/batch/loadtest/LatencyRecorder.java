@@ -0,0 +1,45 @@
+package it.govpay.rt.batch.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Raccoglie campioni di latenza (in nanosecondi) e ne calcola i percentili.
+ * Thread-safe: gli stub HTTP registrano i campioni da thread diversi.
+ */
+public class LatencyRecorder {
+
+	private long[] samples = new long[1024];
+	private int size;
+
+	public synchronized void record(long nanos) {
+		if (size == samples.length) {
+			samples = Arrays.copyOf(samples, size * 2);
+		}
+		samples[size++] = nanos;
+	}
+
+	public synchronized int count() {
+		return size;
+	}
+
+	public synchronized void reset() {
+		size = 0;
+	}
+
+	/**
+	 * Restituisce il percentile richiesto (0-100) in millisecondi, 0 se non ci sono campioni.
+	 */
+	public synchronized double percentileMillis(double percentile) {
+		if (size == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(samples, size);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+		return sorted[Math.clamp(index, 0, size - 1)] / 1_000_000.0;
+	}
+
+	public synchronized double maxMillis() {
+		return percentileMillis(100);
+	}
+}
@@ -0,0 +1,130 @@
+package it.govpay.rt.batch.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.step.StepExecution;
+
+import it.govpay.rt.batch.loadtest.StubBehaviour.Outcome;
+
+/**
+ * Report di una esecuzione di load test: throughput, percentili di latenza per item
+ * e per endpoint simulato, esiti restituiti dagli stub e utilizzo dell'heap.
+ * <p>
+ * Va creato con {@link #start()} prima di lanciare il job (azzera i picchi dei memory pool)
+ * e completato con {@link #finish} al termine.
+ */
+public class LoadTestReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 95, 99 };
+
+	private final long startNanos;
+	private final long gcCountAtStart;
+	private final long gcTimeAtStart;
+
+	private String body;
+
+	private LoadTestReport() {
+		ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+		this.gcCountAtStart = gcCount();
+		this.gcTimeAtStart = gcTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+	public static LoadTestReport start() {
+		return new LoadTestReport();
+	}
+
+	public LoadTestReport finish(JobExecution jobExecution, int seededItems, LatencyRecorder itemLatencies,
+			LoadTestStubServer stub) {
+		Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+		long read = 0;
+		long written = 0;
+		for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+			read += stepExecution.getReadCount();
+			written += stepExecution.getWriteCount();
+		}
+		double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("=".repeat(80)).append('\n');
+		sb.append("LOAD TEST RT RETRIEVE").append('\n');
+		sb.append("=".repeat(80)).append('\n');
+		line(sb, "Esito job", jobExecution.getStatus() + " / " + jobExecution.getExitStatus().getExitCode());
+		line(sb, "Item generati", seededItems);
+		line(sb, "Item letti / scritti", read + " / " + written);
+		line(sb, "Durata", String.format(Locale.ROOT, "%.3f s", seconds));
+		line(sb, "Throughput", String.format(Locale.ROOT, "%.2f item/s", written / seconds));
+		sb.append('\n');
+		latencies(sb, "Latenza per item (processor)", itemLatencies);
+		latencies(sb, "Latenza stub pagoPA GET", stub.getPagoPaLatencies());
+		latencies(sb, "Latenza stub GovPay paSendRTV2", stub.getGovpayLatencies());
+		sb.append('\n');
+		outcomes(sb, "Esiti stub pagoPA", stub.getPagoPaOutcomes());
+		outcomes(sb, "Esiti stub GovPay", stub.getGovpayOutcomes());
+		sb.append('\n');
+		line(sb, "Heap di picco", String.format(Locale.ROOT, "%.1f MB", peakHeapBytes() / (1024.0 * 1024.0)));
+		line(sb, "Heap usato a fine run", String.format(Locale.ROOT, "%.1f MB",
+				ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0)));
+		line(sb, "GC (collezioni / tempo)", (gcCount() - gcCountAtStart) + " / " + (gcTimeMillis() - gcTimeAtStart) + " ms");
+		List<Throwable> failures = jobExecution.getAllFailureExceptions();
+		if (!failures.isEmpty()) {
+			line(sb, "Errore", failures.get(0).toString());
+		}
+		sb.append("=".repeat(80));
+		this.body = sb.toString();
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return body;
+	}
+
+	private static void line(StringBuilder sb, String label, Object value) {
+		sb.append(String.format(Locale.ROOT, "%-32s: %s%n", label, value));
+	}
+
+	private static void latencies(StringBuilder sb, String label, LatencyRecorder recorder) {
+		StringBuilder values = new StringBuilder();
+		for (double p : PERCENTILES) {
+			values.append(String.format(Locale.ROOT, "p%.0f=%.1fms ", p, recorder.percentileMillis(p)));
+		}
+		values.append(String.format(Locale.ROOT, "max=%.1fms (n=%d)", recorder.maxMillis(), recorder.count()));
+		line(sb, label, values);
+	}
+
+	private static void outcomes(StringBuilder sb, String label, Map<Outcome, AtomicLong> counters) {
+		StringBuilder values = new StringBuilder();
+		counters.forEach((outcome, count) -> values.append(outcome).append('=').append(count.get()).append(' '));
+		line(sb, label, values.toString().trim());
+	}
+
+	private static long peakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static long gcCount() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(c -> c > 0).sum();
+	}
+
+	private static long gcTimeMillis() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(t -> t > 0).sum();
+	}
+}
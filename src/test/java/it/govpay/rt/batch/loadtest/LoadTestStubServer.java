@@ -0,0 +1,231 @@
+package it.govpay.rt.batch.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import it.govpay.rt.batch.loadtest.StubBehaviour.Outcome;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Server HTTP locale che sostituisce, durante i load test, sia l'API REST pagoPA
+ * di recupero ricevute ({@value #PAGOPA_CONTEXT}) sia l'endpoint SOAP paSendRTV2
+ * di GovPay ({@value #GOVPAY_CONTEXT}).
+ * <p>
+ * Ogni richiesta attende una latenza campionata dal {@link StubBehaviour} configurato
+ * e risponde con successo, 404, 429 o 500 secondo le percentuali impostate.
+ * Le richieste sono servite su virtual thread, cosi' lo stub non diventa il collo
+ * di bottiglia della misura.
+ */
+@Slf4j
+public class LoadTestStubServer implements AutoCloseable {
+
+	public static final String PAGOPA_CONTEXT = "/pagopa";
+	public static final String GOVPAY_CONTEXT = "/govpay/ws";
+
+	private static final String SOAP_ENVELOPE_START =
+			"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>";
+	private static final String SOAP_ENVELOPE_END = "</soapenv:Body></soapenv:Envelope>";
+	private static final String SOAP_OK_RESPONSE = SOAP_ENVELOPE_START
+			+ "<pafn:paSendRTV2Response xmlns:pafn=\"http://pagopa-api.pagopa.gov.it/pa/paForNode.xsd\">"
+			+ "<outcome>OK</outcome></pafn:paSendRTV2Response>" + SOAP_ENVELOPE_END;
+	private static final String SOAP_FAULT_RESPONSE = SOAP_ENVELOPE_START
+			+ "<soapenv:Fault><faultcode>soapenv:Server</faultcode>"
+			+ "<faultstring>Errore simulato dallo stub di load test</faultstring></soapenv:Fault>" + SOAP_ENVELOPE_END;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	private volatile StubBehaviour pagoPaBehaviour = StubBehaviour.noLatency();
+	private volatile StubBehaviour govpayBehaviour = StubBehaviour.noLatency();
+
+	private final LatencyRecorder pagoPaLatencies = new LatencyRecorder();
+	private final LatencyRecorder govpayLatencies = new LatencyRecorder();
+	private final Map<Outcome, AtomicLong> pagoPaOutcomes = newOutcomeCounters();
+	private final Map<Outcome, AtomicLong> govpayOutcomes = newOutcomeCounters();
+
+	public LoadTestStubServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.executor = Executors.newVirtualThreadPerTaskExecutor();
+		this.server.setExecutor(executor);
+		this.server.createContext(PAGOPA_CONTEXT, this::handlePagoPa);
+		this.server.createContext(GOVPAY_CONTEXT, this::handleGovpay);
+		this.server.start();
+		log.info("Stub di load test in ascolto su {}", getBaseUrl());
+	}
+
+	public void configure(StubBehaviour pagoPa, StubBehaviour govpay) {
+		this.pagoPaBehaviour = pagoPa;
+		this.govpayBehaviour = govpay;
+	}
+
+	public void reset() {
+		pagoPaLatencies.reset();
+		govpayLatencies.reset();
+		pagoPaOutcomes.values().forEach(c -> c.set(0));
+		govpayOutcomes.values().forEach(c -> c.set(0));
+	}
+
+	public String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	public String getPagoPaUrl() {
+		return getBaseUrl() + PAGOPA_CONTEXT;
+	}
+
+	public String getGovpayUrl() {
+		return getBaseUrl() + GOVPAY_CONTEXT;
+	}
+
+	public LatencyRecorder getPagoPaLatencies() {
+		return pagoPaLatencies;
+	}
+
+	public LatencyRecorder getGovpayLatencies() {
+		return govpayLatencies;
+	}
+
+	public Map<Outcome, AtomicLong> getPagoPaOutcomes() {
+		return pagoPaOutcomes;
+	}
+
+	public Map<Outcome, AtomicLong> getGovpayOutcomes() {
+		return govpayOutcomes;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.close();
+	}
+
+	/**
+	 * GET /organizations/{organizationfiscalcode}/receipts/{iur}/paymentoptions/{iuv}
+	 */
+	private void handlePagoPa(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try (exchange) {
+			drain(exchange);
+			String[] segments = exchange.getRequestURI().getPath().split("/");
+			// ["", "pagopa", "organizations", cf, "receipts", iur, "paymentoptions", iuv]
+			if (segments.length < 8) {
+				send(exchange, 400, "application/json", "{\"title\":\"Bad Request\"}");
+				return;
+			}
+			simulateLatency(pagoPaBehaviour);
+			Outcome outcome = pagoPaBehaviour.sampleOutcome();
+			pagoPaOutcomes.get(outcome).incrementAndGet();
+			switch (outcome) {
+				case OK -> send(exchange, 200, "application/json", receiptJson(segments[3], segments[5], segments[7]));
+				case NOT_FOUND -> send(exchange, 404, "application/json", "{\"title\":\"Not Found\",\"status\":404}");
+				case TOO_MANY_REQUESTS -> send(exchange, 429, "application/json", "{\"title\":\"Too Many Requests\",\"status\":429}");
+				case ERROR -> send(exchange, 500, "application/json", "{\"title\":\"Internal Server Error\",\"status\":500}");
+			}
+		} finally {
+			pagoPaLatencies.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * POST SOAP paSendRTV2. Il 429 viene restituito senza envelope, come farebbe un API gateway.
+	 */
+	private void handleGovpay(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try (exchange) {
+			drain(exchange);
+			simulateLatency(govpayBehaviour);
+			Outcome outcome = govpayBehaviour.sampleOutcome();
+			govpayOutcomes.get(outcome).incrementAndGet();
+			switch (outcome) {
+				case OK, NOT_FOUND -> send(exchange, 200, "text/xml;charset=UTF-8", SOAP_OK_RESPONSE);
+				case TOO_MANY_REQUESTS -> send(exchange, 429, "text/plain", "Too Many Requests");
+				case ERROR -> send(exchange, 500, "text/xml;charset=UTF-8", SOAP_FAULT_RESPONSE);
+			}
+		} finally {
+			govpayLatencies.record(System.nanoTime() - start);
+		}
+	}
+
+	private static void simulateLatency(StubBehaviour behaviour) {
+		long latency = behaviour.sampleLatencyMillis();
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void drain(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String receiptJson(String fiscalCode, String iur, String iuv) {
+		return """
+				{
+				  "receiptId": "%2$s",
+				  "noticeNumber": "3%3$s",
+				  "fiscalCode": "%1$s",
+				  "outcome": "OK",
+				  "creditorReferenceId": "%3$s",
+				  "paymentAmount": 100.00,
+				  "description": "Pagamento load test",
+				  "companyName": "Ente Load Test",
+				  "debtor": {
+				    "entityUniqueIdentifierType": "F",
+				    "entityUniqueIdentifierValue": "RSSMRA80A01H501U",
+				    "fullName": "Mario Rossi"
+				  },
+				  "transferList": [
+				    {
+				      "idTransfer": 1,
+				      "transferAmount": 100.00,
+				      "fiscalCodePA": "%1$s",
+				      "iban": "IT60X0542811101000000123456",
+				      "remittanceInformation": "Pagamento load test",
+				      "transferCategory": "9/0101100IM/"
+				    }
+				  ],
+				  "idPSP": "AGID_01",
+				  "pspCompanyName": "PSP Load Test",
+				  "idChannel": "AGID_01_ONUS",
+				  "paymentMethod": "CARD",
+				  "fee": 1.00,
+				  "paymentDateTime": "2025-01-15",
+				  "applicationDate": "2025-01-15",
+				  "transferDate": "2025-01-16"
+				}
+				""".formatted(fiscalCode, iur, iuv);
+	}
+
+	private static Map<Outcome, AtomicLong> newOutcomeCounters() {
+		Map<Outcome, AtomicLong> counters = new EnumMap<>(Outcome.class);
+		for (Outcome outcome : Outcome.values()) {
+			counters.put(outcome, new AtomicLong());
+		}
+		return counters;
+	}
+}
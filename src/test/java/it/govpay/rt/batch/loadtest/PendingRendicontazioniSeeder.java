@@ -0,0 +1,110 @@
+package it.govpay.rt.batch.loadtest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.transaction.support.TransactionTemplate;
+
+import it.govpay.common.entity.DominioEntity;
+import it.govpay.rt.batch.entity.Fr;
+import it.govpay.rt.batch.entity.Rendicontazione;
+import it.govpay.rt.batch.entity.SingoloVersamento;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Genera N RENDICONTAZIONI in attesa di recupero RT, distribuite in round-robin
+ * su un numero configurabile di domini, per alimentare il job durante i load test.
+ * <p>
+ * Gli inserimenti sono eseguiti a blocchi con flush/clear del contesto di persistenza,
+ * cosi' la generazione di centinaia di migliaia di righe non satura l'heap del test.
+ * Funziona con qualunque datasource configurato (H2 in memoria o PostgreSQL reale).
+ */
+@Slf4j
+public class PendingRendicontazioniSeeder {
+
+	private static final int FLUSH_SIZE = 500;
+	private static final long FIRST_TAX_CODE = 80000000000L;
+
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+
+	public PendingRendicontazioniSeeder(EntityManager entityManager, TransactionTemplate transactionTemplate) {
+		this.entityManager = entityManager;
+		this.transactionTemplate = transactionTemplate;
+	}
+
+	public static String taxCode(int domainIndex) {
+		return String.format("%011d", FIRST_TAX_CODE + domainIndex);
+	}
+
+	/**
+	 * Elimina le righe generate da una esecuzione precedente (rispettando l'ordine delle FK).
+	 */
+	public void clear() {
+		transactionTemplate.executeWithoutResult(status -> {
+			entityManager.createQuery("DELETE FROM Rendicontazione").executeUpdate();
+			entityManager.createQuery("DELETE FROM Fr").executeUpdate();
+			entityManager.createQuery("DELETE FROM SingoloVersamento").executeUpdate();
+			entityManager.createQuery("DELETE FROM DominioEntity").executeUpdate();
+		});
+	}
+
+	/**
+	 * Inserisce {@code items} rendicontazioni pendenti su {@code domains} domini.
+	 *
+	 * @return i codici dominio generati
+	 */
+	public List<String> seed(int items, int domains) {
+		long start = System.nanoTime();
+		List<Long> frIds = new ArrayList<>(domains);
+		List<String> taxCodes = new ArrayList<>(domains);
+
+		transactionTemplate.executeWithoutResult(status -> {
+			for (int d = 0; d < domains; d++) {
+				DominioEntity dominio = DominioEntity.builder()
+						.codDominio(taxCode(d))
+						.abilitato(true)
+						.ragioneSociale("Ente Load Test " + d)
+						.auxDigit(0)
+						.intermediato(true)
+						.scaricaFr(false)
+						.build();
+				entityManager.persist(dominio);
+				Fr fr = Fr.builder().dominio(dominio).build();
+				entityManager.persist(fr);
+				frIds.add(fr.getId());
+				taxCodes.add(dominio.getCodDominio());
+			}
+		});
+
+		LocalDateTime now = LocalDateTime.now();
+		for (int offset = 0; offset < items; offset += FLUSH_SIZE) {
+			int from = offset;
+			int to = Math.min(items, offset + FLUSH_SIZE);
+			transactionTemplate.executeWithoutResult(status -> {
+				for (int i = from; i < to; i++) {
+					SingoloVersamento sv = SingoloVersamento.builder().build();
+					entityManager.persist(sv);
+					Rendicontazione rnd = Rendicontazione.builder()
+							.fr(entityManager.getReference(Fr.class, frIds.get(i % domains)))
+							.singoloVersamento(sv)
+							.iuv(String.format("LT%015d", i))
+							.iur(String.format("IURLT%012d", i))
+							.data(now.minusMinutes(items - (long) i))
+							.idPagamento(null)
+							.eseguiRecuperoRt(true)
+							.build();
+					entityManager.persist(rnd);
+				}
+				entityManager.flush();
+				entityManager.clear();
+			});
+		}
+
+		log.info("Generate {} rendicontazioni pendenti su {} domini in {} ms",
+				items, domains, (System.nanoTime() - start) / 1_000_000);
+		return taxCodes;
+	}
+}
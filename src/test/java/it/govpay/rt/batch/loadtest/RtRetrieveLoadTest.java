@@ -0,0 +1,213 @@
+package it.govpay.rt.batch.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import it.govpay.common.client.model.Connettore;
+import it.govpay.common.client.service.ConnettoreService;
+import it.govpay.common.configurazione.service.ConfigurazioneService;
+import it.govpay.common.entity.DominioEntity;
+import it.govpay.common.entity.IntermediarioEntity;
+import it.govpay.common.entity.StazioneEntity;
+import it.govpay.common.repository.DominioRepository;
+import it.govpay.common.repository.IntermediarioRepository;
+import it.govpay.rt.batch.tasklet.RtRetrieveProcessor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Load test del job di recupero RT contro stub locali di pagoPA e GovPay.
+ * <p>
+ * Non viene eseguito nella build standard: si abilita con
+ * {@code mvn test -Dtest=RtRetrieveLoadTest -Dloadtest.enabled=true} e si parametrizza
+ * con le proprieta' {@code loadtest.*} (vedi {@code application-loadtest.properties}),
+ * ad esempio {@code -Dloadtest.items=50000 -Dloadtest.stub.pagopa.latency.mean-ms=120}.
+ * Per misurare su PostgreSQL basta sovrascrivere {@code spring.datasource.*}.
+ */
+@Slf4j
+@SpringBootTest
+@ActiveProfiles("loadtest")
+@Import(RtRetrieveLoadTest.LoadTestConfig.class)
+@Tag("loadtest")
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+@DisplayName("RtRetrieveJob Load Test")
+class RtRetrieveLoadTest {
+
+	private static final String COD_CONNETTORE_RT = "COD_CONNETTORE_RT_LOADTEST";
+	private static final String INTERMEDIARY_ID = "15376371009";
+	private static final String STATION_ID = "15376371009_01";
+
+	private static final LatencyRecorder ITEM_LATENCIES = new LatencyRecorder();
+
+	private static LoadTestStubServer stub;
+
+	@TestConfiguration
+	static class LoadTestConfig {
+		@Bean(name = "asyncHttpExecutor")
+		public Executor asyncHttpExecutor() {
+			return Runnable::run;
+		}
+
+		/**
+		 * Misura la latenza end-to-end di ogni item (GET pagoPA + conversione + invio SOAP)
+		 * avvolgendo il processor in un proxy, senza modificare la configurazione del job.
+		 */
+		@Bean
+		static BeanPostProcessor itemLatencyProbe() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof RtRetrieveProcessor)) {
+						return bean;
+					}
+					ProxyFactory proxyFactory = new ProxyFactory(bean);
+					proxyFactory.setProxyTargetClass(true);
+					proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+						if (!"process".equals(invocation.getMethod().getName())) {
+							return invocation.proceed();
+						}
+						long start = System.nanoTime();
+						try {
+							return invocation.proceed();
+						} finally {
+							ITEM_LATENCIES.record(System.nanoTime() - start);
+						}
+					});
+					return proxyFactory.getProxy();
+				}
+			};
+		}
+	}
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) throws Exception {
+		if (stub == null) {
+			stub = new LoadTestStubServer();
+		}
+		registry.add("govpay.url", stub::getGovpayUrl);
+	}
+
+	@AfterAll
+	static void stopStub() {
+		if (stub != null) {
+			stub.close();
+			stub = null;
+		}
+	}
+
+	@Autowired
+	private Job rtRetrieveJob;
+
+	@Autowired
+	private JobOperator jobOperator;
+
+	@Autowired
+	private Environment env;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@MockitoBean
+	private ConnettoreService connettoreService;
+
+	@MockitoBean
+	private IntermediarioRepository intermediarioRepository;
+
+	@MockitoBean
+	private DominioRepository dominioRepository;
+
+	@MockitoBean
+	private ConfigurazioneService configurazioneService;
+
+	@BeforeEach
+	void setUp() {
+		IntermediarioEntity intermediario = IntermediarioEntity.builder()
+				.codIntermediario(INTERMEDIARY_ID)
+				.codConnettoreRecuperoRt(COD_CONNETTORE_RT)
+				.build();
+		when(intermediarioRepository.findByCodDominio(anyString())).thenReturn(Optional.of(intermediario));
+
+		StazioneEntity stazione = StazioneEntity.builder()
+				.codStazione(STATION_ID)
+				.intermediario(IntermediarioEntity.builder().codIntermediario(INTERMEDIARY_ID).build())
+				.build();
+		when(dominioRepository.findByCodDominio(anyString())).thenAnswer(invocation -> Optional.of(
+				DominioEntity.builder().codDominio(invocation.getArgument(0)).stazione(stazione).build()));
+
+		Connettore connettore = new Connettore();
+		connettore.setUrl(stub.getPagoPaUrl());
+		when(connettoreService.getConnettore(COD_CONNETTORE_RT)).thenReturn(connettore);
+		when(connettoreService.getRestTemplate(COD_CONNETTORE_RT)).thenReturn(new RestTemplate());
+
+		when(configurazioneService.isServizioGDEAbilitato()).thenReturn(false);
+	}
+
+	@Test
+	@DisplayName("should process the seeded backlog and print the load test report")
+	void shouldProcessSeededBacklogAndReport() throws Exception {
+		int items = env.getProperty("loadtest.items", Integer.class, 1000);
+		int domains = env.getProperty("loadtest.domains", Integer.class, 5);
+
+		StubBehaviour pagoPa = StubBehaviour.fromEnvironment(env, "loadtest.stub.pagopa");
+		StubBehaviour govpay = StubBehaviour.fromEnvironment(env, "loadtest.stub.govpay");
+		stub.configure(pagoPa, govpay);
+		log.info("Load test: {} item su {} domini - pagoPA {} - GovPay {}", items, domains, pagoPa, govpay);
+
+		PendingRendicontazioniSeeder seeder = new PendingRendicontazioniSeeder(entityManager, transactionTemplate);
+		seeder.clear();
+		seeder.seed(items, domains);
+		stub.reset();
+		ITEM_LATENCIES.reset();
+
+		LoadTestReport report = LoadTestReport.start();
+		JobExecution jobExecution = jobOperator.start(rtRetrieveJob, new JobParametersBuilder()
+				.addLong("run.id", System.currentTimeMillis())
+				.toJobParameters());
+		report.finish(jobExecution, items, ITEM_LATENCIES, stub);
+
+		log.info("\n{}", report);
+		Path reportFile = Path.of(env.getProperty("loadtest.report-file", "target/loadtest-report.txt"));
+		if (reportFile.getParent() != null) {
+			Files.createDirectories(reportFile.getParent());
+		}
+		Files.writeString(reportFile, report.toString());
+
+		assertFalse(jobExecution.isRunning(), "Il job deve essere terminato al termine del load test");
+	}
+}
@@ -0,0 +1,145 @@
+package it.govpay.rt.batch.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.Marshaller;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.FaultAwareWebServiceMessage;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import it.gov.pagopa.pagopa_api.pa.pafornode.CtReceiptV2;
+import it.gov.pagopa.pagopa_api.pa.pafornode.ObjectFactory;
+import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
+import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
+import it.gov.pagopa.pagopa_api.xsd.common_types.v1_0.StOutcome;
+import it.govpay.rt.batch.client.StaxSoapMessage;
+import it.govpay.rt.batch.client.StaxSoapMessageFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Confronto tra SaajSoapMessageFactory e {@link StaxSoapMessageFactory} sul percorso di una chiamata paSendRTV2:
+ * creazione e scrittura della busta di richiesta, lettura della risposta, controllo del fault e unmarshal.
+ * <p>
+ * Misura byte allocati (dal thread corrente) e percentili di latenza per chiamata, senza rete.
+ * Non viene eseguito nella build standard: si abilita con
+ * {@code mvn test -Dtest=SoapMessageFactoryBenchmark -Dloadtest.enabled=true}, con
+ * {@code -Dloadtest.soap.iterations} (default 20000) e {@code -Dloadtest.soap.warmup} (default 5000).
+ */
+@Slf4j
+@Tag("loadtest")
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+@DisplayName("SOAP message factory benchmark")
+class SoapMessageFactoryBenchmark {
+
+	private static final byte[] OK_RESPONSE = ("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+			+ "<pafn:paSendRTV2Response xmlns:pafn=\"http://pagopa-api.pagopa.gov.it/pa/paForNode.xsd\">"
+			+ "<outcome>OK</outcome></pafn:paSendRTV2Response></soapenv:Body></soapenv:Envelope>").getBytes(StandardCharsets.UTF_8);
+
+	private static final int ITERATIONS = Integer.getInteger("loadtest.soap.iterations", 20_000);
+	private static final int WARMUP = Integer.getInteger("loadtest.soap.warmup", 5_000);
+
+	private static Jaxb2Marshaller marshaller;
+	private static JAXBElement<PaSendRTV2Request> request;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		marshaller = new Jaxb2Marshaller();
+		marshaller.setContextPath("it.gov.pagopa.pagopa_api.pa.pafornode");
+		marshaller.setMarshallerProperties(Map.of(Marshaller.JAXB_FRAGMENT, Boolean.TRUE));
+		marshaller.afterPropertiesSet();
+		request = new ObjectFactory().createPaSendRTV2Request(buildRequest());
+	}
+
+	@Test
+	void compareMessageFactories() throws Exception {
+		SaajSoapMessageFactory saaj = new SaajSoapMessageFactory();
+		saaj.afterPropertiesSet();
+		StaxSoapMessageFactory stax = new StaxSoapMessageFactory();
+
+		Result saajResult = run("saaj", saaj);
+		Result staxResult = run("stax", stax);
+
+		log.info("\nBenchmark factory messaggi SOAP ({} chiamate, warmup {})\n{}\n{}\n{}",
+				 ITERATIONS, WARMUP, Result.HEADER, saajResult, staxResult);
+	}
+
+	private Result run(String name, WebServiceMessageFactory factory) throws Exception {
+		for (int i = 0; i < WARMUP; i++)
+			call(factory);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		LatencyRecorder latencies = new LatencyRecorder();
+		long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			call(factory);
+			latencies.record(System.nanoTime() - start);
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+		return new Result(name, allocated / ITERATIONS, latencies.percentileMillis(50), latencies.percentileMillis(99));
+	}
+
+	private static void call(WebServiceMessageFactory factory) throws Exception {
+		WebServiceMessage outgoing = factory.createWebServiceMessage();
+		if (outgoing instanceof StaxSoapMessage staxMessage)
+			staxMessage.setSoapAction("paSendRTV2");
+		else
+			((SoapMessage) outgoing).setSoapAction("paSendRTV2");
+		marshaller.marshal(request, outgoing.getPayloadResult());
+		outgoing.writeTo(new ByteArrayOutputStream(2048));
+
+		FaultAwareWebServiceMessage incoming = (FaultAwareWebServiceMessage) factory.createWebServiceMessage(new ByteArrayInputStream(OK_RESPONSE));
+		if (incoming.hasFault())
+			throw new IllegalStateException("Fault inatteso: " + incoming.getFaultReason());
+		Object response = marshaller.unmarshal(incoming.getPayloadSource());
+		assertEquals(StOutcome.OK, ((PaSendRTV2Response) ((JAXBElement<?>) response).getValue()).getOutcome());
+	}
+
+	private static PaSendRTV2Request buildRequest() {
+		CtReceiptV2 receipt = new CtReceiptV2();
+		receipt.setReceiptId("c8a2f0e6b4d14f3fa1c2b3d4e5f60718");
+		receipt.setNoticeNumber("301000000000012345");
+		receipt.setFiscalCode("12345678901");
+		receipt.setOutcome(StOutcome.OK);
+		receipt.setCreditorReferenceId("01000000000012345");
+		receipt.setPaymentAmount(new BigDecimal("150.00"));
+		receipt.setDescription("Pagamento TARI rata unica");
+		receipt.setCompanyName("Comune di Esempio");
+		receipt.setIdPSP("PSP_TEST");
+		receipt.setPSPCompanyName("PSP di test");
+		receipt.setIdChannel("PSP_TEST_01");
+		receipt.setChannelDescription("app");
+		PaSendRTV2Request paSendRTV2Request = new PaSendRTV2Request();
+		paSendRTV2Request.setIdPA("12345678901");
+		paSendRTV2Request.setIdBrokerPA("15376371009");
+		paSendRTV2Request.setIdStation("15376371009_01");
+		paSendRTV2Request.setReceipt(receipt);
+		return paSendRTV2Request;
+	}
+
+	private record Result(String factory, long bytesPerCall, double p50Millis, double p99Millis) {
+		static final String HEADER = String.format("%-8s %16s %10s %10s", "factory", "byte/chiamata", "p50 ms", "p99 ms");
+
+		@Override
+		public String toString() {
+			return String.format("%-8s %16d %10.3f %10.3f", factory, bytesPerCall, p50Millis, p99Millis);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package it.govpay.rt.batch.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * Comportamento configurabile di un endpoint simulato dal {@link LoadTestStubServer}:
+ * distribuzione della latenza e percentuali di risposte 429, 5xx e 404.
+ * <p>
+ * Le percentuali sono espresse come frazione nell'intervallo [0, 1] e vengono
+ * valutate nell'ordine 429, errore, 404; la quota residua risponde con successo.
+ */
+public record StubBehaviour(
+		LatencyDistribution distribution,
+		long meanMillis,
+		long spreadMillis,
+		double tooManyRequestsRate,
+		double errorRate,
+		double notFoundRate) {
+
+	public enum LatencyDistribution {
+		/** Latenza costante pari alla media */
+		FIXED,
+		/** Latenza uniforme in [media - spread, media + spread] */
+		UNIFORM,
+		/** Latenza log-normale con media e deviazione standard indicate (coda lunga realistica) */
+		LOGNORMAL
+	}
+
+	public enum Outcome {
+		OK, NOT_FOUND, TOO_MANY_REQUESTS, ERROR
+	}
+
+	public static StubBehaviour noLatency() {
+		return new StubBehaviour(LatencyDistribution.FIXED, 0, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Legge il comportamento dalle proprieta' {@code <prefix>.latency.distribution},
+	 * {@code <prefix>.latency.mean-ms}, {@code <prefix>.latency.spread-ms},
+	 * {@code <prefix>.too-many-requests-rate}, {@code <prefix>.error-rate} e
+	 * {@code <prefix>.not-found-rate}.
+	 */
+	public static StubBehaviour fromEnvironment(Environment env, String prefix) {
+		return new StubBehaviour(
+				LatencyDistribution.valueOf(env.getProperty(prefix + ".latency.distribution", "LOGNORMAL").toUpperCase()),
+				env.getProperty(prefix + ".latency.mean-ms", Long.class, 50L),
+				env.getProperty(prefix + ".latency.spread-ms", Long.class, 20L),
+				env.getProperty(prefix + ".too-many-requests-rate", Double.class, 0d),
+				env.getProperty(prefix + ".error-rate", Double.class, 0d),
+				env.getProperty(prefix + ".not-found-rate", Double.class, 0d));
+	}
+
+	public long sampleLatencyMillis() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long latency = switch (distribution) {
+			case FIXED -> meanMillis;
+			case UNIFORM -> meanMillis - spreadMillis + random.nextLong(2 * spreadMillis + 1);
+			case LOGNORMAL -> {
+				if (meanMillis <= 0) {
+					yield 0;
+				}
+				double variance = Math.log(1 + Math.pow((double) spreadMillis / meanMillis, 2));
+				double mu = Math.log(meanMillis) - variance / 2;
+				yield Math.round(Math.exp(mu + Math.sqrt(variance) * random.nextGaussian()));
+			}
+		};
+		return Math.max(0, latency);
+	}
+
+	public Outcome sampleOutcome() {
+		double r = ThreadLocalRandom.current().nextDouble();
+		if (r < tooManyRequestsRate) {
+			return Outcome.TOO_MANY_REQUESTS;
+		}
+		if (r < tooManyRequestsRate + errorRate) {
+			return Outcome.ERROR;
+		}
+		if (r < tooManyRequestsRate + errorRate + notFoundRate) {
+			return Outcome.NOT_FOUND;
+		}
+		return Outcome.OK;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(mean=%dms, spread=%dms) 429=%.2f%% err=%.2f%% 404=%.2f%%",
+				distribution, meanMillis, spreadMillis,
+				tooManyRequestsRate * 100, errorRate * 100, notFoundRate * 100);
+	}
+}
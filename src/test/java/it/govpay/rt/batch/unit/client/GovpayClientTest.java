@@ -1,8 +1,12 @@
 package it.govpay.rt.batch.unit.client;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -15,6 +19,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.ws.soap.SoapMessage;
 import org.springframework.ws.soap.client.core.SoapActionCallback;
 
 import jakarta.xml.bind.JAXBElement;
@@ -23,7 +28,9 @@ import javax.xml.namespace.QName;
 import it.gov.pagopa.pagopa_api.pa.pafornode.CtReceiptV2;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
+import it.govpay.rt.batch.client.ExchangeContext;
 import it.govpay.rt.batch.client.GovpayClient;
+import it.govpay.rt.batch.client.SoapGdeCapturingInterceptor;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("GovpayClient")
@@ -81,6 +88,44 @@ class GovpayClientTest {
             assertSame(response, result);
         }
 
+        @Test
+        @DisplayName("should fill url, method and timings of the exchange even when the call fails")
+        void shouldCompleteExchangeOnFailure() {
+            SoapGdeCapturingInterceptor exchangeInterceptor = mock(SoapGdeCapturingInterceptor.class);
+            client.setExchangeInterceptor(exchangeInterceptor);
+            client.setDefaultUri("https://govpay.example.com/pa");
+            RuntimeException failure = new RuntimeException("Connection refused");
+            when(webServiceTemplate.marshalSendAndReceive(any(Object.class), any(SoapActionCallback.class)))
+                    .thenThrow(failure);
+            ExchangeContext exchange = new ExchangeContext();
+
+            assertSame(failure, assertThrows(RuntimeException.class, () -> client.sendReceipt(buildRequest(), exchange)));
+
+            assertEquals("POST", exchange.getMethod());
+            assertEquals("https://govpay.example.com/pa", exchange.getUrl());
+            assertNotNull(exchange.getDataEnd());
+            verify(exchangeInterceptor).release(exchange);
+        }
+
+        @Test
+        @DisplayName("should bind the exchange to the connection when the request callback runs")
+        void shouldBindExchangeInRequestCallback() throws Exception {
+            SoapGdeCapturingInterceptor exchangeInterceptor = mock(SoapGdeCapturingInterceptor.class);
+            client.setExchangeInterceptor(exchangeInterceptor);
+            ExchangeContext exchange = new ExchangeContext();
+            SoapMessage message = mock(SoapMessage.class);
+            when(webServiceTemplate.marshalSendAndReceive(any(Object.class), any(SoapActionCallback.class)))
+                    .thenAnswer(invocation -> {
+                        invocation.getArgument(1, SoapActionCallback.class).doWithMessage(message);
+                        return new PaSendRTV2Response();
+                    });
+
+            client.sendReceipt(buildRequest(), exchange);
+
+            verify(message).setSoapAction("paSendRTV2");
+            verify(exchangeInterceptor).bind(exchange);
+        }
+
         private PaSendRTV2Request buildRequest() {
             PaSendRTV2Request request = new PaSendRTV2Request();
             CtReceiptV2 receipt = new CtReceiptV2();
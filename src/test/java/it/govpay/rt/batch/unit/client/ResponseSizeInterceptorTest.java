@@ -0,0 +1,72 @@
+package it.govpay.rt.batch.unit.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import it.govpay.rt.batch.client.ResponseSizeInterceptor;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ResponseSizeInterceptor")
+class ResponseSizeInterceptorTest {
+
+    private static final byte[] BODY = "{\"receiptId\":\"IUR123\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private HttpRequest request;
+
+    @Mock
+    private ClientHttpRequestExecution execution;
+
+    private final ResponseSizeInterceptor interceptor = new ResponseSizeInterceptor();
+
+    @AfterEach
+    void tearDown() {
+        ResponseSizeInterceptor.clear();
+    }
+
+    @Test
+    @DisplayName("should count the body bytes read without a Content-Length header")
+    void shouldCountBodyRead() throws IOException {
+        // nessun Content-Length, come in una risposta chunked
+        when(execution.execute(eq(request), any())).thenReturn(new MockClientHttpResponse(BODY, HttpStatus.OK));
+
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], execution);
+             InputStream body = response.getBody()) {
+            assertEquals(-1L, response.getHeaders().getContentLength());
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+
+        assertEquals(BODY.length, ResponseSizeInterceptor.bytesRead());
+    }
+
+    @Test
+    @DisplayName("should report 0 once cleared")
+    void shouldResetOnClear() throws IOException {
+        when(execution.execute(eq(request), any())).thenReturn(new MockClientHttpResponse(BODY, HttpStatus.OK));
+
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], execution)) {
+            response.getBody().transferTo(OutputStream.nullOutputStream());
+        }
+        ResponseSizeInterceptor.clear();
+
+        assertEquals(0L, ResponseSizeInterceptor.bytesRead());
+    }
+}
@@ -0,0 +1,116 @@
+package it.govpay.rt.batch.unit.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.transport.HeadersAwareSenderWebServiceConnection;
+import org.springframework.ws.transport.context.TransportContext;
+import org.springframework.ws.transport.context.TransportContextHolder;
+
+import it.govpay.rt.batch.client.ExchangeContext;
+import it.govpay.rt.batch.client.SoapGdeCapturingInterceptor;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SoapGdeCapturingInterceptor")
+class SoapGdeCapturingInterceptorTest {
+
+    @Mock
+    private MessageContext messageContext;
+
+    @Mock
+    private TransportContext transportContext;
+
+    @Mock
+    private HeadersAwareSenderWebServiceConnection httpConnection;
+
+    private SoapGdeCapturingInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new SoapGdeCapturingInterceptor();
+    }
+
+    private static WebServiceMessage message(String body) throws IOException {
+        WebServiceMessage message = mock(WebServiceMessage.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, OutputStream.class).write(body.getBytes());
+            return null;
+        }).when(message).writeTo(any(OutputStream.class));
+        return message;
+    }
+
+    @Nested
+    @DisplayName("afterCompletion")
+    class AfterCompletionTest {
+
+        @Test
+        @DisplayName("should fill the exchange bound to the connection with headers and raw payloads")
+        void shouldFillBoundExchange() throws IOException {
+            try (MockedStatic<TransportContextHolder> mockedHolder = mockStatic(TransportContextHolder.class)) {
+                mockedHolder.when(TransportContextHolder::getTransportContext).thenReturn(transportContext);
+                when(transportContext.getConnection()).thenReturn(httpConnection);
+                when(httpConnection.getResponseHeaderNames()).thenReturn(List.of("Content-Type").iterator());
+                when(httpConnection.getResponseHeaders("Content-Type")).thenReturn(List.of("text/xml").iterator());
+                WebServiceMessage request = message("<request/>");
+                WebServiceMessage response = message("<response/>");
+                when(messageContext.getRequest()).thenReturn(request);
+                when(messageContext.hasResponse()).thenReturn(true);
+                when(messageContext.getResponse()).thenReturn(response);
+                ExchangeContext exchange = new ExchangeContext();
+
+                interceptor.bind(exchange);
+                interceptor.afterCompletion(messageContext, null);
+
+                assertArrayEquals("<request/>".getBytes(), exchange.getRequestPayload());
+                assertArrayEquals("<response/>".getBytes(), exchange.getResponsePayload());
+                assertEquals(1, exchange.getResponseHeaders().size());
+                assertEquals("Content-Type", exchange.getResponseHeaders().get(0).getNome());
+                assertEquals("text/xml", exchange.getResponseHeaders().get(0).getValore());
+            }
+        }
+
+        @Test
+        @DisplayName("should leave the exchange untouched once released")
+        void shouldIgnoreReleasedExchange() {
+            try (MockedStatic<TransportContextHolder> mockedHolder = mockStatic(TransportContextHolder.class)) {
+                mockedHolder.when(TransportContextHolder::getTransportContext).thenReturn(transportContext);
+                when(transportContext.getConnection()).thenReturn(httpConnection);
+                ExchangeContext exchange = new ExchangeContext();
+
+                interceptor.bind(exchange);
+                interceptor.release(exchange);
+                interceptor.afterCompletion(messageContext, new IOException("Connection reset"));
+
+                assertNull(exchange.getRequestPayload());
+                assertTrue(exchange.getResponseHeaders().isEmpty());
+                verifyNoInteractions(messageContext, httpConnection);
+            }
+        }
+
+        @Test
+        @DisplayName("should do nothing when there is no transport context")
+        void shouldDoNothingWithoutTransportContext() {
+            try (MockedStatic<TransportContextHolder> mockedHolder = mockStatic(TransportContextHolder.class)) {
+                mockedHolder.when(TransportContextHolder::getTransportContext).thenReturn(null);
+
+                assertDoesNotThrow(() -> interceptor.afterCompletion(messageContext, null));
+                verifyNoInteractions(messageContext);
+            }
+        }
+    }
+}
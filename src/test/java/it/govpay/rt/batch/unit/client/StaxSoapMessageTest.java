@@ -0,0 +1,137 @@
+package it.govpay.rt.batch.unit.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.Marshaller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.transport.TransportOutputStream;
+
+import it.gov.pagopa.pagopa_api.pa.pafornode.ObjectFactory;
+import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
+import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
+import it.gov.pagopa.pagopa_api.xsd.common_types.v1_0.StOutcome;
+import it.govpay.rt.batch.client.StaxSoapMessage;
+import it.govpay.rt.batch.client.StaxSoapMessageFactory;
+
+@DisplayName("StaxSoapMessage")
+class StaxSoapMessageTest {
+
+    private static final String ENVELOPE_START =
+            "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">";
+    private static final String OK_RESPONSE = ENVELOPE_START + "<soapenv:Header><x:trace xmlns:x=\"urn:x\"><x:id>1</x:id></x:trace></soapenv:Header>"
+            + "<soapenv:Body><pafn:paSendRTV2Response xmlns:pafn=\"http://pagopa-api.pagopa.gov.it/pa/paForNode.xsd\">"
+            + "<outcome>OK</outcome></pafn:paSendRTV2Response></soapenv:Body></soapenv:Envelope>";
+    private static final String FAULT_RESPONSE = ENVELOPE_START + "<soapenv:Body>"
+            + "<soapenv:Fault><faultcode>soapenv:Client</faultcode><faultstring>Richiesta non valida</faultstring>"
+            + "<detail><code>PAA_SINTASSI_XSD</code></detail></soapenv:Fault></soapenv:Body></soapenv:Envelope>";
+
+    private final StaxSoapMessageFactory factory = new StaxSoapMessageFactory();
+    private Jaxb2Marshaller marshaller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        marshaller = new Jaxb2Marshaller();
+        marshaller.setContextPath("it.gov.pagopa.pagopa_api.pa.pafornode");
+        marshaller.setMarshallerProperties(Map.of(Marshaller.JAXB_FRAGMENT, Boolean.TRUE));
+        marshaller.afterPropertiesSet();
+    }
+
+    private StaxSoapMessage received(String envelope) throws IOException {
+        return factory.createWebServiceMessage(new ByteArrayInputStream(envelope.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Nested
+    @DisplayName("request")
+    class RequestTest {
+
+        @Test
+        @DisplayName("should wrap the marshalled payload in a SOAP 1.1 envelope")
+        void shouldWrapPayloadInEnvelope() throws IOException {
+            StaxSoapMessage message = factory.createWebServiceMessage();
+            marshaller.marshal(new ObjectFactory().createPaSendRTV2Request(new PaSendRTV2Request()), message.getPayloadResult());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            message.writeTo(out);
+
+            String envelope = out.toString(StandardCharsets.UTF_8);
+            assertTrue(envelope.startsWith(ENVELOPE_START + "<soapenv:Body>"), envelope);
+            assertTrue(envelope.contains("paSendRTV2Request"), envelope);
+            assertTrue(envelope.endsWith("</soapenv:Body></soapenv:Envelope>"), envelope);
+            assertFalse(envelope.contains("<?xml"), envelope);
+        }
+
+        @Test
+        @DisplayName("should set Content-Type and quoted SOAPAction on the transport")
+        void shouldSetTransportHeaders() throws IOException {
+            StaxSoapMessage message = factory.createWebServiceMessage();
+            message.setSoapAction("paSendRTV2");
+            TransportOutputStream out = mock(TransportOutputStream.class);
+
+            message.writeTo(out);
+
+            verify(out).addHeader("Content-Type", StaxSoapMessage.CONTENT_TYPE);
+            verify(out).addHeader("SOAPAction", "\"paSendRTV2\"");
+        }
+    }
+
+    @Nested
+    @DisplayName("response")
+    class ResponseTest {
+
+        @Test
+        @DisplayName("should unmarshal the body payload skipping the SOAP header")
+        void shouldUnmarshalPayload() throws IOException {
+            StaxSoapMessage message = received(OK_RESPONSE);
+
+            assertFalse(message.hasFault());
+            Object result = marshaller.unmarshal(message.getPayloadSource());
+
+            PaSendRTV2Response response = (PaSendRTV2Response) ((JAXBElement<?>) result).getValue();
+            assertEquals(StOutcome.OK, response.getOutcome());
+        }
+
+        @Test
+        @DisplayName("should expose code and reason of a SOAP fault")
+        void shouldDetectFault() throws IOException {
+            StaxSoapMessage message = received(FAULT_RESPONSE);
+
+            assertTrue(message.hasFault());
+            assertEquals(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Client"), message.getFaultCode());
+            assertEquals("Richiesta non valida", message.getFaultReason());
+        }
+
+        @Test
+        @DisplayName("should write back the received envelope unchanged")
+        void shouldWriteReceivedEnvelope() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            received(OK_RESPONSE).writeTo(out);
+
+            assertEquals(OK_RESPONSE, out.toString(StandardCharsets.UTF_8));
+        }
+
+        @Test
+        @DisplayName("should return no payload for an empty body")
+        void shouldReturnNullForEmptyBody() throws IOException {
+            StaxSoapMessage message = received(ENVELOPE_START + "<soapenv:Body/></soapenv:Envelope>");
+
+            assertNull(message.getPayloadSource());
+            assertFalse(message.hasFault());
+        }
+    }
+}
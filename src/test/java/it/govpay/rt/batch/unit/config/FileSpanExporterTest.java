@@ -0,0 +1,52 @@
+package it.govpay.rt.batch.unit.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import it.govpay.rt.batch.config.FileSpanExporter;
+
+@DisplayName("FileSpanExporter")
+class FileSpanExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("should append one JSON line per finished span")
+    void shouldWriteOneLinePerSpan() throws Exception {
+        Path file = tempDir.resolve("traces/spans.jsonl");
+        FileSpanExporter exporter = new FileSpanExporter(file);
+
+        try (SdkTracerProvider provider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build()) {
+            Tracer tracer = provider.get("test");
+            Span root = tracer.spanBuilder("govpay.rt.receipt").setAttribute("rt.id", "42").startSpan();
+            try (Scope scope = root.makeCurrent()) {
+                tracer.spanBuilder("govpay.rt.receipt.pagopa-get").startSpan().end();
+            } finally {
+                root.end();
+            }
+
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(2, lines.size());
+            assertTrue(lines.get(0).contains("\"name\":\"govpay.rt.receipt.pagopa-get\""));
+            assertTrue(lines.get(0).contains("\"parentSpanId\":\"" + root.getSpanContext().getSpanId() + "\""));
+            assertTrue(lines.get(1).contains("\"traceId\":\"" + root.getSpanContext().getTraceId() + "\""));
+            assertTrue(lines.get(1).contains("\"rt.id\":\"42\""));
+            assertFalse(lines.get(1).contains("parentSpanId"));
+        }
+    }
+}
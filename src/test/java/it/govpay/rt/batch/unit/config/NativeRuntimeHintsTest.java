@@ -0,0 +1,57 @@
+package it.govpay.rt.batch.unit.config;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import it.gov.pagopa.pagopa_api.pa.pafornode.ObjectFactory;
+import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
+import it.govpay.rt.batch.config.NativeRuntimeHints;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.entity.Rendicontazione;
+import it.govpay.rt.batch.utils.OffsetDateTimeAdapter;
+import it.govpay.rt.client.model.CtReceiptModelResponse;
+
+@DisplayName("NativeRuntimeHints")
+class NativeRuntimeHintsTest {
+
+    private RuntimeHints hints;
+
+    @BeforeEach
+    void setUp() {
+        hints = new RuntimeHints();
+        new NativeRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    private boolean reflective(Class<?> type) {
+        return RuntimeHintsPredicates.reflection().onType(type)
+                .withMemberCategories(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS)
+                .test(hints);
+    }
+
+    @Test
+    @DisplayName("should register the JAXB classes generated from paForNode.xsd")
+    void shouldRegisterJaxbClasses() {
+        assertTrue(reflective(ObjectFactory.class));
+        assertTrue(reflective(PaSendRTV2Request.class));
+        assertTrue(reflective(OffsetDateTimeAdapter.class));
+    }
+
+    @Test
+    @DisplayName("should register the OpenAPI model and the JSON DTOs")
+    void shouldRegisterJacksonTypes() {
+        assertTrue(reflective(CtReceiptModelResponse.class));
+        assertTrue(reflective(BatchProgressInfo.class));
+    }
+
+    @Test
+    @DisplayName("should register the Hibernate entities")
+    void shouldRegisterEntities() {
+        assertTrue(reflective(Rendicontazione.class));
+    }
+}
@@ -0,0 +1,63 @@
+package it.govpay.rt.batch.unit.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.config.PollingIntervalPolicy;
+
+@DisplayName("PollingIntervalPolicy")
+class PollingIntervalPolicyTest {
+
+    private BatchProperties.Polling polling;
+
+    @BeforeEach
+    void setUp() {
+        polling = new BatchProperties.Polling();
+        polling.setMinInterval(Duration.ofSeconds(10));
+        polling.setMaxInterval(Duration.ofSeconds(60));
+        polling.setBackoffMultiplier(2.0d);
+    }
+
+    @Test
+    @DisplayName("should start from the minimum interval")
+    void shouldStartFromMinimum() {
+        assertEquals(Duration.ofSeconds(10), new PollingIntervalPolicy(polling).getCurrentInterval());
+    }
+
+    @Test
+    @DisplayName("should back off on idle polls up to the maximum")
+    void shouldBackOffUpToMaximum() {
+        PollingIntervalPolicy policy = new PollingIntervalPolicy(polling);
+
+        assertEquals(Duration.ofSeconds(20), policy.onPollCompleted(0));
+        assertEquals(Duration.ofSeconds(40), policy.onPollCompleted(0));
+        assertEquals(Duration.ofSeconds(60), policy.onPollCompleted(0));
+        assertEquals(Duration.ofSeconds(60), policy.onPollCompleted(0));
+    }
+
+    @Test
+    @DisplayName("should return to the minimum as soon as a poll finds work")
+    void shouldResetWhenBacklogFound() {
+        PollingIntervalPolicy policy = new PollingIntervalPolicy(polling);
+        policy.onPollCompleted(0);
+        policy.onPollCompleted(0);
+
+        assertEquals(Duration.ofSeconds(10), policy.onPollCompleted(3));
+    }
+
+    @Test
+    @DisplayName("should tolerate a maximum lower than the minimum and a multiplier below one")
+    void shouldSanitizeConfiguration() {
+        polling.setMaxInterval(Duration.ofSeconds(5));
+        polling.setBackoffMultiplier(0.5d);
+        PollingIntervalPolicy policy = new PollingIntervalPolicy(polling);
+
+        assertEquals(Duration.ofSeconds(10), policy.onPollCompleted(0));
+    }
+}
@@ -0,0 +1,135 @@
+package it.govpay.rt.batch.unit.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.job.Job;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import it.govpay.common.batch.runner.JobExecutionHelper;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.config.PollingJobRunner;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.WatermarkService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PollingJobRunner")
+class PollingJobRunnerTest {
+
+    @Mock
+    private JobExecutionHelper jobExecutionHelper;
+
+    @Mock
+    private Job rtRetrieveJob;
+
+    @Mock
+    private RendicontazioniRepository rndRepository;
+
+    @Mock
+    private WatermarkService watermarkService;
+
+    @Mock
+    private RetrieveOutcomeService outcomeService;
+
+    @Mock
+    private TriggerContext triggerContext;
+
+    private PollingJobRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        BatchProperties batchProperties = new BatchProperties();
+        batchProperties.getPolling().setMinInterval(Duration.ofSeconds(10));
+        batchProperties.getPolling().setMaxInterval(Duration.ofMinutes(5));
+        runner = new PollingJobRunner(jobExecutionHelper, rtRetrieveJob, rndRepository, watermarkService,
+                outcomeService, batchProperties, 90);
+    }
+
+    @Test
+    @DisplayName("should not start the job when there is nothing above the watermark and no retry is due")
+    void shouldSkipJobWhenIdle() {
+        when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(100L));
+        when(rndRepository.findPendingIdsAfterId(eq(100L), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        when(outcomeService.hasRetryable(any(LocalDateTime.class))).thenReturn(false);
+
+        assertEquals(0L, runner.poll());
+
+        verifyNoInteractions(jobExecutionHelper);
+        assertEquals(Duration.ofSeconds(20), runner.getCurrentInterval());
+    }
+
+    @Test
+    @DisplayName("should start the job when new pending receipts are found")
+    void shouldStartJobWhenDeltaFound() {
+        when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.empty());
+        when(rndRepository.findPendingIdsAfterId(eq(0L), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(1L));
+
+        // l'helper non stubbato fa fallire executeScheduledJob: l'errore non deve interrompere il polling
+        assertDoesNotThrow(() -> runner.poll());
+
+        assertFalse(mockingDetails(jobExecutionHelper).getInvocations().isEmpty());
+    }
+
+    @Test
+    @DisplayName("should start the job when only retries are due")
+    void shouldStartJobWhenRetryDue() {
+        when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(100L));
+        when(rndRepository.findPendingIdsAfterId(eq(100L), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(Collections.emptyList());
+        when(outcomeService.hasRetryable(any(LocalDateTime.class))).thenReturn(true);
+
+        assertDoesNotThrow(() -> runner.poll());
+
+        assertFalse(mockingDetails(jobExecutionHelper).getInvocations().isEmpty());
+    }
+
+    @Test
+    @DisplayName("should schedule the next poll after the last completion")
+    void shouldScheduleAfterLastCompletion() {
+        Instant lastCompletion = Instant.parse("2025-01-15T10:00:00Z");
+        when(triggerContext.lastCompletion()).thenReturn(lastCompletion);
+        ScheduledTaskRegistrar registrar = new ScheduledTaskRegistrar();
+
+        runner.configureTasks(registrar);
+
+        assertEquals(1, registrar.getTriggerTaskList().size());
+        assertEquals(lastCompletion.plusSeconds(10),
+                registrar.getTriggerTaskList().get(0).getTrigger().nextExecution(triggerContext));
+    }
+
+    @Test
+    @DisplayName("should schedule the first poll from the current time")
+    void shouldScheduleFirstPollFromNow() {
+        Instant now = Instant.parse("2025-01-15T10:00:00Z");
+        when(triggerContext.lastCompletion()).thenReturn(null);
+        when(triggerContext.getClock()).thenReturn(Clock.fixed(now, ZoneOffset.UTC));
+        ScheduledTaskRegistrar registrar = new ScheduledTaskRegistrar();
+
+        runner.configureTasks(registrar);
+
+        assertEquals(now.plusSeconds(10),
+                registrar.getTriggerTaskList().get(0).getTrigger().nextExecution(triggerContext));
+    }
+}
@@ -0,0 +1,135 @@
+package it.govpay.rt.batch.unit.health;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.gde.service.GdeService;
+import it.govpay.rt.batch.health.PipelineHealthIndicator;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PipelineHealthIndicator")
+class PipelineHealthIndicatorTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T10:00:00Z");
+
+    @Mock
+    private BatchProgressTracker progressTracker;
+
+    @Mock
+    private GdeService gdeService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BatchProperties batchProperties;
+    private PipelineHealthIndicator indicator;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+        indicator = new PipelineHealthIndicator(progressTracker, gdeService, meterRegistry, batchProperties,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private void running(Duration sinceLastWrite, Duration sinceStart, double itemsPerSecond) {
+        when(progressTracker.lastActivity()).thenReturn(NOW.minus(sinceLastWrite));
+        when(progressTracker.getProgress()).thenReturn(BatchProgressInfo.builder()
+                .running(true)
+                .startTime(LocalDateTime.ofInstant(NOW.minus(sinceStart), ZoneOffset.UTC))
+                .pending(1000)
+                .itemsPerSecond(itemsPerSecond)
+                .build());
+    }
+
+    @Test
+    @DisplayName("should be UP when the batch is idle")
+    void shouldBeUpWhenIdle() {
+        Health health = indicator.health();
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(Map.of("running", false), health.getDetails().get("run"));
+        verify(progressTracker, never()).getProgress();
+    }
+
+    @Test
+    @DisplayName("should be OUT_OF_SERVICE when the running job writes nothing for the stall timeout")
+    void shouldBeOutOfServiceWhenStalled() {
+        running(Duration.ofMinutes(11), Duration.ofMinutes(30), 0d);
+
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+    }
+
+    @Test
+    @DisplayName("should be DEGRADED when the throughput is below the floor after the grace period")
+    void shouldBeDegradedBelowThroughputFloor() {
+        batchProperties.getHealth().setMinItemsPerSecond(5.0);
+        running(Duration.ofSeconds(5), Duration.ofMinutes(10), 1.5);
+
+        assertEquals(PipelineHealthIndicator.DEGRADED, indicator.health().getStatus());
+    }
+
+    @Test
+    @DisplayName("should not check the throughput floor during the grace period")
+    void shouldIgnoreFloorDuringGracePeriod() {
+        batchProperties.getHealth().setMinItemsPerSecond(5.0);
+        running(Duration.ofSeconds(5), Duration.ofSeconds(30), 0.5);
+
+        assertEquals(Status.UP, indicator.health().getStatus());
+    }
+
+    @Test
+    @DisplayName("should be DEGRADED when most recent GDE events are lost")
+    void shouldBeDegradedOnGdeDrops() {
+        when(gdeService.getSentEvents()).thenReturn(5L);
+        when(gdeService.getFailedEvents()).thenReturn(45L);
+
+        Health health = indicator.health();
+
+        assertEquals(PipelineHealthIndicator.DEGRADED, health.getStatus());
+        assertEquals(0.9, (double) ((Map<?, ?>) health.getDetails().get("gde")).get("dropRate"), 1e-9);
+    }
+
+    @Test
+    @DisplayName("should be DEGRADED when too many GDE events are waiting")
+    void shouldBeDegradedOnGdeBacklog() {
+        when(gdeService.getPendingEvents()).thenReturn(1500);
+
+        assertEquals(PipelineHealthIndicator.DEGRADED, indicator.health().getStatus());
+    }
+
+    @Test
+    @DisplayName("should report the occupancy of the connector bulkheads")
+    void shouldReportBulkheads() {
+        Gauge.builder(Costanti.METRIC_BULKHEAD_ACTIVE, () -> 4).tag(Costanti.METRIC_TAG_CONNECTOR, "RT_A").register(meterRegistry);
+        Gauge.builder(Costanti.METRIC_BULKHEAD_LIMIT, () -> 4).tag(Costanti.METRIC_TAG_CONNECTOR, "RT_A").register(meterRegistry);
+        Gauge.builder(Costanti.METRIC_BULKHEAD_QUEUED, () -> 7).tag(Costanti.METRIC_TAG_CONNECTOR, "RT_A").register(meterRegistry);
+
+        Map<?, ?> connectors = (Map<?, ?>) indicator.health().getDetails().get("connectors");
+
+        Map<?, ?> bulkhead = (Map<?, ?>) connectors.get("RT_A");
+        assertEquals(4L, bulkhead.get("active"));
+        assertEquals(7L, bulkhead.get("queued"));
+        assertEquals(0L, bulkhead.get("deferred"));
+        assertEquals("SATURATED", bulkhead.get("state"));
+    }
+}
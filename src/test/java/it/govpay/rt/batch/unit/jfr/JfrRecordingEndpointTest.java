@@ -0,0 +1,107 @@
+package it.govpay.rt.batch.unit.jfr;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.jfr.JfrRecordingEndpoint;
+import it.govpay.rt.batch.jfr.PipelineEvents;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("JfrRecordingEndpoint")
+class JfrRecordingEndpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private BatchProgressTracker progressTracker;
+
+    private JfrRecordingEndpoint endpoint;
+
+    @BeforeEach
+    void setUp() {
+        BatchProperties batchProperties = new BatchProperties();
+        batchProperties.getJfr().setSettings("default");
+        batchProperties.getJfr().setDirectory(directory.toString());
+        endpoint = new JfrRecordingEndpoint(batchProperties, progressTracker,
+                Clock.fixed(Instant.parse("2026-03-01T10:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (Boolean.TRUE.equals(endpoint.status().get("recording")))
+            endpoint.action("stop");
+    }
+
+    @Test
+    @DisplayName("should record the pipeline events and write them to a file named after the run when stopped")
+    void shouldRecordPipelineEvents() throws Exception {
+        when(progressTracker.currentJobExecutionId()).thenReturn(42L);
+
+        Map<String, Object> started = endpoint.action("start");
+        assertEquals(true, started.get("recording"));
+
+        PipelineEvents.PagopaGet event = new PipelineEvents.PagopaGet();
+        event.begin();
+        event.rtId(7L).connector("RT_A").status(200).bytes(1234L).commit();
+
+        Map<String, Object> stopped = endpoint.action("stop");
+        assertEquals(false, stopped.get("recording"));
+        Path file = Path.of((String) stopped.get("file"));
+        assertEquals("govpay-rt-batch-run42-20260301-100000.jfr", file.getFileName().toString());
+        assertTrue(Files.size(file) > 0);
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("it.govpay.rt.PagopaGet"))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals(7L, events.get(0).getLong("rtId"));
+        assertEquals("RT_A", events.get(0).getString("connector"));
+        assertEquals("200", events.get(0).getString("status"));
+        assertEquals(1234L, events.get(0).getLong("bytes"));
+    }
+
+    @Test
+    @DisplayName("should dump the running recording without stopping it")
+    void shouldDumpWhileRecording() {
+        endpoint.action("start");
+
+        Map<String, Object> status = endpoint.action("dump");
+
+        assertEquals(true, status.get("recording"));
+        assertEquals("govpay-rt-batch-idle-20260301-100000-dump.jfr",
+                     Path.of((String) status.get("lastDump")).getFileName().toString());
+        assertTrue(Files.exists(Path.of((String) status.get("lastDump"))));
+    }
+
+    @Test
+    @DisplayName("should reject dump and stop without a recording and unknown actions")
+    void shouldRejectInvalidActions() {
+        assertThrows(InvalidEndpointRequestException.class, () -> endpoint.action("stop"));
+        assertThrows(InvalidEndpointRequestException.class, () -> endpoint.action("dump"));
+        assertThrows(InvalidEndpointRequestException.class, () -> endpoint.action("pause"));
+        assertEquals(Map.of("recording", false), endpoint.status());
+    }
+}
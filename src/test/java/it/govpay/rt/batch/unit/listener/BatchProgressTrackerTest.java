@@ -0,0 +1,249 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.BatchProgressInfo;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.listener.BatchProgressTracker;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.WatermarkService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BatchProgressTracker")
+class BatchProgressTrackerTest {
+
+    private static final int FINESTRA_TEMPORALE = 30;
+
+    @Mock
+    private RendicontazioniRepository rndRepository;
+
+    @Mock
+    private WatermarkService watermarkService;
+
+    @Mock
+    private StepExecution stepExecution;
+
+    @Mock
+    private JobExecution jobExecution;
+
+    private MutableClock clock;
+    private BatchProgressTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2025-01-15T10:00:00Z"));
+        tracker = new BatchProgressTracker(rndRepository, watermarkService, FINESTRA_TEMPORALE, clock);
+    }
+
+    private void startStep(long lastProcessedId, long pending) {
+        ExecutionContext jobContext = new ExecutionContext();
+        jobContext.putLong(Costanti.LAST_PROCESSED_ID_KEY, lastProcessedId);
+        when(stepExecution.getJobExecution()).thenReturn(jobExecution);
+        when(jobExecution.getExecutionContext()).thenReturn(jobContext);
+        when(stepExecution.getJobExecutionId()).thenReturn(7L);
+        when(rndRepository.countRendicontazioneWithNoPagamentoAfterId(eq(lastProcessedId), any(LocalDateTime.class)))
+                .thenReturn(pending);
+        tracker.beforeStep(stepExecution);
+    }
+
+    private static RtRetrieveBatch item(long id, RtRetrieveOutcome outcome) {
+        return RtRetrieveBatch.builder().rtId(id).outcome(outcome).build();
+    }
+
+    @Nested
+    @DisplayName("while the step is running")
+    class RunningTest {
+
+        @Test
+        @DisplayName("should count items by outcome and derive pending from the initial count")
+        void shouldCountItemsByOutcome() {
+            startStep(100L, 10L);
+
+            tracker.afterWrite(new Chunk<>(List.of(item(101L, RtRetrieveOutcome.RECOVERED))));
+            tracker.afterWrite(new Chunk<>(List.of(item(102L, RtRetrieveOutcome.NOT_FOUND))));
+            tracker.afterWrite(new Chunk<>(List.of(item(103L, RtRetrieveOutcome.SEND_FAILED))));
+            tracker.afterWrite(new Chunk<>(List.of(item(104L, RtRetrieveOutcome.RECOVERED))));
+            tracker.afterWrite(new Chunk<>(List.of(item(105L, RtRetrieveOutcome.FAILED))));
+
+            BatchProgressInfo progress = tracker.getProgress();
+
+            assertTrue(progress.isRunning());
+            assertEquals(7L, progress.getJobExecutionId());
+            assertEquals(5L, progress.getProcessed());
+            assertEquals(2L, progress.getRecovered());
+            assertEquals(1L, progress.getNotFound());
+            assertEquals(1L, progress.getSendFailed());
+            assertEquals(1L, progress.getFailed());
+            assertEquals(5L, progress.getPending());
+        }
+
+        @Test
+        @DisplayName("should count retried receipts in the outcomes without reducing pending")
+        void shouldNotCountRetriesAgainstPending() {
+            startStep(100L, 10L);
+
+            tracker.afterWrite(new Chunk<>(List.of(item(40L, RtRetrieveOutcome.RECOVERED),
+                                                   item(60L, RtRetrieveOutcome.NOT_FOUND),
+                                                   item(101L, RtRetrieveOutcome.RECOVERED))));
+
+            BatchProgressInfo progress = tracker.getProgress();
+
+            assertEquals(3L, progress.getProcessed());
+            assertEquals(2L, progress.getRecovered());
+            assertEquals(9L, progress.getPending());
+        }
+
+        @Test
+        @DisplayName("should compute throughput over the rolling window and the ETA")
+        void shouldComputeThroughputAndEta() {
+            startStep(0L, 100L);
+
+            for (int second = 0; second < 10; second++) {
+                clock.advance(Duration.ofSeconds(1));
+                tracker.afterWrite(new Chunk<>(List.of(item(second * 2L + 1, RtRetrieveOutcome.RECOVERED),
+                                                       item(second * 2L + 2, RtRetrieveOutcome.RECOVERED))));
+            }
+
+            BatchProgressInfo progress = tracker.getProgress();
+
+            assertEquals(2d, progress.getItemsPerSecond(), 0.001d);
+            assertEquals(80L, progress.getPending());
+            assertEquals(40L, progress.getEtaSeconds());
+            assertNotNull(progress.getEstimatedEndTime());
+        }
+
+        @Test
+        @DisplayName("should forget items older than the rolling window")
+        void shouldForgetItemsOlderThanWindow() {
+            startStep(0L, 100L);
+            tracker.afterWrite(new Chunk<>(List.of(item(1L, RtRetrieveOutcome.RECOVERED))));
+
+            clock.advance(Duration.ofMinutes(5));
+            BatchProgressInfo progress = tracker.getProgress();
+
+            assertEquals(0d, progress.getItemsPerSecond());
+            assertNull(progress.getEtaSeconds());
+            assertEquals(1L, progress.getProcessed());
+        }
+
+        @Test
+        @DisplayName("should not touch the database while running")
+        void shouldNotQueryWhileRunning() {
+            startStep(0L, 5L);
+
+            tracker.getProgress();
+            tracker.getProgress();
+
+            verify(rndRepository, times(1)).countRendicontazioneWithNoPagamentoAfterId(anyLong(), any());
+            verifyNoInteractions(watermarkService);
+        }
+    }
+
+    @Nested
+    @DisplayName("when no step is running")
+    class IdleTest {
+
+        @Test
+        @DisplayName("should count pending receipts after the stored watermark")
+        void shouldCountPendingAfterWatermark() {
+            when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(50L));
+            when(rndRepository.countRendicontazioneWithNoPagamentoAfterId(eq(50L), any(LocalDateTime.class)))
+                    .thenReturn(12L);
+
+            BatchProgressInfo progress = tracker.getProgress();
+
+            assertFalse(progress.isRunning());
+            assertEquals(12L, progress.getPending());
+            assertEquals(0L, progress.getProcessed());
+            assertNull(progress.getEtaSeconds());
+        }
+
+        @Test
+        @DisplayName("should cache the pending count between close requests")
+        void shouldCachePendingCount() {
+            when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.empty());
+            when(rndRepository.countRendicontazioneWithNoPagamentoAfterId(eq(0L), any(LocalDateTime.class)))
+                    .thenReturn(3L);
+
+            tracker.getProgress();
+            clock.advance(Duration.ofSeconds(10));
+            tracker.getProgress();
+            verify(rndRepository, times(1)).countRendicontazioneWithNoPagamentoAfterId(anyLong(), any());
+
+            clock.advance(Duration.ofMinutes(2));
+            tracker.getProgress();
+            verify(rndRepository, times(2)).countRendicontazioneWithNoPagamentoAfterId(anyLong(), any());
+        }
+
+        @Test
+        @DisplayName("should keep the counters of the last run after the step ends")
+        void shouldKeepCountersAfterStep() {
+            startStep(0L, 2L);
+            tracker.afterWrite(new Chunk<>(List.of(item(1L, RtRetrieveOutcome.NOT_FOUND))));
+            when(stepExecution.getExitStatus()).thenReturn(ExitStatus.COMPLETED);
+            when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(1L));
+            when(rndRepository.countRendicontazioneWithNoPagamentoAfterId(eq(1L), any(LocalDateTime.class)))
+                    .thenReturn(1L);
+
+            assertEquals(ExitStatus.COMPLETED, tracker.afterStep(stepExecution));
+            BatchProgressInfo progress = tracker.getProgress();
+
+            assertFalse(progress.isRunning());
+            assertEquals(1L, progress.getNotFound());
+            assertEquals(1L, progress.getPending());
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("Europe/Rome");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.job.JobExecution;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.listener.BudgetExitCodeListener;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BudgetExitCodeListener")
+class BudgetExitCodeListenerTest {
+
+    @Mock
+    private JobExecution jobExecution;
+
+    private BudgetExitCodeListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new BudgetExitCodeListener();
+    }
+
+    @Test
+    @DisplayName("should return the budget exit code after a budgeted run")
+    void shouldReturnBudgetExitCode() {
+        when(jobExecution.getExitStatus()).thenReturn(new ExitStatus(Costanti.EXIT_STATUS_BUDGET_EXHAUSTED, "arretrato"));
+
+        listener.beforeJob(jobExecution);
+        listener.afterJob(jobExecution);
+
+        assertEquals(Costanti.EXIT_CODE_BUDGET_EXHAUSTED, listener.getExitCode());
+    }
+
+    @Test
+    @DisplayName("should return zero after a complete run")
+    void shouldReturnZeroWhenCompleted() {
+        when(jobExecution.getExitStatus()).thenReturn(ExitStatus.COMPLETED);
+
+        listener.afterJob(jobExecution);
+
+        assertEquals(0, listener.getExitCode());
+    }
+}
@@ -0,0 +1,103 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.MDC;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.listener.ItemLoggingListener;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ItemLoggingListener")
+class ItemLoggingListenerTest {
+
+    @Mock
+    private StepExecution stepExecution;
+
+    private BatchProperties batchProperties;
+    private ItemLoggingListener listener;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+        listener = new ItemLoggingListener(batchProperties);
+        listener.beforeStep(stepExecution);
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    private static RtRetrieveContext ctx() {
+        return RtRetrieveContext.builder().rtId(42L).taxCode("12345678901").iuv("IUV001").iur("IUR001").build();
+    }
+
+    @Test
+    @DisplayName("should put the receipt identifiers in the MDC after read")
+    void shouldPopulateMdc() {
+        listener.afterRead(ctx());
+
+        assertEquals("42", MDC.get(ItemLoggingListener.MDC_RT_ID));
+        assertEquals("12345678901", MDC.get(ItemLoggingListener.MDC_TAX_CODE));
+        assertEquals("IUV001", MDC.get(ItemLoggingListener.MDC_IUV));
+        assertEquals("IUR001", MDC.get(ItemLoggingListener.MDC_IUR));
+    }
+
+    @Test
+    @DisplayName("should clear the MDC after the item is written")
+    void shouldClearMdcAfterWrite() {
+        listener.afterRead(ctx());
+
+        listener.afterWrite(new Chunk<>(RtRetrieveBatch.builder().rtId(42L).outcome(RtRetrieveOutcome.RECOVERED).build()));
+
+        assertNull(MDC.get(ItemLoggingListener.MDC_RT_ID));
+        assertNull(MDC.get(ItemLoggingListener.MDC_IUR));
+    }
+
+    @Test
+    @DisplayName("should clear the MDC on write error and at the end of the step")
+    void shouldClearMdcOnErrorAndAfterStep() {
+        when(stepExecution.getExitStatus()).thenReturn(ExitStatus.FAILED);
+        listener.afterRead(ctx());
+        listener.onWriteError(new IllegalStateException("db"), new Chunk<>());
+        assertNull(MDC.get(ItemLoggingListener.MDC_RT_ID));
+
+        listener.afterRead(ctx());
+        assertEquals(ExitStatus.FAILED, listener.afterStep(stepExecution));
+        assertNull(MDC.get(ItemLoggingListener.MDC_RT_ID));
+    }
+
+    @Test
+    @DisplayName("should sample one item every sample-every at INFO")
+    void shouldSampleItems() {
+        batchProperties.getItemLogging().setSampleEvery(3);
+
+        assertTrue(listener.isSampled(1));
+        assertFalse(listener.isSampled(2));
+        assertFalse(listener.isSampled(3));
+        assertTrue(listener.isSampled(4));
+    }
+
+    @Test
+    @DisplayName("should never sample when sample-every is zero")
+    void shouldNotSampleWhenDisabled() {
+        batchProperties.getItemLogging().setSampleEvery(0);
+
+        assertFalse(listener.isSampled(1));
+    }
+}
@@ -0,0 +1,96 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.job.JobExecution;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.listener.MetadataRetentionListener;
+import it.govpay.rt.batch.service.BatchMetadataRetentionService;
+import it.govpay.rt.batch.service.BatchTaskService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MetadataRetentionListener")
+class MetadataRetentionListenerTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-10T10:00:00Z");
+    private static final Duration INTERVAL = Duration.ofHours(24);
+
+    @Mock
+    private BatchMetadataRetentionService retentionService;
+
+    @Mock
+    private BatchTaskService taskService;
+
+    @Mock
+    private JobExecution jobExecution;
+
+    private BatchProperties batchProperties;
+    private MetadataRetentionListener listener;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+        batchProperties.getRetention().setInterval(INTERVAL);
+        listener = new MetadataRetentionListener(retentionService, taskService, batchProperties,
+                                                 Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private void claimed(boolean claimed) {
+        when(taskService.claim(Costanti.METADATA_RETENTION_TASK_NAME, INTERVAL,
+                               LocalDateTime.ofInstant(NOW, ZoneOffset.UTC))).thenReturn(claimed);
+    }
+
+    @Test
+    @DisplayName("should purge when the interval has elapsed since the last purge recorded in the database")
+    void shouldPurgeWhenClaimed() {
+        claimed(true);
+
+        listener.afterJob(jobExecution);
+
+        verify(retentionService).purge();
+    }
+
+    @Test
+    @DisplayName("should not purge when another run already purged within the interval")
+    void shouldSkipWithinInterval() {
+        claimed(false);
+
+        listener.afterJob(jobExecution);
+
+        verifyNoInteractions(retentionService);
+    }
+
+    @Test
+    @DisplayName("should not purge when disabled")
+    void shouldNotPurgeWhenDisabled() {
+        batchProperties.getRetention().setEnabled(false);
+
+        listener.afterJob(jobExecution);
+
+        verifyNoInteractions(retentionService, taskService);
+    }
+
+    @Test
+    @DisplayName("should swallow failures of the purge")
+    void shouldSwallowFailures() {
+        claimed(true);
+        when(retentionService.purge()).thenThrow(new IllegalStateException("lock timeout"));
+
+        assertDoesNotThrow(() -> listener.afterJob(jobExecution));
+    }
+}
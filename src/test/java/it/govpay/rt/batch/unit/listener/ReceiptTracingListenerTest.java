@@ -0,0 +1,116 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.infrastructure.item.Chunk;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.listener.ReceiptTracingListener;
+
+@DisplayName("ReceiptTracingListener")
+class ReceiptTracingListenerTest {
+
+    private final List<Observation.Context> stopped = new ArrayList<>();
+    private ObservationRegistry registry;
+    private ReceiptTracingListener listener;
+
+    @BeforeEach
+    void setUp() {
+        registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+        });
+        listener = new ReceiptTracingListener(registry);
+    }
+
+    private static RtRetrieveContext ctx() {
+        return RtRetrieveContext.builder().rtId(42L).taxCode("12345678901").iuv("IUV001").iur("IUR001").build();
+    }
+
+    private static String outcome(Observation.Context context) {
+        return context.getLowCardinalityKeyValue("outcome").getValue();
+    }
+
+    @Test
+    @DisplayName("should keep the receipt observation in scope until the item is written")
+    void shouldScopeObservationAroundItem() {
+        listener.afterRead(ctx());
+
+        Observation current = registry.getCurrentObservation();
+        assertNotNull(current);
+        assertEquals(Costanti.OBSERVATION_RECEIPT, current.getContext().getName());
+        assertEquals("42", current.getContext().getHighCardinalityKeyValue("rt.id").getValue());
+
+        listener.afterWrite(new Chunk<>(RtRetrieveBatch.builder().rtId(42L).outcome(RtRetrieveOutcome.RECOVERED).build()));
+
+        assertNull(registry.getCurrentObservation());
+        assertEquals(1, stopped.size());
+        assertEquals("RECOVERED", outcome(stopped.get(0)));
+    }
+
+    @Test
+    @DisplayName("should make the receipt observation the parent of the per-phase observations")
+    void shouldParentChildObservations() {
+        listener.afterRead(ctx());
+        Observation root = registry.getCurrentObservation();
+
+        Observation.createNotStarted(Costanti.OBSERVATION_PAGOPA_GET, registry).observe(() -> { });
+
+        assertEquals(Costanti.OBSERVATION_PAGOPA_GET, stopped.get(0).getName());
+        assertSame(root, stopped.get(0).getParentObservation());
+    }
+
+    @Test
+    @DisplayName("should record the error and stop the observation when the processor fails")
+    void shouldStopOnProcessError() {
+        IllegalStateException error = new IllegalStateException("pagoPA");
+        listener.afterRead(ctx());
+
+        listener.onProcessError(ctx(), error);
+
+        assertNull(registry.getCurrentObservation());
+        assertEquals("ERROR", outcome(stopped.get(0)));
+        assertSame(error, stopped.get(0).getError());
+    }
+
+    @Test
+    @DisplayName("should stop the observation when the processor filters the item")
+    void shouldStopOnFilteredItem() {
+        listener.afterRead(ctx());
+
+        listener.afterProcess(ctx(), null);
+
+        assertEquals("FILTERED", outcome(stopped.get(0)));
+    }
+
+    @Test
+    @DisplayName("should close a dangling observation when the next item is read")
+    void shouldCloseDanglingObservation() {
+        listener.afterRead(ctx());
+        listener.afterRead(ctx());
+
+        assertEquals(1, stopped.size());
+        assertEquals("INTERRUPTED", outcome(stopped.get(0)));
+        assertNotNull(registry.getCurrentObservation());
+    }
+}
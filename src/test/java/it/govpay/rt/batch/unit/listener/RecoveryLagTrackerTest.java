@@ -0,0 +1,126 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.infrastructure.item.Chunk;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.listener.RecoveryLagTracker;
+
+@DisplayName("RecoveryLagTracker")
+class RecoveryLagTrackerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 3, 1, 10, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RecoveryLagTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new RecoveryLagTracker(meterRegistry, Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private static RtRetrieveContext context(long id, LocalDateTime data) {
+        return RtRetrieveContext.builder().rtId(id).taxCode("12345678901").dataRendicontazione(data).build();
+    }
+
+    private static RtRetrieveBatch written(long id, String codDominio, LocalDateTime data, RtRetrieveOutcome outcome) {
+        return RtRetrieveBatch.builder().rtId(id).codDominio(codDominio).dataRendicontazione(data).outcome(outcome).build();
+    }
+
+    private double oldestPendingAge() {
+        return meterRegistry.get(Costanti.METRIC_PENDING_OLDEST_AGE).gauge().value();
+    }
+
+    @Test
+    @DisplayName("should record the lag of each written receipt by domain and outcome")
+    void shouldRecordLagByDomainAndOutcome() {
+        tracker.afterWrite(new Chunk<>(List.of(
+                written(1L, "11111111111", NOW.minusHours(2), RtRetrieveOutcome.RECOVERED),
+                written(2L, "11111111111", NOW.minusHours(4), RtRetrieveOutcome.RECOVERED),
+                written(3L, "22222222222", NOW.minusDays(1), RtRetrieveOutcome.NOT_FOUND))));
+
+        DistributionSummary recovered = meterRegistry.get(Costanti.METRIC_RECOVERY_LAG)
+                .tag(Costanti.METRIC_TAG_DOMAIN, "11111111111").tag(Costanti.METRIC_TAG_OUTCOME, "RECOVERED").summary();
+        assertEquals(2, recovered.count());
+        assertEquals(6 * 3600d, recovered.totalAmount());
+        assertEquals(4 * 3600d, recovered.max());
+        DistributionSummary notFound = meterRegistry.get(Costanti.METRIC_RECOVERY_LAG)
+                .tag(Costanti.METRIC_TAG_DOMAIN, "22222222222").tag(Costanti.METRIC_TAG_OUTCOME, "NOT_FOUND").summary();
+        assertEquals(86400d, notFound.totalAmount());
+    }
+
+    @Test
+    @DisplayName("should report the age of the oldest receipt not yet recovered")
+    void shouldTrackOldestPending() {
+        LocalDateTime oldest = NOW.minusDays(3);
+        tracker.track(List.of(context(1L, NOW.minusHours(1)), context(2L, oldest), context(3L, oldest)));
+
+        assertEquals(3 * 86400d, oldestPendingAge());
+
+        tracker.afterWrite(new Chunk<>(List.of(written(2L, "12345678901", oldest, RtRetrieveOutcome.RECOVERED))));
+        assertEquals(3 * 86400d, oldestPendingAge());
+
+        tracker.afterWrite(new Chunk<>(List.of(written(3L, "12345678901", oldest, RtRetrieveOutcome.RECOVERED))));
+        assertEquals(3600d, oldestPendingAge());
+    }
+
+    @Test
+    @DisplayName("should keep counting the receipts written without a receipt")
+    void shouldKeepUnrecoveredPending() {
+        LocalDateTime oldest = NOW.minusDays(2);
+        tracker.track(List.of(context(1L, oldest), context(2L, oldest), context(3L, oldest), context(4L, oldest)));
+
+        tracker.afterWrite(new Chunk<>(List.of(
+                written(1L, "12345678901", oldest, RtRetrieveOutcome.NOT_FOUND),
+                written(2L, "12345678901", oldest, RtRetrieveOutcome.SEND_FAILED),
+                written(3L, "12345678901", oldest, RtRetrieveOutcome.FAILED),
+                written(4L, "12345678901", oldest, RtRetrieveOutcome.DEFERRED))));
+
+        assertEquals(2 * 86400d, oldestPendingAge());
+    }
+
+    @Test
+    @DisplayName("should replace the pending receipts at each run and report 0 when none are left")
+    void shouldReplaceSnapshot() {
+        tracker.track(List.of(context(1L, NOW.minusDays(3))));
+        tracker.track(List.of(context(2L, NOW.minusMinutes(10))));
+
+        assertEquals(600d, oldestPendingAge());
+
+        tracker.afterWrite(new Chunk<>(List.of(written(2L, "12345678901", NOW.minusMinutes(10), RtRetrieveOutcome.RECOVERED))));
+        assertEquals(0d, oldestPendingAge());
+    }
+
+    @Test
+    @DisplayName("should add the receipts loaded during the run to the pending ones")
+    void shouldAddLoadedReceipts() {
+        tracker.track(List.of(context(1L, NOW.minusHours(1))));
+        tracker.add(List.of(context(2L, NOW.minusHours(5))));
+
+        assertEquals(5 * 3600d, oldestPendingAge());
+    }
+
+    @Test
+    @DisplayName("should ignore receipts without the reporting date")
+    void shouldIgnoreReceiptsWithoutDate() {
+        tracker.track(List.of(context(1L, null)));
+        tracker.afterWrite(new Chunk<>(List.of(written(1L, "12345678901", null, RtRetrieveOutcome.RECOVERED))));
+
+        assertEquals(0d, oldestPendingAge());
+        assertNull(meterRegistry.find(Costanti.METRIC_RECOVERY_LAG).summary());
+    }
+}
@@ -0,0 +1,158 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.step.StepExecution;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.listener.RunBudgetListener;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RunBudgetListener")
+class RunBudgetListenerTest {
+
+    private static final Instant START = Instant.parse("2025-01-15T02:00:00Z");
+
+    @Mock
+    private StepExecution stepExecution;
+
+    private BatchProperties batchProperties;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+    }
+
+    private static Clock clockAt(Instant... instants) {
+        return new Clock() {
+            private int next = 0;
+
+            @Override
+            public ZoneId getZone() {
+                return ZoneId.of("UTC");
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return instants[Math.min(next++, instants.length - 1)];
+            }
+        };
+    }
+
+    @Nested
+    @DisplayName("isExhausted")
+    class IsExhaustedTest {
+
+        @Test
+        @DisplayName("should never be exhausted without limits")
+        void shouldBeUnlimitedByDefault() {
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, null, null,
+                    clockAt(START, START.plus(Duration.ofDays(1))));
+            listener.beforeStep(stepExecution);
+            when(stepExecution.getReadCount()).thenReturn(1_000_000L);
+
+            assertFalse(listener.isExhausted());
+        }
+
+        @Test
+        @DisplayName("should be exhausted when the item limit from properties is reached")
+        void shouldStopAtMaxItemsFromProperties() {
+            batchProperties.getBudget().setMaxItems(100L);
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, null, null, clockAt(START));
+            listener.beforeStep(stepExecution);
+
+            when(stepExecution.getReadCount()).thenReturn(99L);
+            assertFalse(listener.isExhausted());
+            when(stepExecution.getReadCount()).thenReturn(100L);
+            assertTrue(listener.isExhausted());
+        }
+
+        @Test
+        @DisplayName("should let job parameters override the properties")
+        void shouldPreferJobParameters() {
+            batchProperties.getBudget().setMaxItems(100L);
+            batchProperties.getBudget().setMaxDuration(Duration.ofHours(1));
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, 60L, 5L,
+                    clockAt(START, START.plusSeconds(30), START.plusSeconds(60)));
+            listener.beforeStep(stepExecution);
+            when(stepExecution.getReadCount()).thenReturn(1L);
+
+            assertFalse(listener.isExhausted());
+            assertTrue(listener.isExhausted());
+        }
+
+        @Test
+        @DisplayName("should be exhausted when the maximum duration is reached")
+        void shouldStopAtMaxDuration() {
+            batchProperties.getBudget().setMaxDuration(Duration.ofMinutes(50));
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, null, null,
+                    clockAt(START, START.plus(Duration.ofMinutes(49)), START.plus(Duration.ofMinutes(50))));
+            listener.beforeStep(stepExecution);
+            when(stepExecution.getReadCount()).thenReturn(10L);
+
+            assertFalse(listener.isExhausted());
+            assertTrue(listener.isExhausted());
+        }
+    }
+
+    @Nested
+    @DisplayName("afterStep")
+    class AfterStepTest {
+
+        @Test
+        @DisplayName("should return BUDGET_EXHAUSTED when the step completed because of the budget")
+        void shouldReturnBudgetExhausted() {
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, null, 1L, clockAt(START));
+            listener.beforeStep(stepExecution);
+            when(stepExecution.getReadCount()).thenReturn(1L);
+            when(stepExecution.getExitStatus()).thenReturn(ExitStatus.COMPLETED);
+            listener.isExhausted();
+
+            ExitStatus exitStatus = listener.afterStep(stepExecution);
+
+            assertEquals(Costanti.EXIT_STATUS_BUDGET_EXHAUSTED, exitStatus.getExitCode());
+        }
+
+        @Test
+        @DisplayName("should keep the step exit status when the budget was not hit")
+        void shouldKeepExitStatus() {
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, null, null, clockAt(START));
+            listener.beforeStep(stepExecution);
+            when(stepExecution.getExitStatus()).thenReturn(ExitStatus.COMPLETED);
+
+            assertEquals(ExitStatus.COMPLETED, listener.afterStep(stepExecution));
+        }
+
+        @Test
+        @DisplayName("should not hide a failure behind the budget status")
+        void shouldNotHideFailure() {
+            RunBudgetListener listener = new RunBudgetListener(batchProperties, null, 1L, clockAt(START));
+            listener.beforeStep(stepExecution);
+            when(stepExecution.getReadCount()).thenReturn(1L);
+            when(stepExecution.getExitStatus()).thenReturn(ExitStatus.FAILED);
+            listener.isExhausted();
+
+            assertEquals(ExitStatus.FAILED, listener.afterStep(stepExecution));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package it.govpay.rt.batch.unit.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.gde.service.GdeService;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ShutdownCoordinator")
+class ShutdownCoordinatorTest {
+
+    @Mock
+    private GdeService gdeService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private StepExecution stepExecution;
+
+    private BatchProperties batchProperties;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+    }
+
+    private ShutdownCoordinator coordinator(Duration gracePeriod) {
+        batchProperties.getShutdown().setGracePeriod(gracePeriod);
+        return new ShutdownCoordinator(gdeService, batchProperties);
+    }
+
+    @Test
+    @DisplayName("should stop the reader and flush GDE events when no step is running")
+    void shouldFlushWhenIdle() {
+        ShutdownCoordinator coordinator = coordinator(Duration.ofSeconds(5));
+        when(gdeService.flush(any(Duration.class))).thenReturn(true);
+
+        assertFalse(coordinator.isShutdownRequested());
+        coordinator.onApplicationEvent(new ContextClosedEvent(applicationContext));
+
+        assertTrue(coordinator.isShutdownRequested());
+        verify(gdeService).flush(any(Duration.class));
+    }
+
+    @Test
+    @DisplayName("should wait for the running step to end before flushing GDE events")
+    void shouldWaitForRunningStep() throws Exception {
+        ShutdownCoordinator coordinator = coordinator(Duration.ofSeconds(5));
+        when(gdeService.flush(any(Duration.class))).thenReturn(true);
+        when(stepExecution.getExitStatus()).thenReturn(ExitStatus.COMPLETED);
+        coordinator.beforeStep(stepExecution);
+
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(
+                () -> coordinator.onApplicationEvent(new ContextClosedEvent(applicationContext)));
+
+        // lo step sta ancora elaborando la ricevuta corrente
+        assertThrows(Exception.class, () -> shutdown.get(100, TimeUnit.MILLISECONDS));
+        verify(gdeService, never()).flush(any());
+
+        ExitStatus exitStatus = coordinator.afterStep(stepExecution);
+        shutdown.get(2, TimeUnit.SECONDS);
+
+        verify(gdeService).flush(any(Duration.class));
+        assertEquals(ExitStatus.COMPLETED.getExitCode(), exitStatus.getExitCode());
+        assertTrue(exitStatus.getExitDescription().contains("shutdown"));
+    }
+
+    @Test
+    @DisplayName("should give up after the grace period")
+    void shouldGiveUpAfterGracePeriod() {
+        ShutdownCoordinator coordinator = coordinator(Duration.ofMillis(50));
+        when(gdeService.flush(any(Duration.class))).thenReturn(false);
+        coordinator.beforeStep(stepExecution);
+
+        long start = System.nanoTime();
+        coordinator.onApplicationEvent(new ContextClosedEvent(applicationContext));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+        verify(gdeService).flush(argThat(d -> d.compareTo(Duration.ofMillis(50)) <= 0));
+    }
+}
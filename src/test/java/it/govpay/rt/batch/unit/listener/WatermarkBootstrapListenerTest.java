@@ -6,6 +6,7 @@ import static org.mockito.Mockito.*;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -21,6 +22,7 @@ import org.springframework.batch.infrastructure.item.ExecutionContext;
 
 import it.govpay.rt.batch.Costanti;
 import it.govpay.rt.batch.listener.WatermarkBootstrapListener;
+import it.govpay.rt.batch.service.WatermarkService;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("WatermarkBootstrapListener")
@@ -29,6 +31,9 @@ class WatermarkBootstrapListenerTest {
     @Mock
     private JobRepository jobRepository;
 
+    @Mock
+    private WatermarkService watermarkService;
+
     @Mock
     private JobExecution currentExecution;
 
@@ -43,10 +48,11 @@ class WatermarkBootstrapListenerTest {
 
     @BeforeEach
     void setUp() {
-        listener = new WatermarkBootstrapListener(jobRepository);
+        listener = new WatermarkBootstrapListener(jobRepository, watermarkService);
         currentContext = new ExecutionContext();
 
-        when(currentExecution.getId()).thenReturn(CURRENT_EXECUTION_ID);
+        lenient().when(currentExecution.getId()).thenReturn(CURRENT_EXECUTION_ID);
+        lenient().when(watermarkService.getWatermark(JOB_NAME)).thenReturn(Optional.empty());
         when(currentExecution.getJobInstance()).thenReturn(currentJobInstance);
         when(currentExecution.getExecutionContext()).thenReturn(currentContext);
         when(currentJobInstance.getJobName()).thenReturn(JOB_NAME);
@@ -56,6 +62,18 @@ class WatermarkBootstrapListenerTest {
     @DisplayName("beforeJob")
     class BeforeJobTest {
 
+        @Test
+        @DisplayName("should read lastProcessedId from the watermark table without scanning job history")
+        void shouldReadLastProcessedIdFromWatermarkTable() {
+            when(watermarkService.getWatermark(JOB_NAME)).thenReturn(Optional.of(42L));
+
+            listener.beforeJob(currentExecution);
+
+            assertEquals(42L, currentContext.getLong(Costanti.LAST_PROCESSED_ID_KEY));
+            verify(watermarkService).seed(JOB_NAME, 42L);
+            verifyNoInteractions(jobRepository);
+        }
+
         @Test
         @DisplayName("should set lastProcessedId to 0 when no previous executions exist")
         void shouldSetLastProcessedIdToZeroWhenNoPreviousExecutions() {
@@ -84,6 +102,8 @@ class WatermarkBootstrapListenerTest {
             listener.beforeJob(currentExecution);
 
             assertEquals(50L, currentContext.getLong(Costanti.LAST_PROCESSED_ID_KEY));
+            // le installazioni non ancora migrate ricevono la riga con il watermark dello storico
+            verify(watermarkService).seed(JOB_NAME, 50L);
         }
 
         @Test
@@ -0,0 +1,157 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.JobInstance;
+import org.springframework.batch.core.job.parameters.JobParameters;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.repository.JobRepository;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.BackfillInfo;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.BackfillService;
+import it.govpay.rt.batch.service.WatermarkService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BackfillService")
+class BackfillServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-15T10:00:00Z");
+
+    @Mock
+    private JobOperator jobOperator;
+
+    @Mock
+    private JobRepository jobRepository;
+
+    @Mock
+    private Job rtBackfillJob;
+
+    @Mock
+    private WatermarkService watermarkService;
+
+    @Mock
+    private RendicontazioniRepository rndRepository;
+
+    // i task vengono eseguiti a mano, per controllare quando il recupero storico termina
+    private final List<Runnable> tasks = new ArrayList<>();
+    private BackfillService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new BackfillService(jobOperator, jobRepository, rtBackfillJob, watermarkService, rndRepository,
+                                      new BatchProperties(), tasks::add, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private JobExecution lastExecution(BatchStatus status, JobParameters params) {
+        JobInstance instance = mock(JobInstance.class);
+        JobExecution execution = mock(JobExecution.class);
+        when(jobRepository.getLastJobInstance(Costanti.RT_BACKFILL_JOB_NAME)).thenReturn(instance);
+        when(jobRepository.getLastJobExecution(instance)).thenReturn(execution);
+        when(execution.getStatus()).thenReturn(status);
+        lenient().when(execution.getJobParameters()).thenReturn(params);
+        return execution;
+    }
+
+    @Test
+    @DisplayName("should resolve the id range at submission and freeze it in the job parameters")
+    void shouldFreezeResolvedRange() throws Exception {
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        LocalDateTime dataA = LocalDateTime.ofInstant(NOW, ZoneOffset.UTC);
+        when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(500L));
+        when(rndRepository.findMinIdByData(from.atStartOfDay(), dataA)).thenReturn(10L);
+        when(rndRepository.findMaxIdByData(from.atStartOfDay(), dataA)).thenReturn(900L);
+        when(jobOperator.start(any(Job.class), any(JobParameters.class))).thenReturn(mock(JobExecution.class));
+
+        BackfillInfo info = service.submit(from, null, null, null);
+
+        assertEquals(10L, info.getFirstId());
+        assertEquals(500L, info.getLastId());
+        assertFalse(info.isResumed());
+        tasks.get(0).run();
+        ArgumentCaptor<JobParameters> params = ArgumentCaptor.forClass(JobParameters.class);
+        verify(jobOperator).start(eq(rtBackfillJob), params.capture());
+        assertEquals(10L, params.getValue().getLong(Costanti.JOB_PARAM_FIRST_ID));
+        assertEquals(500L, params.getValue().getLong(Costanti.JOB_PARAM_LAST_ID));
+        assertEquals(500L, params.getValue().getLong(Costanti.JOB_PARAM_MAX_ID));
+        assertEquals(dataA, params.getValue().getLocalDateTime(Costanti.JOB_PARAM_DATA_A));
+        assertNull(service.getCurrent());
+    }
+
+    @Test
+    @DisplayName("should restart the last backfill interrupted with the same requested bounds")
+    void shouldRestartInterruptedBackfill() throws Exception {
+        JobParameters previous = new JobParametersBuilder()
+                .addLong(Costanti.JOB_PARAM_FROM_ID, 1L)
+                .addLong(Costanti.JOB_PARAM_TO_ID, 1000L)
+                .addLong(Costanti.JOB_PARAM_MAX_ID, 800L)
+                .addLong(Costanti.JOB_PARAM_FIRST_ID, 1L)
+                .addLong(Costanti.JOB_PARAM_LAST_ID, 800L)
+                .toJobParameters();
+        JobExecution interrupted = lastExecution(BatchStatus.STOPPED, previous);
+        when(jobOperator.restart(interrupted)).thenReturn(interrupted);
+
+        BackfillInfo info = service.submit(null, null, 1L, 1000L);
+
+        assertTrue(info.isResumed());
+        assertEquals(800L, info.getLastId());
+        tasks.get(0).run();
+        verify(jobOperator).restart(interrupted);
+        verify(jobOperator, never()).start(any(Job.class), any(JobParameters.class));
+        verifyNoInteractions(watermarkService, rndRepository);
+    }
+
+    @Test
+    @DisplayName("should start a new backfill when the last one completed or had other bounds")
+    void shouldStartNewBackfill() throws Exception {
+        JobParameters previous = new JobParametersBuilder()
+                .addLong(Costanti.JOB_PARAM_FROM_ID, 1L)
+                .addLong(Costanti.JOB_PARAM_TO_ID, 1000L)
+                .toJobParameters();
+        lastExecution(BatchStatus.FAILED, previous);
+        when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(5000L));
+
+        BackfillInfo info = service.submit(null, null, 1L, 2000L);
+
+        assertFalse(info.isResumed());
+        assertEquals(2000L, info.getLastId());
+        tasks.get(0).run();
+        verify(jobOperator).start(eq(rtBackfillJob), any(JobParameters.class));
+        verify(jobOperator, never()).restart(any(JobExecution.class));
+    }
+
+    @Test
+    @DisplayName("should launch without partitions when the range is above the watermark")
+    void shouldResolveEmptyRange() {
+        when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(100L));
+
+        BackfillInfo info = service.submit(null, null, 200L, 300L);
+
+        assertNull(info.getFirstId());
+        assertNull(info.getLastId());
+    }
+}
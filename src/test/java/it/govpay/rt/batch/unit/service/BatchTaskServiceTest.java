@@ -0,0 +1,74 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import it.govpay.rt.batch.entity.BatchTask;
+import it.govpay.rt.batch.repository.BatchTaskRepository;
+import it.govpay.rt.batch.service.BatchTaskService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BatchTaskService")
+class BatchTaskServiceTest {
+
+    private static final String TASK = "task";
+
+    private final LocalDateTime now = LocalDateTime.of(2026, 1, 10, 10, 0);
+
+    @Mock
+    private BatchTaskRepository taskRepository;
+
+    private BatchTaskService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new BatchTaskService(taskRepository);
+    }
+
+    @Test
+    @DisplayName("should create the task row without a last run and claim it")
+    void shouldCreateRowAndClaim() {
+        when(taskRepository.existsById(TASK)).thenReturn(false);
+        when(taskRepository.claim(TASK, now.minusHours(24), now)).thenReturn(1);
+
+        assertTrue(service.claim(TASK, Duration.ofHours(24), now));
+
+        ArgumentCaptor<BatchTask> captor = ArgumentCaptor.forClass(BatchTask.class);
+        verify(taskRepository).saveAndFlush(captor.capture());
+        assertEquals(TASK, captor.getValue().getTaskName());
+        assertNull(captor.getValue().getLastRun());
+    }
+
+    @Test
+    @DisplayName("should not claim a task run within the interval")
+    void shouldNotClaimWithinInterval() {
+        when(taskRepository.existsById(TASK)).thenReturn(true);
+        when(taskRepository.claim(TASK, now.minusHours(24), now)).thenReturn(0);
+
+        assertFalse(service.claim(TASK, Duration.ofHours(24), now));
+        verify(taskRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    @DisplayName("should ignore a row created concurrently by another process")
+    void shouldIgnoreConcurrentInsert() {
+        when(taskRepository.existsById(TASK)).thenReturn(false);
+        when(taskRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(taskRepository.claim(TASK, now.minusHours(24), now)).thenReturn(0);
+
+        assertFalse(service.claim(TASK, Duration.ofHours(24), now));
+    }
+}
@@ -0,0 +1,158 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.service.FairShareScheduler;
+import it.govpay.rt.batch.service.RtApiService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("FairShareScheduler")
+class FairShareSchedulerTest {
+
+    private static final String DOM_BIG = "11111111111";
+    private static final String DOM_SMALL = "22222222222";
+    private static final String DOM_OTHER = "33333333333";
+
+    @Mock
+    private RtApiService rtApiService;
+
+    private BatchProperties batchProperties;
+    private FairShareScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+        scheduler = new FairShareScheduler(batchProperties, rtApiService);
+    }
+
+    private static RtRetrieveContext ctx(long id, String taxCode) {
+        return RtRetrieveContext.builder().rtId(id).taxCode(taxCode).build();
+    }
+
+    private static List<Long> ids(List<RtRetrieveContext> contexts) {
+        return contexts.stream().map(RtRetrieveContext::getRtId).toList();
+    }
+
+    /** 6 ricevute del dominio grande seguite da 2 del dominio piccolo, in ordine di id */
+    private static List<RtRetrieveContext> skewedBacklog() {
+        List<RtRetrieveContext> pending = new ArrayList<>();
+        for (long id = 1; id <= 6; id++)
+            pending.add(ctx(id, DOM_BIG));
+        pending.add(ctx(7L, DOM_SMALL));
+        pending.add(ctx(8L, DOM_SMALL));
+        return pending;
+    }
+
+    private void fairMode(BatchProperties.FairKey key) {
+        batchProperties.getScheduling().setMode(BatchProperties.SchedulingMode.FAIR);
+        batchProperties.getScheduling().setFairKey(key);
+    }
+
+    @Nested
+    @DisplayName("id mode")
+    class IdModeTest {
+
+        @Test
+        @DisplayName("should keep the id order and leave the watermark unset")
+        void shouldKeepIdOrder() {
+            List<RtRetrieveContext> ordered = scheduler.order(skewedBacklog());
+
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), ids(ordered));
+            assertTrue(ordered.stream().allMatch(c -> c.getWatermark() == null));
+            verifyNoInteractions(rtApiService);
+        }
+    }
+
+    @Nested
+    @DisplayName("fair mode")
+    class FairModeTest {
+
+        @Test
+        @DisplayName("should alternate between domains with equal weights")
+        void shouldAlternateDomains() {
+            fairMode(BatchProperties.FairKey.DOMINIO);
+
+            List<RtRetrieveContext> ordered = scheduler.order(skewedBacklog());
+
+            assertEquals(List.of(1L, 7L, 2L, 8L, 3L, 4L, 5L, 6L), ids(ordered));
+        }
+
+        @Test
+        @DisplayName("should serve queues proportionally to their weights")
+        void shouldHonourWeights() {
+            fairMode(BatchProperties.FairKey.DOMINIO);
+            batchProperties.getScheduling().getWeights().put(DOM_BIG, 2);
+            List<RtRetrieveContext> pending = new ArrayList<>();
+            for (long id = 1; id <= 4; id++)
+                pending.add(ctx(id, DOM_BIG));
+            for (long id = 5; id <= 8; id++)
+                pending.add(ctx(id, DOM_SMALL));
+
+            List<RtRetrieveContext> ordered = scheduler.order(pending);
+
+            // peso 2:1 -> due ricevute del dominio grande per ciascuna del dominio piccolo
+            assertEquals(List.of(1L, 5L, 2L, 3L, 6L, 4L, 7L, 8L), ids(ordered));
+        }
+
+        @Test
+        @DisplayName("should group domains sharing the same connector")
+        void shouldGroupByConnector() {
+            fairMode(BatchProperties.FairKey.CONNETTORE);
+            when(rtApiService.resolveConnectorCode(DOM_BIG)).thenReturn("CONN_A");
+            when(rtApiService.resolveConnectorCode(DOM_OTHER)).thenReturn("CONN_A");
+            when(rtApiService.resolveConnectorCode(DOM_SMALL)).thenReturn("CONN_B");
+            List<RtRetrieveContext> pending = List.of(
+                    ctx(1L, DOM_BIG), ctx(2L, DOM_OTHER), ctx(3L, DOM_BIG), ctx(4L, DOM_SMALL));
+
+            List<RtRetrieveContext> ordered = scheduler.order(pending);
+
+            assertEquals(List.of(1L, 4L, 2L, 3L), ids(ordered));
+            // risoluzione del connettore una sola volta per dominio
+            verify(rtApiService).resolveConnectorCode(DOM_BIG);
+        }
+
+        @Test
+        @DisplayName("should fall back to the domain queue when the connector cannot be resolved")
+        void shouldFallBackToDomainQueue() {
+            fairMode(BatchProperties.FairKey.CONNETTORE);
+            when(rtApiService.resolveConnectorCode(DOM_BIG)).thenReturn("CONN_A");
+            when(rtApiService.resolveConnectorCode(DOM_SMALL))
+                    .thenThrow(new IllegalStateException("Connettore Recupero RT non configurato"));
+
+            List<RtRetrieveContext> ordered = scheduler.order(skewedBacklog());
+
+            assertEquals(List.of(1L, 7L, 2L, 8L, 3L, 4L, 5L, 6L), ids(ordered));
+        }
+
+        @Test
+        @DisplayName("should set a watermark that never skips unread ids")
+        void shouldSetSafeWatermarks() {
+            fairMode(BatchProperties.FairKey.DOMINIO);
+
+            List<RtRetrieveContext> ordered = scheduler.order(skewedBacklog());
+
+            // ordine 1,7,2,8,3,4,5,6
+            assertEquals(List.of(1L, 1L, 2L, 2L, 3L, 4L, 5L, 8L),
+                         ordered.stream().map(RtRetrieveContext::getWatermark).toList());
+            long previous = Long.MIN_VALUE;
+            for (RtRetrieveContext ctx : ordered) {
+                assertTrue(ctx.getWatermark() >= previous);
+                previous = ctx.getWatermark();
+            }
+        }
+    }
+}
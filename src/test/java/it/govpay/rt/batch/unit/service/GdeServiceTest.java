@@ -4,8 +4,13 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.Executor;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -23,6 +28,10 @@ import org.springframework.web.client.RestTemplate;
 
 import tools.jackson.databind.ObjectMapper;
 
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
 import it.gov.pagopa.pagopa_api.xsd.common_types.v1_0.StOutcome;
@@ -32,9 +41,12 @@ import it.govpay.common.configurazione.model.Giornale;
 import it.govpay.common.configurazione.service.ConfigurazioneService;
 import it.govpay.common.gde.GdeEventInfo;
 import it.govpay.gde.client.beans.ComponenteEvento;
+import it.govpay.gde.client.beans.DettaglioRichiesta;
 import it.govpay.gde.client.beans.DettaglioRisposta;
 import it.govpay.gde.client.beans.EsitoEvento;
+import it.govpay.gde.client.beans.Header;
 import it.govpay.gde.client.beans.NuovoEvento;
+import it.govpay.rt.batch.client.ExchangeContext;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.gde.mapper.EventoRtMapper;
 import it.govpay.rt.batch.gde.service.GdeService;
@@ -65,6 +77,7 @@ class GdeServiceTest {
     private RtRetrieveContext rtInfo;
     private OffsetDateTime dataStart;
     private OffsetDateTime dataEnd;
+    private ExchangeContext exchange;
 
     private static final String TAX_CODE = "12345678901";
     private static final String IUV = "01234567890123456";
@@ -88,6 +101,9 @@ class GdeServiceTest {
 
         dataStart = OffsetDateTime.of(2024, 1, 15, 10, 0, 0, 0, ZoneOffset.UTC);
         dataEnd = OffsetDateTime.of(2024, 1, 15, 10, 0, 5, 0, ZoneOffset.UTC);
+        exchange = new ExchangeContext();
+        exchange.setDataStart(dataStart);
+        exchange.setDataEnd(dataEnd);
     }
 
     private void setupGdeEnabled() {
@@ -98,6 +114,40 @@ class GdeServiceTest {
         when(configurazioneService.getServizioGDE()).thenReturn(gdeConnettore);
     }
 
+    @Nested
+    @DisplayName("flush")
+    class FlushTest {
+
+        @Test
+        @DisplayName("should return immediately when no event is pending")
+        void shouldReturnWhenNothingPending() {
+            assertTrue(gdeService.flush(Duration.ofMillis(10)));
+            assertEquals(0, gdeService.getPendingEvents());
+        }
+
+        @Test
+        @DisplayName("should wait for queued events and report the ones not yet sent")
+        void shouldWaitForQueuedEvents() {
+            setupGdeEnabled();
+            Queue<Runnable> queued = new ArrayDeque<>();
+            GdeService deferred = new GdeService(objectMapper, queued::add, configurazioneService,
+                    eventoRtMapper, jaxb2Marshaller);
+            NuovoEvento evento = new NuovoEvento();
+            evento.setTipoEvento("TEST");
+
+            deferred.sendEventAsync(evento);
+
+            assertEquals(1, deferred.getPendingEvents());
+            assertFalse(deferred.flush(Duration.ofMillis(10)));
+
+            queued.poll().run();
+
+            assertTrue(deferred.flush(Duration.ofMillis(10)));
+            assertEquals(0, deferred.getPendingEvents());
+            verify(gdeRestTemplate).postForEntity(eq(GDE_ENDPOINT), eq(evento), eq(Void.class));
+        }
+    }
+
     @Nested
     @DisplayName("sendEventAsync")
     class SendEventAsyncTest {
@@ -155,13 +205,30 @@ class GdeServiceTest {
             when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
                     .thenReturn(mockEvento);
 
-            gdeService.saveGetReceiptOk(rtInfo, response, dataStart, dataEnd, PAGOPA_BASE_URL);
+            gdeService.saveGetReceiptOk(rtInfo, response, exchange, PAGOPA_BASE_URL);
 
             verify(eventoRtMapper).createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd));
             verify(eventoRtMapper).setParametriRichiesta(eq(mockEvento), contains(TAX_CODE), eq("GET"), anyList());
             verify(eventoRtMapper).setParametriRisposta(eq(mockEvento), eq(dataEnd), eq(response), isNull());
             verify(gdeRestTemplate).postForEntity(eq(GDE_ENDPOINT), eq(mockEvento), eq(Void.class));
         }
+
+        @Test
+        @DisplayName("should use the request headers captured in the exchange")
+        void shouldUseExchangeRequestHeaders() {
+            setupGdeEnabled();
+            Header header = new Header();
+            header.setNome("Ocp-Apim-Subscription-Key");
+            header.setValore("***");
+            exchange.setRequestHeaders(List.of(header));
+            NuovoEvento mockEvento = new NuovoEvento();
+            when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
+                    .thenReturn(mockEvento);
+
+            gdeService.saveGetReceiptOk(rtInfo, ResponseEntity.ok("receipt data"), exchange, PAGOPA_BASE_URL);
+
+            verify(eventoRtMapper).setParametriRichiesta(eq(mockEvento), contains(TAX_CODE), eq("GET"), eq(List.of(header)));
+        }
     }
 
     @Nested
@@ -181,7 +248,7 @@ class GdeServiceTest {
                     eq(dataStart), eq(dataEnd), isNull(), any()))
                     .thenReturn(mockEvento);
 
-            gdeService.saveGetReceiptKo(rtInfo, response, exception, dataStart, dataEnd, PAGOPA_BASE_URL);
+            gdeService.saveGetReceiptKo(rtInfo, response, exception, exchange, PAGOPA_BASE_URL);
 
             verify(eventoRtMapper).createEventoKo(eq(rtInfo), anyString(), anyString(),
                     eq(dataStart), eq(dataEnd), isNull(), eq(exception));
@@ -207,13 +274,43 @@ class GdeServiceTest {
             when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
                     .thenReturn(mockEvento);
 
-            gdeService.saveSendReceiptOk(rtInfo, request, response, dataStart, dataEnd);
+            gdeService.saveSendReceiptOk(rtInfo, request, response, exchange);
 
             verify(eventoRtMapper).createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd));
             verify(eventoRtMapper).setParametriRichiesta(eq(mockEvento), eq(GOVPAY_URL), eq("POST"), anyList());
             verify(eventoRtMapper).setParametriRispostaSoap(eq(mockEvento), eq(dataEnd), eq(response), anyList());
             verify(gdeRestTemplate).postForEntity(eq(GDE_ENDPOINT), eq(mockEvento), eq(Void.class));
         }
+
+        @Test
+        @DisplayName("should use url, response headers and raw payloads captured in the exchange")
+        void shouldUseExchangeData() {
+            setupGdeEnabled();
+            PaSendRTV2Request request = new PaSendRTV2Request();
+            PaSendRTV2Response response = new PaSendRTV2Response();
+            response.setOutcome(StOutcome.OK);
+            Header header = new Header();
+            header.setNome("Content-Type");
+            header.setValore("text/xml");
+            exchange.setUrl("https://govpay-node2.example.com/pa");
+            exchange.setResponseHeaders(List.of(header));
+            exchange.setRequestPayload("<request/>".getBytes());
+            exchange.setResponsePayload("<response/>".getBytes());
+            DettaglioRichiesta parametriRichiesta = new DettaglioRichiesta();
+            DettaglioRisposta parametriRisposta = new DettaglioRisposta();
+            NuovoEvento mockEvento = new NuovoEvento();
+            mockEvento.setParametriRichiesta(parametriRichiesta);
+            mockEvento.setParametriRisposta(parametriRisposta);
+            when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
+                    .thenReturn(mockEvento);
+
+            gdeService.saveSendReceiptOk(rtInfo, request, response, exchange);
+
+            verify(eventoRtMapper).setParametriRichiesta(eq(mockEvento), eq("https://govpay-node2.example.com/pa"), eq("POST"), anyList());
+            verify(eventoRtMapper).setParametriRispostaSoap(eq(mockEvento), eq(dataEnd), eq(response), eq(List.of(header)));
+            assertEquals(Base64.getEncoder().encodeToString("<request/>".getBytes()), parametriRichiesta.getPayload());
+            assertEquals(Base64.getEncoder().encodeToString("<response/>".getBytes()), parametriRisposta.getPayload());
+        }
     }
 
     @Nested
@@ -247,7 +344,7 @@ class GdeServiceTest {
             when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
                     .thenReturn(mockEvento);
 
-            gdeService.saveGetReceiptOk(rtInfo, response, dataStart, dataEnd, PAGOPA_BASE_URL);
+            gdeService.saveGetReceiptOk(rtInfo, response, exchange, PAGOPA_BASE_URL);
 
             verify(parametriRisposta).setPayload(any());
             verify(gdeRestTemplate).postForEntity(eq(GDE_ENDPOINT), eq(mockEvento), eq(Void.class));
@@ -334,7 +431,7 @@ class GdeServiceTest {
                     eq(dataStart), eq(dataEnd), eq(exception)))
                     .thenReturn(mockEvento);
 
-            gdeService.saveSendReceiptKo(rtInfo, request, exception, dataStart, dataEnd);
+            gdeService.saveSendReceiptKo(rtInfo, request, exception, exchange);
 
             verify(eventoRtMapper).createEventoKoSoap(eq(rtInfo), anyString(), anyString(),
                     eq(dataStart), eq(dataEnd), eq(exception));
@@ -343,4 +440,52 @@ class GdeServiceTest {
             verify(gdeRestTemplate).postForEntity(eq(GDE_ENDPOINT), eq(mockEvento), eq(Void.class));
         }
     }
+
+    @Nested
+    @DisplayName("transactionId")
+    class TransactionIdTest {
+
+        @Mock
+        private Tracer tracer;
+
+        @Mock
+        private Span span;
+
+        @Mock
+        private TraceContext traceContext;
+
+        @Test
+        @DisplayName("should use the current trace id as transactionId when tracing is active")
+        void shouldUseTraceId() {
+            setupGdeEnabled();
+            GdeService traced = new GdeService(objectMapper, syncExecutor, configurazioneService,
+                    eventoRtMapper, jaxb2Marshaller, ObservationRegistry.NOOP, tracer);
+            when(tracer.currentSpan()).thenReturn(span);
+            when(span.context()).thenReturn(traceContext);
+            when(traceContext.traceId()).thenReturn("4bf92f3577b34da6a3ce929d0e0e4736");
+            when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
+                    .thenReturn(new NuovoEvento());
+
+            traced.saveGetReceiptOk(rtInfo, ResponseEntity.ok("receipt data"), exchange, PAGOPA_BASE_URL);
+
+            verify(eventoRtMapper).createEventoOk(eq(rtInfo), anyString(), eq("4bf92f3577b34da6a3ce929d0e0e4736"),
+                    eq(dataStart), eq(dataEnd));
+        }
+
+        @Test
+        @DisplayName("should fall back to a random UUID when there is no current span")
+        void shouldFallBackToUuid() {
+            setupGdeEnabled();
+            GdeService traced = new GdeService(objectMapper, syncExecutor, configurazioneService,
+                    eventoRtMapper, jaxb2Marshaller, ObservationRegistry.NOOP, tracer);
+            when(tracer.currentSpan()).thenReturn(null);
+            when(eventoRtMapper.createEventoOk(eq(rtInfo), anyString(), anyString(), eq(dataStart), eq(dataEnd)))
+                    .thenReturn(new NuovoEvento());
+
+            traced.saveGetReceiptOk(rtInfo, ResponseEntity.ok("receipt data"), exchange, PAGOPA_BASE_URL);
+
+            verify(eventoRtMapper).createEventoOk(eq(rtInfo), anyString(),
+                    matches("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}"), eq(dataStart), eq(dataEnd));
+        }
+    }
 }
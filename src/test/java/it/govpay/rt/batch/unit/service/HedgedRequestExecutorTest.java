@@ -0,0 +1,201 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.service.HedgedRequestExecutor;
+
+@DisplayName("HedgedRequestExecutor")
+class HedgedRequestExecutorTest {
+
+    private static final String CONNECTOR = "RT_CONN";
+
+    private final Executor virtualThreads = task -> Thread.ofVirtual().start(task);
+    private final CountDownLatch slow = new CountDownLatch(1);
+    private final AtomicInteger attempts = new AtomicInteger();
+    private BatchProperties.Hedging config;
+
+    @BeforeEach
+    void setUp() {
+        config = new BatchProperties.Hedging();
+        config.setEnabled(true);
+        config.setMinDelay(Duration.ofMillis(50));
+        config.setMinSamples(1);
+        config.setWindowSize(10);
+        config.setMaxExtraRatio(1.0);
+    }
+
+    @AfterEach
+    void release() {
+        slow.countDown();
+        HedgedRequestExecutor.clearHedgePermit();
+    }
+
+    private HedgedRequestExecutor executor() {
+        // latenze registrate sempre a 0: la soglia e' min-delay
+        return new HedgedRequestExecutor(config, virtualThreads, () -> 0L);
+    }
+
+    private String slowFirst(String first, String second) {
+        if (attempts.incrementAndGet() == 1) {
+            awaitQuietly();
+            return first;
+        }
+        return second;
+    }
+
+    private void awaitQuietly() {
+        try {
+            slow.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("should run the attempt on the caller thread when disabled")
+    void shouldRunInlineWhenDisabled() {
+        Thread caller = Thread.currentThread();
+
+        Thread used = HedgedRequestExecutor.disabled().call(CONNECTOR, Thread::currentThread);
+
+        assertSame(caller, used);
+    }
+
+    @Test
+    @DisplayName("should not hedge a connector without enough recorded latencies")
+    void shouldNotHedgeWithoutSamples() {
+        HedgedRequestExecutor executor = executor();
+        Thread releaser = Thread.ofVirtual().start(() -> {
+            sleepQuietly(150);
+            slow.countDown();
+        });
+
+        assertEquals("primary", executor.call(CONNECTOR, () -> slowFirst("primary", "hedge")));
+        assertEquals(1, attempts.get());
+        assertDoesNotThrow(() -> releaser.join());
+    }
+
+    @Test
+    @DisplayName("should send a second request after the threshold and return the first answer")
+    void shouldHedgeSlowRequest() {
+        HedgedRequestExecutor executor = executor();
+        executor.call(CONNECTOR, () -> "warmup");
+
+        String result = executor.call(CONNECTOR, () -> slowFirst("primary", "hedge"));
+
+        assertEquals("hedge", result);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    @DisplayName("should not hedge when the budget of the connector is exhausted")
+    void shouldRespectBudget() {
+        config.setMaxExtraRatio(0.0);
+        HedgedRequestExecutor executor = executor();
+        executor.call(CONNECTOR, () -> "warmup");
+        Thread releaser = Thread.ofVirtual().start(() -> {
+            sleepQuietly(150);
+            slow.countDown();
+        });
+
+        assertEquals("primary", executor.call(CONNECTOR, () -> slowFirst("primary", "hedge")));
+        assertEquals(1, attempts.get());
+        assertDoesNotThrow(() -> releaser.join());
+    }
+
+    @Test
+    @DisplayName("should not hedge when the permit bound to the thread is denied")
+    void shouldRespectHedgePermit() {
+        AtomicInteger permits = new AtomicInteger();
+        HedgedRequestExecutor.setHedgePermit(() -> {
+            permits.incrementAndGet();
+            return false;
+        });
+        HedgedRequestExecutor executor = executor();
+        executor.call(CONNECTOR, () -> "warmup");
+        Thread releaser = Thread.ofVirtual().start(() -> {
+            sleepQuietly(150);
+            slow.countDown();
+        });
+
+        assertEquals("primary", executor.call(CONNECTOR, () -> slowFirst("primary", "hedge")));
+        assertEquals(1, attempts.get());
+        assertEquals(1, permits.get());
+        assertDoesNotThrow(() -> releaser.join());
+    }
+
+    @Test
+    @DisplayName("should return a 4xx answer without waiting for the other request")
+    void shouldAcceptClientErrorAsAnswer() {
+        HedgedRequestExecutor executor = executor();
+        executor.call(CONNECTOR, () -> "warmup");
+        HttpClientErrorException notFound = HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+
+        HttpClientErrorException thrown = assertThrows(HttpClientErrorException.class, () -> executor.call(CONNECTOR, () -> {
+            if (attempts.incrementAndGet() == 1)
+                awaitQuietly();
+            throw notFound;
+        }));
+
+        assertSame(notFound, thrown);
+    }
+
+    @Test
+    @DisplayName("should throw the failure of the first request when both fail")
+    void shouldThrowPrimaryFailure() {
+        HedgedRequestExecutor executor = executor();
+        executor.call(CONNECTOR, () -> "warmup");
+        HttpServerErrorException primaryFailure = HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "Bad Gateway", null, null, null);
+        HttpServerErrorException hedgeFailure = HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", null, null, null);
+
+        HttpServerErrorException thrown = assertThrows(HttpServerErrorException.class, () -> executor.call(CONNECTOR, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleepQuietly(150);
+                throw primaryFailure;
+            }
+            throw hedgeFailure;
+        }));
+
+        assertSame(primaryFailure, thrown);
+    }
+
+    @Test
+    @DisplayName("should copy the caller MDC to the thread of each request")
+    void shouldPropagateMdc() {
+        HedgedRequestExecutor executor = executor();
+        executor.call(CONNECTOR, () -> "warmup");
+        MDC.put("rtId", "42");
+        try {
+            String result = executor.call(CONNECTOR, () -> slowFirst("primary", MDC.get("rtId")));
+
+            assertEquals("42", result);
+            assertEquals(2, attempts.get());
+        } finally {
+            MDC.remove("rtId");
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
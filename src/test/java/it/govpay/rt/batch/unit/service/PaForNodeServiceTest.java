@@ -16,6 +16,7 @@ import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Response;
 import it.gov.pagopa.pagopa_api.xsd.common_types.v1_0.CtFaultBean;
 import it.gov.pagopa.pagopa_api.xsd.common_types.v1_0.StOutcome;
+import it.govpay.rt.batch.client.ExchangeContext;
 import it.govpay.rt.batch.client.GovpayClient;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.gde.service.GdeService;
@@ -62,14 +63,14 @@ class PaForNodeServiceTest {
         void shouldReturnTrueWhenResponseIsOk() {
             PaSendRTV2Response response = new PaSendRTV2Response();
             response.setOutcome(StOutcome.OK);
-            when(govpayClient.sendReceipt(request)).thenReturn(response);
+            when(govpayClient.sendReceipt(eq(request), any(ExchangeContext.class))).thenReturn(response);
 
             boolean result = service.sendReceipt(rtInfo, request);
 
             assertTrue(result);
-            verify(govpayClient).sendReceipt(request);
-            verify(gdeService).saveSendReceiptOk(eq(rtInfo), eq(request), eq(response), any(), any());
-            verify(gdeService, never()).saveSendReceiptKo(any(), any(), any(), any(), any());
+            verify(govpayClient).sendReceipt(eq(request), any(ExchangeContext.class));
+            verify(gdeService).saveSendReceiptOk(eq(rtInfo), eq(request), eq(response), any(ExchangeContext.class));
+            verify(gdeService, never()).saveSendReceiptKo(any(), any(), any(), any());
         }
 
         @Test
@@ -81,28 +82,28 @@ class PaForNodeServiceTest {
             fault.setFaultCode("PAA_ERROR");
             fault.setDescription("Payment error");
             response.setFault(fault);
-            when(govpayClient.sendReceipt(request)).thenReturn(response);
+            when(govpayClient.sendReceipt(eq(request), any(ExchangeContext.class))).thenReturn(response);
 
             boolean result = service.sendReceipt(rtInfo, request);
 
             assertFalse(result);
-            verify(govpayClient).sendReceipt(request);
-            verify(gdeService).saveSendReceiptKo(eq(rtInfo), eq(request), any(Exception.class), any(), any());
-            verify(gdeService, never()).saveSendReceiptOk(any(), any(), any(), any(), any());
+            verify(govpayClient).sendReceipt(eq(request), any(ExchangeContext.class));
+            verify(gdeService).saveSendReceiptKo(eq(rtInfo), eq(request), any(Exception.class), any(ExchangeContext.class));
+            verify(gdeService, never()).saveSendReceiptOk(any(), any(), any(), any());
         }
 
         @Test
         @DisplayName("should return false and save KO event when exception occurs")
         void shouldReturnFalseWhenExceptionOccurs() {
             RuntimeException exception = new RuntimeException("Connection error");
-            when(govpayClient.sendReceipt(request)).thenThrow(exception);
+            when(govpayClient.sendReceipt(eq(request), any(ExchangeContext.class))).thenThrow(exception);
 
             boolean result = service.sendReceipt(rtInfo, request);
 
             assertFalse(result);
-            verify(govpayClient).sendReceipt(request);
-            verify(gdeService).saveSendReceiptKo(eq(rtInfo), eq(request), eq(exception), any(), any());
-            verify(gdeService, never()).saveSendReceiptOk(any(), any(), any(), any(), any());
+            verify(govpayClient).sendReceipt(eq(request), any(ExchangeContext.class));
+            verify(gdeService).saveSendReceiptKo(eq(rtInfo), eq(request), eq(exception), any(ExchangeContext.class));
+            verify(gdeService, never()).saveSendReceiptOk(any(), any(), any(), any());
         }
 
         @Test
@@ -111,7 +112,7 @@ class PaForNodeServiceTest {
             service = new PaForNodeService(null, govpayClient);
             PaSendRTV2Response response = new PaSendRTV2Response();
             response.setOutcome(StOutcome.OK);
-            when(govpayClient.sendReceipt(request)).thenReturn(response);
+            when(govpayClient.sendReceipt(eq(request), any(ExchangeContext.class))).thenReturn(response);
 
             // Should throw NullPointerException because gdeService is null
             assertThrows(NullPointerException.class, () -> service.sendReceipt(rtInfo, request));
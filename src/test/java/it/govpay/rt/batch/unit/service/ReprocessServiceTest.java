@@ -0,0 +1,180 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParameters;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.repository.JobRepository;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.ReprocessSlice;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.service.ReprocessService;
+import it.govpay.rt.batch.service.WatermarkService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ReprocessService")
+class ReprocessServiceTest {
+
+    private static final String DOMINIO = "12345678901";
+
+    @Mock
+    private JobOperator jobOperator;
+
+    @Mock
+    private JobRepository jobRepository;
+
+    @Mock
+    private Job rtReprocessJob;
+
+    @Mock
+    private WatermarkService watermarkService;
+
+    // i task vengono eseguiti a mano, per controllare quando la rielaborazione termina
+    private final List<Runnable> tasks = new ArrayList<>();
+    private BatchProperties batchProperties;
+    private ReprocessService service;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+        service = new ReprocessService(jobOperator, jobRepository, rtReprocessJob, watermarkService, batchProperties,
+                                       tasks::add, Clock.fixed(Instant.parse("2026-01-15T10:00:00Z"), ZoneOffset.UTC));
+        lenient().when(watermarkService.getWatermark(Costanti.RT_RETRIEVE_JOB_NAME)).thenReturn(Optional.of(1000L));
+        lenient().when(jobRepository.findRunningJobExecutions(Costanti.RT_REPROCESS_JOB_NAME)).thenReturn(Set.of());
+    }
+
+    private void runningOnAnotherNode(JobParameters params) {
+        JobExecution execution = mock(JobExecution.class);
+        when(execution.getJobParameters()).thenReturn(params);
+        when(jobRepository.findRunningJobExecutions(Costanti.RT_REPROCESS_JOB_NAME)).thenReturn(Set.of(execution));
+    }
+
+    private static RtRetrieveContext ctx(long rtId, String taxCode) {
+        return RtRetrieveContext.builder().rtId(rtId).taxCode(taxCode).build();
+    }
+
+    @Test
+    @DisplayName("should bound the slice to the main job watermark and pass it as job parameters")
+    void shouldStartJobWithSliceParameters() throws Exception {
+        when(jobOperator.start(any(Job.class), any(JobParameters.class))).thenReturn(mock(JobExecution.class));
+        ReprocessSlice slice = service.submit(DOMINIO, 10L, 2000L, null);
+
+        assertEquals(1000L, slice.getMaxId());
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        ArgumentCaptor<JobParameters> params = ArgumentCaptor.forClass(JobParameters.class);
+        verify(jobOperator).start(eq(rtReprocessJob), params.capture());
+        assertEquals(DOMINIO, params.getValue().getString(Costanti.JOB_PARAM_COD_DOMINIO));
+        assertEquals(10L, params.getValue().getLong(Costanti.JOB_PARAM_FROM_ID));
+        assertEquals(2000L, params.getValue().getLong(Costanti.JOB_PARAM_TO_ID));
+        assertEquals(1000L, params.getValue().getLong(Costanti.JOB_PARAM_MAX_ID));
+        assertEquals(slice.getId(), params.getValue().getString(Costanti.JOB_PARAM_SLICE_ID));
+        assertTrue(service.getActive().isEmpty());
+    }
+
+    @Test
+    @DisplayName("should cover only the receipts of the slice below the watermark while running")
+    void shouldCoverSliceWhileRunning() {
+        service.submit(DOMINIO, 10L, null, null);
+
+        assertTrue(service.isReprocessing(ctx(10L, DOMINIO)));
+        assertFalse(service.isReprocessing(ctx(9L, DOMINIO)));
+        assertFalse(service.isReprocessing(ctx(50L, "98765432101")));
+        assertFalse(service.isReprocessing(ctx(1001L, DOMINIO)));
+
+        tasks.get(0).run();
+
+        assertFalse(service.isReprocessing(ctx(10L, DOMINIO)));
+    }
+
+    @Test
+    @DisplayName("should reject a slice overlapping a running reprocessing")
+    void shouldRejectOverlappingSlice() {
+        service.submit(DOMINIO, 10L, 20L, null);
+
+        assertThrows(IllegalStateException.class, () -> service.submit(null, 15L, 30L, null));
+        assertThrows(IllegalStateException.class, () -> service.submit(null, null, null, List.of(12L)));
+        assertDoesNotThrow(() -> service.submit("98765432101", 10L, 20L, null));
+        assertEquals(2, service.getActive().size());
+    }
+
+    @Test
+    @DisplayName("should cover and reject against a slice running on another node")
+    void shouldSeeSlicesOfOtherNodes() {
+        runningOnAnotherNode(new JobParametersBuilder()
+                .addString(Costanti.JOB_PARAM_SLICE_ID, "remote")
+                .addString(Costanti.JOB_PARAM_COD_DOMINIO, DOMINIO)
+                .addLong(Costanti.JOB_PARAM_FROM_ID, 10L)
+                .addLong(Costanti.JOB_PARAM_TO_ID, 20L)
+                .addLong(Costanti.JOB_PARAM_MAX_ID, 1000L)
+                .toJobParameters());
+
+        assertTrue(service.isReprocessing(ctx(15L, DOMINIO)));
+        assertFalse(service.isReprocessing(ctx(21L, DOMINIO)));
+        assertThrows(IllegalStateException.class, () -> service.submit(null, 15L, 30L, null));
+        assertEquals(List.of("remote"), service.getActive().stream().map(ReprocessSlice::getId).toList());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should rebuild an id list slice from the job parameters")
+    void shouldRebuildIdListSlice() {
+        runningOnAnotherNode(new JobParametersBuilder()
+                .addString(Costanti.JOB_PARAM_SLICE_ID, "remote")
+                .addString(Costanti.JOB_PARAM_IDS, "5,7")
+                .addLong(Costanti.JOB_PARAM_MAX_ID, 1000L)
+                .toJobParameters());
+
+        assertTrue(service.isReprocessing(ctx(7L, "98765432101")));
+        assertFalse(service.isReprocessing(ctx(6L, DOMINIO)));
+        assertThrows(IllegalStateException.class, () -> service.submit(null, null, null, List.of(5L)));
+        assertDoesNotThrow(() -> service.submit(null, null, null, List.of(6L)));
+    }
+
+    @Test
+    @DisplayName("should reject requests without filters, with an inverted range or too many ids")
+    void shouldRejectInvalidRequests() {
+        List<Long> tooMany = LongStream.rangeClosed(1, batchProperties.getReprocess().getMaxIds() + 1L).boxed().toList();
+
+        assertThrows(IllegalArgumentException.class, () -> service.submit(null, null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(null, 20L, 10L, null));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(DOMINIO, null, null, List.of(1L)));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(null, null, null, tooMany));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should release the slice when the job fails to start")
+    void shouldReleaseSliceOnFailure() throws Exception {
+        when(jobOperator.start(any(Job.class), any(JobParameters.class))).thenThrow(new IllegalStateException("boom"));
+        service.submit(null, null, null, List.of(1L, 2L));
+
+        tasks.get(0).run();
+
+        assertTrue(service.getActive().isEmpty());
+    }
+}
@@ -0,0 +1,209 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.entity.RetrieveOutcome;
+import it.govpay.rt.batch.repository.RetrieveOutcomeRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RetrieveOutcomeService")
+class RetrieveOutcomeServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-15T10:00:00Z");
+    private static final LocalDateTime NOW_LOCAL = LocalDateTime.ofInstant(NOW, ZoneOffset.UTC);
+
+    @Mock
+    private RetrieveOutcomeRepository outcomeRepository;
+
+    private BatchProperties batchProperties;
+    private RetrieveOutcomeService service;
+
+    @BeforeEach
+    void setUp() {
+        batchProperties = new BatchProperties();
+        service = new RetrieveOutcomeService(outcomeRepository, batchProperties, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private static RtRetrieveBatch batch(RtRetrieveOutcome outcome, Integer httpStatus) {
+        return RtRetrieveBatch.builder().rtId(42L).outcome(outcome).httpStatus(httpStatus).message("msg").build();
+    }
+
+    private RetrieveOutcome saved() {
+        ArgumentCaptor<RetrieveOutcome> captor = ArgumentCaptor.forClass(RetrieveOutcome.class);
+        verify(outcomeRepository).save(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    @DisplayName("should schedule a retry on the first NOT_FOUND")
+    void shouldScheduleRetryOnNotFound() {
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.empty());
+
+        assertTrue(service.record(batch(RtRetrieveOutcome.NOT_FOUND, 404)));
+
+        RetrieveOutcome row = saved();
+        assertEquals(42L, row.getIdRendicontazione());
+        assertEquals(RtRetrieveOutcome.NOT_FOUND, row.getLastOutcome());
+        assertEquals(1, row.getAttempts());
+        assertEquals(404, row.getLastHttpStatus());
+        assertEquals(NOW_LOCAL, row.getLastAttempt());
+        assertEquals(NOW_LOCAL.plusHours(1), row.getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should disable the receipt once the attempts are exhausted")
+    void shouldStopRetryingAfterMaxAttempts() {
+        RetrieveOutcome existing = RetrieveOutcome.builder().idRendicontazione(42L).attempts(4).build();
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.of(existing));
+
+        assertFalse(service.record(batch(RtRetrieveOutcome.SEND_FAILED, 200)));
+
+        RetrieveOutcome row = saved();
+        assertEquals(5, row.getAttempts());
+        assertNull(row.getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should record a final outcome when the receipt is recovered")
+    void shouldRecordFinalOutcomeOnRecovered() {
+        RetrieveOutcome existing = RetrieveOutcome.builder().idRendicontazione(42L).attempts(2)
+                .nextEligible(NOW_LOCAL).build();
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.of(existing));
+
+        assertFalse(service.record(batch(RtRetrieveOutcome.RECOVERED, 200)));
+
+        RetrieveOutcome row = saved();
+        assertEquals(RtRetrieveOutcome.RECOVERED, row.getLastOutcome());
+        assertEquals(3, row.getAttempts());
+        assertNull(row.getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should disable at the first failure when retries are disabled")
+    void shouldNotRetryWhenDisabled() {
+        batchProperties.getRetry().setEnabled(false);
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.empty());
+
+        assertFalse(service.record(batch(RtRetrieveOutcome.NOT_FOUND, 404)));
+        assertNull(saved().getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should schedule a retry on a FAILED receipt")
+    void shouldScheduleRetryOnFailed() {
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.empty());
+
+        assertTrue(service.record(batch(RtRetrieveOutcome.FAILED, null)));
+
+        RetrieveOutcome row = saved();
+        assertEquals(RtRetrieveOutcome.FAILED, row.getLastOutcome());
+        assertEquals(NOW_LOCAL.plusHours(1), row.getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should keep a FAILED receipt enabled when retries are disabled")
+    void shouldKeepFailedEnabledWhenDisabled() {
+        batchProperties.getRetry().setEnabled(false);
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.empty());
+
+        assertTrue(service.record(batch(RtRetrieveOutcome.FAILED, null)));
+        assertNull(saved().getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should keep the attempts and make a deferred receipt due at once")
+    void shouldRescheduleDeferredWithoutAttempt() {
+        RetrieveOutcome existing = RetrieveOutcome.builder().idRendicontazione(42L).attempts(2)
+                .lastOutcome(RtRetrieveOutcome.NOT_FOUND).lastHttpStatus(404).build();
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.of(existing));
+
+        assertTrue(service.record(batch(RtRetrieveOutcome.DEFERRED, null)));
+
+        RetrieveOutcome row = saved();
+        assertEquals(RtRetrieveOutcome.DEFERRED, row.getLastOutcome());
+        assertEquals(2, row.getAttempts());
+        assertNull(row.getLastHttpStatus());
+        assertEquals(NOW_LOCAL, row.getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should disable at the first failure a receipt without retry path")
+    void shouldNotRetryWithoutRetryPath() {
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.empty());
+
+        assertFalse(service.recordWithoutRetry(batch(RtRetrieveOutcome.FAILED, null)));
+
+        RetrieveOutcome row = saved();
+        assertEquals(RtRetrieveOutcome.FAILED, row.getLastOutcome());
+        assertEquals(1, row.getAttempts());
+        assertNull(row.getNextEligible());
+    }
+
+    @Test
+    @DisplayName("should keep a deferred receipt without retry path enabled")
+    void shouldKeepDeferredWithoutRetryPath() {
+        when(outcomeRepository.findById(42L)).thenReturn(Optional.empty());
+
+        assertTrue(service.recordWithoutRetry(batch(RtRetrieveOutcome.DEFERRED, null)));
+        assertEquals(0, saved().getAttempts());
+    }
+
+    @Test
+    @DisplayName("should ignore items without outcome")
+    void shouldIgnoreItemsWithoutOutcome() {
+        assertFalse(service.record(batch(null, null)));
+        verifyNoInteractions(outcomeRepository);
+    }
+
+    @Test
+    @DisplayName("should grow the delay exponentially up to max-delay")
+    void shouldComputeBackoff() {
+        assertEquals(Duration.ofHours(1), service.delay(1));
+        assertEquals(Duration.ofHours(2), service.delay(2));
+        assertEquals(Duration.ofHours(8), service.delay(4));
+        assertEquals(Duration.ofHours(24), service.delay(10));
+    }
+
+    @Test
+    @DisplayName("should not query the outcome table when retries are disabled")
+    void shouldNotQueryWhenDisabled() {
+        batchProperties.getRetry().setEnabled(false);
+
+        assertTrue(service.findRetryable(NOW_LOCAL.minusDays(90)).isEmpty());
+        verify(outcomeRepository, never()).findRetryable(any(), any(), any());
+        assertFalse(service.hasRetryable(NOW_LOCAL.minusDays(90)));
+        verify(outcomeRepository, never()).findRetryableIds(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("should check for a due retry with a single-row page")
+    void shouldCheckForDueRetry() {
+        LocalDateTime dataLimite = NOW_LOCAL.minusDays(90);
+        when(outcomeRepository.findRetryableIds(NOW_LOCAL, dataLimite, PageRequest.of(0, 1))).thenReturn(List.of(42L));
+
+        assertTrue(service.hasRetryable(dataLimite));
+    }
+}
@@ -14,7 +14,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.transaction.support.TransactionOperations;
 
+import io.micrometer.observation.ObservationRegistry;
 import it.govpay.common.client.service.ConnettoreService;
 import it.govpay.common.entity.IntermediarioEntity;
 import it.govpay.common.repository.DominioRepository;
@@ -22,6 +24,7 @@ import it.govpay.common.repository.IntermediarioRepository;
 import it.govpay.rt.batch.config.RtApiClientConfig;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
 import it.govpay.rt.batch.gde.service.GdeService;
+import it.govpay.rt.batch.service.HedgedRequestExecutor;
 import it.govpay.rt.batch.service.RtApiService;
 
 @ExtendWith(MockitoExtension.class)
@@ -55,7 +58,8 @@ class RtApiServiceTest {
     @BeforeEach
     void setUp() {
         service = new RtApiService(connettoreService, intermediarioRepository, dominioRepository,
-                rtApiClientConfig, gdeService);
+                rtApiClientConfig, gdeService, ObservationRegistry.NOOP,
+                TransactionOperations.withoutTransaction(), HedgedRequestExecutor.disabled());
 
         rtInfo = RtRetrieveContext.builder()
                 .rtId(1L)
@@ -0,0 +1,63 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import it.govpay.rt.batch.service.TokenBucket;
+
+@DisplayName("TokenBucket")
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    @DisplayName("should serve the burst immediately and then space the callers at the configured rate")
+    void shouldThrottleAfterBurst() {
+        TokenBucket bucket = new TokenBucket(2.0, 2, now::get);
+
+        assertEquals(0L, bucket.reserve());
+        assertEquals(0L, bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), bucket.reserve());
+    }
+
+    @Test
+    @DisplayName("should refill over time without exceeding the burst")
+    void shouldRefillUpToBurst() {
+        TokenBucket bucket = new TokenBucket(10.0, 3, now::get);
+        for (int i = 0; i < 3; i++)
+            bucket.reserve();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        assertEquals(0L, bucket.reserve());
+        assertEquals(0L, bucket.reserve());
+        assertEquals(0L, bucket.reserve());
+        assertTrue(bucket.reserve() > 0);
+    }
+
+    @Test
+    @DisplayName("should take a token only when one is available, without reserving the next")
+    void shouldTryAcquireWithoutWaiting() {
+        TokenBucket bucket = new TokenBucket(2.0, 1, now::get);
+
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(0L, bucket.reserve());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("should reject a non positive rate")
+    void shouldRejectInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+}
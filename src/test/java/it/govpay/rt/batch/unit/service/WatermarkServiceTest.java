@@ -0,0 +1,157 @@
+package it.govpay.rt.batch.unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import it.govpay.rt.batch.entity.BatchWatermark;
+import it.govpay.rt.batch.repository.BatchWatermarkRepository;
+import it.govpay.rt.batch.service.WatermarkService;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("WatermarkService")
+class WatermarkServiceTest {
+
+    private static final String JOB_NAME = "rtRetrieveJob";
+
+    @Mock
+    private BatchWatermarkRepository watermarkRepository;
+
+    private WatermarkService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new WatermarkService(watermarkRepository);
+    }
+
+    @Nested
+    @DisplayName("getWatermark")
+    class GetWatermarkTest {
+
+        @Test
+        @DisplayName("should read the default partition of the job")
+        void shouldReadDefaultPartition() {
+            when(watermarkRepository.findLastProcessedId(JOB_NAME, BatchWatermark.DEFAULT_PARTITION))
+                    .thenReturn(Optional.of(42L));
+
+            assertEquals(Optional.of(42L), service.getWatermark(JOB_NAME));
+        }
+
+        @Test
+        @DisplayName("should return empty when no watermark row exists")
+        void shouldReturnEmptyWhenMissing() {
+            when(watermarkRepository.findLastProcessedId(JOB_NAME, "p1")).thenReturn(Optional.empty());
+
+            assertTrue(service.getWatermark(JOB_NAME, "p1").isEmpty());
+        }
+    }
+
+    @Nested
+    @DisplayName("advance")
+    class AdvanceTest {
+
+        @Test
+        @DisplayName("should update the existing row without inserting")
+        void shouldUpdateExistingRow() {
+            when(watermarkRepository.advance(eq(JOB_NAME), eq(BatchWatermark.DEFAULT_PARTITION), eq(50L), any()))
+                    .thenReturn(1);
+
+            service.advance(JOB_NAME, 50L);
+
+            verify(watermarkRepository, never()).existsById(any());
+            verify(watermarkRepository, never()).save(any());
+        }
+
+        @Test
+        @DisplayName("should fail when the row was not seeded")
+        void shouldFailWhenRowMissing() {
+            when(watermarkRepository.advance(eq(JOB_NAME), eq(BatchWatermark.DEFAULT_PARTITION), eq(50L), any()))
+                    .thenReturn(0);
+            when(watermarkRepository.existsById(new BatchWatermark.Key(JOB_NAME, BatchWatermark.DEFAULT_PARTITION)))
+                    .thenReturn(false);
+
+            assertThrows(IllegalStateException.class, () -> service.advance(JOB_NAME, 50L));
+            verify(watermarkRepository, never()).save(any());
+            verify(watermarkRepository, never()).saveAndFlush(any());
+        }
+
+        @Test
+        @DisplayName("should not move the watermark backwards")
+        void shouldNotMoveWatermarkBackwards() {
+            when(watermarkRepository.advance(eq(JOB_NAME), eq(BatchWatermark.DEFAULT_PARTITION), eq(10L), any()))
+                    .thenReturn(0);
+            when(watermarkRepository.existsById(new BatchWatermark.Key(JOB_NAME, BatchWatermark.DEFAULT_PARTITION)))
+                    .thenReturn(true);
+
+            service.advance(JOB_NAME, 10L);
+
+            verify(watermarkRepository, never()).save(any());
+        }
+    }
+
+    @Nested
+    @DisplayName("seed")
+    class SeedTest {
+
+        @Test
+        @DisplayName("should insert the row with the initial watermark")
+        void shouldInsertMissingRow() {
+            when(watermarkRepository.existsById(new BatchWatermark.Key(JOB_NAME, BatchWatermark.DEFAULT_PARTITION)))
+                    .thenReturn(false);
+
+            service.seed(JOB_NAME, 50L);
+
+            ArgumentCaptor<BatchWatermark> captor = ArgumentCaptor.forClass(BatchWatermark.class);
+            verify(watermarkRepository).saveAndFlush(captor.capture());
+            assertEquals(JOB_NAME, captor.getValue().getJobName());
+            assertEquals(BatchWatermark.DEFAULT_PARTITION, captor.getValue().getPartitionKey());
+            assertEquals(50L, captor.getValue().getLastProcessedId());
+            assertNotNull(captor.getValue().getLastUpdated());
+        }
+
+        @Test
+        @DisplayName("should leave an existing row untouched")
+        void shouldKeepExistingRow() {
+            when(watermarkRepository.existsById(new BatchWatermark.Key(JOB_NAME, "p1"))).thenReturn(true);
+
+            service.seed(JOB_NAME, "p1", 50L);
+
+            verify(watermarkRepository, never()).saveAndFlush(any());
+        }
+
+        @Test
+        @DisplayName("should ignore the row created concurrently by another process")
+        void shouldIgnoreConcurrentInsert() {
+            when(watermarkRepository.existsById(new BatchWatermark.Key(JOB_NAME, BatchWatermark.DEFAULT_PARTITION)))
+                    .thenReturn(false);
+            when(watermarkRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+            assertDoesNotThrow(() -> service.seed(JOB_NAME, 50L));
+        }
+    }
+
+    @Nested
+    @DisplayName("clear")
+    class ClearTest {
+
+        @Test
+        @DisplayName("should delete the row of the partition")
+        void shouldDeletePartitionRow() {
+            service.clear("rtBackfillJob", "42-0");
+
+            verify(watermarkRepository).deleteById(new BatchWatermark.Key("rtBackfillJob", "42-0"));
+        }
+    }
+}
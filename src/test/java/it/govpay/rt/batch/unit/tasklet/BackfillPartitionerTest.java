@@ -0,0 +1,56 @@
+package it.govpay.rt.batch.unit.tasklet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.tasklet.BackfillPartitioner;
+
+@DisplayName("BackfillPartitioner")
+class BackfillPartitionerTest {
+
+    private static List<String> keys(Map<String, ExecutionContext> partitions) {
+        return partitions.values().stream().map(ctx -> ctx.getString(Costanti.PARTITION_KEY)).toList();
+    }
+
+    @Test
+    @DisplayName("should split the resolved id range into contiguous sub-ranges keyed by job instance and index")
+    void shouldSplitIdRange() {
+        BackfillPartitioner partitioner = new BackfillPartitioner(1L, 100L, 42L);
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(4);
+
+        assertEquals(List.of("42-0", "42-1", "42-2", "42-3"), keys(partitions));
+        assertEquals(26L, partitions.get("partition1").getLong(Costanti.PARTITION_MIN_ID_KEY));
+        assertEquals(50L, partitions.get("partition1").getLong(Costanti.PARTITION_MAX_ID_KEY));
+        assertEquals(100L, partitions.get("partition3").getLong(Costanti.PARTITION_MAX_ID_KEY));
+    }
+
+    @Test
+    @DisplayName("should not create more partitions than ids")
+    void shouldCapPartitionsAtRange() {
+        Map<String, ExecutionContext> partitions = new BackfillPartitioner(10L, 12L, 7L).partition(8);
+
+        assertEquals(List.of("7-0", "7-1", "7-2"), keys(partitions));
+        assertEquals(12L, partitions.get("partition2").getLong(Costanti.PARTITION_MIN_ID_KEY));
+    }
+
+    @Test
+    @DisplayName("should give a new backfill of the same ids new partition keys")
+    void shouldKeyByJobInstance() {
+        assertNotEquals(keys(new BackfillPartitioner(1L, 100L, 1L).partition(2)),
+                        keys(new BackfillPartitioner(1L, 100L, 2L).partition(2)));
+    }
+
+    @Test
+    @DisplayName("should return no partitions when no range was resolved")
+    void shouldReturnNoPartitions() {
+        assertTrue(new BackfillPartitioner(null, null, 1L).partition(4).isEmpty());
+    }
+}
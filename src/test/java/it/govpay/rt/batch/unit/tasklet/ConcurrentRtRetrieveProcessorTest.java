@@ -0,0 +1,183 @@
+package it.govpay.rt.batch.unit.tasklet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.MDC;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.listener.ItemLoggingListener;
+import it.govpay.rt.batch.tasklet.ConcurrentRtRetrieveProcessor;
+import it.govpay.rt.batch.tasklet.ConnectorBulkheads;
+import it.govpay.rt.batch.tasklet.RtRetrieveProcessor;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ConcurrentRtRetrieveProcessor")
+class ConcurrentRtRetrieveProcessorTest {
+
+    @Mock
+    private RtRetrieveProcessor delegate;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private ConcurrentRtRetrieveProcessor processor;
+    private RtRetrieveContext context;
+
+    @BeforeEach
+    void setUp() {
+        processor = new ConcurrentRtRetrieveProcessor(delegate, tasks::add, ObservationRegistry.NOOP);
+        context = RtRetrieveContext.builder()
+                .rtId(1L)
+                .taxCode("12345678901")
+                .iuv("01234567890123456")
+                .iur("IUR123456")
+                .build();
+    }
+
+    @Nested
+    @DisplayName("process")
+    class ProcessTest {
+
+        @Test
+        @DisplayName("should return before the receipt is processed")
+        void shouldNotWaitForTheReceipt() throws Exception {
+            Future<RtRetrieveBatch> result = processor.process(context);
+
+            assertFalse(result.isDone());
+            assertEquals(1, tasks.size());
+            verify(delegate, never()).process(any());
+        }
+
+        @Test
+        @DisplayName("should complete the future with the outcome of the delegate")
+        void shouldCompleteWithOutcome() throws Exception {
+            RtRetrieveBatch batch = RtRetrieveBatch.builder().rtId(1L).outcome(RtRetrieveOutcome.RECOVERED).build();
+            when(delegate.process(context)).thenReturn(batch);
+
+            Future<RtRetrieveBatch> result = processor.process(context);
+            tasks.get(0).run();
+
+            assertSame(batch, result.get());
+        }
+
+        @Test
+        @DisplayName("should complete the future with a FAILED outcome when the delegate fails")
+        void shouldCompleteWithFailedOutcome() throws Exception {
+            IllegalStateException failure = new IllegalStateException("pagoPA non raggiungibile");
+            when(delegate.process(context)).thenThrow(failure);
+
+            Future<RtRetrieveBatch> result = processor.process(context);
+            tasks.get(0).run();
+
+            RtRetrieveBatch batch = result.get();
+            assertEquals(RtRetrieveOutcome.FAILED, batch.getOutcome());
+            assertEquals(1L, batch.getRtId());
+            assertEquals("12345678901", batch.getCodDominio());
+            assertTrue(batch.getMessage().contains("pagoPA non raggiungibile"));
+            assertNull(MDC.get(ItemLoggingListener.MDC_RT_ID));
+        }
+
+        @Test
+        @DisplayName("should defer a rate-limited receipt and send no further receipt in the step")
+        void shouldStopSendingWhenRateLimited() throws Exception {
+            when(delegate.process(context)).thenThrow(
+                    HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null));
+
+            Future<RtRetrieveBatch> result = processor.process(context);
+            tasks.get(0).run();
+
+            RtRetrieveBatch batch = result.get();
+            assertEquals(RtRetrieveOutcome.DEFERRED, batch.getOutcome());
+            assertEquals(429, batch.getHttpStatus());
+            assertTrue(processor.isRateLimited());
+
+            Future<RtRetrieveBatch> next = processor.process(context);
+            assertTrue(next.isDone());
+            assertNull(next.get());
+            assertEquals(1, tasks.size());
+
+            processor.beforeStep(null);
+            assertFalse(processor.isRateLimited());
+        }
+
+        @Test
+        @DisplayName("should set the receipt MDC while processing and remove it afterwards")
+        void shouldSetMdcOnTheProcessingThread() throws Exception {
+            List<String> seen = new ArrayList<>();
+            when(delegate.process(context)).thenAnswer(invocation -> {
+                seen.add(MDC.get(ItemLoggingListener.MDC_RT_ID));
+                seen.add(MDC.get(ItemLoggingListener.MDC_IUV));
+                return null;
+            });
+
+            processor.process(context);
+            tasks.get(0).run();
+
+            assertEquals(List.of("1", "01234567890123456"), seen);
+            assertNull(MDC.get(ItemLoggingListener.MDC_RT_ID));
+        }
+    }
+
+    @Nested
+    @DisplayName("process with connector bulkheads")
+    class BulkheadTest {
+
+        private ConcurrentRtRetrieveProcessor bulkheadProcessor;
+
+        @BeforeEach
+        void setUp() {
+            BatchProperties.Concurrency config = new BatchProperties.Concurrency();
+            config.setMaxInFlightPerConnector(1);
+            config.setMaxQueuedPerConnector(0);
+            ConnectorBulkheads bulkheads = new ConnectorBulkheads(config, true, tasks::add, new SimpleMeterRegistry());
+            bulkheadProcessor = new ConcurrentRtRetrieveProcessor(delegate, bulkheads, taxCode -> "RT_CONN", ObservationRegistry.NOOP);
+        }
+
+        @Test
+        @DisplayName("should defer the receipt when the bulkhead of its connector is full")
+        void shouldDeferWhenBulkheadFull() throws Exception {
+            bulkheadProcessor.process(context);
+
+            Future<RtRetrieveBatch> result = bulkheadProcessor.process(context);
+
+            assertTrue(result.isDone());
+            assertEquals(RtRetrieveOutcome.DEFERRED, result.get().getOutcome());
+            assertEquals(1L, result.get().getRtId());
+            assertEquals(1, tasks.size());
+        }
+
+        @Test
+        @DisplayName("should complete the receipt as FAILED when its connector cannot be resolved")
+        void shouldFailWhenConnectorUnresolved() throws Exception {
+            IllegalStateException failure = new IllegalStateException("Nessun intermediario trovato per il dominio: 12345678901");
+            BatchProperties.Concurrency config = new BatchProperties.Concurrency();
+            config.setMaxInFlightPerConnector(1);
+            ConcurrentRtRetrieveProcessor unresolved = new ConcurrentRtRetrieveProcessor(delegate,
+                    new ConnectorBulkheads(config, true, tasks::add, new SimpleMeterRegistry()),
+                    taxCode -> { throw failure; }, ObservationRegistry.NOOP);
+
+            Future<RtRetrieveBatch> result = unresolved.process(context);
+
+            assertTrue(result.isDone());
+            assertEquals(RtRetrieveOutcome.FAILED, result.get().getOutcome());
+            assertTrue(tasks.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package it.govpay.rt.batch.unit.tasklet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ItemWriter;
+
+import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
+import it.govpay.rt.batch.tasklet.ConcurrentRtRetrieveWriter;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ConcurrentRtRetrieveWriter")
+class ConcurrentRtRetrieveWriterTest {
+
+    @Mock
+    private ItemWriter<RtRetrieveBatch> delegate;
+
+    @Mock
+    private ItemWriteListener<RtRetrieveBatch> listener;
+
+    @Mock
+    private StepExecution stepExecution;
+
+    private ConcurrentRtRetrieveWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ConcurrentRtRetrieveWriter(delegate, List.of(listener), true);
+    }
+
+    private static RtRetrieveBatch batch(long rtId) {
+        return batch(rtId, RtRetrieveOutcome.RECOVERED);
+    }
+
+    private static RtRetrieveBatch batch(long rtId, RtRetrieveOutcome outcome) {
+        return RtRetrieveBatch.builder().rtId(rtId).outcome(outcome).build();
+    }
+
+    @Nested
+    @DisplayName("write")
+    class WriteTest {
+
+        @Test
+        @SuppressWarnings("unchecked")
+        @DisplayName("should write the outcomes in read order, skipping filtered receipts")
+        void shouldWriteOutcomesInReadOrder() throws Exception {
+            RtRetrieveBatch first = batch(1L);
+            RtRetrieveBatch third = batch(3L);
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(
+                    CompletableFuture.completedFuture(first),
+                    CompletableFuture.completedFuture(null),
+                    CompletableFuture.completedFuture(third)));
+
+            writer.write(chunk);
+
+            ArgumentCaptor<Chunk<RtRetrieveBatch>> written = ArgumentCaptor.forClass(Chunk.class);
+            verify(delegate).write(written.capture());
+            assertEquals(List.of(first, third), written.getValue().getItems());
+            verify(listener).beforeWrite(any());
+            verify(listener).afterWrite(any());
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        @DisplayName("should write the failed receipts together with the completed ones when retries are enabled")
+        void shouldWriteFailedReceipts() throws Exception {
+            writer.beforeStep(stepExecution);
+            RtRetrieveBatch failed = batch(2L, RtRetrieveOutcome.FAILED);
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(
+                    CompletableFuture.completedFuture(batch(1L)),
+                    CompletableFuture.completedFuture(failed),
+                    CompletableFuture.completedFuture(batch(3L))));
+
+            writer.write(chunk);
+
+            ArgumentCaptor<Chunk<RtRetrieveBatch>> written = ArgumentCaptor.forClass(Chunk.class);
+            verify(delegate).write(written.capture());
+            assertEquals(List.of(1L, 2L, 3L), written.getValue().getItems().stream().map(RtRetrieveBatch::getRtId).toList());
+            assertNull(failed.getWatermark());
+            verify(stepExecution, never()).setTerminateOnly();
+        }
+
+        @Test
+        @DisplayName("should write a rate-limited receipt and stop the step when retries are enabled")
+        void shouldStopOnRateLimit() throws Exception {
+            writer.beforeStep(stepExecution);
+            RtRetrieveBatch rateLimited = RtRetrieveBatch.builder().rtId(2L).outcome(RtRetrieveOutcome.DEFERRED)
+                    .httpStatus(429).build();
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(
+                    CompletableFuture.completedFuture(batch(1L)),
+                    CompletableFuture.completedFuture(rateLimited),
+                    CompletableFuture.completedFuture(null)));
+
+            writer.write(chunk);
+
+            verify(delegate).write(argThat(items -> items.size() == 2 && items.getItems().get(1) == rateLimited));
+            assertNull(rateLimited.getWatermark());
+            verify(stepExecution).setTerminateOnly();
+        }
+
+        @Test
+        @DisplayName("should not stop the step for a receipt deferred by a full bulkhead")
+        void shouldNotStopOnBulkheadDeferral() throws Exception {
+            writer.beforeStep(stepExecution);
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(
+                    CompletableFuture.completedFuture(batch(1L, RtRetrieveOutcome.DEFERRED))));
+
+            writer.write(chunk);
+
+            verify(delegate).write(any());
+            verify(stepExecution, never()).setTerminateOnly();
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        @DisplayName("should hold the watermark before the first failed receipt and stop the step when retries are disabled")
+        void shouldHoldWatermarkWithoutRetries() throws Exception {
+            ConcurrentRtRetrieveWriter noRetry = new ConcurrentRtRetrieveWriter(delegate, List.of(listener), false);
+            noRetry.beforeStep(stepExecution);
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(
+                    CompletableFuture.completedFuture(batch(1L)),
+                    CompletableFuture.completedFuture(batch(2L)),
+                    CompletableFuture.completedFuture(batch(3L, RtRetrieveOutcome.FAILED)),
+                    CompletableFuture.completedFuture(batch(4L))));
+
+            noRetry.write(chunk);
+
+            ArgumentCaptor<Chunk<RtRetrieveBatch>> written = ArgumentCaptor.forClass(Chunk.class);
+            verify(delegate).write(written.capture());
+            List<RtRetrieveBatch> items = written.getValue().getItems();
+            assertEquals(4, items.size());
+            assertNull(items.get(0).getWatermark());
+            assertNull(items.get(1).getWatermark());
+            assertEquals(2L, items.get(2).getWatermark());
+            assertEquals(2L, items.get(3).getWatermark());
+            verify(stepExecution).setTerminateOnly();
+            verify(listener).afterWrite(any());
+        }
+
+        @Test
+        @DisplayName("should not move the watermark when the first receipt of the chunk failed and retries are disabled")
+        void shouldNotMoveWatermarkWhenFirstFailed() throws Exception {
+            ConcurrentRtRetrieveWriter noRetry = new ConcurrentRtRetrieveWriter(delegate, List.of(listener), false);
+            noRetry.beforeStep(stepExecution);
+            RtRetrieveBatch failed = batch(1L, RtRetrieveOutcome.FAILED);
+            RtRetrieveBatch recovered = batch(2L);
+
+            noRetry.write(new Chunk<>(List.of(CompletableFuture.completedFuture(failed),
+                                              CompletableFuture.completedFuture(recovered))));
+
+            assertEquals(0L, failed.getWatermark());
+            assertEquals(0L, recovered.getWatermark());
+            verify(stepExecution).setTerminateOnly();
+        }
+
+        @Test
+        @DisplayName("should fail the chunk on an unexpected error of a receipt future")
+        void shouldFailOnUnexpectedError() throws Exception {
+            IllegalStateException unexpected = new IllegalStateException("unexpected");
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(
+                    CompletableFuture.completedFuture(batch(1L)),
+                    CompletableFuture.failedFuture(unexpected)));
+
+            assertSame(unexpected, assertThrows(Exception.class, () -> writer.write(chunk)));
+
+            verifyNoInteractions(delegate, listener);
+        }
+
+        @Test
+        @DisplayName("should not write when every receipt was filtered")
+        void shouldSkipEmptyChunk() throws Exception {
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(CompletableFuture.<RtRetrieveBatch>completedFuture(null)));
+
+            writer.write(chunk);
+
+            verifyNoInteractions(delegate, listener);
+        }
+
+        @Test
+        @DisplayName("should notify the listeners of a write error")
+        void shouldNotifyWriteError() throws Exception {
+            RuntimeException dbError = new RuntimeException("DB down");
+            doThrow(dbError).when(delegate).write(any());
+            Chunk<Future<RtRetrieveBatch>> chunk = new Chunk<>(List.of(CompletableFuture.completedFuture(batch(1L))));
+
+            assertSame(dbError, assertThrows(RuntimeException.class, () -> writer.write(chunk)));
+
+            verify(listener).onWriteError(eq(dbError), any());
+            verify(listener, never()).afterWrite(any());
+        }
+    }
+}
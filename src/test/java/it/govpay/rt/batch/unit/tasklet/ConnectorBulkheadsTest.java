@@ -0,0 +1,129 @@
+package it.govpay.rt.batch.unit.tasklet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.tasklet.ConnectorBulkheads;
+
+@DisplayName("ConnectorBulkheads")
+class ConnectorBulkheadsTest {
+
+    private final List<Runnable> started = new ArrayList<>();
+    private final List<String> executed = new ArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BatchProperties.Concurrency config;
+
+    @BeforeEach
+    void setUp() {
+        config = new BatchProperties.Concurrency();
+        config.setMaxInFlightPerConnector(1);
+        config.setMaxQueuedPerConnector(1);
+    }
+
+    private ConnectorBulkheads bulkheads(boolean deferWhenFull) {
+        return new ConnectorBulkheads(config, deferWhenFull, started::add, meterRegistry);
+    }
+
+    private Runnable task(String name) {
+        return () -> executed.add(name);
+    }
+
+    private double gauge(String name, String connector) {
+        return meterRegistry.get(name).tag("connector", connector).gauge().value();
+    }
+
+    @Test
+    @DisplayName("should queue beyond the connector limit and defer when the queue is full")
+    void shouldQueueAndDefer() throws Exception {
+        ConnectorBulkheads bulkheads = bulkheads(true);
+
+        assertTrue(bulkheads.submit("A", task("a1")));
+        assertTrue(bulkheads.submit("A", task("a2")));
+        assertFalse(bulkheads.submit("A", task("a3")));
+
+        assertEquals(1, started.size());
+        assertEquals(1.0, gauge(Costanti.METRIC_BULKHEAD_ACTIVE, "A"));
+        assertEquals(1.0, gauge(Costanti.METRIC_BULKHEAD_QUEUED, "A"));
+        assertEquals(1.0, meterRegistry.get(Costanti.METRIC_BULKHEAD_DEFERRED).tag("connector", "A").counter().count());
+    }
+
+    @Test
+    @DisplayName("should not let a saturated connector hold the slots of another one")
+    void shouldIsolateConnectors() throws Exception {
+        ConnectorBulkheads bulkheads = bulkheads(true);
+        bulkheads.submit("A", task("a1"));
+        bulkheads.submit("A", task("a2"));
+
+        assertTrue(bulkheads.submit("B", task("b1")));
+
+        assertEquals(2, started.size());
+        assertEquals(0.0, gauge(Costanti.METRIC_BULKHEAD_QUEUED, "B"));
+    }
+
+    @Test
+    @DisplayName("should run the queued tasks of the connector on the thread that frees the slot")
+    void shouldDrainQueueOnSameSlot() throws Exception {
+        ConnectorBulkheads bulkheads = bulkheads(true);
+        bulkheads.submit("A", task("a1"));
+        bulkheads.submit("A", task("a2"));
+
+        started.get(0).run();
+
+        assertEquals(List.of("a1", "a2"), executed);
+        assertEquals(1, started.size());
+        assertEquals(0.0, gauge(Costanti.METRIC_BULKHEAD_ACTIVE, "A"));
+        assertEquals(0.0, gauge(Costanti.METRIC_BULKHEAD_QUEUED, "A"));
+        assertTrue(bulkheads.submit("A", task("a3")));
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    @DisplayName("should apply the per-connector override of the limit")
+    void shouldApplyConnectorLimit() throws Exception {
+        config.setConnectorLimits(Map.of("A", 2));
+        ConnectorBulkheads bulkheads = bulkheads(true);
+
+        bulkheads.submit("A", task("a1"));
+        bulkheads.submit("A", task("a2"));
+
+        assertEquals(2, started.size());
+        assertEquals(2.0, gauge(Costanti.METRIC_BULKHEAD_LIMIT, "A"));
+    }
+
+    @Test
+    @DisplayName("should wait for room in the queue instead of deferring when deferral is disabled")
+    void shouldWaitWhenNotDeferring() throws Exception {
+        ConnectorBulkheads bulkheads = bulkheads(false);
+        bulkheads.submit("A", task("a1"));
+        bulkheads.submit("A", task("a2"));
+
+        Thread submitter = Thread.ofVirtual().start(() -> {
+            try {
+                bulkheads.submit("A", task("a3"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+
+        started.get(0).run();
+        submitter.join(5000);
+
+        assertFalse(submitter.isAlive());
+        // a3 viene eseguito dallo slot liberato o, se arriva dopo, ne avvia uno nuovo
+        for (int i = 1; i < started.size(); i++)
+            started.get(i).run();
+        assertEquals(List.of("a1", "a2", "a3"), executed);
+    }
+}
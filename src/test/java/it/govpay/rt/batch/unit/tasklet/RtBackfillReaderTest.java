@@ -0,0 +1,152 @@
+package it.govpay.rt.batch.unit.tasklet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.data.domain.Pageable;
+
+import it.govpay.rt.batch.Costanti;
+import it.govpay.rt.batch.config.BatchProperties;
+import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
+import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.HedgedRequestExecutor;
+import it.govpay.rt.batch.service.TokenBucket;
+import it.govpay.rt.batch.service.WatermarkService;
+import it.govpay.rt.batch.tasklet.RtBackfillReader;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RtBackfillReader")
+class RtBackfillReaderTest {
+
+    private static final String PARTITION = "42-0";
+
+    @Mock
+    private RendicontazioniRepository rndRepository;
+
+    @Mock
+    private WatermarkService watermarkService;
+
+    @Mock
+    private ShutdownCoordinator shutdownCoordinator;
+
+    @Mock
+    private TokenBucket rateLimiter;
+
+    @Mock
+    private StepExecution stepExecution;
+
+    private final BatchProperties batchProperties = new BatchProperties();
+
+    @BeforeEach
+    void setUp() {
+        batchProperties.getBackfill().setPageSize(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // beforeStep lega il rate limiter al thread del test
+        HedgedRequestExecutor.clearHedgePermit();
+    }
+
+    private RtBackfillReader reader() {
+        return new RtBackfillReader(rndRepository, watermarkService, shutdownCoordinator, rateLimiter, batchProperties,
+                                    1L, 100L, PARTITION, null, null);
+    }
+
+    private static List<Object[]> rows(long... ids) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long id : ids)
+            rows.add(new Object[]{id, "12345678901", "IUV" + id, "IUR" + id, LocalDateTime.of(2020, 1, 1, 0, 0)});
+        return rows;
+    }
+
+    @Test
+    @DisplayName("should page by key through the partition, taking a token per receipt")
+    void shouldPageThroughPartition() throws Exception {
+        when(watermarkService.getWatermark(Costanti.RT_BACKFILL_JOB_NAME, PARTITION)).thenReturn(Optional.empty());
+        when(rndRepository.findRendicontazioneWithNoPagamentoBetween(eq(0L), eq(100L), isNull(), isNull(), any(Pageable.class)))
+                .thenReturn(rows(3L, 7L));
+        when(rndRepository.findRendicontazioneWithNoPagamentoBetween(eq(7L), eq(100L), isNull(), isNull(), any(Pageable.class)))
+                .thenReturn(rows(9L));
+        RtBackfillReader reader = reader();
+        reader.beforeStep(stepExecution);
+
+        List<Long> ids = new ArrayList<>();
+        for (RtRetrieveContext ctx = reader.read(); ctx != null; ctx = reader.read())
+            ids.add(ctx.getRtId());
+
+        assertEquals(List.of(3L, 7L, 9L), ids);
+        verify(watermarkService).seed(Costanti.RT_BACKFILL_JOB_NAME, PARTITION, 0L);
+        verify(rateLimiter, times(3)).acquire();
+        verify(rndRepository, times(2)).findRendicontazioneWithNoPagamentoBetween(anyLong(), anyLong(), any(), any(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("should resume after the partition watermark")
+    void shouldResumeFromWatermark() throws Exception {
+        when(watermarkService.getWatermark(Costanti.RT_BACKFILL_JOB_NAME, PARTITION)).thenReturn(Optional.of(40L));
+        when(rndRepository.findRendicontazioneWithNoPagamentoBetween(eq(40L), eq(100L), isNull(), isNull(), any(Pageable.class)))
+                .thenReturn(rows());
+        RtBackfillReader reader = reader();
+        reader.beforeStep(stepExecution);
+
+        assertNull(reader.read());
+        verify(watermarkService, never()).seed(any(), any(), anyLong());
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    @DisplayName("should skip a partition already completed")
+    void shouldSkipCompletedPartition() throws Exception {
+        when(watermarkService.getWatermark(Costanti.RT_BACKFILL_JOB_NAME, PARTITION)).thenReturn(Optional.of(100L));
+        RtBackfillReader reader = reader();
+        reader.beforeStep(stepExecution);
+
+        assertNull(reader.read());
+        verifyNoInteractions(rndRepository);
+    }
+
+    @Test
+    @DisplayName("should stop reading once shutdown is requested")
+    void shouldStopOnShutdown() throws Exception {
+        when(watermarkService.getWatermark(Costanti.RT_BACKFILL_JOB_NAME, PARTITION)).thenReturn(Optional.empty());
+        when(rndRepository.findRendicontazioneWithNoPagamentoBetween(anyLong(), anyLong(), any(), any(), any(Pageable.class)))
+                .thenReturn(rows(3L));
+        when(shutdownCoordinator.isShutdownRequested()).thenReturn(true);
+        RtBackfillReader reader = reader();
+        reader.beforeStep(stepExecution);
+
+        assertNull(reader.read());
+        verifyNoInteractions(rateLimiter);
+        verify(stepExecution).setTerminateOnly();
+    }
+
+    @Test
+    @DisplayName("should remove the watermark of a completed partition only")
+    void shouldClearWatermarkWhenCompleted() {
+        RtBackfillReader reader = reader();
+        when(stepExecution.getStatus()).thenReturn(BatchStatus.STOPPED);
+        reader.afterStep(stepExecution);
+        verify(watermarkService, never()).clear(any(), any());
+
+        when(stepExecution.getStatus()).thenReturn(BatchStatus.COMPLETED);
+        reader.afterStep(stepExecution);
+        verify(watermarkService).clear(Costanti.RT_BACKFILL_JOB_NAME, PARTITION);
+    }
+}
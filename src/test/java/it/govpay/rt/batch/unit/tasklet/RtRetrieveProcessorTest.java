@@ -19,6 +19,7 @@ import org.springframework.http.HttpStatusCode;
 import it.gov.pagopa.pagopa_api.pa.pafornode.PaSendRTV2Request;
 import it.govpay.rt.batch.dto.RtRetrieveBatch;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
 import it.govpay.rt.batch.service.PaForNodeService;
 import it.govpay.rt.batch.service.RtApiService;
 import it.govpay.rt.batch.tasklet.RtRetrieveProcessor;
@@ -73,6 +74,7 @@ class RtRetrieveProcessorTest {
             assertEquals(IUR, result.getIur());
             assertNotNull(result.getRetrivedTime());
             assertNull(result.getMessage());
+            assertEquals(RtRetrieveOutcome.RECOVERED, result.getOutcome());
         }
 
         @Test
@@ -87,6 +89,7 @@ class RtRetrieveProcessorTest {
             assertNotNull(result);
             assertEquals(RT_ID, result.getRtId());
             assertEquals("Send to govpay failed", result.getMessage());
+            assertEquals(RtRetrieveOutcome.SEND_FAILED, result.getOutcome());
             assertNull(result.getRetrivedTime());
         }
 
@@ -105,6 +108,7 @@ class RtRetrieveProcessorTest {
             assertNotNull(result);
             assertEquals(RT_ID, result.getRtId());
             assertEquals("Receipt not found", result.getMessage());
+            assertEquals(RtRetrieveOutcome.NOT_FOUND, result.getOutcome());
             assertNull(result.getRetrivedTime());
         }
 
@@ -9,16 +9,27 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.LongStream;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.step.StepExecution;
 
+import it.govpay.rt.batch.config.BatchProperties;
 import it.govpay.rt.batch.dto.RtRetrieveContext;
+import it.govpay.rt.batch.listener.RecoveryLagTracker;
+import it.govpay.rt.batch.listener.RunBudgetListener;
+import it.govpay.rt.batch.listener.ShutdownCoordinator;
 import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.FairShareScheduler;
+import it.govpay.rt.batch.service.ReprocessService;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.RtApiService;
 import it.govpay.rt.batch.tasklet.RtRetrieveReader;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +39,33 @@ class RtRetrieveReaderTest {
     @Mock
     private RendicontazioniRepository rndRepository;
 
+    @Mock
+    private RtApiService rtApiService;
+
+    private final BatchProperties batchProperties = new BatchProperties();
+
+    private FairShareScheduler fairShareScheduler;
+
+    private RunBudgetListener runBudget;
+
+    @Mock
+    private ShutdownCoordinator shutdownCoordinator;
+
+    @Mock
+    private RetrieveOutcomeService outcomeService;
+
+    @Mock
+    private ReprocessService reprocessService;
+
+    @Mock
+    private RecoveryLagTracker recoveryLagTracker;
+
+    @BeforeEach
+    void setUp() {
+        fairShareScheduler = new FairShareScheduler(batchProperties, rtApiService);
+        runBudget = new RunBudgetListener(batchProperties, null, null);
+    }
+
     private static final int FINESTRA_TEMPORALE = 30;
 
     private static final String TAX_CODE_1 = "12345678901";
@@ -36,6 +74,7 @@ class RtRetrieveReaderTest {
     private static final String IUV_2 = "65432109876543210";
     private static final String IUR_1 = "IUR123456";
     private static final String IUR_2 = "IUR654321";
+    private static final LocalDateTime DATA_RENDICONTAZIONE = LocalDateTime.of(2026, 3, 1, 9, 30);
 
     @Nested
     @DisplayName("initToBeRetrieve")
@@ -44,7 +83,7 @@ class RtRetrieveReaderTest {
         @Test
         @DisplayName("should query repository without lastProcessedId when lastProcessedId is 0")
         void shouldQueryRepositoryWithoutLastProcessedIdWhenZero() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 0L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
             when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
                     .thenReturn(Collections.emptyList());
 
@@ -57,7 +96,7 @@ class RtRetrieveReaderTest {
         @Test
         @DisplayName("should query repository with lastProcessedId when lastProcessedId > 0")
         void shouldQueryRepositoryWithLastProcessedIdWhenGreaterThanZero() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 100L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 100L);
             when(rndRepository.findRendicontazioneWithNoPagamentoAfterId(eq(100L), any(LocalDateTime.class)))
                     .thenReturn(Collections.emptyList());
 
@@ -70,11 +109,11 @@ class RtRetrieveReaderTest {
         @Test
         @DisplayName("should populate list with results from repository using Long ids")
         void shouldPopulateListWithResultsUsingLongIds() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 0L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
 
             List<Object[]> results = new ArrayList<>();
-            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1});
-            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2});
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
             when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
                     .thenReturn(results);
 
@@ -87,19 +126,21 @@ class RtRetrieveReaderTest {
             assertEquals(TAX_CODE_1, first.getTaxCode());
             assertEquals(IUR_1, first.getIur());
             assertEquals(IUV_1, first.getIuv());
+            assertEquals(DATA_RENDICONTAZIONE, first.getDataRendicontazione());
 
             RtRetrieveContext second = reader.read();
             assertNotNull(second);
             assertEquals(2L, second.getRtId());
+            verify(recoveryLagTracker).track(argThat(items -> items.size() == 2));
         }
 
         @Test
         @DisplayName("should handle BigInteger ids from repository")
         void shouldHandleBigIntegerIdsFromRepository() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 0L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
 
             List<Object[]> results = new ArrayList<>();
-            results.add(new Object[]{BigInteger.valueOf(999L), TAX_CODE_1, IUV_1, IUR_1});
+            results.add(new Object[]{BigInteger.valueOf(999L), TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
             when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
                     .thenReturn(results);
 
@@ -109,6 +150,29 @@ class RtRetrieveReaderTest {
             assertNotNull(result);
             assertEquals(999L, result.getRtId());
         }
+
+        @Test
+        @DisplayName("should append the due retries after the pending receipts, skipping duplicates")
+        void shouldAppendDueRetries() {
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 100L);
+
+            List<Object[]> results = new ArrayList<>();
+            results.add(new Object[]{101L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            when(rndRepository.findRendicontazioneWithNoPagamentoAfterId(eq(100L), any(LocalDateTime.class)))
+                    .thenReturn(results);
+            List<Object[]> retries = new ArrayList<>();
+            retries.add(new Object[]{7L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
+            retries.add(new Object[]{101L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            when(outcomeService.findRetryable(any(LocalDateTime.class))).thenReturn(retries);
+
+            reader.initToBeRetrieve();
+
+            assertEquals(101L, reader.read().getRtId());
+            RtRetrieveContext retry = reader.read();
+            assertEquals(7L, retry.getRtId());
+            assertNull(retry.getWatermark());
+            assertNull(reader.read());
+        }
     }
 
     @Nested
@@ -118,11 +182,11 @@ class RtRetrieveReaderTest {
         @Test
         @DisplayName("should return items in order and null when exhausted")
         void shouldReturnItemsInOrderAndNullWhenExhausted() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 0L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
 
             List<Object[]> results = new ArrayList<>();
-            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1});
-            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2});
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
             when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
                     .thenReturn(results);
 
@@ -146,7 +210,7 @@ class RtRetrieveReaderTest {
         @Test
         @DisplayName("should return null immediately when no items")
         void shouldReturnNullImmediatelyWhenNoItems() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 0L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
             when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
                     .thenReturn(Collections.emptyList());
 
@@ -155,6 +219,209 @@ class RtRetrieveReaderTest {
             RtRetrieveContext result = reader.read();
             assertNull(result);
         }
+
+        @Test
+        @DisplayName("should skip receipts claimed by a running reprocessing slice")
+        void shouldSkipReceiptsBeingReprocessed() {
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
+
+            List<Object[]> results = new ArrayList<>();
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
+            when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
+                    .thenReturn(results);
+            when(reprocessService.isReprocessing(any(RtRetrieveContext.class)))
+                    .thenAnswer(invocation -> invocation.<RtRetrieveContext>getArgument(0).getRtId() == 1L);
+
+            reader.initToBeRetrieve();
+
+            assertEquals(2L, reader.read().getRtId());
+            assertNull(reader.read());
+        }
+    }
+
+    @Nested
+    @DisplayName("shutdown")
+    class ShutdownTest {
+
+        @Test
+        @DisplayName("should stop reading once shutdown is requested")
+        void shouldStopOnShutdown() {
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
+
+            List<Object[]> results = new ArrayList<>();
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
+            when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
+                    .thenReturn(results);
+            when(shutdownCoordinator.isShutdownRequested()).thenReturn(false, true);
+
+            reader.initToBeRetrieve();
+
+            assertEquals(1L, reader.read().getRtId());
+            assertNull(reader.read());
+        }
+    }
+
+    @Nested
+    @DisplayName("run budget")
+    class RunBudgetTest {
+
+        @Mock
+        private StepExecution stepExecution;
+
+        @Test
+        @DisplayName("should stop reading when the item budget is exhausted")
+        void shouldStopWhenItemBudgetExhausted() {
+            runBudget = new RunBudgetListener(batchProperties, null, 1L);
+            runBudget.beforeStep(stepExecution);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
+
+            List<Object[]> results = new ArrayList<>();
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{2L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
+            when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
+                    .thenReturn(results);
+            when(stepExecution.getReadCount()).thenReturn(0L, 1L);
+
+            reader.initToBeRetrieve();
+
+            assertEquals(1L, reader.read().getRtId());
+            assertNull(reader.read());
+            assertTrue(runBudget.isExhausted());
+        }
+
+        @Test
+        @DisplayName("should not flag the budget when the backlog ends first")
+        void shouldNotFlagBudgetWhenBacklogEnds() {
+            runBudget = new RunBudgetListener(batchProperties, null, 1L);
+            runBudget.beforeStep(stepExecution);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
+
+            List<Object[]> results = new ArrayList<>();
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
+                    .thenReturn(results);
+            when(stepExecution.getReadCount()).thenReturn(0L);
+
+            reader.initToBeRetrieve();
+
+            assertEquals(1L, reader.read().getRtId());
+            assertNull(reader.read());
+            assertFalse(runBudget.isExhausted());
+        }
+    }
+
+    @Nested
+    @DisplayName("fair-share scheduling")
+    class FairShareTest {
+
+        @Test
+        @DisplayName("should interleave domains and carry a safe watermark")
+        void shouldInterleaveDomains() {
+            batchProperties.getScheduling().setMode(BatchProperties.SchedulingMode.FAIR);
+            batchProperties.getScheduling().setFairKey(BatchProperties.FairKey.DOMINIO);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
+
+            List<Object[]> results = new ArrayList<>();
+            results.add(new Object[]{1L, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{2L, TAX_CODE_1, IUV_1, IUR_2, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{3L, TAX_CODE_1, IUV_2, IUR_1, DATA_RENDICONTAZIONE});
+            results.add(new Object[]{4L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
+            when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
+                    .thenReturn(results);
+
+            reader.initToBeRetrieve();
+
+            RtRetrieveContext first = reader.read();
+            RtRetrieveContext second = reader.read();
+            assertEquals(1L, first.getRtId());
+            assertEquals(4L, second.getRtId());
+            // dopo l'id 4 restano 2 e 3: il watermark non puo' superare 1
+            assertEquals(1L, second.getWatermark());
+            assertEquals(2L, reader.read().getRtId());
+            RtRetrieveContext last = reader.read();
+            assertEquals(3L, last.getRtId());
+            assertEquals(4L, last.getWatermark());
+            assertNull(reader.read());
+            verifyNoInteractions(rtApiService);
+        }
+    }
+
+    @Nested
+    @DisplayName("id snapshot")
+    class IdSnapshotTest {
+
+        private RtRetrieveReader snapshotReader(long lastProcessedId) {
+            batchProperties.getReader().setMode(BatchProperties.ReaderMode.ID_SNAPSHOT);
+            batchProperties.getReader().setDetailBatchSize(2);
+            return new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, lastProcessedId);
+        }
+
+        private Object[] row(long id) {
+            return new Object[]{id, TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE};
+        }
+
+        @Test
+        @DisplayName("should fetch the details in batches, skipping the receipts recovered after the snapshot")
+        void shouldFetchDetailsInBatches() {
+            RtRetrieveReader reader = snapshotReader(100L);
+            when(rndRepository.findPendingIdsAfterId(eq(100L), any(LocalDateTime.class), any()))
+                    .thenReturn(List.of(101L, 102L, 103L));
+            when(rndRepository.findRendicontazioneWithNoPagamentoDetails(List.of(101L, 102L)))
+                    .thenReturn(Collections.singletonList(row(101L)));
+            when(rndRepository.findRendicontazioneWithNoPagamentoDetails(List.of(103L)))
+                    .thenReturn(Collections.singletonList(row(103L)));
+
+            reader.initToBeRetrieve();
+            verify(rndRepository, never()).findRendicontazioneWithNoPagamentoDetails(any());
+
+            RtRetrieveContext first = reader.read();
+            assertEquals(101L, first.getRtId());
+            assertEquals(TAX_CODE_1, first.getTaxCode());
+            assertEquals(DATA_RENDICONTAZIONE, first.getDataRendicontazione());
+            assertEquals(103L, reader.read().getRtId());
+            assertNull(reader.read());
+            verify(rndRepository, never()).findRendicontazioneWithNoPagamentoAfterId(anyLong(), any());
+            verify(recoveryLagTracker, times(2)).add(anyCollection());
+        }
+
+        @Test
+        @DisplayName("should read the ids page by page until a page is not full")
+        void shouldPageThroughIds() {
+            RtRetrieveReader reader = snapshotReader(0L);
+            when(rndRepository.findPendingIdsAfterId(eq(0L), any(LocalDateTime.class), any()))
+                    .thenReturn(LongStream.rangeClosed(1, 10_000).boxed().toList());
+            when(rndRepository.findPendingIdsAfterId(eq(10_000L), any(LocalDateTime.class), any()))
+                    .thenReturn(List.of(10_001L));
+            when(rndRepository.findRendicontazioneWithNoPagamentoDetails(List.of(1L, 2L)))
+                    .thenReturn(List.of(row(1L), row(2L)));
+
+            reader.initToBeRetrieve();
+
+            assertEquals(1L, reader.read().getRtId());
+            verify(rndRepository, times(2)).findPendingIdsAfterId(anyLong(), any(LocalDateTime.class), any());
+        }
+
+        @Test
+        @DisplayName("should append the due retries after the snapshot, skipping the ids already in it")
+        void shouldAppendRetriesAfterSnapshot() {
+            RtRetrieveReader reader = snapshotReader(100L);
+            when(rndRepository.findPendingIdsAfterId(eq(100L), any(LocalDateTime.class), any()))
+                    .thenReturn(List.of(101L));
+            when(rndRepository.findRendicontazioneWithNoPagamentoDetails(List.of(101L)))
+                    .thenReturn(Collections.singletonList(row(101L)));
+            List<Object[]> retries = new ArrayList<>();
+            retries.add(new Object[]{7L, TAX_CODE_2, IUV_2, IUR_2, DATA_RENDICONTAZIONE});
+            retries.add(row(101L));
+            when(outcomeService.findRetryable(any(LocalDateTime.class))).thenReturn(retries);
+
+            reader.initToBeRetrieve();
+
+            assertEquals(101L, reader.read().getRtId());
+            assertEquals(7L, reader.read().getRtId());
+            assertNull(reader.read());
+        }
     }
 
     @Nested
@@ -164,11 +431,11 @@ class RtRetrieveReaderTest {
         @Test
         @DisplayName("should throw IllegalArgumentException for unsupported types")
         void shouldThrowForUnsupportedTypes() {
-            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, FINESTRA_TEMPORALE, 0L);
+            RtRetrieveReader reader = new RtRetrieveReader(rndRepository, fairShareScheduler, runBudget, shutdownCoordinator, outcomeService, reprocessService, recoveryLagTracker, batchProperties, FINESTRA_TEMPORALE, 0L);
 
             // Create a result with an Integer (unsupported)
             List<Object[]> results = new ArrayList<>();
-            results.add(new Object[]{Integer.valueOf(1), TAX_CODE_1, IUV_1, IUR_1});
+            results.add(new Object[]{Integer.valueOf(1), TAX_CODE_1, IUV_1, IUR_1, DATA_RENDICONTAZIONE});
             when(rndRepository.findRendicontazioneWithNoPagamento(any(LocalDateTime.class)))
                     .thenReturn(results);
 
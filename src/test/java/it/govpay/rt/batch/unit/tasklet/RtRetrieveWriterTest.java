@@ -1,10 +1,12 @@
 package it.govpay.rt.batch.unit.tasklet;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -14,13 +16,18 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.JobInstance;
 import org.springframework.batch.core.step.StepExecution;
 import org.springframework.batch.infrastructure.item.Chunk;
 import org.springframework.batch.infrastructure.item.ExecutionContext;
 
 import it.govpay.rt.batch.Costanti;
 import it.govpay.rt.batch.dto.RtRetrieveBatch;
+import it.govpay.rt.batch.dto.RtRetrieveOutcome;
 import it.govpay.rt.batch.repository.RendicontazioniRepository;
+import it.govpay.rt.batch.service.RetrieveOutcomeService;
+import it.govpay.rt.batch.service.WatermarkService;
 import it.govpay.rt.batch.tasklet.RtRetrieveWriter;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,18 +40,39 @@ class RtRetrieveWriterTest {
     @Mock
     private ExecutionContext executionContext;
 
+    @Mock
+    private JobExecution jobExecution;
+
+    @Mock
+    private JobInstance jobInstance;
+
     @Mock
     private RendicontazioniRepository rendicontazioniRepository;
 
+    @Mock
+    private WatermarkService watermarkService;
+
+    @Mock
+    private RetrieveOutcomeService outcomeService;
+
     private RtRetrieveWriter writer;
 
+    private static final String JOB_NAME = "rtRetrieveJob";
+
     private static final String TAX_CODE = "12345678901";
     private static final String IUV = "01234567890123456";
     private static final String IUR = "IUR123456";
 
     @BeforeEach
     void setUp() {
-        writer = new RtRetrieveWriter(rendicontazioniRepository);
+        writer = new RtRetrieveWriter(rendicontazioniRepository, watermarkService, outcomeService);
+    }
+
+    private void startStep() {
+        when(stepExecution.getJobExecution()).thenReturn(jobExecution);
+        when(jobExecution.getJobInstance()).thenReturn(jobInstance);
+        when(jobInstance.getJobName()).thenReturn(JOB_NAME);
+        writer.beforeStep(stepExecution);
     }
 
     @Nested
@@ -55,7 +83,7 @@ class RtRetrieveWriterTest {
         @DisplayName("should save max rtId to execution context when stepExecution is set")
         void shouldSaveMaxRtIdToExecutionContext() throws Exception {
             when(stepExecution.getExecutionContext()).thenReturn(executionContext);
-            writer.beforeStep(stepExecution);
+            startStep();
 
             RtRetrieveBatch batch1 = RtRetrieveBatch.builder()
                     .rtId(10L)
@@ -86,16 +114,40 @@ class RtRetrieveWriterTest {
             writer.write(chunk);
 
             verify(executionContext).putLong(Costanti.LAST_PROCESSED_ID_KEY, 25L);
+            verify(watermarkService).advance(JOB_NAME, 25L);
             verify(rendicontazioniRepository).disableRecuperoRt(10L);
             verify(rendicontazioniRepository).disableRecuperoRt(25L);
             verify(rendicontazioniRepository).disableRecuperoRt(15L);
         }
 
+        @Test
+        @DisplayName("should use the watermark computed by the reader when present")
+        void shouldUseReaderWatermarkWhenPresent() throws Exception {
+            when(stepExecution.getExecutionContext()).thenReturn(executionContext);
+            startStep();
+
+            // fair-share: l'id 40 e' stato letto prima di id piu' bassi ancora da elaborare
+            RtRetrieveBatch batch = RtRetrieveBatch.builder()
+                    .rtId(40L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .watermark(11L)
+                    .retrivedTime(LocalDateTime.now())
+                    .build();
+
+            writer.write(new Chunk<>(List.of(batch)));
+
+            verify(executionContext).putLong(Costanti.LAST_PROCESSED_ID_KEY, 11L);
+            verify(watermarkService).advance(JOB_NAME, 11L);
+            verify(rendicontazioniRepository).disableRecuperoRt(40L);
+        }
+
         @Test
         @DisplayName("should handle batch with message (error case)")
         void shouldHandleBatchWithMessage() throws Exception {
             when(stepExecution.getExecutionContext()).thenReturn(executionContext);
-            writer.beforeStep(stepExecution);
+            startStep();
 
             RtRetrieveBatch batch = RtRetrieveBatch.builder()
                     .rtId(10L)
@@ -117,7 +169,7 @@ class RtRetrieveWriterTest {
         @DisplayName("should handle batch with retrivedTime (success case)")
         void shouldHandleBatchWithRetrivedTime() throws Exception {
             when(stepExecution.getExecutionContext()).thenReturn(executionContext);
-            writer.beforeStep(stepExecution);
+            startStep();
 
             RtRetrieveBatch batch = RtRetrieveBatch.builder()
                     .rtId(10L)
@@ -138,7 +190,7 @@ class RtRetrieveWriterTest {
         @DisplayName("should filter out null items when calculating max id")
         void shouldFilterOutNullItemsWhenCalculatingMaxId() throws Exception {
             when(stepExecution.getExecutionContext()).thenReturn(executionContext);
-            writer.beforeStep(stepExecution);
+            startStep();
 
             RtRetrieveBatch batch1 = RtRetrieveBatch.builder()
                     .rtId(10L)
@@ -161,7 +213,7 @@ class RtRetrieveWriterTest {
         void shouldThrowWhenChunkHasOnlyNullItems() throws Exception {
             // Use lenient stubbing since exception is thrown before getExecutionContext is called
             lenient().when(stepExecution.getExecutionContext()).thenReturn(executionContext);
-            writer.beforeStep(stepExecution);
+            startStep();
 
             Chunk<RtRetrieveBatch> chunk = new Chunk<>(Arrays.asList(null, null));
 
@@ -186,7 +238,135 @@ class RtRetrieveWriterTest {
             // Should not throw even without stepExecution
             assertDoesNotThrow(() -> writer.write(chunk));
             verifyNoInteractions(executionContext);
+            verifyNoInteractions(watermarkService);
+            verify(rendicontazioniRepository).disableRecuperoRt(10L);
+        }
+
+        @Test
+        @DisplayName("should keep a failed receipt enabled when a retry is scheduled")
+        void shouldNotDisableWhenRetryScheduled() throws Exception {
+            when(stepExecution.getExecutionContext()).thenReturn(executionContext);
+            startStep();
+
+            RtRetrieveBatch batch = RtRetrieveBatch.builder()
+                    .rtId(10L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .message("Receipt not found")
+                    .outcome(RtRetrieveOutcome.NOT_FOUND)
+                    .httpStatus(404)
+                    .build();
+            when(outcomeService.record(batch)).thenReturn(true);
+
+            writer.write(new Chunk<>(List.of(batch)));
+
+            verify(outcomeService).record(batch);
+            verify(rendicontazioniRepository, never()).disableRecuperoRt(anyLong());
+            verify(watermarkService).advance(JOB_NAME, 10L);
+        }
+
+        @Test
+        @DisplayName("should make a failure final when the receipt is older than the retry window")
+        void shouldDisableFailureOutsideRetryWindow() throws Exception {
+            when(stepExecution.getExecutionContext()).thenReturn(executionContext);
+            startStep();
+            writer.setRetryWindow(90);
+
+            RtRetrieveBatch old = RtRetrieveBatch.builder()
+                    .rtId(10L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .dataRendicontazione(LocalDateTime.now().minusDays(200))
+                    .outcome(RtRetrieveOutcome.NOT_FOUND)
+                    .httpStatus(404)
+                    .build();
+            RtRetrieveBatch recent = RtRetrieveBatch.builder()
+                    .rtId(11L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .dataRendicontazione(LocalDateTime.now().minusDays(10))
+                    .outcome(RtRetrieveOutcome.NOT_FOUND)
+                    .httpStatus(404)
+                    .build();
+            when(outcomeService.recordWithoutRetry(old)).thenReturn(false);
+            when(outcomeService.record(recent)).thenReturn(true);
+
+            writer.write(new Chunk<>(List.of(old, recent)));
+
+            verify(rendicontazioniRepository).disableRecuperoRt(10L);
+            verify(rendicontazioniRepository, never()).disableRecuperoRt(11L);
+        }
+
+        @Test
+        @DisplayName("should not move the execution context watermark back on a retried receipt")
+        void shouldNotRegressExecutionContextOnRetry() throws Exception {
+            when(stepExecution.getExecutionContext()).thenReturn(executionContext);
+            when(executionContext.getLong(Costanti.LAST_PROCESSED_ID_KEY, 0L)).thenReturn(500L);
+            startStep();
+
+            RtRetrieveBatch retried = RtRetrieveBatch.builder()
+                    .rtId(10L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .outcome(RtRetrieveOutcome.RECOVERED)
+                    .retrivedTime(LocalDateTime.now())
+                    .build();
+
+            writer.write(new Chunk<>(List.of(retried)));
+
+            verify(executionContext, never()).putLong(anyString(), anyLong());
+            verify(rendicontazioniRepository).disableRecuperoRt(10L);
+        }
+
+        @Test
+        @DisplayName("should advance the watermark of its own partition when one is set")
+        void shouldAdvancePartitionWatermark() throws Exception {
+            when(stepExecution.getExecutionContext()).thenReturn(executionContext);
+            startStep();
+            writer.setWatermarkPartition("1-100");
+
+            RtRetrieveBatch batch = RtRetrieveBatch.builder()
+                    .rtId(10L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .outcome(RtRetrieveOutcome.RECOVERED)
+                    .retrivedTime(LocalDateTime.now())
+                    .build();
+
+            writer.write(new Chunk<>(List.of(batch)));
+
+            verify(watermarkService).advance(JOB_NAME, "1-100", 10L);
+            verify(watermarkService, never()).advance(anyString(), anyLong());
+        }
+
+        @Test
+        @DisplayName("should leave the watermarks untouched in a reprocessing run")
+        void shouldNotAdvanceWatermarkWhenReprocessing() throws Exception {
+            when(stepExecution.getJobExecution()).thenReturn(jobExecution);
+            when(jobExecution.getJobInstance()).thenReturn(jobInstance);
+            when(jobInstance.getJobName()).thenReturn(Costanti.RT_REPROCESS_JOB_NAME);
+            writer.beforeStep(stepExecution);
+
+            RtRetrieveBatch batch = RtRetrieveBatch.builder()
+                    .rtId(10L)
+                    .codDominio(TAX_CODE)
+                    .iuv(IUV)
+                    .iur(IUR)
+                    .outcome(RtRetrieveOutcome.RECOVERED)
+                    .retrivedTime(LocalDateTime.now())
+                    .build();
+
+            writer.write(new Chunk<>(List.of(batch)));
+
+            verify(outcomeService).record(batch);
             verify(rendicontazioniRepository).disableRecuperoRt(10L);
+            verify(stepExecution, never()).getExecutionContext();
+            verifyNoInteractions(watermarkService);
         }
     }
 
@@ -199,7 +379,7 @@ class RtRetrieveWriterTest {
         void shouldStoreStepExecutionReference() {
             when(stepExecution.getExecutionContext()).thenReturn(executionContext);
 
-            writer.beforeStep(stepExecution);
+            startStep();
 
             // Verify by writing a chunk and checking interaction
             RtRetrieveBatch batch = RtRetrieveBatch.builder()